@@ -22,6 +22,7 @@ import org.geneontology.minerva.curie.MappedCurieHandler;
 import org.geneontology.minerva.json.InferenceProvider;
 import org.geneontology.minerva.json.JsonModel;
 import org.geneontology.minerva.json.MolecularModelJsonRenderer;
+import org.geneontology.minerva.legacy.sparql.GPADBatchExport;
 import org.geneontology.minerva.legacy.sparql.GPADData;
 import org.geneontology.minerva.legacy.sparql.GPADSPARQLExport;
 import org.geneontology.minerva.model.ActivityUnit;
@@ -37,6 +38,7 @@ import org.geneontology.minerva.validation.ValidationResultSet;
 import org.geneontology.minerva.validation.Violation;
 import org.geneontology.minerva.validation.pipeline.BatchPipelineValidationReport;
 import org.geneontology.minerva.validation.pipeline.ErrorMessage;
+import org.geneontology.rules.engine.WorkingMemory;
 import org.obolibrary.robot.CatalogXmlIRIMapper;
 import org.openrdf.model.Statement;
 import org.openrdf.model.ValueFactory;
@@ -66,8 +68,7 @@ import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.*;
 
 import static org.geneontology.minerva.server.handler.OperationsTools.createModelRenderer;
 
@@ -247,10 +248,16 @@ public class CommandLineInterface {
                 import_options.addOption(import_owl);
                 import_options.addOption("j", "journal", true, "Sets the Blazegraph journal file for the database");
                 import_options.addOption("f", "folder", true, "Sets the input folder the GO-CAM model files");
+                import_options.addOption("threads", "threads", true, "Number of threads parsing the model files, defaults to the number of processors");
+                import_options.addOption("batch", "batch-size", true, "Number of models committed together, default 1000");
+                import_options.addOption("checkpoint", "checkpoint", true, "File recording the imported model files, an interrupted import started again with the same file resumes after them");
                 cmd = parser.parse(import_options, args, false);
                 String journalFilePath = cmd.getOptionValue("j"); //--journal
                 String outputFolder = cmd.getOptionValue("f"); //--folder
-                importOWLModels(journalFilePath, outputFolder);
+                int threads = Integer.parseInt(cmd.getOptionValue("threads", String.valueOf(Runtime.getRuntime().availableProcessors())));
+                int batchSize = Integer.parseInt(cmd.getOptionValue("batch", "1000"));
+                String checkpoint = cmd.getOptionValue("checkpoint");
+                importOWLModels(journalFilePath, outputFolder, threads, batchSize, checkpoint);
             } else if (cmd.hasOption("sparql-update")) {
                 Options sparql_options = new Options();
                 sparql_options.addOption(sparql);
@@ -323,6 +330,9 @@ public class CommandLineInterface {
                         "Use this to specify local copies of the ontology and or its imports to " +
                         "speed and control the process. If not used, will download the tbox and all its imports.");
                 gpad_options.addOption("ontojournal", "ontojournal", true, "Specify a blazegraph journal file containing the merged, pre-reasoned tbox aka go-lego.owl");
+                gpad_options.addOption("f", "gpad-file", true, "Write the GPAD of all models into this one file, instead of one file per model");
+                gpad_options.addOption("w", "workers", true, "Number of models exported in parallel, defaults to the number of processors");
+                gpad_options.addOption("r", "report", true, "Write the export status and time of each model into this tab separated file");
                 cmd = parser.parse(gpad_options, args, false);
                 String inputDB = cmd.getOptionValue("input");
                 String gpadOutputFolder = cmd.getOptionValue("gpad-output");
@@ -338,7 +348,16 @@ public class CommandLineInterface {
                     System.err.println("Missing -- ontojournal .  Need to specify location for blazegraph journal file containing the merged go-lego tbox (neo, GO-plus, etc..). If a journal does not exist at that location, the tbox ontology will be used to initialize one.");
                     System.exit(-1);
                 }
-                legoToAnnotationsSPARQL(modelIdPrefix, modelIdcurie, inputDB, gpadOutputFolder, ontologyIRI, catalog, go_lego_journal_file);
+                String gpadFile = cmd.getOptionValue("gpad-file");
+                if (gpadOutputFolder == null && gpadFile == null) {
+                    System.err.println("Missing --gpad-output or --gpad-file .  Need to specify a folder for one GPAD file per model or a file for all models.");
+                    System.exit(-1);
+                }
+                int workers = Runtime.getRuntime().availableProcessors();
+                if (cmd.hasOption("workers")) {
+                    workers = Math.max(1, Integer.parseInt(cmd.getOptionValue("workers")));
+                }
+                legoToAnnotationsSPARQL(modelIdPrefix, modelIdcurie, inputDB, gpadOutputFolder, gpadFile, cmd.getOptionValue("report"), workers, ontologyIRI, catalog, go_lego_journal_file);
             } else if (cmd.hasOption("version")) {
                 printVersion();
             } else if (cmd.hasOption("validate-go-cams")) {
@@ -363,6 +382,8 @@ public class CommandLineInterface {
                 validate_options.addOption("ontojournal", "ontojournal", true, "Specify a blazegraph journal file containing the merged, pre-reasoned tbox aka go-lego.owl");
                 validate_options.addOption("reasoner_report", "reasoner_report", false, "Add a report with reasoning results to the output of the validation. ");
                 validate_options.addOption("graph", "check-graph-type", false, "Run the checks agains a GO graphstore journal; check only graphs with graphType noctuaCam.");
+                validate_options.addOption("w", "workers", true, "Number of models validated in parallel, defaults to the number of processors. "
+                        + "The reports are written in the order of the model ids.");
 
 
                 cmd = parser.parse(validate_options, args, false);
@@ -412,7 +433,11 @@ public class CommandLineInterface {
                 if (cmd.hasOption("check-graph-type")) {
                     checkGraphType = true;
                 }
-                validateGoCams(input, outputFolder, ontologyIRI, catalog, modelIdPrefix, modelIdcurie, shexpath, shapemappath, travisMode, shouldFail, checkShex, go_lego_journal_file, run_reasoner_report, checkGraphType);
+                int workers = Runtime.getRuntime().availableProcessors();
+                if (cmd.hasOption("workers")) {
+                    workers = Math.max(1, Integer.parseInt(cmd.getOptionValue("workers")));
+                }
+                validateGoCams(input, outputFolder, ontologyIRI, catalog, modelIdPrefix, modelIdcurie, shexpath, shapemappath, travisMode, shouldFail, checkShex, go_lego_journal_file, run_reasoner_report, checkGraphType, workers);
             }
         } catch (ParseException exp) {
             System.out.println("Parameter parse exception.  Note that the first parameter must be one of: "
@@ -550,9 +575,12 @@ public class CommandLineInterface {
      *
      * @param journalFilePath
      * @param inputFolder
+     * @param threads         number of threads parsing the files
+     * @param batchSize       number of models per commit
+     * @param checkpoint      file recording the imported files, may be null
      * @throws Exception
      */
-    public static void importOWLModels(String journalFilePath, String inputFolder) throws Exception {
+    public static void importOWLModels(String journalFilePath, String inputFolder, int threads, int batchSize, String checkpoint) throws Exception {
         // minimal inputs
         if (journalFilePath == null) {
             System.err.println("No journal file was configured.");
@@ -564,53 +592,34 @@ public class CommandLineInterface {
             System.exit(-1);
             return;
         }
-        int total_files = 0;
         OWLOntology dummy = OWLManager.createOWLOntologyManager().createOntology(IRI.create("http://example.org/dummy"));
         String modelIdPrefix = "http://model.geneontology.org/"; // this will not be used for anything
         CurieHandler curieHandler = new MappedCurieHandler();
         BlazegraphMolecularModelManager<Void> m3 = new BlazegraphMolecularModelManager<>(dummy, curieHandler, modelIdPrefix, journalFilePath, null, null, false);
-        //in case of update rather than whole new journal
-        Set<IRI> stored = ConcurrentHashMap.newKeySet();
-        stored.addAll(m3.getStoredModelIds());
         LOGGER.info("loading gocams from " + inputFolder);
-        //for (File file : FileUtils.listFiles(new File(inputFolder), null, true)) {
+        List<File> files = new ArrayList<>();
         File i = new File(inputFolder);
-        if (i.exists()) {
-            if (i.isDirectory()) {
-                total_files = i.listFiles().length;
-                FileUtils.listFiles(i, null, true).parallelStream().parallel().forEach(file -> {
-                    if (file.getName().endsWith("ttl")) {
-                        java.util.Optional<String> irio;
-                        try {
-                            irio = m3.scanForOntologyIRI(file);
-                            if (!irio.isPresent()) {
-                                throw new OWLOntologyCreationException("Detected anonymous ontology; must have IRI: " + file);
-                            }
-                            IRI iri = IRI.create(irio.get());
-                            //is it in there already?
-                            if (!stored.add(iri)) {
-                                LOGGER.error("Attempted to load gocam ttl file into database but gocam with that iri already exists, skipping " + file + " " + iri);
-                            } else {
-                                m3.importModelToDatabase(file, true);
-                            }
-                        } catch (RDFParseException | RDFHandlerException | IOException e1) {
-                            // TODO Auto-generated catch block
-                            e1.printStackTrace();
-                        } catch (OWLOntologyCreationException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        } catch (RepositoryException e) {
-                            // TODO Auto-generated catch block
-                            e.printStackTrace();
-                        }
-                    } else {
-                        LOGGER.info("Ignored for not ending with .ttl" + file);
-                    }
-                });
+        if (i.exists() && i.isDirectory()) {
+            for (File file : FileUtils.listFiles(i, null, true)) {
+                if (file.getName().endsWith("ttl")) {
+                    files.add(file);
+                } else {
+                    LOGGER.info("Ignored for not ending with .ttl" + file);
+                }
             }
         }
-        m3.dispose();
-        LOGGER.info("done loading gocams, loaded: " + stored.size() + " out of: " + total_files + " files");
+        try {
+            BulkModelImporter importer = new BulkModelImporter(m3);
+            importer.setThreads(threads);
+            importer.setBatchSize(batchSize);
+            if (checkpoint != null) {
+                importer.setCheckpointFile(new File(checkpoint));
+            }
+            BulkModelImporter.Progress progress = importer.importModels(files);
+            LOGGER.info("done loading gocams, loaded: " + progress.getImported() + " out of: " + files.size() + " files");
+        } finally {
+            m3.dispose();
+        }
     }
 
     /**
@@ -817,11 +826,15 @@ public class CommandLineInterface {
      * @param modelIdPrefix
      * @param modelIdcurie
      * @param inputDB
-     * @param gpadOutputFolder
+     * @param gpadOutputFolder folder for one GPAD file per model, or null
+     * @param gpadFile         file for the GPAD of all models, or null
+     * @param reportFile       file for the status and time of each model, or null
+     * @param workers          number of models exported in parallel
      * @param ontologyIRI
      * @throws Exception
      */
-    public static void legoToAnnotationsSPARQL(String modelIdPrefix, String modelIdcurie, String inputDB, String gpadOutputFolder, String ontologyIRI, String catalog, String go_lego_journal_file) throws Exception {
+    public static void legoToAnnotationsSPARQL(String modelIdPrefix, String modelIdcurie, String inputDB, String gpadOutputFolder, String gpadFile, String reportFile, int workers,
+                                               String ontologyIRI, String catalog, String go_lego_journal_file) throws Exception {
         if (modelIdPrefix == null) {
             modelIdPrefix = "http://model.geneontology.org/";
         }
@@ -851,21 +864,38 @@ public class CommandLineInterface {
         BlazegraphMolecularModelManager<Void> m3 = new BlazegraphMolecularModelManager<>(ontology, curieHandler, modelIdPrefix, inputDB, null, go_lego_journal_file, false);
         final String immutableModelIdPrefix = modelIdPrefix;
         final String immutableGpadOutputFolder = gpadOutputFolder;
-        m3.getAvailableModelIds().stream().parallel().forEach(modelIRI -> {
-            try {
-                //TODO investigate whether changing to a neo-lite model has an impact on this - may need to make use of ontology journal
-                String gpad = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getGolego_repo().regulatorsToRegulated).exportGPAD(m3.createInferredModel(modelIRI), modelIRI);
-                String fileName = StringUtils.replaceOnce(modelIRI.toString(), immutableModelIdPrefix, "") + ".gpad";
-                Writer writer = new OutputStreamWriter(new FileOutputStream(Paths.get(immutableGpadOutputFolder, fileName).toFile()), StandardCharsets.UTF_8);
-                writer.write(gpad);
-                writer.close();
-            } catch (InconsistentOntologyException e) {
-                LOGGER.error("Inconsistent ontology: " + modelIRI);
-            } catch (IOException e) {
-                LOGGER.error("Couldn't export GPAD for: " + modelIRI, e);
+        GPADSPARQLExport exporter = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getGolego_repo().regulatorsToRegulated);
+        GPADBatchExport batchExport = new GPADBatchExport(exporter, modelIRI -> {
+            WorkingMemory inferred = m3.createInferredModel(modelIRI);
+            //each model is exported once, keeping it loaded would only fill the heap
+            m3.unlinkModel(modelIRI);
+            return inferred;
+        }, workers);
+        List<IRI> modelIRIs = new ArrayList<>(m3.getAvailableModelIds());
+        modelIRIs.sort(Comparator.comparing(IRI::toString));
+        try {
+            GPADBatchExport.Report report;
+            if (gpadFile != null) {
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(gpadFile), StandardCharsets.UTF_8))) {
+                    report = batchExport.exportToWriter(modelIRIs, writer);
+                }
+            } else {
+                report = batchExport.exportToFiles(modelIRIs, modelIRI -> {
+                    String fileName = StringUtils.replaceOnce(modelIRI.toString(), immutableModelIdPrefix, "") + ".gpad";
+                    return Paths.get(immutableGpadOutputFolder, fileName).toFile();
+                });
             }
-        });
-        m3.dispose();
+            if (reportFile != null) {
+                try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(reportFile), StandardCharsets.UTF_8))) {
+                    report.write(writer);
+                }
+            }
+            for (GPADBatchExport.ModelResult failure : report.getFailures()) {
+                LOGGER.error("No GPAD for: " + failure.modelId + " " + failure.failure);
+            }
+        } finally {
+            m3.dispose();
+        }
     }
 
 
@@ -885,13 +915,14 @@ public class CommandLineInterface {
      * @param shapemappath
      * @param travisMode
      * @param shouldPass
+     * @param workers number of models validated in parallel
      * @throws IOException
      * @throws OWLOntologyCreationException
      */
     public static void validateGoCams(String input, String outputFolder,
                                       String ontologyIRI, String catalog, String modelIdPrefix, String modelIdcurie,
                                       String shexpath, String shapemappath, boolean travisMode, boolean shouldFail, boolean checkShex,
-                                      String go_lego_journal_file, boolean run_reasoner_report, boolean checkGraphType) throws OWLOntologyCreationException, IOException {
+                                      String go_lego_journal_file, boolean run_reasoner_report, boolean checkGraphType, int workers) throws OWLOntologyCreationException, IOException {
         LOGGER.setLevel(Level.INFO);
         String inputDB = "blazegraph.jnl";
         String shexFileUrl = "https://raw.githubusercontent.com/geneontology/go-shapes/master/shapes/go-cam-shapes.shex";
@@ -1040,8 +1071,8 @@ public class CommandLineInterface {
         //shex validator is ready, now build the inference provider (which provides access to the shex validator and provides inferences useful for shex)
         String reasonerOpt = "arachne";
         LOGGER.info("Building OWL inference provider: " + reasonerOpt);
-        InferenceProviderCreator ipc = StartUpTool.createInferenceProviderCreator(reasonerOpt, m3, shex);
-        LOGGER.info("Validating models: " + reasonerOpt);
+        InferenceProviderCreator ipc = StartUpTool.createInferenceProviderCreator(reasonerOpt, workers, m3, shex);
+        LOGGER.info("Validating models: " + reasonerOpt + " with " + workers + " workers");
 
         //Set up all the report files.
         String basic_output_file = outputFolder + "main_report.txt";
@@ -1088,113 +1119,66 @@ public class CommandLineInterface {
             reasoner_report = initReasonerReport(outputFolder);
         }
         //now process each gocam
-        try {
-            for (IRI modelIRI : m3.getAvailableModelIds()) {
-                long start = System.currentTimeMillis();
-                String filename = modelid_filename.get(modelIRI.toString());
-                boolean isConsistent = true; //OWL
-                boolean isConformant = true; //shex
-                if (filename != null) {
-                    LOGGER.info("processing " + filename + "\t" + modelIRI);
-                } else {
-                    LOGGER.info("processing \t" + modelIRI);
+        //the models are validated in parallel, the reports are written by this thread in the order of the model ids
+        final GPADSPARQLExport gpadExport = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getGolego_repo().regulatorsToRegulated);
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        long validationStart = System.currentTimeMillis();
+        long validationMilliseconds = 0;
+        int validated = 0;
+        //set in travis mode, the exit waits until the reports are closed
+        boolean quit = false;
+        try (Writer basic = new BufferedWriter(new FileWriter(basic_output_file, true));
+             Writer explanations = new BufferedWriter(new FileWriter(explanations_file, true));
+             Writer activity_output = new BufferedWriter(new FileWriter(activity_output_file, true));
+             Writer reasoner_output = run_reasoner_report ? new BufferedWriter(new FileWriter(outputFolder + "reasoner_report_all.txt", true)) : null) {
+            List<IRI> modelIRIs = new ArrayList<>(m3.getAvailableModelIds());
+            modelIRIs.sort(Comparator.comparing(IRI::toString));
+            Iterator<IRI> remaining = modelIRIs.iterator();
+            //bounded, so that only a few validated models wait in memory for the writer
+            Deque<Future<GoCamValidation>> pending = new ArrayDeque<>();
+            while (remaining.hasNext() || !pending.isEmpty()) {
+                while (remaining.hasNext() && pending.size() < 2 * workers) {
+                    IRI modelIRI = remaining.next();
+                    pending.add(executor.submit(() -> validateGoCam(modelIRI, m3, ipc, gpadExport, modelid_filename, checkGraphType)));
                 }
-                //this is where everything actually happens
-                ModelContainer mc = m3.getModel(modelIRI);
-                OWLOntology gocam = mc.getAboxOntology();
-                final IRI graphType = IRI.create("http://model.geneontology.org/graphType");
-                final IRI noctuaCam = IRI.create("http://model.geneontology.org/noctuaCam");
-                if (checkGraphType) {
-                    if (gocam.getAnnotations().stream().noneMatch(annotation ->
-                            annotation.getProperty().getIRI().equals(graphType)
-                                    && annotation.getValue().isIRI()
-                                    && annotation.getValue().equals(noctuaCam))) {
-                        System.out.println("SKIPPING: " + modelIRI);
-                        continue;
-                    }
+                GoCamValidation v = pending.remove().get();
+                IRI modelIRI = v.modelIRI;
+                if (v.skipped) {
+                    System.out.println("SKIPPING: " + modelIRI);
+                    m3.unlinkModel(modelIRI);
+                    continue;
                 }
-                try {
-                    //if a model does not have an import statement that links in an ontology that defines all of its classes and object properties
-                    //or if the model does not define the classes and object properties itself, parsing problems will prevail
-                    //this step makes sure that does not happen
-                    gocam = CoreMolecularModelManager.fixBrokenObjectPropertiesAndAxioms(gocam);
-                } catch (OWLOntologyCreationException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                }
-                LOGGER.info("preparing model stats...");
-                //The GoCamModel code is used to capture model-level statistics such as 'how many causal relations are there?'
-                //This might be an area for a speed improvement if needed
-                GoCamModel gcm = new GoCamModel(gocam, m3);
-                String title = "title";
-                if (gcm.getTitle() != null) {
-                    title = makeColSafe(gcm.getTitle());
-                } else {
-                    LOGGER.error("no title for " + filename);
-                }
-                //this is to make clickable links in reports
-                String link = modelIRI.toString().replace("http://model.geneontology.org/", "http://noctua.geneontology.org/editor/graph/gomodel:");
-                if (modelIRI.toString().contains("R-HSA")) {
-                    link = link.replace("noctua.geneontology", "noctua-dev.berkeleybop");
-                }
-                String modelstate = makeColSafe(gcm.getModelstate());
-                String contributor = makeColSafe(gcm.getContributors().toString());
-                String date = makeColSafe(gcm.getDate());
-                String provider = makeColSafe(gcm.getProvided_by().toString());
+                validated++;
+                validationMilliseconds += v.milliseconds;
+                String filename = v.filename;
+                String title = v.title;
+                GoCamModel gcm = v.gcm;
+                InferenceProvider ip = v.ip;
+                boolean isConsistent = v.isConsistent;
+                boolean isConformant = true; //shex
                 pipe_report.setTaxa(gcm.getIn_taxon());
-                LOGGER.info("model stats done for title: " + title);
-                int axioms = gocam.getAxiomCount();
-                //add activity level statistics as a default
-                FileWriter activity_output = new FileWriter(activity_output_file, true);
-                for (ActivityUnit unit : gcm.getActivities()) {
-                    activity_output.write(filename + "\t" + title + "\t" + link + "\t" + modelstate + "\t" + contributor + "\t" + provider + "\t" + date + "\t" + unit.getIndividual().getIRI().toString() + "\t" + unit.getXref() + "\t" + unit.getLabel() + "\t");
-                    activity_output.write(unit.isComplete() + "\t" + unit.getInputs().size() + "\t" + unit.getOutputs().size() + "\t" + unit.getEnablers().size() + "\t" + unit.getLocations().size() +
-                            "\t" + unit.getCausal_in().size() + "\t" + unit.getCausal_out().size() + "\t" + unit.getContaining_processes().size() + "\t" + unit.stringForClasses(unit.getDirect_types()) + "\t" + unit.getURIsForConnectedBPs() + "\n");
-                }
-                activity_output.close();
-
-                InferenceProvider ip = ipc.create(mc);
-                isConsistent = ip.isConsistent();
-                //TODO re-use reasoner object from ip
-                //TODO this is another area that could be touched/removed for speed improvement
-                int n_rows_gpad = 0;
-                if (isConsistent) {
-                    try {
-                        Set<GPADData> gpad = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getGolego_repo().regulatorsToRegulated).getGPAD(m3.createInferredModel(modelIRI), modelIRI);
-                        if (gpad != null) {
-                            n_rows_gpad = gpad.size();
-                        }
-                    } catch (InconsistentOntologyException e) {
-                        LOGGER.error("inconsistent ontology, can't make gpad");
-                    }
-                }
-                long done = System.currentTimeMillis();
-                long milliseconds = (done - start);
+                activity_output.write(v.activities);
                 //for rules report in pipeline
-                if (!ip.isConsistent()) {
+                if (!isConsistent) {
                     String level = "ERROR";
                     String model_id = curieHandler.getCuri(modelIRI);
                     String message = BatchPipelineValidationReport.getOwlMessage();
                     int rule = BatchPipelineValidationReport.getOwlRule();
                     ErrorMessage owl = new ErrorMessage(level, model_id, gcm.getIn_taxon(), message, rule);
                     owl_errors.add(owl);
-                }
-                if (!isConsistent) {
-                    FileWriter explanations = new FileWriter(explanations_file, true);
                     explanations.write(filename + "\t" + title + "\t" + modelIRI + "\tOWL fail explanation: " + ip.getValidation_results().getOwlvalidation().getAsText() + "\n");
-                    explanations.close();
                 }
                 //travis mode causes the system to exit when an invalid model is detected (unless shouldFail is on)
                 if (travisMode && !isConsistent) {
                     if (!shouldFail) {
                         LOGGER.error(filename + "\t" + title + "\t" + modelIRI + "\tOWL:is inconsistent, quitting");
-                        System.exit(-1);
+                        quit = true;
+                        break;
                     }
                 }
                 //basic is just one row per model - did it validate or not
-                FileWriter basic = new FileWriter(basic_output_file, true);
                 if (!shex_output) {
-                    if (ip.isConsistent()) {
+                    if (isConsistent) {
                         good_models++;
                     } else {
                         bad_models++;
@@ -1218,17 +1202,17 @@ public class CommandLineInterface {
                             shex_message.setExplanations(validations);
                         }
                         shex_errors.add(shex_message);
-                        FileWriter explanations = new FileWriter(explanations_file, true);
-                        explanations.write(ip.getValidation_results().getShexvalidation().getAsTab(filename + "\t" + title + "\t" + modelIRI));
-                        explanations.close();
+                        explanations.write(validations.getShexvalidation().getAsTab(filename + "\t" + title + "\t" + modelIRI));
                     }
                     if (travisMode) {
                         if (!isConformant && !shouldFail) {
-                            LOGGER.error(filename + "\t" + title + "\t" + modelIRI + "\tshex is nonconformant, quitting, explanation:\n" + ip.getValidation_results().getShexvalidation().getAsText());
-                            System.exit(-1);
+                            LOGGER.error(filename + "\t" + title + "\t" + modelIRI + "\tshex is nonconformant, quitting, explanation:\n" + validations.getShexvalidation().getAsText());
+                            quit = true;
+                            break;
                         } else if (isConformant && shouldFail) {
                             LOGGER.error(filename + "\t" + title + "\t" + modelIRI + "\tshex validates, but it should not be, quitting");
-                            System.exit(-1);
+                            quit = true;
+                            break;
                         }
                     }
                     //is it a metadata violation or data ?
@@ -1236,12 +1220,11 @@ public class CommandLineInterface {
                     boolean shex_data_problem = false;
                     if (!validations.getShexvalidation().isConformant()) {
                         String model_curie = curieHandler.getCuri(modelIRI);
-                        ValidationResultSet validationset = ip.getValidation_results();
-                        ShexValidationReport shex_report = validationset.getShexvalidation();
+                        ShexValidationReport shex_report = validations.getShexvalidation();
                         Set<Violation> violations = shex_report.getViolations();
                         if (violations != null) {
-                            for (Violation v : violations) {
-                                if (v.getNode().equals(model_curie)) {
+                            for (Violation violation : violations) {
+                                if (violation.getNode().equals(model_curie)) {
                                     shex_meta_problem = true;
                                 } else {
                                     shex_data_problem = true;
@@ -1252,18 +1235,29 @@ public class CommandLineInterface {
                         }
                     }
                     LOGGER.info(filename + "\t" + title + "\t" + modelIRI + "\tOWL:" + isConsistent + "\tshex:" + isConformant);
-                    basic.write(filename + "\t" + title + "\t" + link + "\t" + modelstate + "\t" + contributor + "\t" + provider + "\t" + date + "\t" + isConsistent + "\t" + isConformant + "\t" + shex_meta_problem + "\t" + shex_data_problem + "\t" + milliseconds + "\t" + axioms + "\t" +
-                            n_rows_gpad + "\t" + gcm.getGoCamModelStats().stats2cols() + "\n");
+                    basic.write(filename + "\t" + title + "\t" + v.link + "\t" + v.modelstate + "\t" + v.contributor + "\t" + v.provider + "\t" + v.date + "\t" + isConsistent + "\t" + isConformant + "\t" + shex_meta_problem + "\t" + shex_data_problem + "\t" + v.milliseconds + "\t" + v.axioms + "\t" +
+                            v.n_rows_gpad + "\t" + gcm.getGoCamModelStats().stats2cols() + "\n");
                 }
-                basic.close();
                 if (run_reasoner_report) {
-                    addReasonerReport(outputFolder, gocam, ip, title, reasoner_report);
+                    addReasonerReport(reasoner_output, v.gocam, ip, title, reasoner_report);
                 }
+                //the model is not needed anymore, this also drops its cached inferences
+                m3.unlinkModel(modelIRI);
             }
         } catch (Exception e) {
             // TODO Auto-generated catch block
             e.printStackTrace();
+        } finally {
+            executor.shutdownNow();
         }
+        if (quit) {
+            System.exit(-1);
+        }
+        long elapsed = Math.max(1, System.currentTimeMillis() - validationStart);
+        LOGGER.info("validated " + validated + " models in " + (elapsed / 1000) + " s with " + workers + " workers: "
+                + String.format("%.2f", validated * 1000.0 / elapsed) + " models/s, "
+                + (validated > 0 ? validationMilliseconds / validated : 0) + " ms per model, parallel speedup "
+                + String.format("%.1f", (double) validationMilliseconds / elapsed));
         if (run_reasoner_report) {
             summarizeReasonerReport(outputFolder, reasoner_report);
         }
@@ -1287,6 +1281,124 @@ public class CommandLineInterface {
         LOGGER.info("done with validation");
     }
 
+    /**
+     * The results for one model of {@link #validateGoCams}, made by a worker and written to the reports in model order.
+     */
+    static class GoCamValidation {
+        final IRI modelIRI;
+        boolean skipped = false;
+        String filename;
+        String title;
+        String link;
+        String modelstate;
+        String contributor;
+        String provider;
+        String date;
+        OWLOntology gocam;
+        GoCamModel gcm;
+        InferenceProvider ip;
+        boolean isConsistent;
+        int axioms;
+        int n_rows_gpad;
+        long milliseconds;
+        String activities;
+
+        GoCamValidation(IRI modelIRI) {
+            this.modelIRI = modelIRI;
+        }
+    }
+
+    /**
+     * Model statistics, OWL reasoning, shex validation and GPAD rows for one model.
+     * Called concurrently for different models, so nothing is written here.
+     */
+    private static GoCamValidation validateGoCam(IRI modelIRI, UndoAwareMolecularModelManager m3, InferenceProviderCreator ipc,
+                                                 GPADSPARQLExport gpadExport, Map<String, String> modelid_filename, boolean checkGraphType) throws Exception {
+        GoCamValidation v = new GoCamValidation(modelIRI);
+        long start = System.currentTimeMillis();
+        String filename = modelid_filename.get(modelIRI.toString());
+        v.filename = filename;
+        if (filename != null) {
+            LOGGER.info("processing " + filename + "\t" + modelIRI);
+        } else {
+            LOGGER.info("processing \t" + modelIRI);
+        }
+        //this is where everything actually happens
+        ModelContainer mc = m3.getModel(modelIRI);
+        OWLOntology gocam = mc.getAboxOntology();
+        final IRI graphType = IRI.create("http://model.geneontology.org/graphType");
+        final IRI noctuaCam = IRI.create("http://model.geneontology.org/noctuaCam");
+        if (checkGraphType) {
+            if (gocam.getAnnotations().stream().noneMatch(annotation ->
+                    annotation.getProperty().getIRI().equals(graphType)
+                            && annotation.getValue().isIRI()
+                            && annotation.getValue().equals(noctuaCam))) {
+                v.skipped = true;
+                return v;
+            }
+        }
+        try {
+            //if a model does not have an import statement that links in an ontology that defines all of its classes and object properties
+            //or if the model does not define the classes and object properties itself, parsing problems will prevail
+            //this step makes sure that does not happen
+            gocam = CoreMolecularModelManager.fixBrokenObjectPropertiesAndAxioms(gocam);
+        } catch (OWLOntologyCreationException e) {
+            // TODO Auto-generated catch block
+            e.printStackTrace();
+        }
+        v.gocam = gocam;
+        LOGGER.info("preparing model stats...");
+        //The GoCamModel code is used to capture model-level statistics such as 'how many causal relations are there?'
+        //This might be an area for a speed improvement if needed
+        GoCamModel gcm = new GoCamModel(gocam, m3);
+        v.gcm = gcm;
+        String title = "title";
+        if (gcm.getTitle() != null) {
+            title = makeColSafe(gcm.getTitle());
+        } else {
+            LOGGER.error("no title for " + filename);
+        }
+        v.title = title;
+        //this is to make clickable links in reports
+        String link = modelIRI.toString().replace("http://model.geneontology.org/", "http://noctua.geneontology.org/editor/graph/gomodel:");
+        if (modelIRI.toString().contains("R-HSA")) {
+            link = link.replace("noctua.geneontology", "noctua-dev.berkeleybop");
+        }
+        v.link = link;
+        v.modelstate = makeColSafe(gcm.getModelstate());
+        v.contributor = makeColSafe(gcm.getContributors().toString());
+        v.date = makeColSafe(gcm.getDate());
+        v.provider = makeColSafe(gcm.getProvided_by().toString());
+        LOGGER.info("model stats done for title: " + title);
+        v.axioms = gocam.getAxiomCount();
+        //add activity level statistics as a default
+        StringBuilder activities = new StringBuilder();
+        for (ActivityUnit unit : gcm.getActivities()) {
+            activities.append(filename + "\t" + title + "\t" + link + "\t" + v.modelstate + "\t" + v.contributor + "\t" + v.provider + "\t" + v.date + "\t" + unit.getIndividual().getIRI().toString() + "\t" + unit.getXref() + "\t" + unit.getLabel() + "\t");
+            activities.append(unit.isComplete() + "\t" + unit.getInputs().size() + "\t" + unit.getOutputs().size() + "\t" + unit.getEnablers().size() + "\t" + unit.getLocations().size() +
+                    "\t" + unit.getCausal_in().size() + "\t" + unit.getCausal_out().size() + "\t" + unit.getContaining_processes().size() + "\t" + unit.stringForClasses(unit.getDirect_types()) + "\t" + unit.getURIsForConnectedBPs() + "\n");
+        }
+        v.activities = activities.toString();
+
+        InferenceProvider ip = ipc.create(mc);
+        v.ip = ip;
+        v.isConsistent = ip.isConsistent();
+        //the inference provider reasons over a copy with the go-lego root types added and does not keep its reasoner,
+        //the GPAD rows need the inferred model of the model as stored
+        if (v.isConsistent) {
+            try {
+                Set<GPADData> gpad = gpadExport.getGPAD(m3.createInferredModel(modelIRI), modelIRI);
+                if (gpad != null) {
+                    v.n_rows_gpad = gpad.size();
+                }
+            } catch (InconsistentOntologyException e) {
+                LOGGER.error("inconsistent ontology, can't make gpad");
+            }
+        }
+        v.milliseconds = System.currentTimeMillis() - start;
+        return v;
+    }
+
     static class ReasonerReport {
         Map<String, Integer> term_asserted_instances_mapped = new HashMap<String, Integer>();
         Map<String, Integer> term_deepened_instances_mapped = new HashMap<String, Integer>();
@@ -1310,9 +1422,7 @@ public class CommandLineInterface {
         return report;
     }
 
-    private static ReasonerReport addReasonerReport(String outputFolder, OWLOntology gocam, InferenceProvider ip, String title, ReasonerReport report) throws IOException {
-        String reasoner_report_file = outputFolder + "reasoner_report_all.txt";
-        FileWriter reasoner_report = new FileWriter(reasoner_report_file, true);
+    private static ReasonerReport addReasonerReport(Writer reasoner_report, OWLOntology gocam, InferenceProvider ip, String title, ReasonerReport report) throws IOException {
         Set<OWLNamedIndividual> individuals = gocam.getIndividualsInSignature();
         for (OWLNamedIndividual individual : individuals) {
             //what kind of individual - mapped or created.  mapped have xrefs, created do not.
@@ -1380,7 +1490,6 @@ public class CommandLineInterface {
                 }
             }
         }
-        reasoner_report.close();
         return report;
     }
 
@@ -0,0 +1,235 @@
+package org.geneontology.minerva.legacy.sparql;
+
+import org.apache.log4j.Logger;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.reasoner.InconsistentOntologyException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Function;
+
+/**
+ * Export the GPAD of many models with a fixed number of workers.
+ * Each model is reasoned over and exported by one worker, either into a file of its own
+ * or into one concatenated GPAD, which is written in the order of the given model ids.
+ * A model which can not be exported is skipped and listed in the {@link Report}.
+ */
+public class GPADBatchExport {
+
+    private static final Logger LOG = Logger.getLogger(GPADBatchExport.class);
+
+    private final GPADSPARQLExport exporter;
+    private final Function<IRI, WorkingMemory> inferredModels;
+    private final int workers;
+
+    /**
+     * @param exporter       shared by all workers
+     * @param inferredModels creates the inferred model for a model id, called concurrently
+     * @param workers        number of models exported at the same time
+     */
+    public GPADBatchExport(GPADSPARQLExport exporter, Function<IRI, WorkingMemory> inferredModels, int workers) {
+        this.exporter = exporter;
+        this.inferredModels = inferredModels;
+        this.workers = Math.max(1, workers);
+    }
+
+    /**
+     * Write the GPAD of each model into its own file. Inconsistent models get no file.
+     *
+     * @param modelIds
+     * @param files    the file for a model id
+     * @return report
+     * @throws InterruptedException
+     */
+    public Report exportToFiles(List<IRI> modelIds, Function<IRI, File> files) throws InterruptedException {
+        GPADRenderer renderer = exporter.getRenderer();
+        return export(modelIds, modelId -> {
+            Set<GPADData> annotations = exporter.getGPAD(inferredModels.apply(modelId), modelId);
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(files.apply(modelId)), StandardCharsets.UTF_8))) {
+                renderer.renderAll(annotations, writer);
+            }
+            return new Rendered(annotations.size(), null);
+        }, null);
+    }
+
+    /**
+     * Write the GPAD of all models into one stream, with a single header.
+     * The annotations of a model are rendered by the worker, the writer only appends them.
+     *
+     * @param modelIds
+     * @param writer
+     * @return report
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public Report exportToWriter(List<IRI> modelIds, Writer writer) throws IOException, InterruptedException {
+        writer.write(GPADRenderer.HEADER);
+        writer.write("\n");
+        GPADRenderer renderer = exporter.getRenderer();
+        return export(modelIds, modelId -> {
+            Set<GPADData> annotations = exporter.getGPAD(inferredModels.apply(modelId), modelId);
+            StringWriter lines = new StringWriter();
+            renderer.renderAnnotations(annotations, lines);
+            return new Rendered(annotations.size(), lines.toString());
+        }, writer);
+    }
+
+    private interface ModelExport {
+        Rendered export(IRI modelId) throws Exception;
+    }
+
+    private static class Rendered {
+        final int annotations;
+        final String lines;
+
+        Rendered(int annotations, String lines) {
+            this.annotations = annotations;
+            this.lines = lines;
+        }
+    }
+
+    private Report export(List<IRI> modelIds, ModelExport modelExport, Writer writer) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<ModelResult> results = new ArrayList<>(modelIds.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            Iterator<IRI> remaining = modelIds.iterator();
+            // bounded, so that only a few exported models wait in memory for the writer
+            Deque<Future<ModelResult>> pending = new ArrayDeque<>();
+            while (remaining.hasNext() || !pending.isEmpty()) {
+                while (remaining.hasNext() && pending.size() < 2 * workers) {
+                    IRI modelId = remaining.next();
+                    pending.add(executor.submit(() -> exportModel(modelId, modelExport)));
+                }
+                ModelResult result;
+                try {
+                    result = pending.remove().get();
+                } catch (ExecutionException e) {
+                    // exportModel catches everything the export throws
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (writer != null && result.lines != null) {
+                    try {
+                        writer.write(result.lines);
+                    } catch (IOException e) {
+                        result = new ModelResult(result.modelId, 0, result.milliseconds, "Couldn't write GPAD: " + e.getMessage());
+                        LOG.error("Couldn't write GPAD for: " + result.modelId, e);
+                    }
+                }
+                results.add(result.withoutLines());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Report report = new Report(results, workers, System.currentTimeMillis() - start);
+        LOG.info(report.getSummary());
+        return report;
+    }
+
+    private static ModelResult exportModel(IRI modelId, ModelExport modelExport) {
+        long start = System.currentTimeMillis();
+        try {
+            Rendered rendered = modelExport.export(modelId);
+            return new ModelResult(modelId, rendered.annotations, System.currentTimeMillis() - start, null, rendered.lines);
+        } catch (InconsistentOntologyException e) {
+            LOG.error("Inconsistent ontology: " + modelId);
+            return new ModelResult(modelId, 0, System.currentTimeMillis() - start, "inconsistent");
+        } catch (Exception e) {
+            LOG.error("Couldn't export GPAD for: " + modelId, e);
+            return new ModelResult(modelId, 0, System.currentTimeMillis() - start, String.valueOf(e));
+        }
+    }
+
+    public static class ModelResult {
+        public final IRI modelId;
+        public final int annotations;
+        public final long milliseconds;
+        /**
+         * null, if the export succeeded
+         */
+        public final String failure;
+        private final String lines;
+
+        ModelResult(IRI modelId, int annotations, long milliseconds, String failure) {
+            this(modelId, annotations, milliseconds, failure, null);
+        }
+
+        private ModelResult(IRI modelId, int annotations, long milliseconds, String failure, String lines) {
+            this.modelId = modelId;
+            this.annotations = annotations;
+            this.milliseconds = milliseconds;
+            this.failure = failure;
+            this.lines = lines;
+        }
+
+        ModelResult withoutLines() {
+            return lines == null ? this : new ModelResult(modelId, annotations, milliseconds, failure);
+        }
+    }
+
+    /**
+     * Timing and outcome of each model, in the order of the exported model ids.
+     */
+    public static class Report {
+        private final List<ModelResult> results;
+        private final int workers;
+        private final long milliseconds;
+
+        Report(List<ModelResult> results, int workers, long milliseconds) {
+            this.results = Collections.unmodifiableList(results);
+            this.workers = workers;
+            this.milliseconds = milliseconds;
+        }
+
+        public List<ModelResult> getResults() {
+            return results;
+        }
+
+        public List<ModelResult> getFailures() {
+            List<ModelResult> failures = new ArrayList<>();
+            for (ModelResult result : results) {
+                if (result.failure != null) {
+                    failures.add(result);
+                }
+            }
+            return failures;
+        }
+
+        public long getMilliseconds() {
+            return milliseconds;
+        }
+
+        public String getSummary() {
+            long annotations = 0;
+            long modelMilliseconds = 0;
+            long slowest = 0;
+            for (ModelResult result : results) {
+                annotations += result.annotations;
+                modelMilliseconds += result.milliseconds;
+                slowest = Math.max(slowest, result.milliseconds);
+            }
+            long elapsed = Math.max(1, milliseconds);
+            return "exported GPAD for " + (results.size() - getFailures().size()) + " of " + results.size() + " models ("
+                    + annotations + " annotations) in " + (elapsed / 1000) + " s with " + workers + " workers: "
+                    + String.format("%.2f", results.size() * 1000.0 / elapsed) + " models/s, "
+                    + (results.isEmpty() ? 0 : modelMilliseconds / results.size()) + " ms per model, slowest " + slowest + " ms";
+        }
+
+        /**
+         * Write one tab separated row per model: model, status, annotations, milliseconds, failure.
+         *
+         * @param writer
+         * @throws IOException
+         */
+        public void write(Writer writer) throws IOException {
+            writer.write("model\tstatus\tannotations\tmilliseconds\tfailure\n");
+            for (ModelResult result : results) {
+                writer.write(result.modelId + "\t" + (result.failure == null ? "ok" : "failed") + "\t" + result.annotations
+                        + "\t" + result.milliseconds + "\t" + (result.failure == null ? "" : result.failure.replaceAll("\\s", " ")) + "\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.geneontology.minerva.legacy.sparql;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.core.Var;
+import org.apache.jena.sparql.engine.binding.Binding;
+import org.apache.jena.sparql.syntax.ElementData;
+import org.apache.jena.sparql.syntax.ElementVisitorBase;
+import org.apache.jena.sparql.syntax.ElementWalker;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.*;
+
+/**
+ * Hash indexes over the facts of an inferred model, built in one pass over the facts.
+ * Answers the same questions as gpad-relation-evidence-multiple.rq, gpad-extensions.rq and
+ * gpad-model-level-annotations.rq, without loading the facts into a Jena model and planning a query for each model.
+ * Reified axioms are indexed by the triple they annotate, so the evidence of a fact is a map lookup.
+ */
+class GPADFactIndex {
+
+    private static final Node TYPE = RDF.type.asNode();
+    private static final Node AXIOM = OWL2.Axiom.asNode();
+    private static final Node ONTOLOGY = OWL2.Ontology.asNode();
+    private static final Node ANNOTATED_SOURCE = OWL2.annotatedSource.asNode();
+    private static final Node ANNOTATED_PROPERTY = OWL2.annotatedProperty.asNode();
+    private static final Node ANNOTATED_TARGET = OWL2.annotatedTarget.asNode();
+    private static final Node SUB_PROPERTY_OF = RDFS.subPropertyOf.asNode();
+    private static final Node INDIRECT_TYPE = NodeFactory.createURI("http://arachne.geneontology.org/indirect_type");
+    private static final Node EVIDENCE = NodeFactory.createURI("http://geneontology.org/lego/evidence");
+    private static final Node EVIDENCE_WITH = NodeFactory.createURI("http://geneontology.org/lego/evidence-with");
+    private static final Node CONTRIBUTOR = NodeFactory.createURI("http://purl.org/dc/elements/1.1/contributor");
+    private static final Node DATE = NodeFactory.createURI("http://purl.org/dc/elements/1.1/date");
+    private static final Node SOURCE = NodeFactory.createURI("http://purl.org/dc/elements/1.1/source");
+    private static final Node PROVIDED_BY = NodeFactory.createURI("http://purl.org/pav/providedBy");
+    private static final Node MODEL_STATE = NodeFactory.createURI("http://geneontology.org/lego/modelstate");
+
+    private static final Set<String> EXCLUDED_TYPES = new HashSet<>(Arrays.asList(
+            RDFS.Resource.getURI(), OWL2.Thing.getURI(), OWL2.NamedIndividual.getURI(),
+            "http://purl.obolibrary.org/obo/BFO_0000002", "http://purl.obolibrary.org/obo/BFO_0000003",
+            "http://purl.obolibrary.org/obo/BFO_0000004", "http://purl.obolibrary.org/obo/BFO_0000015",
+            "http://purl.obolibrary.org/obo/BFO_0000040"));
+
+    private static final Set<String> EXCLUDED_EXTENSION_TYPES = new HashSet<>(EXCLUDED_TYPES);
+
+    static {
+        EXCLUDED_EXTENSION_TYPES.addAll(Arrays.asList("http://purl.obolibrary.org/obo/GO_0003674",
+                "http://purl.obolibrary.org/obo/GO_0008150", "http://purl.obolibrary.org/obo/GO_0005575"));
+    }
+
+    private static final String CARO_NAMESPACE = "http://purl.obolibrary.org/obo/CARO_";
+
+    /**
+     * The relations of the VALUES block in gpad-extensions.rq, read from the query, so that both paths use the same relations
+     */
+    static final Set<String> EXTENSION_RELATIONS = valuesOf(GPADSPARQLExport.extensionsQuery, "extension_rel");
+
+    /**
+     * subject -> predicate -> objects, in the order of the facts
+     */
+    private final Map<Node, Map<Node, Set<Node>>> outgoing = new HashMap<>();
+    /**
+     * annotated triple -> owl:Axiom nodes annotating it
+     */
+    private final Map<Triple, Set<Node>> axioms = new HashMap<>();
+
+    GPADFactIndex(Collection<Triple> facts) {
+        for (Triple fact : facts) {
+            outgoing.computeIfAbsent(fact.getSubject(), s -> new HashMap<>())
+                    .computeIfAbsent(fact.getPredicate(), p -> new LinkedHashSet<>())
+                    .add(fact.getObject());
+        }
+        for (Map.Entry<Node, Map<Node, Set<Node>>> entry : outgoing.entrySet()) {
+            Map<Node, Set<Node>> properties = entry.getValue();
+            if (!properties.getOrDefault(TYPE, Collections.emptySet()).contains(AXIOM)) {
+                continue;
+            }
+            for (Node source : properties.getOrDefault(ANNOTATED_SOURCE, Collections.emptySet())) {
+                for (Node property : properties.getOrDefault(ANNOTATED_PROPERTY, Collections.emptySet())) {
+                    for (Node target : properties.getOrDefault(ANNOTATED_TARGET, Collections.emptySet())) {
+                        axioms.computeIfAbsent(Triple.create(source, property, target), t -> new HashSet<>()).add(entry.getKey());
+                    }
+                }
+            }
+        }
+    }
+
+    private Set<Node> objects(Node subject, Node predicate) {
+        Map<Node, Set<Node>> properties = outgoing.get(subject);
+        if (properties == null) {
+            return Collections.emptySet();
+        }
+        return properties.getOrDefault(predicate, Collections.emptySet());
+    }
+
+    private boolean contains(Node subject, Node predicate, Node object) {
+        return objects(subject, predicate).contains(object);
+    }
+
+    /**
+     * The asserted, informative types of a node, like the type filters of the queries.
+     */
+    private List<Node> directTypes(Node node, Set<String> excluded) {
+        List<Node> types = new ArrayList<>();
+        for (Node type : objects(node, TYPE)) {
+            if (type.isURI() && !excluded.contains(type.getURI()) && !contains(node, INDIRECT_TYPE, type)) {
+                types.add(type);
+            }
+        }
+        return types;
+    }
+
+    /**
+     * Same as gpad-model-level-annotations.rq: the model state and provider of the model.
+     *
+     * @return map with the keys model-state and assigned-by
+     */
+    Map<String, String> getModelAnnotations() {
+        Map<String, String> modelAnnotations = new HashMap<>();
+        for (Map.Entry<Node, Map<Node, Set<Node>>> entry : outgoing.entrySet()) {
+            if (entry.getValue().getOrDefault(TYPE, Collections.emptySet()).contains(ONTOLOGY)) {
+                for (Node state : objects(entry.getKey(), MODEL_STATE)) {
+                    modelAnnotations.put("model-state", lexicalForm(state));
+                }
+                for (Node providedBy : objects(entry.getKey(), PROVIDED_BY)) {
+                    modelAnnotations.put("assigned-by", lexicalForm(providedBy));
+                }
+            }
+        }
+        return modelAnnotations;
+    }
+
+    /**
+     * Same as gpad-relation-evidence-multiple.rq: one row for each evidence of an axiom annotating one of the facts,
+     * and each of its evidence types, with values and modification dates.
+     *
+     * @param facts
+     * @return rows
+     */
+    List<EvidenceRow> getEvidences(Set<Triple> facts) {
+        List<EvidenceRow> rows = new ArrayList<>();
+        for (Triple fact : facts) {
+            for (Node axiom : axioms.getOrDefault(fact, Collections.emptySet())) {
+                for (Node evidence : objects(axiom, EVIDENCE)) {
+                    Set<Node> contributorNodes = objects(evidence, CONTRIBUTOR);
+                    Set<Node> dates = objects(evidence, DATE);
+                    Set<Node> sources = objects(evidence, SOURCE);
+                    if (contributorNodes.isEmpty() || dates.isEmpty() || sources.isEmpty()) {
+                        continue;
+                    }
+                    List<Node> evidenceTypes = directTypes(evidence, EXCLUDED_TYPES);
+                    if (evidenceTypes.isEmpty()) {
+                        continue;
+                    }
+                    String source = joinDistinct(sources);
+                    Set<String> contributors = new HashSet<>(Arrays.asList(joinDistinct(contributorNodes).split("\\|")));
+                    Set<Node> providedBys = objects(evidence, PROVIDED_BY);
+                    Optional<String> providedBy = providedBys.isEmpty() ? Optional.empty() : Optional.of(joinDistinct(providedBys).split("\\|")[0]);
+                    List<Optional<String>> withs = new ArrayList<>();
+                    for (Node with : objects(evidence, EVIDENCE_WITH)) {
+                        withs.add(Optional.of(lexicalForm(with)));
+                    }
+                    if (withs.isEmpty()) {
+                        withs.add(Optional.empty());
+                    }
+                    for (Node evidenceType : evidenceTypes) {
+                        for (Optional<String> with : withs) {
+                            for (Node date : dates) {
+                                rows.add(new EvidenceRow(fact, IRI.create(evidenceType.getURI()), with, lexicalForm(date), source, contributors, providedBy));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Same as gpad-extensions.rq: the most specific links from the targets to individuals with an informative type.
+     *
+     * @param targets
+     * @return extensions
+     */
+    Set<AnnotationExtension> getExtensions(Set<Node> targets) {
+        Set<AnnotationExtension> extensions = new HashSet<>();
+        for (Node target : targets) {
+            Map<Node, Set<Node>> properties = outgoing.getOrDefault(target, Collections.emptyMap());
+            for (Map.Entry<Node, Set<Node>> property : properties.entrySet()) {
+                Node relation = property.getKey();
+                if (!relation.isURI() || !EXTENSION_RELATIONS.contains(relation.getURI())) {
+                    continue;
+                }
+                for (Node extension : property.getValue()) {
+                    if (extension.equals(target) || hasMoreSpecificLink(properties, relation, extension)) {
+                        continue;
+                    }
+                    for (Node type : directTypes(extension, EXCLUDED_EXTENSION_TYPES)) {
+                        if (!type.getURI().startsWith(CARO_NAMESPACE)) {
+                            extensions.add(new AnnotationExtension(Triple.create(target, relation, extension), IRI.create(type.getURI())));
+                        }
+                    }
+                }
+            }
+        }
+        return extensions;
+    }
+
+    /**
+     * @param query    SPARQL query
+     * @param variable name of a variable in a VALUES block of the query
+     * @return the IRIs given for the variable
+     */
+    static Set<String> valuesOf(String query, String variable) {
+        final Var var = Var.alloc(variable);
+        final Set<String> values = new HashSet<>();
+        ElementWalker.walk(QueryFactory.create(query).getQueryPattern(), new ElementVisitorBase() {
+            @Override
+            public void visit(ElementData data) {
+                for (Binding row : data.getRows()) {
+                    Node value = row.get(var);
+                    if (value != null && value.isURI()) {
+                        values.add(value.getURI());
+                    }
+                }
+            }
+        });
+        if (values.isEmpty()) {
+            throw new IllegalStateException("No values for ?" + variable + " in query");
+        }
+        return Collections.unmodifiableSet(values);
+    }
+
+    private boolean hasMoreSpecificLink(Map<Node, Set<Node>> properties, Node relation, Node extension) {
+        for (Map.Entry<Node, Set<Node>> other : properties.entrySet()) {
+            if (!other.getKey().equals(relation) && other.getValue().contains(extension) && contains(other.getKey(), SUB_PROPERTY_OF, relation)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Like GROUP_CONCAT(DISTINCT ...; separator="|")
+     */
+    private static String joinDistinct(Set<Node> nodes) {
+        Set<String> values = new LinkedHashSet<>();
+        for (Node node : nodes) {
+            values.add(lexicalForm(node));
+        }
+        return String.join("|", values);
+    }
+
+    private static String lexicalForm(Node node) {
+        if (node.isLiteral()) {
+            return node.getLiteralLexicalForm();
+        } else if (node.isURI()) {
+            return node.getURI();
+        } else {
+            return node.toString();
+        }
+    }
+
+    /**
+     * The values of an evidence for a fact, as selected by gpad-relation-evidence-multiple.rq.
+     */
+    static class EvidenceRow {
+        final Triple statement;
+        final IRI evidenceType;
+        final Optional<String> with;
+        final String modificationDate;
+        final String source;
+        final Set<String> contributors;
+        final Optional<String> providedBy;
+
+        EvidenceRow(Triple statement, IRI evidenceType, Optional<String> with, String modificationDate, String source, Set<String> contributors, Optional<String> providedBy) {
+            this.statement = statement;
+            this.evidenceType = evidenceType;
+            this.with = with;
+            this.modificationDate = modificationDate;
+            this.source = source;
+            this.contributors = contributors;
+            this.providedBy = providedBy;
+        }
+    }
+}
@@ -4,6 +4,10 @@ import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.legacy.sparql.GPADData.ConjunctiveExpression;
 import org.semanticweb.owlapi.model.IRI;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -21,19 +25,46 @@ public class GPADRenderer {
     }
 
     public String renderAll(Collection<GPADData> data) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(HEADER);
-        sb.append("\n");
+        StringWriter writer = new StringWriter();
+        try {
+            renderAll(data, writer);
+        } catch (IOException e) {
+            // not thrown by a StringWriter
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Write the header and the annotations.
+     *
+     * @param data
+     * @param writer
+     * @throws IOException
+     */
+    public void renderAll(Collection<GPADData> data, Writer writer) throws IOException {
+        writer.write(HEADER);
+        writer.write("\n");
 
         /* Added for debugging. Can be removed if this would be a problem */
 		/* sb.append(ATTRIBUTE);		
 		sb.append("\n"); */
 
+        renderAnnotations(data, writer);
+    }
+
+    /**
+     * Write the annotations without a header, e.g. to concatenate the GPAD of several models.
+     *
+     * @param data
+     * @param writer
+     * @throws IOException
+     */
+    public void renderAnnotations(Collection<GPADData> data, Writer writer) throws IOException {
         for (GPADData annotation : data) {
-            sb.append(render(annotation));
-            sb.append("\n");
+            writer.write(render(annotation));
+            writer.write("\n");
         }
-        return sb.toString();
     }
 
     public String render(GPADData data) {
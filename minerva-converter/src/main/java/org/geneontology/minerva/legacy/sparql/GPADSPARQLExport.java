@@ -77,7 +77,8 @@ public class GPADSPARQLExport {
         }
     }
 
-    private static String extensionsQuery;
+    // also the source of the extension relations of GPADFactIndex
+    static String extensionsQuery;
 
     static {
         try {
@@ -97,10 +98,21 @@ public class GPADSPARQLExport {
         }
     }
 
+    /*
+     * The queries are parsed once per thread instead of once per model. Jena's Query objects are not safe to share:
+     * the values blocks of the evidence and extension queries are replaced for every model.
+     */
+    private static final ThreadLocal<Query> compiledInconsistentQuery = ThreadLocal.withInitial(() -> QueryFactory.create(inconsistentQuery));
+    private static final ThreadLocal<Query> compiledMainQuery = ThreadLocal.withInitial(() -> QueryFactory.create(mainQuery));
+    private static final ThreadLocal<Query> compiledMultipleEvidenceQuery = ThreadLocal.withInitial(() -> QueryFactory.create(multipleEvidenceQuery));
+    private static final ThreadLocal<Query> compiledExtensionsQuery = ThreadLocal.withInitial(() -> QueryFactory.create(extensionsQuery));
+    private static final ThreadLocal<Query> compiledModelAnnotationsQuery = ThreadLocal.withInitial(() -> QueryFactory.create(modelAnnotationsQuery));
+
     private final CurieHandler curieHandler;
     private final Map<IRI, String> relationShorthandIndex;
     private final Map<IRI, String> tboxShorthandIndex;
     private final Map<IRI, Set<IRI>> regulators;
+    private boolean sparqlLookups = false;
 
     public GPADSPARQLExport(CurieHandler handler, Map<IRI, String> shorthandIndex, Map<IRI, String> tboxShorthandIndex, Map<IRI, Set<IRI>> regulators) {
         this.curieHandler = handler;
@@ -111,17 +123,33 @@ public class GPADSPARQLExport {
 
     public String exportGPAD(WorkingMemory wm, IRI modelIRI) throws InconsistentOntologyException {
         Set<GPADData> annotations = getGPAD(wm, modelIRI);
-        return new GPADRenderer(curieHandler, relationShorthandIndex).renderAll(annotations);
+        return getRenderer().renderAll(annotations);
+    }
+
+    public GPADRenderer getRenderer() {
+        return new GPADRenderer(curieHandler, relationShorthandIndex);
+    }
+
+    /**
+     * By default the evidences, extensions and model annotations are looked up in hash indexes over the facts.
+     * The SPARQL queries give the same answers, but take much longer for large models.
+     *
+     * @param sparqlLookups true, to run the evidence, extension and model annotation queries instead
+     */
+    public void setSPARQLLookups(boolean sparqlLookups) {
+        this.sparqlLookups = sparqlLookups;
     }
 
     /* This is a bit convoluted in order to minimize redundant queries, for performance reasons. */
     public Set<GPADData> getGPAD(WorkingMemory wm, IRI modelIRI) throws InconsistentOntologyException {
+        List<Triple> facts = toJava(wm.facts()).stream().map(t -> Bridge.jenaFromTriple(t)).collect(Collectors.toList());
         Model model = ModelFactory.createDefaultModel();
-        model.add(JavaConverters.setAsJavaSetConverter(wm.facts()).asJava().stream().map(t -> model.asStatement(Bridge.jenaFromTriple(t))).collect(Collectors.toList()));
+        model.add(facts.stream().map(model::asStatement).collect(Collectors.toList()));
         if (!isConsistent(model)) throw new InconsistentOntologyException();
-        Map<String, String> modelLevelAnnotations = getModelAnnotations(model);
+        GPADFactIndex index = sparqlLookups ? null : new GPADFactIndex(facts);
+        Map<String, String> modelLevelAnnotations = index != null ? index.getModelAnnotations() : getModelAnnotations(model);
         /* The first step of constructing GPAD records is to construct candidate/basic GPAD records by running gpad-basic.rq. */
-        QueryExecution qe = QueryExecutionFactory.create(mainQuery, model);
+        QueryExecution qe = QueryExecutionFactory.create(compiledMainQuery.get(), model);
         Set<GPADData> annotations = new HashSet<>();
         //this is unpredictable if more than one
         //String modelID = model.listResourcesWithProperty(RDF.type, OWL.Ontology).mapWith(r -> curieHandler.getCuri(IRI.create(r.getURI()))).next();
@@ -147,13 +175,16 @@ public class GPADSPARQLExport {
          * The rest of fields in GPAD are then constructed by joining the candidate mappings with mappings describing evidences and so on.
          * If the output of this exporter (i.e. GPAD files) does not contain the values you expect,
          * dump the above "QuerySolution qs" variable and see whether they are included in the dump. */
-        Set<AnnotationExtension> possibleExtensions = possibleExtensions(basicAnnotations, model);
+        Set<AnnotationExtension> possibleExtensions = index != null ? index.getExtensions(basicAnnotations.stream().map(BasicGPADData::getOntologyClassNode).collect(toSet()))
+                : possibleExtensions(basicAnnotations, model);
         Set<Triple> statementsToExplain = new HashSet<>();
         basicAnnotations.forEach(ba -> statementsToExplain.add(Triple.create(ba.getObjectNode(), NodeFactory.createURI(ba.getQualifier().toString()), ba.getOntologyClassNode())));
         possibleExtensions.forEach(ae -> statementsToExplain.add(ae.getTriple()));
         Map<Triple, Set<Explanation>> allExplanations = statementsToExplain.stream().collect(Collectors.toMap(Function.identity(), s -> toJava(wm.explain(Bridge.tripleFromJena(s)))));
 
-        Map<Triple, Set<GPADEvidence>> allEvidences = evidencesForFacts(allExplanations.values().stream().flatMap(es -> es.stream()).flatMap(e -> toJava(e.facts()).stream().map(t -> Bridge.jenaFromTriple(t))).collect(toSet()), model, modelID, modelLevelAnnotations);
+        Set<Triple> explanationFacts = allExplanations.values().stream().flatMap(es -> es.stream()).flatMap(e -> toJava(e.facts()).stream().map(t -> Bridge.jenaFromTriple(t))).collect(toSet());
+        List<GPADFactIndex.EvidenceRow> evidenceRows = index != null ? index.getEvidences(explanationFacts) : evidencesForFacts(explanationFacts, model);
+        Map<Triple, Set<GPADEvidence>> allEvidences = toEvidences(explanationFacts, evidenceRows, modelID, modelLevelAnnotations);
         Set<IRI> gpsWithAnyMFNotRootMF = basicAnnotations.stream().filter(a -> functionRelations.contains(a.getQualifier().toString())).filter(a -> !a.getOntologyClass().toString().equals(MF)).map(a -> a.getObject()).collect(toSet());
         Map<Node, Set<IRI>> nodesToOntologyClasses = basicAnnotations.stream().collect(Collectors.groupingBy(BasicGPADData::getObjectNode, mapping(BasicGPADData::getOntologyClass, toSet())));
         for (BasicGPADData annotation : basicAnnotations) {
@@ -213,7 +244,7 @@ public class GPADSPARQLExport {
     }
 
     private Map<String, String> getModelAnnotations(Model model) {
-        QueryExecution qe = QueryExecutionFactory.create(modelAnnotationsQuery, model);
+        QueryExecution qe = QueryExecutionFactory.create(compiledModelAnnotationsQuery.get(), model);
         ResultSet result = qe.execSelect();
         Map<String, String> modelAnnotations = new HashMap<>();
         while (result.hasNext()) {
@@ -246,8 +277,8 @@ public class GPADSPARQLExport {
      * If we find the bindings of ?axioms and the values of these bindings have some rdf:type triples, we proceed. (If not, we discard).
      * The bindings of the query gpad-relation-evidence-multiple.rq are then used for filling up fields in GPAD records/tuples.
      */
-    private Map<Triple, Set<GPADEvidence>> evidencesForFacts(Set<Triple> facts, Model model, String modelID, Map<String, String> modelLevelAnnotations) {
-        Query query = QueryFactory.create(multipleEvidenceQuery);
+    private List<GPADFactIndex.EvidenceRow> evidencesForFacts(Set<Triple> facts, Model model) {
+        Query query = compiledMultipleEvidenceQuery.get();
         Var subject = Var.alloc("subject");
         Var predicate = Var.alloc("predicate");
         Var object = Var.alloc("object");
@@ -259,39 +290,46 @@ public class GPADSPARQLExport {
         query.setValuesDataBlock(variables, bindings.collect(Collectors.toList()));
         QueryExecution evidenceExecution = QueryExecutionFactory.create(query, model);
         ResultSet evidenceResults = evidenceExecution.execSelect();
-        Map<Triple, Set<GPADEvidence>> allEvidences = facts.stream().collect(Collectors.toMap(Function.identity(), f -> new HashSet<GPADEvidence>()));
+        List<GPADFactIndex.EvidenceRow> rows = new ArrayList<>();
         while (evidenceResults.hasNext()) {
             QuerySolution eqs = evidenceResults.next();
             if (eqs.get("evidence_type") != null) {
                 Triple statement = Triple.create(eqs.getResource("subject").asNode(), eqs.getResource("predicate").asNode(), eqs.getResource("object").asNode());
                 IRI evidenceType = IRI.create(eqs.getResource("evidence_type").getURI());
                 Optional<String> with = Optional.ofNullable(eqs.getLiteral("with")).map(Literal::getLexicalForm);
-                Set<Pair<String, String>> annotationAnnotations = new HashSet<>();
-                annotationAnnotations.add(Pair.of("noctua-model-id", modelID));
-                annotationAnnotations.addAll(getContributors(eqs).stream().map(c -> Pair.of("contributor", c)).collect(toSet()));
                 String modificationDate = eqs.getLiteral("modification_date").getLexicalForm();
                 Optional<String> creationDate = Optional.ofNullable(eqs.getLiteral("creation_date")).map(Literal::getLexicalForm);
                 // Add this back after announced to consortium; also re-enable tests
                 //creationDate.ifPresent(date -> annotationAnnotations.add(Pair.of("creation-date", date)));
                 String reference = eqs.getLiteral("source").getLexicalForm();
-                final String usableAssignedBy;
-                Optional<String> assignedByIRIOpt = getAnnotationAssignedBy(eqs);
-                if (assignedByIRIOpt.isPresent()) {
-                    String usableAssignedByIRI = assignedByIRIOpt.get();
-                    usableAssignedBy = this.tboxShorthandIndex.getOrDefault(IRI.create(usableAssignedByIRI), usableAssignedByIRI);
-                } else if (modelLevelAnnotations.containsKey("assigned-by")) {
-                    String usableAssignedByIRI = modelLevelAnnotations.get("assigned-by");
-                    usableAssignedBy = this.tboxShorthandIndex.getOrDefault(IRI.create(usableAssignedByIRI), usableAssignedByIRI);
-                } else {
-                    usableAssignedBy = "GO_Noctua";
-                }
-                if (modelLevelAnnotations.containsKey("model-state")) {
-                    annotationAnnotations.add(Pair.of("model-state", modelLevelAnnotations.get("model-state")));
-                }
-                allEvidences.get(statement).add(new GPADEvidence(evidenceType, reference, with, modificationDate, usableAssignedBy, annotationAnnotations, Optional.empty()));
+                rows.add(new GPADFactIndex.EvidenceRow(statement, evidenceType, with, modificationDate, reference, getContributors(eqs), getAnnotationAssignedBy(eqs)));
             }
         }
         evidenceExecution.close();
+        return rows;
+    }
+
+    private Map<Triple, Set<GPADEvidence>> toEvidences(Set<Triple> facts, List<GPADFactIndex.EvidenceRow> rows, String modelID, Map<String, String> modelLevelAnnotations) {
+        Map<Triple, Set<GPADEvidence>> allEvidences = facts.stream().collect(Collectors.toMap(Function.identity(), f -> new HashSet<GPADEvidence>()));
+        for (GPADFactIndex.EvidenceRow row : rows) {
+            Set<Pair<String, String>> annotationAnnotations = new HashSet<>();
+            annotationAnnotations.add(Pair.of("noctua-model-id", modelID));
+            annotationAnnotations.addAll(row.contributors.stream().map(c -> Pair.of("contributor", c)).collect(toSet()));
+            final String usableAssignedBy;
+            if (row.providedBy.isPresent()) {
+                String usableAssignedByIRI = row.providedBy.get();
+                usableAssignedBy = this.tboxShorthandIndex.getOrDefault(IRI.create(usableAssignedByIRI), usableAssignedByIRI);
+            } else if (modelLevelAnnotations.containsKey("assigned-by")) {
+                String usableAssignedByIRI = modelLevelAnnotations.get("assigned-by");
+                usableAssignedBy = this.tboxShorthandIndex.getOrDefault(IRI.create(usableAssignedByIRI), usableAssignedByIRI);
+            } else {
+                usableAssignedBy = "GO_Noctua";
+            }
+            if (modelLevelAnnotations.containsKey("model-state")) {
+                annotationAnnotations.add(Pair.of("model-state", modelLevelAnnotations.get("model-state")));
+            }
+            allEvidences.get(row.statement).add(new GPADEvidence(row.evidenceType, row.source, row.with, row.modificationDate, usableAssignedBy, annotationAnnotations, Optional.empty()));
+        }
         return allEvidences;
     }
 
@@ -308,7 +346,7 @@ public class GPADSPARQLExport {
         Set<AnnotationExtension> possibleExtensions = new HashSet<>();
         Var targetVar = Var.alloc("target");
         List<Binding> bindings = basicAnnotations.stream().map(ba -> createBinding(Pair.of(targetVar, ba.getOntologyClassNode()))).collect(Collectors.toList());
-        Query query = QueryFactory.create(extensionsQuery);
+        Query query = compiledExtensionsQuery.get();
         query.setValuesDataBlock(Arrays.asList(targetVar), bindings);
         QueryExecution qe = QueryExecutionFactory.create(query, model);
         ResultSet results = qe.execSelect();
@@ -342,7 +380,7 @@ public class GPADSPARQLExport {
     }
 
     private boolean isConsistent(Model model) {
-        QueryExecution qe = QueryExecutionFactory.create(inconsistentQuery, model);
+        QueryExecution qe = QueryExecutionFactory.create(compiledInconsistentQuery.get(), model);
         boolean inconsistent = qe.execAsk();
         qe.close();
         if (inconsistent) {
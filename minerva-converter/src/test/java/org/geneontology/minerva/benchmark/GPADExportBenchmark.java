@@ -0,0 +1,114 @@
+package org.geneontology.minerva.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.system.JenaSystem;
+import org.geneontology.jena.SesameJena;
+import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.geneontology.minerva.curie.CurieHandler;
+import org.geneontology.minerva.curie.DefaultCurieHandler;
+import org.geneontology.minerva.legacy.sparql.GPADSPARQLExport;
+import org.geneontology.minerva.test.TestOntology;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.geneontology.rules.util.Bridge;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import scala.collection.JavaConverters;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Measure the GPAD export of a model as done by the command line tool: build the inferred model and run the export.
+ * The SPARQL lookups benchmark runs the export with the evidence, extension and model annotation queries
+ * instead of the indexed lookups, for comparison.
+ * The schema benchmark repeats the conversion of the RBox to triples, which used to run for every inferred model.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -pl minerva-converter -am -Pbenchmark clean test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test
+ * cd minerva-converter
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) \
+ *   org.openjdk.jmh.Main GPADExportBenchmark -p modelFile=path/to/model.ttl -p ontologyFile=path/to/go-lego.owl
+ * </pre>
+ * Without an ontology file the small test ontology is used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GPADExportBenchmark {
+
+    @Param({"src/test/resources/59d1072300000074.ttl"})
+    public String modelFile;
+
+    @Param({""})
+    public String ontologyFile;
+
+    private File folder;
+    private BlazegraphMolecularModelManager<Void> m3;
+    private GPADSPARQLExport exporter;
+    private GPADSPARQLExport sparqlExporter;
+    private IRI modelId;
+
+    @Setup
+    public void setUp() throws Exception {
+        JenaSystem.init();
+        folder = Files.createTempDirectory("gpad-benchmark").toFile();
+        OWLOntology tbox;
+        if (ontologyFile.isEmpty()) {
+            tbox = TestOntology.load();
+        } else {
+            tbox = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File(ontologyFile));
+        }
+        CurieHandler curieHandler = DefaultCurieHandler.getDefaultHandler();
+        m3 = new BlazegraphMolecularModelManager<>(tbox, curieHandler, "http://model.geneontology.org/",
+                new File(folder, "blazegraph.jnl").getAbsolutePath(), null, TestOntology.newJournalPath(folder), false);
+        m3.importModelToDatabase(new File(modelFile), false);
+        modelId = m3.getStoredModelIds().iterator().next();
+        m3.getModel(modelId);
+        exporter = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getGolego_repo().regulatorsToRegulated);
+        sparqlExporter = new GPADSPARQLExport(curieHandler, m3.getLegacyRelationShorthandIndex(), m3.getTboxShorthandIndex(), m3.getGolego_repo().regulatorsToRegulated);
+        sparqlExporter.setSPARQLLookups(true);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        m3.dispose();
+        FileUtils.deleteQuietly(folder);
+    }
+
+    @Benchmark
+    public WorkingMemory inferredModel() {
+        return m3.createInferredModel(modelId);
+    }
+
+    @Benchmark
+    public String gpadExport() throws Exception {
+        return exporter.exportGPAD(m3.createInferredModel(modelId), modelId);
+    }
+
+    @Benchmark
+    public String gpadExportSPARQLLookups() throws Exception {
+        return sparqlExporter.exportGPAD(m3.createInferredModel(modelId), modelId);
+    }
+
+    @Benchmark
+    public Set<Triple> schema() throws Exception {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology schemaOntology = manager.createOntology(IRI.create("http://therules.org"));
+        manager.addAxioms(schemaOntology, m3.getOntology().getRBoxAxioms(Imports.INCLUDED));
+        Set<Statement> statements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(schemaOntology)).asJava();
+        return statements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+    }
+}
@@ -25,7 +25,9 @@ import org.semanticweb.owlapi.model.parameters.Imports;
 import scala.collection.JavaConverters;
 
 import java.io.File;
+import java.io.StringWriter;
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class GPADSPARQLTest {
@@ -91,6 +93,15 @@ public class GPADSPARQLTest {
      *
      * @throws Exception
      */
+    @Test
+    public void testExtensionRelationsFromQuery() {
+        /* The indexed export reads the extension relations from the VALUES block of gpad-extensions.rq */
+        Set<String> relations = GPADFactIndex.EXTENSION_RELATIONS;
+        Assert.assertTrue(relations.contains("http://purl.obolibrary.org/obo/BFO_0000050"));
+        Assert.assertTrue(relations.contains("http://purl.obolibrary.org/obo/RO_0004009"));
+        Assert.assertTrue(relations.size() > 80);
+    }
+
     @Test
     public void testGPADOutputWithNegation() throws Exception {
         Model model = ModelFactory.createDefaultModel();
@@ -199,4 +210,73 @@ public class GPADSPARQLTest {
                 a.getAnnotationExtensions().stream().anyMatch(ce -> ce.getFiller().equals(interactingTaxon))));
     }
 
+    @Test
+    public void testIndexedLookupsMatchSPARQL() throws Exception {
+        GPADSPARQLExport sparqlExporter = new GPADSPARQLExport(DefaultCurieHandler.getDefaultHandler(), new HashMap<IRI, String>(), new HashMap<IRI, String>(), new HashMap<>());
+        sparqlExporter.setSPARQLLookups(true);
+        for (String file : Arrays.asList("/581e072c00000473.ttl", "/59d1072300000074.ttl", "/no_uberon_with_emapa.ttl", "/created-date-test.ttl",
+                "/test_root_mf_filter.ttl", "/test_root_mf_filter2.ttl", "/test_root_mf_filter3.ttl", "/test_filter_regulated_process.ttl", "/MGI_MGI_2429397.ttl")) {
+            Model model = ModelFactory.createDefaultModel();
+            model.read(this.getClass().getResourceAsStream(file), "", "ttl");
+            Set<Triple> triples = model.listStatements().toList().stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+            WorkingMemory mem = arachne.processTriples(JavaConverters.asScalaSetConverter(triples).asScala());
+            // compared as sets, the rendered order of the annotation column follows the hash set of the annotations
+            Set<GPADData> indexed = exporter.getGPAD(mem, IRI.create("http://test.org"));
+            Set<GPADData> sparql = sparqlExporter.getGPAD(mem, IRI.create("http://test.org"));
+            Assert.assertFalse("Should produce annotations for " + file, indexed.isEmpty());
+            Assert.assertEquals(file, sparql, indexed);
+        }
+    }
+
+    @Test
+    public void testBatchExport() throws Exception {
+        Map<IRI, String> files = new LinkedHashMap<>();
+        files.put(IRI.create("http://test.org/a"), "/581e072c00000473.ttl");
+        files.put(IRI.create("http://test.org/b"), "/59d1072300000074.ttl");
+        files.put(IRI.create("http://test.org/missing"), null);
+        Function<IRI, WorkingMemory> inferredModels = modelIRI -> {
+            String file = files.get(modelIRI);
+            if (file == null) {
+                throw new IllegalArgumentException("no model " + modelIRI);
+            }
+            Model model = ModelFactory.createDefaultModel();
+            model.read(this.getClass().getResourceAsStream(file), "", "ttl");
+            Set<Triple> triples = model.listStatements().toList().stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+            return arachne.processTriples(JavaConverters.asScalaSetConverter(triples).asScala());
+        };
+        StringWriter writer = new StringWriter();
+        GPADBatchExport.Report report = new GPADBatchExport(exporter, inferredModels, 2).exportToWriter(new ArrayList<>(files.keySet()), writer);
+
+        // the same lines as the exports of the single models, in the order of the models
+        StringBuilder expected = new StringBuilder(GPADRenderer.HEADER + "\n");
+        int annotations = 0;
+        for (IRI modelIRI : Arrays.asList(IRI.create("http://test.org/a"), IRI.create("http://test.org/b"))) {
+            Set<GPADData> gpad = exporter.getGPAD(inferredModels.apply(modelIRI), modelIRI);
+            annotations += gpad.size();
+            StringWriter lines = new StringWriter();
+            exporter.getRenderer().renderAnnotations(gpad, lines);
+            List<String> sorted = new ArrayList<>(Arrays.asList(lines.toString().split("\n")));
+            Collections.sort(sorted);
+            expected.append(String.join("\n", sorted)).append("\n");
+        }
+        String[] exported = writer.toString().split("\n");
+        List<String> sortedExport = new ArrayList<>();
+        sortedExport.add(exported[0]);
+        List<String> first = new ArrayList<>(Arrays.asList(exported).subList(1, 1 + report.getResults().get(0).annotations));
+        List<String> second = new ArrayList<>(Arrays.asList(exported).subList(1 + first.size(), exported.length));
+        Collections.sort(first);
+        Collections.sort(second);
+        sortedExport.addAll(first);
+        sortedExport.addAll(second);
+        Assert.assertEquals(expected.toString(), String.join("\n", sortedExport) + "\n");
+
+        Assert.assertEquals(3, report.getResults().size());
+        Assert.assertEquals(annotations, report.getResults().stream().mapToInt(r -> r.annotations).sum());
+        Assert.assertEquals(1, report.getFailures().size());
+        Assert.assertEquals(IRI.create("http://test.org/missing"), report.getFailures().get(0).modelId);
+        StringWriter table = new StringWriter();
+        report.write(table);
+        Assert.assertEquals(4, table.toString().split("\n").length);
+    }
+
 }
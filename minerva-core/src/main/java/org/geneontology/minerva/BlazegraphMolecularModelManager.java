@@ -4,7 +4,7 @@ import com.bigdata.journal.Options;
 import com.bigdata.rdf.sail.BigdataSail;
 import com.bigdata.rdf.sail.BigdataSailRepository;
 import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
-import info.aduna.iteration.Iterations;
+import info.aduna.iteration.IterationWrapper;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
@@ -19,6 +19,8 @@ import org.openrdf.model.impl.URIImpl;
 import org.openrdf.model.vocabulary.OWL;
 import org.openrdf.model.vocabulary.RDF;
 import org.openrdf.query.*;
+import org.openrdf.query.impl.GraphQueryResultImpl;
+import org.openrdf.query.impl.TupleQueryResultImpl;
 import org.openrdf.query.parser.QueryPrologLexer;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.repository.RepositoryResult;
@@ -35,6 +37,11 @@ import javax.annotation.Nonnull;
 import java.io.*;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import static org.geneontology.minerva.BlazegraphOntologyManager.in_taxon;
@@ -49,14 +56,43 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
     final String pathToOWLStore;
     final String pathToExportFolder;
     private final BigdataSailRepository repo;
+    private final GroupCommitModelWriter modelWriter;
+    private final StoredModelExporter modelExporter;
+    private final ModelIndex modelIndex;
+    /**
+     * Ids of the model graphs in the journal, seeded at start up and updated with every commit
+     */
+    private final Set<IRI> storedModelIds = ConcurrentHashMap.newKeySet();
+    /**
+     * Ontology annotations of the stored models, read on first use and updated with every commit
+     */
+    private volatile Map<IRI, Set<OWLAnnotation>> storedModelAnnotations = null;
+    private final Object storedModelAnnotationsLock = new Object();
     private final CurieHandler curieHandler;
 
     private final String modelIdPrefix;
 
     OWLDocumentFormat ontologyFormat = new TurtleDocumentFormat();
 
+    /**
+     * Maximum number of queued model saves written in one transaction.
+     */
+    private static final int MAX_MODELS_PER_COMMIT = 100;
+    // exports are mostly disk bound, a few threads are enough
+    private static final int EXPORT_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final Set<String> NON_GENE_TYPES = new HashSet<String>(Arrays.asList(
+            "http://www.w3.org/2002/07/owl#Axiom",
+            "http://www.w3.org/2002/07/owl#NamedIndividual",
+            "http://www.w3.org/2002/07/owl#Ontology",
+            "http://www.w3.org/2002/07/owl#Class",
+            "http://www.w3.org/2002/07/owl#ObjectProperty",
+            "http://www.w3.org/2000/01/rdf-schema#Datatype",
+            "http://www.w3.org/2002/07/owl#AnnotationProperty"));
+
     private final List<PreFileSaveHandler> preFileSaveHandlers = new ArrayList<PreFileSaveHandler>();
     private final List<PostLoadOntologyFilter> postLoadOntologyFilters = new ArrayList<PostLoadOntologyFilter>();
+    private final List<ModelCommitListener> commitListeners = new CopyOnWriteArrayList<ModelCommitListener>();
 
 
     /**
@@ -82,6 +118,10 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
         this.pathToOWLStore = pathToJournal;
         this.pathToExportFolder = pathToExportFolder;
         this.repo = initializeRepository(this.pathToOWLStore);
+        this.modelWriter = new GroupCommitModelWriter(this.repo, MAX_MODELS_PER_COMMIT, this::fireModelsCommitted);
+        this.modelExporter = new StoredModelExporter(this.repo, modelIdPrefix, EXPORT_THREADS);
+        this.modelIndex = new ModelIndex(this);
+        readStoredModelIds();
     }
 
     /**
@@ -100,6 +140,73 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
         return curieHandler;
     }
 
+    /**
+     * Only one thread at a time can use the unisolated connection, synchronize on the repository.
+     *
+     * @return the repository for the models
+     */
+    BigdataSailRepository getRepository() {
+        return repo;
+    }
+
+    GroupCommitModelWriter getModelWriter() {
+        return modelWriter;
+    }
+
+    StoredModelExporter getModelExporter() {
+        return modelExporter;
+    }
+
+    /**
+     * @return index of the stored models, kept up to date with the commits
+     */
+    public ModelIndex getModelIndex() {
+        return modelIndex;
+    }
+
+    /**
+     * Listener for changes of the stored models, e.g. to invalidate caches of query results.
+     */
+    public static interface ModelCommitListener {
+
+        /**
+         * Called after a commit to the journal.
+         *
+         * @param modelIds the changed models, or null if any model may have changed
+         */
+        public void modelsCommitted(Set<IRI> modelIds);
+    }
+
+    public void addModelCommitListener(ModelCommitListener listener) {
+        if (listener != null) {
+            commitListeners.add(listener);
+        }
+    }
+
+    public void removeModelCommitListener(ModelCommitListener listener) {
+        commitListeners.remove(listener);
+    }
+
+    void fireModelsCommitted(Set<IRI> modelIds) {
+        try {
+            updateStoredModelIds(modelIds);
+        } catch (IOException e) {
+            LOG.error("Could not update the stored model ids", e);
+        }
+        try {
+            updateStoredModelAnnotations(modelIds);
+        } catch (IOException e) {
+            LOG.error("Could not update the stored model annotations", e);
+        }
+        for (ModelCommitListener listener : commitListeners) {
+            try {
+                listener.modelsCommitted(modelIds);
+            } catch (RuntimeException e) {
+                LOG.error("Model commit listener failed", e);
+            }
+        }
+    }
+
     private BigdataSailRepository initializeRepository(String pathToJournal) {
         try {
             Properties properties = new Properties();
@@ -168,8 +275,13 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
     public void saveAllModels()
             throws OWLOntologyStorageException, OWLOntologyCreationException,
             IOException, RepositoryException, UnknownIdentifierException {
+        // queue all models first, the writer commits them in groups
+        List<CompletableFuture<Void>> saves = new ArrayList<>();
         for (Entry<IRI, ModelContainer> entry : modelMap.entrySet()) {
-            saveModel(entry.getValue());
+            saves.add(saveModelAsync(entry.getValue()));
+        }
+        for (CompletableFuture<Void> save : saves) {
+            waitForSave(save);
         }
     }
 
@@ -184,20 +296,40 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
      * @throws UnknownIdentifierException
      */
     public void saveModel(ModelContainer m) throws IOException, RepositoryException, UnknownIdentifierException {
-        IRI modelId = m.getModelId();
+        waitForSave(saveModelAsync(m));
+    }
+
+    /**
+     * Save a model to the database without waiting for the commit.
+     * The current state of the model is queued for the model writer, which only writes the changed
+     * statements and commits the saves of many models together. After the commit, the export of the
+     * model to the export folder is queued, if it is configured. The save doesn't wait for the export.
+     *
+     * @param m
+     * @return future, completed after the model is committed
+     * @throws UnknownIdentifierException
+     */
+    public CompletableFuture<Void> saveModelAsync(ModelContainer m) throws UnknownIdentifierException {
+        final IRI modelId = m.getModelId();
         final OWLOntology ont = m.getAboxOntology();
         final OWLOntologyManager manager = ont.getOWLOntologyManager();
+        final CompletableFuture<Void> written;
         synchronized (ont) {
             List<OWLOntologyChange> changes = preSaveFileHandler(ont);
             try {
-                this.writeModelToDatabase(ont, modelId);
-                // reset modified flag for abox after successful save
-                m.setAboxModified(false);
-                // dump stored model to export file
-                if (this.pathToExportFolder != null) {
-                    File folder = new File(this.pathToExportFolder);
-                    dumpStoredModel(modelId, folder);
+                StatementCollector collector = new StatementCollector();
+                RioRenderer renderer = new RioRenderer(ont, collector, null);
+                try {
+                    renderer.render();
+                } catch (Exception e) {
+                    CompletableFuture<Void> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(e);
+                    return failed;
                 }
+                // reset modified flag for abox, it is set again if the save fails
+                m.setAboxModified(false);
+                // queued while holding the model, so that saves of one model are written in order
+                written = modelWriter.write(modelId, collector.getStatements());
             } finally {
                 if (changes != null) {
                     List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator
@@ -208,29 +340,47 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
                 }
             }
         }
+        return written.handle((result, error) -> {
+            if (error != null) {
+                m.setAboxModified(true);
+                throw new CompletionException(error);
+            }
+            // dump stored model to export file, failures are logged by the exporter
+            if (this.pathToExportFolder != null) {
+                modelExporter.exportAsync(modelId, new File(this.pathToExportFolder));
+            }
+            return null;
+        });
     }
 
-    private void writeModelToDatabase(OWLOntology model, IRI modelId) throws RepositoryException, IOException {
-        // Only one thread at a time can use the unisolated connection.
-        synchronized (repo) {
-            final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
-            try {
-                connection.begin();
-                try {
-                    URI graph = new URIImpl(modelId.toString());
-                    connection.clear(graph);
-                    StatementCollector collector = new StatementCollector();
-                    RioRenderer renderer = new RioRenderer(model, collector, null);
-                    renderer.render();
-                    connection.add(collector.getStatements(), graph);
-                    connection.commit();
-                } catch (Exception e) {
-                    connection.rollback();
-                    throw e;
-                }
-            } finally {
-                connection.close();
+    private static void waitForSave(CompletableFuture<Void> save) throws IOException, RepositoryException {
+        try {
+            save.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof RepositoryException) {
+                throw (RepositoryException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
             }
+            throw new IOException(cause);
+        }
+    }
+
+    @Override
+    protected boolean saveModelBeforeEviction(ModelContainer model) {
+        try {
+            saveModel(model);
+            return true;
+        } catch (IOException | RepositoryException | UnknownIdentifierException e) {
+            LOG.error("Could not save model before unloading it: " + model.getModelId(), e);
+            return false;
         }
     }
 
@@ -353,25 +503,74 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
      * Retrieve a collection of all file/stored model ids found in the repo.<br>
      * Note: Models may not be loaded at this point.
      *
-     * @return set of modelids.
+     * @return unmodifiable view of the stored model ids, updated with the commits.
      * @throws IOException
      */
     public Set<IRI> getStoredModelIds() throws IOException {
-        try {
-            BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+        return Collections.unmodifiableSet(storedModelIds);
+    }
+
+    /**
+     * @param modelId
+     * @return true, if the journal contains a graph for the model
+     */
+    public boolean isStoredModel(IRI modelId) {
+        return storedModelIds.contains(modelId);
+    }
+
+    private void readStoredModelIds() throws IOException {
+        synchronized (storedModelIds) {
             try {
-                RepositoryResult<Resource> graphs = connection.getContextIDs();
-                Set<IRI> modelIds = new HashSet<>();
-                while (graphs.hasNext()) {
-                    modelIds.add(IRI.create(graphs.next().stringValue()));
+                BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+                try {
+                    RepositoryResult<Resource> graphs = connection.getContextIDs();
+                    Set<IRI> modelIds = new HashSet<>();
+                    try {
+                        while (graphs.hasNext()) {
+                            modelIds.add(IRI.create(graphs.next().stringValue()));
+                        }
+                    } finally {
+                        graphs.close();
+                    }
+                    storedModelIds.retainAll(modelIds);
+                    storedModelIds.addAll(modelIds);
+                } finally {
+                    connection.close();
                 }
-                graphs.close();
-                return Collections.unmodifiableSet(modelIds);
-            } finally {
-                connection.close();
+            } catch (RepositoryException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    /**
+     * @param modelIds the committed models, or null if any model may have changed
+     * @throws IOException
+     */
+    private void updateStoredModelIds(Set<IRI> modelIds) throws IOException {
+        if (modelIds == null) {
+            readStoredModelIds();
+            return;
+        }
+        synchronized (storedModelIds) {
+            try {
+                BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+                try {
+                    for (IRI modelId : modelIds) {
+                        // a graph exists as long as it has a statement
+                        String query = "ASK { GRAPH <" + modelId + "> { ?s ?p ?o } }";
+                        if (connection.prepareBooleanQuery(QueryLanguage.SPARQL, query).evaluate()) {
+                            storedModelIds.add(modelId);
+                        } else {
+                            storedModelIds.remove(modelId);
+                        }
+                    }
+                } finally {
+                    connection.close();
+                }
+            } catch (RepositoryException | MalformedQueryException | QueryEvaluationException e) {
+                throw new IOException(e);
             }
-        } catch (RepositoryException e) {
-            throw new IOException(e);
         }
     }
 
@@ -399,37 +598,98 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
         return allModelIds;
     }
 
+    /**
+     * The annotations of the stored models are cached, only the models of a commit are read again.
+     * Modified models in memory replace the annotations of their stored version.
+     *
+     * @return annotations for each model
+     * @throws IOException
+     */
     public Map<IRI, Set<OWLAnnotation>> getAllModelAnnotations() throws IOException {
+        Map<IRI, Set<OWLAnnotation>> annotations = new HashMap<>(getStoredModelAnnotations());
+        // Next get annotations from ontologies that may not be stored, replacing any stored annotations
+        modelMap.values().stream().filter(mc -> mc.isModified()).forEach(mc -> {
+            annotations.put(mc.getModelId(), mc.getAboxOntology().getAnnotations());
+        });
+        return annotations;
+    }
+
+    private Map<IRI, Set<OWLAnnotation>> getStoredModelAnnotations() throws IOException {
+        Map<IRI, Set<OWLAnnotation>> annotations = storedModelAnnotations;
+        if (annotations == null) {
+            synchronized (storedModelAnnotationsLock) {
+                annotations = storedModelAnnotations;
+                if (annotations == null) {
+                    annotations = new ConcurrentHashMap<>(readModelAnnotations(null));
+                    storedModelAnnotations = annotations;
+                }
+            }
+        }
+        return annotations;
+    }
+
+    /**
+     * @param modelIds the committed models, or null if any model may have changed
+     * @throws IOException
+     */
+    private void updateStoredModelAnnotations(Set<IRI> modelIds) throws IOException {
+        synchronized (storedModelAnnotationsLock) {
+            Map<IRI, Set<OWLAnnotation>> annotations = storedModelAnnotations;
+            if (annotations == null) {
+                // not read yet
+                return;
+            }
+            if (modelIds == null) {
+                storedModelAnnotations = null;
+                return;
+            }
+            for (IRI modelId : modelIds) {
+                Map<IRI, Set<OWLAnnotation>> modelAnnotations = readModelAnnotations(modelId);
+                annotations.remove(modelId);
+                annotations.putAll(modelAnnotations);
+            }
+        }
+    }
+
+    /**
+     * @param modelId the graph to read, or null for all stored models
+     * @return annotations for each ontology
+     * @throws IOException
+     */
+    private Map<IRI, Set<OWLAnnotation>> readModelAnnotations(IRI modelId) throws IOException {
         Map<IRI, Set<OWLAnnotation>> annotations = new HashMap<>();
-        // First get annotations from all the stored ontologies
         try {
             BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
             try {
+                String pattern = "?model a owl:Ontology . " +
+                        "?model ?p ?o . " +
+                        "FILTER(?p NOT IN (owl:imports, rdf:type, <http://geneontology.org/lego/json-model>)) ";
+                if (modelId != null) {
+                    pattern = "GRAPH <" + modelId + "> { " + pattern + "} ";
+                }
                 String query = "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
                         "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> " +
                         "SELECT ?model ?p ?o " +
-                        "WHERE { " +
-                        "?model a owl:Ontology . " +
-                        "?model ?p ?o . " +
-                        "FILTER(?p NOT IN (owl:imports, rdf:type, <http://geneontology.org/lego/json-model>)) " +
-                        "} ";
+                        "WHERE { " + pattern + "} ";
                 TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
                 TupleQueryResult result = tupleQuery.evaluate();
                 OWLDataFactory factory = OWLManager.getOWLDataFactory();
-                while (result.hasNext()) {
-                    BindingSet binding = result.next();
-                    Value model = binding.getValue("model");
-                    Value predicate = binding.getValue("p");
-                    String value = binding.getValue("o").stringValue();
-                    if ((model instanceof URI) && (predicate instanceof URI)) {
-                        IRI modelId = IRI.create(((URI) model).toString());
-                        OWLAnnotationProperty property = factory
-                                .getOWLAnnotationProperty(IRI.create(((URI) predicate).toString()));
-                        OWLAnnotation annotation = factory.getOWLAnnotation(property, factory.getOWLLiteral(value));
-                        Set<OWLAnnotation> modelAnnotations = annotations.getOrDefault(modelId, new HashSet<>());
-                        modelAnnotations.add(annotation);
-                        annotations.put(modelId, modelAnnotations);
+                try {
+                    while (result.hasNext()) {
+                        BindingSet binding = result.next();
+                        Value model = binding.getValue("model");
+                        Value predicate = binding.getValue("p");
+                        String value = binding.getValue("o").stringValue();
+                        if ((model instanceof URI) && (predicate instanceof URI)) {
+                            IRI ontologyId = IRI.create(((URI) model).toString());
+                            OWLAnnotationProperty property = factory
+                                    .getOWLAnnotationProperty(IRI.create(((URI) predicate).toString()));
+                            OWLAnnotation annotation = factory.getOWLAnnotation(property, factory.getOWLLiteral(value));
+                            annotations.computeIfAbsent(ontologyId, id -> new HashSet<>()).add(annotation);
+                        }
                     }
+                } finally {
+                    result.close();
                 }
             } catch (MalformedQueryException e) {
                 throw new IOException(e);
@@ -441,28 +701,14 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
         } catch (RepositoryException e) {
             throw new IOException(e);
         }
-        // Next get annotations from ontologies that may not be stored, replacing any stored annotations
-        modelMap.values().stream().filter(mc -> mc.isModified()).forEach(mc -> {
-            annotations.put(mc.getModelId(), mc.getAboxOntology().getAnnotations());
-        });
+        annotations.replaceAll((id, modelAnnotations) -> Collections.unmodifiableSet(modelAnnotations));
         return annotations;
     }
 
     public QueryResult executeSPARQLQuery(String queryText, int timeout) throws MalformedQueryException, QueryEvaluationException, RepositoryException {
         BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
         try {
-            List<QueryPrologLexer.Token> tokens = QueryPrologLexer.lex(queryText);
-            Set<String> declaredPrefixes = tokens.stream().filter(token -> token.getType().equals(QueryPrologLexer.TokenType.PREFIX)).map(token -> token.getStringValue()).collect(Collectors.toSet());
-            StringBuffer queryWithDefaultPrefixes = new StringBuffer();
-            for (Entry<String, String> entry : getCuriHandler().getMappings().entrySet()) {
-                if (!declaredPrefixes.contains(entry.getKey())) {
-                    queryWithDefaultPrefixes.append("PREFIX " + entry.getKey() + ": <" + entry.getValue() + ">");
-                    queryWithDefaultPrefixes.append("\n");
-                }
-            }
-            queryWithDefaultPrefixes.append(queryText);
-            Query query = connection.prepareQuery(QueryLanguage.SPARQL, queryWithDefaultPrefixes.toString());
-            query.setMaxQueryTime(timeout);
+            Query query = prepareQueryWithDefaultPrefixes(connection, queryText, timeout);
             if (query instanceof TupleQuery) {
                 TupleQuery tupleQuery = (TupleQuery) query;
                 return tupleQuery.evaluate();
@@ -479,6 +725,160 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
         }
     }
 
+    /**
+     * Evaluate the query like {@link #executeSPARQLQuery(String, int)}, but keep the read-only
+     * connection open until the returned result is closed. The bindings or statements are
+     * produced while the result is iterated, so it can be written out without materializing it.<br>
+     * The caller must close the result, also if it is not consumed completely; closing it
+     * early cancels the running query.
+     *
+     * @param queryText
+     * @param timeout   in seconds
+     * @param maxRows   maximum number of bindings or statements in the result, unlimited if &lt;= 0
+     * @return {@link TupleQueryResult} or {@link GraphQueryResult}, both a {@link CappedQueryResult}
+     * @throws MalformedQueryException
+     * @throws QueryEvaluationException
+     * @throws RepositoryException
+     */
+    public QueryResult<?> openSPARQLQuery(String queryText, int timeout, long maxRows) throws MalformedQueryException, QueryEvaluationException, RepositoryException {
+        final BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+        boolean opened = false;
+        try {
+            Query query = prepareQueryWithDefaultPrefixes(connection, queryText, timeout);
+            final QueryResult<?> result;
+            if (query instanceof TupleQuery) {
+                TupleQueryResult tupleResult = ((TupleQuery) query).evaluate();
+                result = new CappedTupleQueryResult(tupleResult.getBindingNames(), new ConnectionResult<>(tupleResult, connection, maxRows));
+            } else if (query instanceof GraphQuery) {
+                GraphQueryResult graphResult = ((GraphQuery) query).evaluate();
+                result = new CappedGraphQueryResult(graphResult.getNamespaces(), new ConnectionResult<>(graphResult, connection, maxRows));
+            } else {
+                throw new UnsupportedOperationException("Unsupported query type.");
+            }
+            opened = true;
+            return result;
+        } finally {
+            if (!opened) {
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * Result of {@link #openSPARQLQuery(String, int, long)}.
+     */
+    public interface CappedQueryResult {
+
+        /**
+         * @return true, if the result had more than the maximum number of rows and the iteration stopped at it
+         */
+        boolean isTruncated();
+    }
+
+    private static class CappedTupleQueryResult extends TupleQueryResultImpl implements CappedQueryResult {
+
+        private final ConnectionResult<BindingSet> rows;
+
+        CappedTupleQueryResult(List<String> bindingNames, ConnectionResult<BindingSet> rows) {
+            super(bindingNames, rows);
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return rows.truncated;
+        }
+    }
+
+    private static class CappedGraphQueryResult extends GraphQueryResultImpl implements CappedQueryResult {
+
+        private final ConnectionResult<Statement> rows;
+
+        CappedGraphQueryResult(Map<String, String> namespaces, ConnectionResult<Statement> rows) {
+            super(namespaces, rows);
+            this.rows = rows;
+        }
+
+        @Override
+        public boolean isTruncated() {
+            return rows.truncated;
+        }
+    }
+
+    /**
+     * Iteration over a query result, which closes the connection of the query
+     * together with the result and stops after the maximum number of rows.
+     */
+    private static class ConnectionResult<E> extends IterationWrapper<E, QueryEvaluationException> {
+
+        private final BigdataSailRepositoryConnection connection;
+        private final long maxRows;
+        private long rows = 0;
+        private volatile boolean truncated = false;
+
+        ConnectionResult(QueryResult<E> result, BigdataSailRepositoryConnection connection, long maxRows) {
+            super(result);
+            this.connection = connection;
+            this.maxRows = maxRows;
+        }
+
+        @Override
+        public boolean hasNext() throws QueryEvaluationException {
+            if (isClosed()) {
+                return false;
+            }
+            if (maxRows > 0 && rows >= maxRows) {
+                if (super.hasNext()) {
+                    truncated = true;
+                    LOG.warn("SPARQL result cut off after the maximum of " + maxRows + " rows");
+                }
+                // release the connection as soon as the row cap is reached
+                close();
+                return false;
+            }
+            return super.hasNext();
+        }
+
+        @Override
+        public E next() throws QueryEvaluationException {
+            if (maxRows > 0 && rows >= maxRows) {
+                throw new NoSuchElementException();
+            }
+            E next = super.next();
+            rows += 1;
+            return next;
+        }
+
+        @Override
+        protected void handleClose() throws QueryEvaluationException {
+            try {
+                super.handleClose();
+            } finally {
+                try {
+                    connection.close();
+                } catch (RepositoryException e) {
+                    throw new QueryEvaluationException(e);
+                }
+            }
+        }
+    }
+
+    private Query prepareQueryWithDefaultPrefixes(BigdataSailRepositoryConnection connection, String queryText, int timeout) throws MalformedQueryException, RepositoryException {
+        List<QueryPrologLexer.Token> tokens = QueryPrologLexer.lex(queryText);
+        Set<String> declaredPrefixes = tokens.stream().filter(token -> token.getType().equals(QueryPrologLexer.TokenType.PREFIX)).map(token -> token.getStringValue()).collect(Collectors.toSet());
+        StringBuffer queryWithDefaultPrefixes = new StringBuffer();
+        for (Entry<String, String> entry : getCuriHandler().getMappings().entrySet()) {
+            if (!declaredPrefixes.contains(entry.getKey())) {
+                queryWithDefaultPrefixes.append("PREFIX " + entry.getKey() + ": <" + entry.getValue() + ">");
+                queryWithDefaultPrefixes.append("\n");
+            }
+        }
+        queryWithDefaultPrefixes.append(queryText);
+        Query query = connection.prepareQuery(QueryLanguage.SPARQL, queryWithDefaultPrefixes.toString());
+        query.setMaxQueryTime(timeout);
+        return query;
+    }
+
     public QueryResult executeSPARQLQueryWithoutPrefixManipulation(String queryText, int timeout) throws MalformedQueryException, QueryEvaluationException, RepositoryException {
         BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
         try {
@@ -508,14 +908,12 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
             }
             unlinkModel(modelId);
         }
+        if (!isStoredModel(modelId)) {
+            throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
+        }
         try {
             BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
             try {
-                RepositoryResult<Resource> graphs = connection.getContextIDs();
-                if (!Iterations.asSet(graphs).contains(new URIImpl(modelId.toString()))) {
-                    throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
-                }
-                graphs.close();
                 RepositoryResult<Statement> statements =
                         connection.getStatements(null, null, null, false, new URIImpl(modelId.toString()));
                 //setting minimal = false will load the abox with the tbox ontology manager, allowing for OWL understanding of tbox content
@@ -540,15 +938,13 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
     @Override
     public OWLOntology loadModelABox(IRI modelId, OWLOntologyManager manager) throws OWLOntologyCreationException {
         LOG.info("Load model abox: " + modelId + " from database");
+        if (!isStoredModel(modelId)) {
+            throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
+        }
         try {
             BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
             try {
                 //TODO repeated code with loadModel
-                RepositoryResult<Resource> graphs = connection.getContextIDs();
-                if (!Iterations.asSet(graphs).contains(new URIImpl(modelId.toString()))) {
-                    throw new OWLOntologyCreationException("No such model in datastore: " + modelId);
-                }
-                graphs.close();
                 RepositoryResult<Statement> statements =
                         connection.getStatements(null, null, null, false, new URIImpl(modelId.toString()));
                 //setting minimal to true will give an OWL abox with triples that won't be connected to the tbox, hence e.g. object properties might not be recognized.
@@ -598,100 +994,34 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
      * @throws RepositoryException
      */
     public String importModelToDatabase(File file, boolean skipMarkedDelete) throws OWLOntologyCreationException, RepositoryException, IOException, RDFParseException, RDFHandlerException {
-        final boolean delete;
-        if (skipMarkedDelete) {
-            delete = scanForIsDelete(file);
-        } else {
-            delete = false;
-        }
-        String modeliri = null;
-        if (!delete) {
-            java.util.Optional<URI> ontIRIOpt = scanForOntologyIRI(file).map(id -> new URIImpl(id));
-            if (ontIRIOpt.isPresent()) {
-                java.util.Optional<URI> importOpt = scanForImport(file).map(id -> new URIImpl(id));
-                if (importOpt.isPresent()) {
-                    modeliri = ontIRIOpt.get().stringValue();
-                    //need to remove the imports before loading.
-                    //if the imports are large, this gets slow
-                    //consider 1) loading the model as below 2) running a SPARQL update to get rid of the imports
-                    OWLOntologyManager ontman = OWLManager.createOWLOntologyManager();
-                    OWLOntology cam = ontman.loadOntologyFromOntologyDocument(file);
-                    Set<OWLImportsDeclaration> imports = cam.getImportsDeclarations();
-                    for (OWLImportsDeclaration impdec : imports) {
-                        RemoveImport rm = new RemoveImport(cam, impdec);
-                        ontman.applyChange(rm);
-                    }
-                    //write it
-                    this.writeModelToDatabase(cam, IRI.create(ontIRIOpt.get().stringValue()));
-                } else { //otherwise just load it all up as rdf (faster because avoids owl api)
-                    synchronized (repo) {
-                        final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
-                        try {
-                            connection.begin();
-                            try {
-                                URI graph = ontIRIOpt.get();
-                                connection.clear(graph);
-                                //FIXME Turtle format is hard-coded here
-                                if (file.getName().endsWith(".ttl")) {
-                                    connection.add(file, "", RDFFormat.TURTLE, graph);
-                                } else if (file.getName().endsWith(".owl")) {
-                                    connection.add(file, "", RDFFormat.RDFXML, graph);
-                                }
-                                connection.commit();
-                                modeliri = graph.toString();
-                            } catch (Exception e) {
-                                connection.rollback();
-                                throw e;
-                            }
-                        } finally {
-                            connection.close();
-                        }
-                    }
-                }
-            } else {
-                throw new OWLOntologyCreationException("Detected anonymous ontology; must have IRI");
-            }
-        } else {
+        // a single parse finds the ontology IRI and the modelstate, and drops the imports
+        ParsedModelFile parsed = ParsedModelFile.parse(file);
+        if (skipMarkedDelete && parsed.isMarkedDelete()) {
             System.err.println("skipping " + file.getName());
+            return null;
         }
-        return modeliri;
-
-    }
-
-    /**
-     * checks an OWLRDF (ttl) file for owl import statements
-     *
-     * @param file
-     * @return
-     * @throws RDFParseException
-     * @throws RDFHandlerException
-     * @throws IOException
-     */
-    private java.util.Optional<String> scanForImport(File file) throws RDFParseException, RDFHandlerException, IOException {
-        RDFHandlerBase handler = new RDFHandlerBase() {
-            public void handleStatement(Statement statement) {
-                if (statement.getPredicate().stringValue().equals("http://www.w3.org/2002/07/owl#imports"))
-                    throw new FoundTripleException(statement);
-            }
-        };
-        InputStream inputStream = new FileInputStream(file);
-        try {
-            //FIXME Turtle format is hard-coded here
-            RDFParser parser = Rio.createParser(RDFFormat.RDFXML);
-            if (file.getName().endsWith(".ttl")) {
-                parser = Rio.createParser(RDFFormat.TURTLE);
+        if (parsed.getModelIri() == null) {
+            throw new OWLOntologyCreationException("Detected anonymous ontology; must have IRI");
+        }
+        synchronized (repo) {
+            final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
+            try {
+                connection.begin();
+                try {
+                    URI graph = new URIImpl(parsed.getModelIri());
+                    connection.clear(graph);
+                    connection.add(parsed.getStatements(), graph);
+                    connection.commit();
+                } catch (Exception e) {
+                    connection.rollback();
+                    throw e;
+                }
+            } finally {
+                connection.close();
             }
-            parser.setRDFHandler(handler);
-            parser.parse(inputStream, "");
-            // If an import triple is found, it will be thrown out
-            // in an exception. Otherwise, return empty.
-            return java.util.Optional.empty();
-        } catch (FoundTripleException fte) {
-            Statement statement = fte.getStatement();
-            return java.util.Optional.of(statement.getObject().stringValue());
-        } finally {
-            inputStream.close();
         }
+        fireModelsCommitted(Collections.singleton(IRI.create(parsed.getModelIri())));
+        return parsed.getModelIri();
     }
 
     /**
@@ -734,30 +1064,6 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
         }
     }
 
-    private boolean scanForIsDelete(File file) throws RDFParseException, RDFHandlerException, IOException {
-        RDFHandlerBase handler = new RDFHandlerBase() {
-
-            public void handleStatement(Statement statement) {
-                if (statement.getPredicate().stringValue().equals(AnnotationShorthand.modelstate.getAnnotationProperty().toString()) &&
-                        statement.getObject().stringValue().equals("delete")) throw new FoundTripleException(statement);
-            }
-        };
-        InputStream inputStream = new FileInputStream(file);
-        try {
-            //FIXME Turtle format is hard-coded here
-            RDFParser parser = Rio.createParser(RDFFormat.TURTLE);
-            parser.setRDFHandler(handler);
-            parser.parse(inputStream, "");
-            // If an ontology IRI triple is found, it will be thrown out
-            // in an exception. Otherwise, return false.
-            return false;
-        } catch (FoundTripleException fte) {
-            return true;
-        } finally {
-            inputStream.close();
-        }
-    }
-
     private static class FoundTripleException extends RuntimeException {
 
         private static final long serialVersionUID = 8366509854229115430L;
@@ -786,7 +1092,7 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
     }
 
     /**
-     * Export all models to disk.
+     * Export all models to disk, in parallel. Models which did not change since their last export are skipped.
      *
      * @throws OWLOntologyStorageException
      * @throws OWLOntologyCreationException
@@ -794,68 +1100,25 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
      */
     public void dumpAllStoredModels() throws OWLOntologyStorageException, OWLOntologyCreationException, IOException {
         File folder = new File(this.pathToExportFolder);
-        for (IRI modelId : this.getStoredModelIds()) {
-            dumpStoredModel(modelId, folder);
-        }
+        modelExporter.exportAll(this.getStoredModelIds(), folder);
     }
 
     /**
-     * Save a model to disk.
+     * Save a model to disk. The file is replaced atomically and only written, if the model changed since its last export.
      *
      * @throws OWLOntologyStorageException
      * @throws OWLOntologyCreationException
      * @throws IOException
      */
     public void dumpStoredModel(IRI modelId, File folder) throws IOException {
-        // preliminary checks for the target file
-        String fileName = StringUtils.replaceOnce(modelId.toString(), modelIdPrefix, "") + ".ttl";
-        File targetFile = new File(folder, fileName).getAbsoluteFile();
-        if (targetFile.exists()) {
-            if (targetFile.isFile() == false) {
-                throw new IOException("For modelId: '" + modelId + "', the resulting path is not a file: " + targetFile.getAbsolutePath());
-            }
-            if (targetFile.canWrite() == false) {
-                throw new IOException("For modelId: '" + modelId + "', Cannot write to the file: " + targetFile.getAbsolutePath());
-            }
-        } else {
-            File targetFolder = targetFile.getParentFile();
-            FileUtils.forceMkdir(targetFolder);
-        }
-        File tempFile = null;
-        try {
-            // create tempFile
-            String prefix = modelId.toString(); // TODO escape
-            tempFile = File.createTempFile(prefix, ".ttl");
-            try {
-                BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
-                OutputStream out = new FileOutputStream(tempFile);
-                try {
-                    // Render the model deterministically so that the same RDF always
-                    // produces byte-identical Turtle, with anonymous blank nodes and a
-                    // consistent set of prefixes (see DeterministicTurtleRenderer).
-                    StatementCollector collector = new StatementCollector();
-                    connection.export(collector, new URIImpl(modelId.toString()));
-                    DeterministicTurtleRenderer.render(collector.getStatements(), modelId.toString(), out);
-                    out.flush();
-                    // copy temp file to the finalFile
-                    FileUtils.copyFile(tempFile, targetFile);
-                } finally {
-                    out.close();
-                    connection.close();
-                }
-            } catch (RepositoryException e) {
-                throw new IOException(e);
-            } catch (RDFHandlerException e) {
-                throw new IOException(e);
-            }
-        } finally {
-            // delete temp file
-            FileUtils.deleteQuietly(tempFile);
-        }
+        modelExporter.export(modelId, folder);
     }
 
     public void dispose() {
         super.dispose();
+        modelWriter.shutdown();
+        // the exports queued by the last saves
+        modelExporter.shutdown();
         try {
             if (repo.getSail().isOpen()) {
                 repo.shutDown();
@@ -890,39 +1153,20 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
 
     public Map<String, Set<String>> buildModelGeneMap() {
         Map<String, Set<String>> model_genes = new HashMap<String, Set<String>>();
-        TupleQueryResult result;
-        String sparql = "SELECT ?id (GROUP_CONCAT(DISTINCT ?type;separator=\";\") AS ?types) WHERE {\n" +
-                "  GRAPH ?id {  \n" +
-                "?i rdf:type ?type .\n" +
-                "FILTER (?type != <http://www.w3.org/2002/07/owl#Axiom> \n" +
-                "        && ?type != <http://www.w3.org/2002/07/owl#NamedIndividual> \n" +
-                "        && ?type != <http://www.w3.org/2002/07/owl#Ontology> \n" +
-                "        && ?type != <http://www.w3.org/2002/07/owl#Class> \n" +
-                "        && ?type != <http://www.w3.org/2002/07/owl#ObjectProperty> \n" +
-                "        && ?type != <http://www.w3.org/2000/01/rdf-schema#Datatype> \n" +
-                "        && ?type != <http://www.w3.org/2002/07/owl#AnnotationProperty>) . \n" +
-                "FILTER (!regex(str(?type), \"http://purl.obolibrary.org/obo/\" ) )    \n" +
-                "    }\n" +
-                "  } \n" +
-                "  \n" +
-                "GROUP BY ?id";
         try {
-            result = (TupleQueryResult) executeSPARQLQueryWithoutPrefixManipulation(sparql, 1000);
-            while (result.hasNext()) {
-                BindingSet bs = result.next();
-                String model = bs.getBinding("id").getValue().stringValue();
-                String genes = bs.getBinding("types").getValue().stringValue();
-                Set<String> g = new HashSet<String>();
-                if (genes != null) {
-                    String[] geness = genes.split(";");
-                    for (String gene : geness) {
-                        g.add(gene);
+            for (Entry<IRI, Set<String>> entry : modelIndex.getModelValues(ModelIndex.Field.TYPE).entrySet()) {
+                Set<String> genes = new HashSet<String>();
+                for (String type : entry.getValue()) {
+                    if (!NON_GENE_TYPES.contains(type) && !type.contains("http://purl.obolibrary.org/obo/")) {
+                        genes.add(type);
                     }
                 }
-                model_genes.put(model, g);
+                if (!genes.isEmpty()) {
+                    model_genes.put(entry.getKey().toString(), genes);
+                }
             }
-        } catch (MalformedQueryException | QueryEvaluationException | RepositoryException e) {
-            e.printStackTrace();
+        } catch (IOException e) {
+            LOG.error("Could not read the types of the models from the model index", e);
         }
         return model_genes;
     }
@@ -992,6 +1236,7 @@ public class BlazegraphMolecularModelManager<METADATA> extends CoreMolecularMode
                 conn.close();
             }
         }
+        fireModelsCommitted(Collections.singleton(model_iri));
         return changes;
     }
 
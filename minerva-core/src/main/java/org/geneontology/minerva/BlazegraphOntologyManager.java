@@ -46,6 +46,16 @@ public class BlazegraphOntologyManager {
     private static final Set<String> root_types;
     public final Map<IRI, Set<IRI>> regulatorsToRegulated;
     public Map<String, Integer> class_depth;
+    private volatile SubClassClosureIndex closureIndex = null;
+    /**
+     * Default maximum number of cached labels and existence flags
+     */
+    public static final int DEFAULT_TERM_CACHE_SIZE = 100000;
+    /**
+     * Maximum number of entities in one VALUES block of a label or existence query
+     */
+    private static final int QUERY_BATCH_SIZE = 1000;
+    private volatile OntologyTermCache termCache = new OntologyTermCache(DEFAULT_TERM_CACHE_SIZE);
 
     static {
         root_types = new HashSet<String>();
@@ -110,6 +120,111 @@ public class BlazegraphOntologyManager {
         return go_lego_repo;
     }
 
+    /**
+     * Answer the subClassOf closure lookups ({@link #getAllSuperClasses(String)},
+     * {@link #getAllSubClasses(String)}, {@link #getSuperClassMap(Set)},
+     * {@link #getSuperCategoryMap(Set)} and {@link #getNeoRoots(Set)}) from an
+     * in-memory {@link SubClassClosureIndex} instead of SPARQL property path queries.
+     * <p>
+     * If a sidecar file is given and exists, the index is read from it. Otherwise
+     * the index is built from the journal and, if a sidecar file is given, written
+     * to it for the next start up.
+     *
+     * @param sidecar optional index file, may be null
+     * @throws IOException
+     */
+    public void enableClosureIndex(File sidecar) throws IOException {
+        if (sidecar != null && sidecar.exists()) {
+            LOG.info("Loading subClassOf closure index from " + sidecar);
+            closureIndex = SubClassClosureIndex.read(sidecar);
+        } else {
+            closureIndex = SubClassClosureIndex.build(go_lego_repo);
+            if (sidecar != null) {
+                LOG.info("Writing subClassOf closure index to " + sidecar);
+                closureIndex.write(sidecar);
+            }
+        }
+    }
+
+    /**
+     * Go back to answering subClassOf closure lookups with SPARQL queries.
+     */
+    public void disableClosureIndex() {
+        closureIndex = null;
+    }
+
+    public SubClassClosureIndex getClosureIndex() {
+        return closureIndex;
+    }
+
+    /**
+     * Replace the cache for labels and existence of terms.
+     *
+     * @param maximumSize maximum number of cached labels, 0 to disable the cache
+     */
+    public void setTermCacheSize(int maximumSize) {
+        termCache = maximumSize > 0 ? new OntologyTermCache(maximumSize) : null;
+    }
+
+    /**
+     * Fill the term cache with the labels in the journal, up to the maximum size of the cache.
+     *
+     * @return number of added labels
+     * @throws IOException
+     */
+    public int warmTermCache() throws IOException {
+        OntologyTermCache cache = termCache;
+        if (cache == null) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        int count = 0;
+        try {
+            BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
+            try {
+                String query = "select ?entity ?label where { ?entity rdfs:label ?label . FILTER(isIRI(?entity)) } limit " + cache.getMaximumSize();
+                TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
+                TupleQueryResult result = tupleQuery.evaluate();
+                try {
+                    while (result.hasNext()) {
+                        BindingSet binding = result.next();
+                        cache.putLabel(binding.getValue("entity").stringValue(), binding.getValue("label").stringValue());
+                        count++;
+                    }
+                } finally {
+                    result.close();
+                }
+            } catch (MalformedQueryException | QueryEvaluationException e) {
+                throw new IOException(e);
+            } finally {
+                connection.close();
+            }
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        }
+        LOG.info("Warmed term cache with " + count + " labels in " + (System.currentTimeMillis() - start) + " ms");
+        return count;
+    }
+
+    /**
+     * @return counters of the term cache, or null if it is disabled
+     */
+    public OntologyTermCache.Statistics getTermCacheStatistics() {
+        OntologyTermCache cache = termCache;
+        return cache != null ? cache.getStatistics() : null;
+    }
+
+    private void refreshCaches() throws IOException {
+        OntologyTermCache cache = termCache;
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+        if (closureIndex != null) {
+            LOG.info("Journal content changed, rebuilding subClassOf closure index");
+            closureIndex = SubClassClosureIndex.build(go_lego_repo);
+        }
+    }
+
     public void unGunzipFile(String compressedFile, String decompressedFile) {
         byte[] buffer = new byte[1024];
         try {
@@ -171,6 +286,7 @@ public class BlazegraphOntologyManager {
                 connection.close();
             }
         }
+        refreshCaches();
     }
 
     public void loadRepositoryFromOntology(OWLOntology ontology, String iri, boolean reset) throws OWLOntologyCreationException, RepositoryException, IOException, RDFParseException, RDFHandlerException {
@@ -196,9 +312,14 @@ public class BlazegraphOntologyManager {
                 connection.close();
             }
         }
+        refreshCaches();
     }
 
     public Set<String> getAllSuperClasses(String uri) throws IOException {
+        SubClassClosureIndex index = closureIndex;
+        if (index != null) {
+            return index.getAllSuperClasses(uri);
+        }
         Set<String> supers = new HashSet<String>();
         try {
             BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
@@ -235,6 +356,10 @@ public class BlazegraphOntologyManager {
     }
 
     public Set<String> getAllSubClasses(String uri) throws IOException {
+        SubClassClosureIndex index = closureIndex;
+        if (index != null) {
+            return index.getAllSubClasses(uri);
+        }
         Set<String> supers = new HashSet<String>();
         try {
             BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
@@ -408,6 +533,19 @@ public class BlazegraphOntologyManager {
 
     public Map<String, Set<String>> getSuperCategoryMap(Set<String> uris) throws IOException {
         Map<String, Set<String>> sub_supers = new HashMap<String, Set<String>>();
+        SubClassClosureIndex index = closureIndex;
+        if (index != null) {
+            for (String uri : uris) {
+                if (uri.startsWith("http")) {
+                    Set<String> supers = index.getSuperClassesIn(uri, root_types);
+                    supers.addAll(index.getDeprecatedRoots(uri));
+                    if (!supers.isEmpty()) {
+                        sub_supers.put(uri, supers);
+                    }
+                }
+            }
+            return sub_supers;
+        }
         try {
             BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
             try {
@@ -509,6 +647,13 @@ public class BlazegraphOntologyManager {
 
     public Map<String, Set<String>> getSuperClassMap(Set<String> uris) throws IOException {
         Map<String, Set<String>> sub_supers = new HashMap<String, Set<String>>();
+        SubClassClosureIndex index = closureIndex;
+        if (index != null) {
+            for (String uri : uris) {
+                sub_supers.put(uri, index.getAllSuperClasses(uri));
+            }
+            return sub_supers;
+        }
         try {
             BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
             try {
@@ -690,53 +835,71 @@ public class BlazegraphOntologyManager {
     }
 
     public String getLabel(String entity) throws IOException {
-        String label = null;
+        OntologyTermCache cache = termCache;
+        if (cache != null) {
+            return cache.getLabel(entity, this::loadLabels);
+        }
+        return loadLabels(Collections.singleton(entity)).get(entity);
+    }
 
-        String query = "select ?label where { <" + entity + "> rdfs:label ?label } limit 1";
-        try {
-            BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
-            try {
-                TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
-                TupleQueryResult result = tupleQuery.evaluate();
-                if (result.hasNext()) {
-                    BindingSet binding = result.next();
-                    Value v = binding.getValue("label");
-                    label = v.stringValue();
-                }
-            } catch (MalformedQueryException e) {
-                throw new IOException(e);
-            } catch (QueryEvaluationException e) {
-                throw new IOException(e);
-            } finally {
-                connection.close();
-            }
-        } catch (RepositoryException e) {
-            throw new IOException(e);
+    public boolean exists(String entity) throws IOException {
+        OntologyTermCache cache = termCache;
+        if (cache != null) {
+            return cache.exists(entity, this::loadExists);
         }
-        return label;
+        return loadExists(Collections.singleton(entity)).containsKey(entity);
     }
 
+    /**
+     * @param entities
+     * @return the entities used in a statement of the journal
+     * @throws IOException
+     */
+    public Set<String> getExisting(Set<String> entities) throws IOException {
+        OntologyTermCache cache = termCache;
+        if (cache != null) {
+            return cache.getExisting(entities, this::loadExists);
+        }
+        return new HashSet<String>(loadExists(entities).keySet());
+    }
 
-    public boolean exists(String entity) throws IOException {
-        boolean exists = false;
-        String query = "select * "
-                + "WHERE {" +
-                "{<" + entity + "> ?p ?o . } " +
-                "UNION " +
-                "{?s ?p <" + entity + "> . }" +
-                "} limit 1";
+    public Map<String, String> getLabels(Set<String> entities) throws IOException {
+        OntologyTermCache cache = termCache;
+        if (cache != null) {
+            return cache.getLabels(entities, this::loadLabels);
+        }
+        return loadLabels(entities);
+    }
+
+    private Map<String, Boolean> loadExists(Set<String> entities) throws IOException {
+        Map<String, Boolean> found = new HashMap<String, Boolean>();
+        if (entities.isEmpty()) {
+            return found;
+        }
+        List<String> all = new ArrayList<String>(entities);
         try {
             BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
             try {
-                TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
-                TupleQueryResult result = tupleQuery.evaluate();
-                if (result.hasNext()) {
-                    exists = true;
-                    return exists;
+                for (int from = 0; from < all.size(); from += QUERY_BATCH_SIZE) {
+                    StringBuilder values = new StringBuilder("VALUES ?entity {");
+                    for (String uri : all.subList(from, Math.min(from + QUERY_BATCH_SIZE, all.size()))) {
+                        values.append('<').append(uri).append("> ");
+                    }
+                    values.append("} . ");
+                    // each EXISTS stops at the first statement, like a single lookup with limit 1
+                    String query = "select ?entity where { " + values
+                            + "FILTER (EXISTS { ?entity ?p ?o } || EXISTS { ?s ?p ?entity }) }";
+                    TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
+                    TupleQueryResult result = tupleQuery.evaluate();
+                    try {
+                        while (result.hasNext()) {
+                            found.put(result.next().getValue("entity").stringValue(), Boolean.TRUE);
+                        }
+                    } finally {
+                        result.close();
+                    }
                 }
-            } catch (MalformedQueryException e) {
-                throw new IOException(e);
-            } catch (QueryEvaluationException e) {
+            } catch (MalformedQueryException | QueryEvaluationException e) {
                 throw new IOException(e);
             } finally {
                 connection.close();
@@ -744,35 +907,38 @@ public class BlazegraphOntologyManager {
         } catch (RepositoryException e) {
             throw new IOException(e);
         }
-        return exists;
+        return found;
     }
 
-    public Map<String, String> getLabels(Set<String> entities) throws IOException {
+    private Map<String, String> loadLabels(Set<String> entities) throws IOException {
         Map<String, String> uri_label = new HashMap<String, String>();
-
-        String values = "VALUES ?entity {";
-        for (String uri : entities) {
-            values += "<" + uri + "> ";
+        if (entities.isEmpty()) {
+            return uri_label;
         }
-        values += "} . ";
-
-        String query = "select ?entity ?label where { " + values + " ?entity rdfs:label ?label }";
+        List<String> all = new ArrayList<String>(entities);
         try {
             BigdataSailRepositoryConnection connection = go_lego_repo.getReadOnlyConnection();
             try {
-                TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
-                TupleQueryResult result = tupleQuery.evaluate();
-                while (result.hasNext()) {
-                    BindingSet binding = result.next();
-                    Value v = binding.getValue("label");
-                    String label = v.stringValue();
-                    Value ev = binding.getValue("entity");
-                    String entity = ev.stringValue();
-                    uri_label.put(entity, label);
+                for (int from = 0; from < all.size(); from += QUERY_BATCH_SIZE) {
+                    StringBuilder values = new StringBuilder("VALUES ?entity {");
+                    for (String uri : all.subList(from, Math.min(from + QUERY_BATCH_SIZE, all.size()))) {
+                        values.append('<').append(uri).append("> ");
+                    }
+                    values.append("} . ");
+                    String query = "select ?entity ?label where { " + values + " ?entity rdfs:label ?label }";
+                    TupleQuery tupleQuery = connection.prepareTupleQuery(QueryLanguage.SPARQL, query);
+                    TupleQueryResult result = tupleQuery.evaluate();
+                    try {
+                        while (result.hasNext()) {
+                            BindingSet binding = result.next();
+                            // keep the first label, like a single lookup with limit 1
+                            uri_label.putIfAbsent(binding.getValue("entity").stringValue(), binding.getValue("label").stringValue());
+                        }
+                    } finally {
+                        result.close();
+                    }
                 }
-            } catch (MalformedQueryException e) {
-                throw new IOException(e);
-            } catch (QueryEvaluationException e) {
+            } catch (MalformedQueryException | QueryEvaluationException e) {
                 throw new IOException(e);
             } finally {
                 connection.close();
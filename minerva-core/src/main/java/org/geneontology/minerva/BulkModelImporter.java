@@ -0,0 +1,302 @@
+package org.geneontology.minerva;
+
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import org.apache.log4j.Logger;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.repository.RepositoryException;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Bulk import of GO-CAM model files into the journal of a {@link BlazegraphMolecularModelManager}.
+ * Each file is parsed once on a pool of parser threads, the parsed models are written by a single
+ * writer, which commits every batch of models in one transaction.
+ * <p>
+ * With a checkpoint file, the files of each committed batch are recorded, and an interrupted
+ * import skips them without parsing when it is started again.
+ * Models which are already stored in the journal are not replaced.
+ */
+public class BulkModelImporter {
+
+    private static final Logger LOG = Logger.getLogger(BulkModelImporter.class);
+
+    private final BlazegraphMolecularModelManager<?> m3;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1000;
+    private File checkpointFile = null;
+    private boolean skipMarkedDelete = true;
+
+    public BulkModelImporter(BlazegraphMolecularModelManager<?> m3) {
+        this.m3 = m3;
+    }
+
+    /**
+     * @param threads number of parser threads
+     */
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * @param batchSize number of models per commit
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * @param checkpointFile file recording the imported files, or null for no checkpoints
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @param skipMarkedDelete if true, models with the modelstate 'delete' are not imported
+     */
+    public void setSkipMarkedDelete(boolean skipMarkedDelete) {
+        this.skipMarkedDelete = skipMarkedDelete;
+    }
+
+    /**
+     * Import the files into the journal.
+     * Files which can not be parsed are logged and reported as failed, they are not added to the checkpoint.
+     *
+     * @param files
+     * @return progress at the end of the import
+     * @throws IOException if the journal or the checkpoint can not be written
+     */
+    public Progress importModels(Collection<File> files) throws IOException {
+        final Progress progress = new Progress(files.size());
+        final Set<String> done = readCheckpoint();
+        final Set<IRI> stored = new HashSet<>(m3.getStoredModelIds());
+        final BlockingQueue<Future<ParsedModelFile>> parsedQueue = new ArrayBlockingQueue<>(Math.max(batchSize, threads * 2));
+        final ExecutorService parsers = Executors.newFixedThreadPool(threads);
+        final ExecutorService submitter = Executors.newSingleThreadExecutor();
+        final List<File> todo = new ArrayList<>();
+        for (File file : files) {
+            if (done.contains(file.getAbsolutePath())) {
+                progress.resumed++;
+            } else {
+                todo.add(file);
+            }
+        }
+        if (progress.resumed > 0) {
+            LOG.info("Skipping " + progress.resumed + " files recorded in checkpoint: " + checkpointFile);
+        }
+        try {
+            // the bounded queue keeps the parsers from running too far ahead of the writer
+            submitter.submit(() -> {
+                for (File file : todo) {
+                    parsedQueue.put(parsers.submit(() -> ParsedModelFile.parse(file)));
+                }
+                return null;
+            });
+            // the writer keeps the unisolated connection for the whole import, other writers wait
+            final BigdataSailRepository repo = m3.getRepository();
+            synchronized (repo) {
+                write(repo, todo, parsedQueue, stored, progress);
+            }
+        } finally {
+            submitter.shutdownNow();
+            parsers.shutdownNow();
+        }
+        progress.done = true;
+        LOG.info(progress);
+        return progress;
+    }
+
+    private void write(BigdataSailRepository repo, List<File> todo, BlockingQueue<Future<ParsedModelFile>> parsedQueue,
+                       Set<IRI> stored, Progress progress) throws IOException {
+        final List<File> batchFiles = new ArrayList<>();
+        final Set<IRI> batchIds = new HashSet<>();
+        int batchModels = 0;
+        BigdataSailRepositoryConnection connection = null;
+        try {
+            for (File file : todo) {
+                ParsedModelFile parsed = take(parsedQueue, file, progress);
+                if (parsed == null) {
+                    continue;
+                }
+                if (parsed.getModelIri() == null) {
+                    LOG.error("Detected anonymous ontology; must have IRI: " + file);
+                    progress.failed++;
+                    continue;
+                }
+                if (skipMarkedDelete && parsed.isMarkedDelete()) {
+                    progress.skipped++;
+                    batchFiles.add(file);
+                    continue;
+                }
+                IRI modelId = IRI.create(parsed.getModelIri());
+                if (!stored.add(modelId)) {
+                    LOG.error("Attempted to load gocam file into database but gocam with that iri already exists, skipping " + file + " " + modelId);
+                    progress.skipped++;
+                    batchFiles.add(file);
+                    continue;
+                }
+                if (connection == null) {
+                    connection = repo.getUnisolatedConnection();
+                    connection.begin();
+                }
+                URI graph = new URIImpl(parsed.getModelIri());
+                connection.add(parsed.getStatements(), graph);
+                progress.statements += parsed.getStatements().size();
+                batchFiles.add(file);
+                batchIds.add(modelId);
+                batchModels++;
+                if (batchModels >= batchSize) {
+                    connection.commit();
+                    connection.close();
+                    connection = null;
+                    progress.imported += batchModels;
+                    batchModels = 0;
+                    writeCheckpoint(batchFiles);
+                    batchFiles.clear();
+                    m3.fireModelsCommitted(new HashSet<>(batchIds));
+                    batchIds.clear();
+                    LOG.info(progress);
+                }
+            }
+            if (connection != null) {
+                connection.commit();
+                connection.close();
+                connection = null;
+                progress.imported += batchModels;
+                m3.fireModelsCommitted(new HashSet<>(batchIds));
+            }
+            writeCheckpoint(batchFiles);
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.rollback();
+                    connection.close();
+                } catch (RepositoryException e) {
+                    LOG.error("Could not roll back bulk import batch", e);
+                }
+            }
+        }
+    }
+
+    private static ParsedModelFile take(BlockingQueue<Future<ParsedModelFile>> parsedQueue, File file, Progress progress) throws IOException {
+        try {
+            ParsedModelFile parsed = parsedQueue.take().get();
+            progress.parsed++;
+            return parsed;
+        } catch (ExecutionException e) {
+            LOG.error("Could not parse model file: " + file, e.getCause());
+            progress.failed++;
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted bulk import at: " + file, e);
+        }
+    }
+
+    private Set<String> readCheckpoint() throws IOException {
+        Set<String> done = new HashSet<>();
+        if (checkpointFile != null && checkpointFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(checkpointFile), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.isEmpty()) {
+                        done.add(line);
+                    }
+                }
+            }
+        }
+        return done;
+    }
+
+    private void writeCheckpoint(List<File> files) throws IOException {
+        if (checkpointFile == null || files.isEmpty()) {
+            return;
+        }
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(checkpointFile, true), StandardCharsets.UTF_8)) {
+            for (File file : files) {
+                writer.write(file.getAbsolutePath());
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Counters of a bulk import, only updated by the writer.
+     */
+    public static class Progress {
+        private final long start = System.currentTimeMillis();
+        private final int files;
+        private volatile int parsed = 0;
+        private volatile int imported = 0;
+        private volatile int skipped = 0;
+        private volatile int failed = 0;
+        private volatile int resumed = 0;
+        private volatile long statements = 0;
+        private volatile boolean done = false;
+
+        private Progress(int files) {
+            this.files = files;
+        }
+
+        public int getFiles() {
+            return files;
+        }
+
+        public int getParsed() {
+            return parsed;
+        }
+
+        /**
+         * @return number of committed models
+         */
+        public int getImported() {
+            return imported;
+        }
+
+        /**
+         * @return number of models already in the journal or marked as deleted
+         */
+        public int getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * @return number of files which could not be parsed or have no ontology IRI
+         */
+        public int getFailed() {
+            return failed;
+        }
+
+        /**
+         * @return number of files skipped, because they are in the checkpoint
+         */
+        public int getResumed() {
+            return resumed;
+        }
+
+        public long getStatements() {
+            return statements;
+        }
+
+        public long getElapsedMillis() {
+            return System.currentTimeMillis() - start;
+        }
+
+        @Override
+        public String toString() {
+            long elapsed = Math.max(1, getElapsedMillis());
+            return (done ? "Finished bulk import: " : "Bulk import: ") + imported + " models imported, "
+                    + skipped + " skipped, " + failed + " failed, " + resumed + " from checkpoint, of "
+                    + files + " files; " + statements + " statements in " + (elapsed / 1000) + "s ("
+                    + (imported * 1000L / elapsed) + " models/s)";
+        }
+    }
+}
@@ -9,6 +9,8 @@ import org.apache.log4j.Logger;
 import org.geneontology.jena.OWLtoRules;
 import org.geneontology.jena.SesameJena;
 import org.geneontology.minerva.util.AnnotationShorthand;
+import org.geneontology.minerva.util.LatencyHistogram;
+import org.geneontology.minerva.util.WorkingMemoryUpdate;
 import org.geneontology.rules.engine.RuleEngine;
 import org.geneontology.rules.engine.Triple;
 import org.geneontology.rules.engine.WorkingMemory;
@@ -36,6 +38,10 @@ import scala.collection.JavaConverters;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
@@ -75,10 +81,35 @@ public abstract class CoreMolecularModelManager<METADATA> {
     private BlazegraphOntologyManager go_lego_repo;
     private final IRI tboxIRI;
 
-    final Map<IRI, ModelContainer> modelMap = new HashMap<IRI, ModelContainer>();
+    final Map<IRI, ModelContainer> modelMap = new ConcurrentHashMap<IRI, ModelContainer>();
+    // running loads by model, so concurrent requests for a model share one load
+    private final ConcurrentMap<IRI, CompletableFuture<ModelContainer>> modelLoads = new ConcurrentHashMap<IRI, CompletableFuture<ModelContainer>>();
+    private final LatencyHistogram modelLoadLatency = new LatencyHistogram();
     Set<IRI> additionalImports;
 
+    // residency of loaded models, usage is guarded by modelUsage
+    private volatile ModelResidencyPolicy residencyPolicy = null;
+    private final Map<IRI, ModelUsage> modelUsage = new HashMap<IRI, ModelUsage>();
+    // number of callers using a model, see pinModel, also guarded by modelUsage
+    private final Map<IRI, Integer> modelPins = new HashMap<IRI, Integer>();
+    private long accessClock = 0L;
+    private final AtomicLong modelHits = new AtomicLong(0L);
+    private final AtomicLong modelMisses = new AtomicLong(0L);
+    private final AtomicLong modelEvictions = new AtomicLong(0L);
+    private final AtomicLong modelSaves = new AtomicLong(0L);
+    private final AtomicLong modelPinned = new AtomicLong(0L);
+
+    private static final class ModelUsage {
+        long lastAccess;
+        long accessCount = 0L;
+
+        ModelUsage(long lastAccess) {
+            this.lastAccess = lastAccess;
+        }
+    }
+
     private final RuleEngine ruleEngine;
+    private volatile Set<Triple> schemaTriples = null;
     private final Map<IRI, String> legacyRelationIndex = new HashMap<IRI, String>();
     private final Map<IRI, String> tboxLabelIndex = new HashMap<IRI, String>();
     private final Map<IRI, String> tboxShorthandIndex = new HashMap<IRI, String>();
@@ -267,9 +298,31 @@ public abstract class CoreMolecularModelManager<METADATA> {
         return new RuleEngine(Bridge.rulesFromJena(JavaConverters.asScalaSetConverter(rules).asScala()), true);
     }
 
-    public WorkingMemory createInferredModel(OWLOntology abox, IRI modelId) {
-        Set<Statement> statements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(abox)).asJava();
-        Set<Triple> triples = statements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+    /**
+     * The RBox of the tbox as Arachne triples, added to every inferred model.
+     * The tbox does not change, so the triples are converted only once.
+     * If the conversion fails, no triples are added and the next model tries again.
+     *
+     * @return schema triples
+     */
+    private Set<Triple> getSchemaTriples() {
+        Set<Triple> triples = schemaTriples;
+        if (triples == null) {
+            synchronized (this) {
+                triples = schemaTriples;
+                if (triples == null) {
+                    triples = createSchemaTriples();
+                    if (triples == null) {
+                        return Collections.emptySet();
+                    }
+                    schemaTriples = triples;
+                }
+            }
+        }
+        return triples;
+    }
+
+    private Set<Triple> createSchemaTriples() {
         try {
             // Using model's ontology IRI so that a spurious different ontology declaration triple isn't added
             //	OWLOntology schemaOntology = OWLManager.createOWLOntologyManager().createOntology(getOntology().getRBoxAxioms(Imports.INCLUDED), modelId);
@@ -280,12 +333,45 @@ public abstract class CoreMolecularModelManager<METADATA> {
             tmp_man.addAxioms(schemaOntology, owl_rules);
             //
             Set<Statement> schemaStatements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(schemaOntology)).asJava();
-            triples.addAll(schemaStatements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet()));
+            return Collections.unmodifiableSet(schemaStatements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet()));
         } catch (OWLOntologyCreationException e) {
             LOG.error("Couldn't add rbox statements to data model.", e);
+            return null;
         }
+    }
+
+    public WorkingMemory createInferredModel(OWLOntology abox, IRI modelId) {
+        Set<Statement> statements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(abox)).asJava();
+        Set<Triple> triples = statements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+        triples.addAll(getSchemaTriples());
         return getRuleEngine().processTriples(JavaConverters.asScalaSetConverter(triples).asScala());
+    }
 
+    /**
+     * Add the given axioms to a working memory created by {@link #createInferredModel(OWLOntology, IRI)}
+     * and run the rules only for the new triples, instead of processing the whole model again.
+     * <p>
+     * Arachne has no retraction, so this can only be used for additions.
+     *
+     * @param memory
+     * @param axioms
+     * @param modelId
+     * @return the working memory to use from now on and all facts, asserted and inferred, which were not yet in it
+     * @see WorkingMemoryUpdate
+     */
+    public WorkingMemoryUpdate addToInferredModel(WorkingMemory memory, Set<OWLAxiom> axioms, IRI modelId) {
+        Set<Triple> triples;
+        try {
+            // Using model's ontology IRI so that a spurious different ontology declaration triple isn't added
+            OWLOntologyManager tmp_man = OWLManager.createOWLOntologyManager();
+            OWLOntology delta = tmp_man.createOntology(axioms, modelId);
+            Set<Statement> statements = JavaConverters.setAsJavaSetConverter(SesameJena.ontologyAsTriples(delta)).asJava();
+            triples = statements.stream().map(s -> Bridge.tripleFromJena(s.asTriple())).collect(Collectors.toSet());
+        } catch (OWLOntologyCreationException e) {
+            LOG.error("Couldn't convert added axioms to triples.", e);
+            triples = Collections.emptySet();
+        }
+        return WorkingMemoryUpdate.add(getRuleEngine(), memory, triples);
     }
 
     /**
@@ -423,8 +509,12 @@ public abstract class CoreMolecularModelManager<METADATA> {
      * @return all individuals in the model
      */
     public Set<OWLNamedIndividual> getIndividuals(IRI modelId) {
-        ModelContainer mod = getModel(modelId);
-        return mod.getAboxOntology().getIndividualsInSignature();
+        ModelContainer mod = pinModel(modelId);
+        try {
+            return mod.getAboxOntology().getIndividualsInSignature();
+        } finally {
+            unpinModel(mod, modelId);
+        }
     }
 
 
@@ -738,23 +828,239 @@ public abstract class CoreMolecularModelManager<METADATA> {
     }
 
     /**
-     * Fetches a model by its Id
+     * Fetches a model by its Id.
+     * Concurrent requests for a model, which is not loaded yet, wait for a single load of the model.
+     * Requests for other models are not blocked by the load.
      *
      * @param id
      * @return wrapped model
      */
     public ModelContainer getModel(IRI id) {
-        synchronized (modelMap) {
-            // synchronized to avoid race condition for simultaneous loads of the same model
-            if (!modelMap.containsKey(id)) {
+        ModelContainer model = modelMap.get(id);
+        boolean loaded = false;
+        if (model != null) {
+            modelHits.incrementAndGet();
+        } else {
+            modelMisses.incrementAndGet();
+            CompletableFuture<ModelContainer> load = new CompletableFuture<ModelContainer>();
+            CompletableFuture<ModelContainer> running = modelLoads.putIfAbsent(id, load);
+            if (running == null) {
+                try {
+                    // the previous load may have finished since the lookup
+                    model = modelMap.get(id);
+                    if (model == null) {
+                        long start = System.nanoTime();
+                        try {
+                            loadModel(id, false);
+                            loaded = true;
+                            modelLoadLatency.record(System.nanoTime() - start);
+                        } catch (OWLOntologyCreationException e) {
+                            LOG.info("Could not load model with id: " + id, e);
+                        }
+                        model = modelMap.get(id);
+                    }
+                    load.complete(model);
+                } catch (RuntimeException | Error e) {
+                    load.completeExceptionally(e);
+                    throw e;
+                } finally {
+                    modelLoads.remove(id, load);
+                }
+            } else {
                 try {
-                    loadModel(id, false);
-                } catch (OWLOntologyCreationException e) {
-                    LOG.info("Could not load model with id: " + id, e);
+                    model = running.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException) {
+                        throw (RuntimeException) e.getCause();
+                    }
+                    throw e;
                 }
             }
-            return modelMap.get(id);
         }
+        if (model != null) {
+            synchronized (modelUsage) {
+                ModelUsage usage = modelUsage.computeIfAbsent(id, k -> new ModelUsage(accessClock));
+                usage.lastAccess = ++accessClock;
+                usage.accessCount += 1;
+            }
+            if (loaded) {
+                evictModels(id);
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Fetch a model like {@link #getModel(IRI)} and keep it in memory until {@link #unpinModel(IRI)} is called.
+     * A caller, which edits a model, should pin it: an unpinned model may be unloaded by the residency
+     * policy, and later edits of the returned container would be lost.
+     * Pins are counted, each call must be followed by one call of {@link #unpinModel(IRI)}.
+     *
+     * @param id
+     * @return wrapped model or null
+     */
+    public ModelContainer pinModel(IRI id) {
+        while (true) {
+            ModelContainer model = getModel(id);
+            if (model == null) {
+                return null;
+            }
+            synchronized (modelUsage) {
+                if (modelMap.get(id) == model) {
+                    modelPins.merge(id, 1, Integer::sum);
+                    return model;
+                }
+            }
+            // unloaded between the lookup and the pin, fetch it again
+        }
+    }
+
+    /**
+     * Release a pin of {@link #pinModel(IRI)}.
+     *
+     * @param id
+     */
+    public void unpinModel(IRI id) {
+        synchronized (modelUsage) {
+            modelPins.computeIfPresent(id, (k, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    /**
+     * Release the pin of a {@link #pinModel(IRI)} call, unless it found no model.
+     *
+     * @param model the result of pinModel
+     * @param id
+     */
+    private void unpinModel(ModelContainer model, IRI id) {
+        if (model != null) {
+            unpinModel(id);
+        }
+    }
+
+    /**
+     * @return durations of the model loads by {@link #getModel(IRI)}
+     */
+    public LatencyHistogram.Snapshot getModelLoadLatency() {
+        return modelLoadLatency.getSnapshot();
+    }
+
+    /**
+     * Set the limits for the models kept in memory, which are checked whenever {@link #getModel(IRI)} loads a model.
+     *
+     * @param policy the limits or null for keeping all models until they are unlinked
+     */
+    public void setResidencyPolicy(ModelResidencyPolicy policy) {
+        this.residencyPolicy = policy;
+    }
+
+    public ModelResidencyPolicy getResidencyPolicy() {
+        return residencyPolicy;
+    }
+
+    /**
+     * @return counters for the model lookups via {@link #getModel(IRI)} and the evictions
+     */
+    public ModelResidencyPolicy.Statistics getModelMapStatistics() {
+        return new ModelResidencyPolicy.Statistics(modelHits.get(), modelMisses.get(), modelEvictions.get(),
+                modelSaves.get(), modelPinned.get(), modelMap.size());
+    }
+
+    /**
+     * Unload models until the limits of the residency policy are met. Models pinned by {@link #pinModel(IRI)} are kept.
+     * Must not be called while holding the lock on modelUsage: modified models are saved before they are
+     * unloaded, and lookups of other models must not wait for the save.
+     *
+     * @param keep the model which was just loaded
+     */
+    private void evictModels(IRI keep) {
+        final ModelResidencyPolicy policy = residencyPolicy;
+        if (policy == null) {
+            return;
+        }
+        long bytes = 0L;
+        if (policy.getMaxEstimatedBytes() > 0) {
+            for (ModelContainer model : modelMap.values()) {
+                bytes += ModelResidencyPolicy.estimateBytes(model);
+            }
+        }
+        if (!isOverLimit(policy, modelMap.size(), bytes)) {
+            return;
+        }
+        final List<IRI> candidates;
+        synchronized (modelUsage) {
+            modelUsage.keySet().retainAll(modelMap.keySet());
+            candidates = new ArrayList<IRI>(modelMap.keySet());
+            candidates.remove(keep);
+            candidates.removeAll(modelPins.keySet());
+            // models which were added without getModel count as just used
+            for (IRI candidate : candidates) {
+                modelUsage.computeIfAbsent(candidate, k -> new ModelUsage(accessClock));
+            }
+            Comparator<ModelUsage> comparator;
+            if (policy.getOrder() == ModelResidencyPolicy.Order.LFU) {
+                comparator = Comparator.<ModelUsage>comparingLong(u -> u.accessCount).thenComparingLong(u -> u.lastAccess);
+            } else {
+                comparator = Comparator.comparingLong(u -> u.lastAccess);
+            }
+            candidates.sort((a, b) -> comparator.compare(modelUsage.get(a), modelUsage.get(b)));
+        }
+        for (IRI candidate : candidates) {
+            if (!isOverLimit(policy, modelMap.size(), bytes)) {
+                break;
+            }
+            ModelContainer model = modelMap.get(candidate);
+            if (model == null) {
+                // unlinked or deleted since the candidates were chosen
+                continue;
+            }
+            long size = policy.getMaxEstimatedBytes() > 0 ? ModelResidencyPolicy.estimateBytes(model) : 0L;
+            if (evictModel(model, policy)) {
+                bytes -= size;
+            }
+        }
+    }
+
+    private static boolean isOverLimit(ModelResidencyPolicy policy, int count, long bytes) {
+        return (policy.getMaxModels() > 0 && count > policy.getMaxModels())
+                || (policy.getMaxEstimatedBytes() > 0 && bytes > policy.getMaxEstimatedBytes());
+    }
+
+    private boolean evictModel(ModelContainer model, ModelResidencyPolicy policy) {
+        final IRI modelId = model.getModelId();
+        if (model.isModified()) {
+            // the save takes the lock of the model, but not the one of modelUsage
+            if (!policy.isSaveModified() || !saveModelBeforeEviction(model)) {
+                modelPinned.incrementAndGet();
+                return false;
+            }
+            modelSaves.incrementAndGet();
+        }
+        // edits are synchronized on the abox, so no edit runs between the checks and the removal
+        synchronized (model.getAboxOntology()) {
+            synchronized (modelUsage) {
+                // the model may have been edited, pinned, replaced or unlinked in the meantime
+                if (model.isModified() || modelPins.containsKey(modelId) || !modelMap.remove(modelId, model)) {
+                    return false;
+                }
+                modelUsage.remove(modelId);
+            }
+            model.dispose();
+        }
+        removeHistory(modelId);
+        modelEvictions.incrementAndGet();
+        LOG.info("Unloaded model from memory: " + modelId);
+        return true;
+    }
+
+    /**
+     * Hook for saving a modified model before it is unloaded by the residency policy.
+     *
+     * @param model
+     * @return true, if the model was saved
+     */
+    protected boolean saveModelBeforeEviction(ModelContainer model) {
+        return false;
     }
 
     /**
@@ -807,9 +1113,10 @@ public abstract class CoreMolecularModelManager<METADATA> {
      * @param id
      */
     public void unlinkModel(IRI id) {
-        ModelContainer model = modelMap.get(id);
-        model.dispose();
-        modelMap.remove(id);
+        ModelContainer model = modelMap.remove(id);
+        if (model != null) {
+            model.dispose();
+        }
     }
 
     /**
@@ -940,8 +1247,12 @@ public abstract class CoreMolecularModelManager<METADATA> {
      * @param metadata
      */
     public void addType(IRI modelId, OWLNamedIndividual i, OWLClass c, METADATA metadata) {
-        ModelContainer model = getModel(modelId);
-        addType(model, i, c, metadata);
+        ModelContainer model = pinModel(modelId);
+        try {
+            addType(model, i, c, metadata);
+        } finally {
+            unpinModel(model, modelId);
+        }
     }
 
     /**
@@ -986,8 +1297,12 @@ public abstract class CoreMolecularModelManager<METADATA> {
                         OWLObjectPropertyExpression p,
                         OWLClassExpression filler,
                         METADATA metadata) {
-        ModelContainer model = getModel(modelId);
-        addType(model, i, p, filler, metadata);
+        ModelContainer model = pinModel(modelId);
+        try {
+            addType(model, i, p, filler, metadata);
+        } finally {
+            unpinModel(model, modelId);
+        }
     }
 
     /**
@@ -1229,8 +1544,12 @@ public abstract class CoreMolecularModelManager<METADATA> {
     }
 
     void removeAxioms(IRI modelId, Set<OWLAxiom> axioms, METADATA metadata) {
-        ModelContainer model = getModel(modelId);
-        removeAxioms(model, axioms, metadata);
+        ModelContainer model = pinModel(modelId);
+        try {
+            removeAxioms(model, axioms, metadata);
+        } finally {
+            unpinModel(model, modelId);
+        }
     }
 
     void removeAxioms(ModelContainer model, Set<OWLAxiom> axioms, METADATA metadata) {
@@ -1275,6 +1594,15 @@ public abstract class CoreMolecularModelManager<METADATA> {
         // do nothing, for now
     }
 
+    /**
+     * Hook for dropping the undo and redo history of a model, which was unloaded.
+     *
+     * @param modelId
+     */
+    protected void removeHistory(IRI modelId) {
+        // do nothing, for now
+    }
+
     protected OWLOntology loadOntologyDocumentSource(final OWLOntologyDocumentSource source, boolean minimal) throws OWLOntologyCreationException {
         return loadOntologyDocumentSource(source, minimal, tbox.getOWLOntologyManager());
     }
@@ -0,0 +1,341 @@
+package org.geneontology.minerva;
+
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import org.apache.log4j.Logger;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.util.ModelUtil;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.repository.RepositoryResult;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Single writer for the model graphs in the journal.
+ * Saves are queued and all saves waiting for the writer are written in one transaction (group commit).
+ * Only the difference to the stored graph is written: statements without blank nodes are compared
+ * one by one. Statements with blank nodes are compared in units: the statements of a connected group of blank
+ * nodes, e.g. a reified axiom (owl:Axiom) with its annotations, or an anonymous class expression with the statement
+ * that uses it. A unit is kept if an isomorphic unit is in the stored graph, otherwise it is written.
+ * So adding or removing the annotation of an edge rewrites the reified axiom of this edge only.
+ */
+class GroupCommitModelWriter {
+
+    private static final Logger LOG = Logger.getLogger(GroupCommitModelWriter.class);
+
+    private final BigdataSailRepository repo;
+    private final int maxBatchSize;
+    private final Consumer<Set<IRI>> committed;
+    private final BlockingQueue<PendingWrite> queue = new LinkedBlockingQueue<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "minerva-model-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong writtenModels = new AtomicLong();
+    private final AtomicLong addedStatements = new AtomicLong();
+    private final AtomicLong removedStatements = new AtomicLong();
+
+    /**
+     * @param repo         repository with a graph per model
+     * @param maxBatchSize maximum number of models in one commit
+     * @param committed    called with the written models after each commit
+     */
+    GroupCommitModelWriter(BigdataSailRepository repo, int maxBatchSize, Consumer<Set<IRI>> committed) {
+        this.repo = repo;
+        this.maxBatchSize = maxBatchSize;
+        this.committed = committed;
+    }
+
+    /**
+     * Queue the statements of a model for the next commit.
+     * Writes of the same model are applied in the order of the calls.
+     *
+     * @param modelId
+     * @param statements the complete content of the model graph
+     * @return future, completed after the commit
+     */
+    CompletableFuture<Void> write(IRI modelId, Collection<Statement> statements) {
+        PendingWrite pending = new PendingWrite(modelId, statements);
+        queue.add(pending);
+        try {
+            writer.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            queue.remove(pending);
+            pending.future.completeExceptionally(new RepositoryException("Model writer is shut down", e));
+        }
+        return pending.future;
+    }
+
+    private void drain() {
+        List<PendingWrite> batch = new ArrayList<>();
+        queue.drainTo(batch, maxBatchSize);
+        if (batch.isEmpty()) {
+            // already written with an earlier batch
+            return;
+        }
+        // only the last write of a model in the batch has to be applied
+        Map<IRI, PendingWrite> latest = new LinkedHashMap<>();
+        for (PendingWrite pending : batch) {
+            latest.remove(pending.modelId);
+            latest.put(pending.modelId, pending);
+        }
+        try {
+            // Only one thread at a time can use the unisolated connection.
+            synchronized (repo) {
+                final BigdataSailRepositoryConnection connection = repo.getUnisolatedConnection();
+                try {
+                    connection.begin();
+                    try {
+                        for (PendingWrite pending : latest.values()) {
+                            writeDiff(connection, pending);
+                        }
+                        connection.commit();
+                    } catch (Exception e) {
+                        connection.rollback();
+                        throw e;
+                    }
+                } finally {
+                    connection.close();
+                }
+            }
+            commits.incrementAndGet();
+            writtenModels.addAndGet(latest.size());
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Committed " + latest.size() + " models with " + batch.size() + " saves");
+            }
+            committed.accept(Collections.unmodifiableSet(latest.keySet()));
+            for (PendingWrite pending : batch) {
+                pending.future.complete(null);
+            }
+        } catch (Exception e) {
+            for (PendingWrite pending : batch) {
+                pending.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void writeDiff(BigdataSailRepositoryConnection connection, PendingWrite pending) throws RepositoryException {
+        URI graph = new URIImpl(pending.modelId.toString());
+        Set<Statement> storedGround = new HashSet<>();
+        List<Statement> storedBlank = new ArrayList<>();
+        RepositoryResult<Statement> stored = connection.getStatements(null, null, null, false, graph);
+        try {
+            while (stored.hasNext()) {
+                Statement statement = stored.next();
+                if (hasBlankNode(statement)) {
+                    storedBlank.add(statement);
+                } else {
+                    storedGround.add(statement);
+                }
+            }
+        } finally {
+            stored.close();
+        }
+        Set<Statement> newGround = new HashSet<>();
+        List<Statement> newBlank = new ArrayList<>();
+        for (Statement statement : pending.statements) {
+            if (hasBlankNode(statement)) {
+                newBlank.add(statement);
+            } else {
+                newGround.add(statement);
+            }
+        }
+        List<Statement> removed = new ArrayList<>();
+        for (Statement statement : storedGround) {
+            if (!newGround.contains(statement)) {
+                removed.add(statement);
+            }
+        }
+        List<Statement> added = new ArrayList<>();
+        for (Statement statement : newGround) {
+            if (!storedGround.contains(statement)) {
+                added.add(statement);
+            }
+        }
+        diffBlankNodeUnits(storedBlank, newBlank, removed, added);
+        connection.remove(removed, graph);
+        connection.add(added, graph);
+        removedStatements.addAndGet(removed.size());
+        addedStatements.addAndGet(added.size());
+    }
+
+    private static boolean hasBlankNode(Statement statement) {
+        return statement.getSubject() instanceof BNode || statement.getObject() instanceof BNode;
+    }
+
+    /**
+     * Compare the blank node statements unit by unit, see the class comment.
+     * The units are matched by a key, which is the same for isomorphic units, and confirmed with an isomorphism check.
+     *
+     * @param storedBlank statements with blank nodes in the stored graph
+     * @param newBlank    statements with blank nodes in the new graph
+     * @param removed     receives the statements of the stored units without a match
+     * @param added       receives the statements of the new units without a match
+     */
+    static void diffBlankNodeUnits(List<Statement> storedBlank, List<Statement> newBlank, List<Statement> removed, List<Statement> added) {
+        Map<String, List<List<Statement>>> storedUnits = new HashMap<>();
+        for (List<Statement> unit : splitBlankNodeUnits(storedBlank)) {
+            storedUnits.computeIfAbsent(unitKey(unit), k -> new LinkedList<>()).add(unit);
+        }
+        for (List<Statement> unit : splitBlankNodeUnits(newBlank)) {
+            List<List<Statement>> candidates = storedUnits.get(unitKey(unit));
+            boolean matched = false;
+            if (candidates != null) {
+                for (Iterator<List<Statement>> it = candidates.iterator(); it.hasNext(); ) {
+                    if (ModelUtil.equals(it.next(), unit)) {
+                        it.remove();
+                        matched = true;
+                        break;
+                    }
+                }
+            }
+            if (!matched) {
+                added.addAll(unit);
+            }
+        }
+        for (List<List<Statement>> unmatched : storedUnits.values()) {
+            for (List<Statement> unit : unmatched) {
+                removed.addAll(unit);
+            }
+        }
+    }
+
+    /**
+     * @param statements statements with at least one blank node
+     * @return the statements grouped by connected blank nodes
+     */
+    private static Collection<List<Statement>> splitBlankNodeUnits(List<Statement> statements) {
+        // union find over the blank nodes, which occur together in a statement
+        Map<BNode, BNode> parents = new HashMap<>();
+        for (Statement statement : statements) {
+            if (statement.getSubject() instanceof BNode && statement.getObject() instanceof BNode) {
+                BNode a = findRoot(parents, (BNode) statement.getSubject());
+                BNode b = findRoot(parents, (BNode) statement.getObject());
+                if (!a.equals(b)) {
+                    parents.put(a, b);
+                }
+            }
+        }
+        Map<BNode, List<Statement>> units = new HashMap<>();
+        for (Statement statement : statements) {
+            BNode node = statement.getSubject() instanceof BNode ? (BNode) statement.getSubject() : (BNode) statement.getObject();
+            units.computeIfAbsent(findRoot(parents, node), k -> new ArrayList<>()).add(statement);
+        }
+        return units.values();
+    }
+
+    private static BNode findRoot(Map<BNode, BNode> parents, BNode node) {
+        BNode root = node;
+        BNode parent;
+        while ((parent = parents.get(root)) != null) {
+            root = parent;
+        }
+        if (!root.equals(node)) {
+            parents.put(node, root);
+        }
+        return root;
+    }
+
+    /**
+     * @param unit statements of connected blank nodes
+     * @return key, which ignores the labels of the blank nodes
+     */
+    private static String unitKey(List<Statement> unit) {
+        Map<BNode, List<Statement>> outgoing = new HashMap<>();
+        for (Statement statement : unit) {
+            if (statement.getSubject() instanceof BNode) {
+                outgoing.computeIfAbsent((BNode) statement.getSubject(), k -> new ArrayList<>()).add(statement);
+            }
+        }
+        Map<BNode, String> labels = new HashMap<>();
+        List<String> lines = new ArrayList<>(unit.size());
+        for (Statement statement : unit) {
+            lines.add(term(statement.getSubject(), outgoing, labels, new HashSet<>()) + " " + statement.getPredicate()
+                    + " " + term(statement.getObject(), outgoing, labels, new HashSet<>()));
+        }
+        Collections.sort(lines);
+        return String.join("\n", lines);
+    }
+
+    /**
+     * A blank node is described by its outgoing statements, recursively. Cycles are cut at the repeated node.
+     * OWL does not map to cyclic blank nodes. If there are some, the key may differ for isomorphic units,
+     * which are then written again.
+     */
+    private static String term(Value value, Map<BNode, List<Statement>> outgoing, Map<BNode, String> labels, Set<BNode> path) {
+        if (!(value instanceof BNode)) {
+            return value.toString();
+        }
+        BNode node = (BNode) value;
+        String label = labels.get(node);
+        if (label != null) {
+            return label;
+        }
+        if (!path.add(node)) {
+            return "[]";
+        }
+        List<String> parts = new ArrayList<>();
+        for (Statement statement : outgoing.getOrDefault(node, Collections.emptyList())) {
+            parts.add(statement.getPredicate() + " " + term(statement.getObject(), outgoing, labels, path));
+        }
+        path.remove(node);
+        Collections.sort(parts);
+        label = "[" + String.join("; ", parts) + "]";
+        if (path.isEmpty()) {
+            labels.put(node, label);
+        }
+        return label;
+    }
+
+    long getCommitCount() {
+        return commits.get();
+    }
+
+    long getWrittenModelCount() {
+        return writtenModels.get();
+    }
+
+    long getAddedStatementCount() {
+        return addedStatements.get();
+    }
+
+    long getRemovedStatementCount() {
+        return removedStatements.get();
+    }
+
+    /**
+     * Write the queued models and stop the writer.
+     */
+    void shutdown() {
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.error("Model writer did not finish the queued saves");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class PendingWrite {
+        private final IRI modelId;
+        private final Collection<Statement> statements;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private PendingWrite(IRI modelId, Collection<Statement> statements) {
+            this.modelId = modelId;
+            this.statements = statements;
+        }
+    }
+}
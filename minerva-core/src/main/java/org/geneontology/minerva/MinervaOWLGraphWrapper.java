@@ -25,7 +25,6 @@ import java.util.*;
 public class MinervaOWLGraphWrapper implements Closeable {
 
     private static final Logger LOG = Logger.getLogger(MinervaOWLGraphWrapper.class);
-    private Map<String, OWLObject> altIdMap = null;
     private String defaultIDSpace = "";
     final Map<String, String> idSpaceMap;
     public OWLOntology sourceOntology; // graph is seeded from this ontology.
@@ -281,29 +280,8 @@ public class MinervaOWLGraphWrapper implements Closeable {
         // we first collect all candidate matching properties in candIRISet.
         Set<IRI> candIRISet = Sets.newHashSet();
         if (!id.contains(":")) {
-            final OWLAnnotationProperty shortHand = getDataFactory().getOWLAnnotationProperty(Obo2OWLVocabulary.IRI_OIO_shorthand.getIRI());
-            final OWLAnnotationProperty oboIdInOwl = getDataFactory().getOWLAnnotationProperty(trTagToIRI(OboFormatTag.TAG_ID.getTag()));
             for (OWLOntology o : getAllOntologies()) {
-                for (OWLObjectProperty p : o.getObjectPropertiesInSignature()) {
-                    // check for short hand or obo ID in owl
-                    Set<OWLAnnotation> annotations = OwlHelper.getAnnotations(p, o);
-                    if (annotations != null) {
-                        for (OWLAnnotation owlAnnotation : annotations) {
-                            OWLAnnotationProperty property = owlAnnotation.getProperty();
-                            if ((shortHand != null && shortHand.equals(property))
-                                    || (oboIdInOwl != null && oboIdInOwl.equals(property))) {
-                                OWLAnnotationValue value = owlAnnotation.getValue();
-                                if (value != null && value instanceof OWLLiteral) {
-                                    OWLLiteral literal = (OWLLiteral) value;
-                                    String shortHandLabel = literal.getLiteral();
-                                    if (id.equals(shortHandLabel)) {
-                                        candIRISet.add(p.getIRI());
-                                    }
-                                }
-                            }
-                        }
-                    }
-                }
+                candIRISet.addAll(OntologyAnnotationIndex.get(o).getObjectPropertyIRIsByIdentifier(id));
             }
         }
 
@@ -477,20 +455,16 @@ public class MinervaOWLGraphWrapper implements Closeable {
      * @return OWLObject that has matching altId, or null if not found
      */
     public OWLObject getObjectByAltId(String altId) {
-        Map<String, OWLObject> m = getAltIdMap(false);
-        if (m.containsKey(altId))
-            return m.get(altId);
-        else
-            return null;
-    }
-
-    private Map<String, OWLObject> getAltIdMap(boolean isReset) {
-        if (isReset)
-            altIdMap = null;
-        if (altIdMap == null) {
-            altIdMap = getAllOWLObjectsByAltId();
+        for (OWLOntology o : getAllOntologies()) {
+            IRI iri = OntologyAnnotationIndex.get(o).getIRIByAltId(altId);
+            if (iri != null) {
+                OWLObject obj = getOWLObject(iri);
+                if (obj != null) {
+                    return obj;
+                }
+            }
         }
-        return altIdMap;
+        return null;
     }
 
     /**
@@ -592,31 +566,17 @@ public class MinervaOWLGraphWrapper implements Closeable {
     /**
      * Find all corresponding {@link OWLObject}s with an OBO-style alternate identifier.
      * <p>
-     * WARNING: This methods scans all object annotations in all ontologies.
-     * This is an expensive method.
+     * The alternate identifiers are read from the shared annotation index of each ontology.
      *
      * @return map of altId to OWLObject (never null)
      */
     public Map<String, OWLObject> getAllOWLObjectsByAltId() {
         final Map<String, OWLObject> results = new HashMap<String, OWLObject>();
-        final OWLAnnotationProperty altIdProperty = getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag());
-        if (altIdProperty == null) {
-            return Collections.emptyMap();
-        }
         for (OWLOntology o : getAllOntologies()) {
-            Set<OWLAnnotationAssertionAxiom> aas = o.getAxioms(AxiomType.ANNOTATION_ASSERTION);
-            for (OWLAnnotationAssertionAxiom aa : aas) {
-                OWLAnnotationValue v = aa.getValue();
-                OWLAnnotationProperty property = aa.getProperty();
-                if (altIdProperty.equals(property) && v instanceof OWLLiteral) {
-                    String altId = ((OWLLiteral) v).getLiteral();
-                    OWLAnnotationSubject subject = aa.getSubject();
-                    if (subject instanceof IRI) {
-                        OWLObject obj = getOWLObject((IRI) subject);
-                        if (obj != null) {
-                            results.put(altId, obj);
-                        }
-                    }
+            for (Map.Entry<String, IRI> e : OntologyAnnotationIndex.get(o).getAltIds().entrySet()) {
+                OWLObject obj = getOWLObject(e.getValue());
+                if (obj != null) {
+                    results.put(e.getKey(), obj);
                 }
             }
         }
@@ -668,7 +628,7 @@ public class MinervaOWLGraphWrapper implements Closeable {
     /**
      * fetches an OWL IRI by rdfs:label, optionally testing for uniqueness
      * <p>
-     * TODO: index labels. This currently scans all labels in the ontology, which is expensive
+     * The labels are read from the shared annotation index of each ontology.
      *
      * @param label
      * @param isEnforceUnivocal
@@ -678,32 +638,34 @@ public class MinervaOWLGraphWrapper implements Closeable {
     public IRI getIRIByLabel(String label, boolean isEnforceUnivocal) throws Exception {
         IRI iri = null;
         for (OWLOntology o : getAllOntologies()) {
-            Set<OWLAnnotationAssertionAxiom> aas = o.getAxioms(AxiomType.ANNOTATION_ASSERTION);
-            for (OWLAnnotationAssertionAxiom aa : aas) {
-                OWLAnnotationValue v = aa.getValue();
-                OWLAnnotationProperty property = aa.getProperty();
-                if (property.isLabel() && v instanceof OWLLiteral) {
-                    if (label.equals(((OWLLiteral) v).getLiteral())) {
-                        OWLAnnotationSubject subject = aa.getSubject();
-                        if (subject instanceof IRI) {
-                            if (isEnforceUnivocal) {
-                                if (iri != null && !iri.equals((IRI) subject)) {
-                                    throw new Exception();
-                                }
-                                iri = (IRI) subject;
-                            } else {
-                                return (IRI) subject;
-                            }
-                        } else {
-                            //return null;
-                        }
+            for (IRI subject : OntologyAnnotationIndex.get(o).getIRIsByLabel(label)) {
+                if (isEnforceUnivocal) {
+                    if (iri != null && !iri.equals(subject)) {
+                        throw new Exception();
                     }
+                    iri = subject;
+                } else {
+                    return subject;
                 }
             }
         }
         return iri;
     }
 
+    /**
+     * fetches the OWL IRIs with an exact, narrow, broad or related oboInOwl synonym
+     *
+     * @param synonym
+     * @return set of IRIs (never null)
+     */
+    public Set<IRI> getIRIsBySynonym(String synonym) {
+        Set<IRI> iris = new HashSet<IRI>();
+        for (OWLOntology o : getAllOntologies()) {
+            iris.addAll(OntologyAnnotationIndex.get(o).getIRIsBySynonym(synonym));
+        }
+        return iris;
+    }
+
     public IRI getIRIByIdentifier(String id) {
         return getIRIByIdentifier(id, false);
     }
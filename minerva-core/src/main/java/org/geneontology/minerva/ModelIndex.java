@@ -0,0 +1,266 @@
+package org.geneontology.minerva;
+
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import org.apache.log4j.Logger;
+import org.openrdf.query.*;
+import org.openrdf.repository.RepositoryException;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Inverted index from the values used in the stored models (types of individuals, PMIDs,
+ * contributors, groups, taxa and states) to the models using them.
+ * <p>
+ * Every model gets a dense int id and the models of a value are kept in a {@link BitSet},
+ * so the candidate models of a search are found by intersecting bit sets in memory.
+ * The index is built on first use and kept up to date with the commits of the model manager:
+ * committed models are indexed again, and the index is rebuilt if the changed models are not known.
+ * Class closures are not stored, look up the models for all subclasses of a class instead.
+ */
+public class ModelIndex implements BlazegraphMolecularModelManager.ModelCommitListener {
+
+    private static final Logger LOG = Logger.getLogger(ModelIndex.class);
+
+    /**
+     * Indexed values of a model, with the graph pattern binding ?v in the graph ?g of the model.
+     */
+    public enum Field {
+        TYPE("?s a ?v . FILTER(isIRI(?v))"),
+        PMID("?s <http://purl.org/dc/elements/1.1/source> ?v"),
+        CONTRIBUTOR("?g <http://purl.org/dc/elements/1.1/contributor> ?v"),
+        GROUP("?g <http://purl.org/pav/providedBy> ?v"),
+        TAXON("?g <" + BlazegraphOntologyManager.in_taxon_uri + "> ?v"),
+        STATE("?g <http://geneontology.org/lego/modelstate> ?v");
+
+        private final String pattern;
+
+        Field(String pattern) {
+            this.pattern = pattern;
+        }
+    }
+
+    /**
+     * Conjunction of clauses, a model matches a clause if it has at least one of the values of the clause.
+     */
+    public static class Query {
+        private final List<Field> fields = new ArrayList<>();
+        private final List<Collection<String>> values = new ArrayList<>();
+
+        /**
+         * @param field
+         * @param anyValues
+         * @return this query, restricted to the models with at least one of the values
+         */
+        public Query anyOf(Field field, Collection<String> anyValues) {
+            fields.add(field);
+            values.add(anyValues);
+            return this;
+        }
+
+        /**
+         * @param field
+         * @param allValues
+         * @return this query, restricted to the models with all the values
+         */
+        public Query allOf(Field field, Collection<String> allValues) {
+            for (String value : allValues) {
+                anyOf(field, Collections.singleton(value));
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return fields.isEmpty();
+        }
+    }
+
+    private final BigdataSailRepository repo;
+    private final List<IRI> models = new ArrayList<>();
+    private final Map<IRI, Integer> modelIds = new HashMap<>();
+    private final Map<Field, Map<String, BitSet>> postings = new EnumMap<>(Field.class);
+    private final Map<IRI, Map<Field, Set<String>>> modelValues = new HashMap<>();
+    private boolean built = false;
+
+    /**
+     * Create the index and register it for the commits of the model manager.
+     *
+     * @param m3
+     */
+    public ModelIndex(BlazegraphMolecularModelManager<?> m3) {
+        this.repo = m3.getRepository();
+        for (Field field : Field.values()) {
+            postings.put(field, new HashMap<>());
+        }
+        m3.addModelCommitListener(this);
+    }
+
+    /**
+     * @param query
+     * @return the models matching all clauses of the query, all indexed models for an empty query
+     * @throws IOException
+     */
+    public synchronized Set<IRI> getModels(Query query) throws IOException {
+        ensureBuilt();
+        BitSet matches = null;
+        for (int i = 0; i < query.fields.size() && (matches == null || !matches.isEmpty()); i++) {
+            Map<String, BitSet> fieldPostings = postings.get(query.fields.get(i));
+            BitSet any = new BitSet();
+            for (String value : query.values.get(i)) {
+                BitSet valueModels = fieldPostings.get(value);
+                if (valueModels != null) {
+                    any.or(valueModels);
+                }
+            }
+            if (matches == null) {
+                matches = any;
+            } else {
+                matches.and(any);
+            }
+        }
+        Set<IRI> result = new HashSet<>();
+        if (matches == null) {
+            result.addAll(modelValues.keySet());
+        } else {
+            for (int id = matches.nextSetBit(0); id >= 0; id = matches.nextSetBit(id + 1)) {
+                result.add(models.get(id));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param field
+     * @param values
+     * @return the given values used in at least one model
+     * @throws IOException
+     */
+    public synchronized Set<String> getUsedValues(Field field, Collection<String> values) throws IOException {
+        ensureBuilt();
+        Map<String, BitSet> fieldPostings = postings.get(field);
+        Set<String> used = new HashSet<>();
+        for (String value : values) {
+            if (fieldPostings.containsKey(value)) {
+                used.add(value);
+            }
+        }
+        return used;
+    }
+
+    /**
+     * @param field
+     * @return the values of the field for every indexed model with at least one value
+     * @throws IOException
+     */
+    public synchronized Map<IRI, Set<String>> getModelValues(Field field) throws IOException {
+        ensureBuilt();
+        Map<IRI, Set<String>> result = new HashMap<>();
+        for (Map.Entry<IRI, Map<Field, Set<String>>> entry : modelValues.entrySet()) {
+            Set<String> values = entry.getValue().get(field);
+            if (values != null) {
+                result.put(entry.getKey(), new HashSet<>(values));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void modelsCommitted(Set<IRI> committed) {
+        if (!built) {
+            return;
+        }
+        if (committed == null) {
+            // rebuilt with the next lookup
+            built = false;
+            return;
+        }
+        for (IRI modelId : committed) {
+            removeModel(modelId);
+        }
+        try {
+            StringBuilder graphs = new StringBuilder();
+            for (IRI modelId : committed) {
+                graphs.append('<').append(modelId).append("> ");
+            }
+            load("VALUES ?g { " + graphs + "} ");
+        } catch (IOException e) {
+            LOG.error("Could not update the model index, rebuilding it with the next lookup", e);
+            built = false;
+        }
+    }
+
+    private void ensureBuilt() throws IOException {
+        if (built) {
+            return;
+        }
+        models.clear();
+        modelIds.clear();
+        modelValues.clear();
+        for (Map<String, BitSet> fieldPostings : postings.values()) {
+            fieldPostings.clear();
+        }
+        long start = System.currentTimeMillis();
+        load("");
+        built = true;
+        LOG.info("Indexed " + modelValues.size() + " models in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    private void load(String graphs) throws IOException {
+        try {
+            BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+            try {
+                for (Field field : Field.values()) {
+                    String query = "SELECT DISTINCT ?g ?v WHERE { " + graphs + "GRAPH ?g { " + field.pattern + " } }";
+                    TupleQueryResult result = connection.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+                    try {
+                        while (result.hasNext()) {
+                            BindingSet bindings = result.next();
+                            add(IRI.create(bindings.getValue("g").stringValue()), field, bindings.getValue("v").stringValue());
+                        }
+                    } finally {
+                        result.close();
+                    }
+                }
+            } finally {
+                connection.close();
+            }
+        } catch (RepositoryException | MalformedQueryException | QueryEvaluationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void add(IRI modelId, Field field, String value) {
+        Integer id = modelIds.get(modelId);
+        if (id == null) {
+            id = models.size();
+            models.add(modelId);
+            modelIds.put(modelId, id);
+        }
+        postings.get(field).computeIfAbsent(value, k -> new BitSet()).set(id);
+        modelValues.computeIfAbsent(modelId, k -> new EnumMap<>(Field.class))
+                .computeIfAbsent(field, k -> new HashSet<>()).add(value);
+    }
+
+    private void removeModel(IRI modelId) {
+        Map<Field, Set<String>> values = modelValues.remove(modelId);
+        Integer id = modelIds.get(modelId);
+        if (values == null || id == null) {
+            return;
+        }
+        // the id is kept for the model, so the bit sets stay valid
+        for (Map.Entry<Field, Set<String>> entry : values.entrySet()) {
+            Map<String, BitSet> fieldPostings = postings.get(entry.getKey());
+            for (String value : entry.getValue()) {
+                BitSet valueModels = fieldPostings.get(value);
+                if (valueModels != null) {
+                    valueModels.clear(id);
+                    if (valueModels.isEmpty()) {
+                        fieldPostings.remove(value);
+                    }
+                }
+            }
+        }
+    }
+}
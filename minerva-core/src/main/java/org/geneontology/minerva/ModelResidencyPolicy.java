@@ -0,0 +1,82 @@
+package org.geneontology.minerva;
+
+/**
+ * Limits for the models kept in memory by a {@link CoreMolecularModelManager}.
+ * When a newly loaded model exceeds the limits, the least recently (LRU) or least frequently (LFU)
+ * used models are unloaded. Modified models are either saved first or kept in memory (pinned).
+ */
+public class ModelResidencyPolicy {
+
+    /**
+     * Rough estimate for the heap used by one axiom of a loaded model, including the OWLAPI indexes.
+     */
+    public static final long ESTIMATED_BYTES_PER_AXIOM = 1024;
+
+    public enum Order {
+        LRU,
+        LFU
+    }
+
+    private final int maxModels;
+    private final long maxEstimatedBytes;
+    private final Order order;
+    private final boolean saveModified;
+
+    /**
+     * @param maxModels         maximum number of loaded models, unbounded if zero or less
+     * @param maxEstimatedBytes maximum estimated size of all loaded models, unbounded if zero or less
+     * @param order             which models are unloaded first
+     * @param saveModified      if true, modified models are saved before they are unloaded, otherwise they stay loaded
+     */
+    public ModelResidencyPolicy(int maxModels, long maxEstimatedBytes, Order order, boolean saveModified) {
+        this.maxModels = maxModels;
+        this.maxEstimatedBytes = maxEstimatedBytes;
+        this.order = order;
+        this.saveModified = saveModified;
+    }
+
+    public int getMaxModels() {
+        return maxModels;
+    }
+
+    public long getMaxEstimatedBytes() {
+        return maxEstimatedBytes;
+    }
+
+    public Order getOrder() {
+        return order;
+    }
+
+    public boolean isSaveModified() {
+        return saveModified;
+    }
+
+    /**
+     * @param model
+     * @return estimated number of bytes used by the model
+     */
+    public static long estimateBytes(ModelContainer model) {
+        return model.getAboxOntology().getAxiomCount() * ESTIMATED_BYTES_PER_AXIOM;
+    }
+
+    /**
+     * Snapshot of the model map counters.
+     */
+    public static class Statistics {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long saves;
+        public final long pinned;
+        public final int loadedModels;
+
+        public Statistics(long hits, long misses, long evictions, long saves, long pinned, int loadedModels) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.saves = saves;
+            this.pinned = pinned;
+            this.loadedModels = loadedModels;
+        }
+    }
+}
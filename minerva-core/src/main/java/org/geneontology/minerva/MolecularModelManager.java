@@ -63,13 +63,17 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
      * @throws UnknownIdentifierException
      */
     public OWLNamedIndividual createIndividual(IRI modelId, String cid, Set<OWLAnnotation> annotations, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        OWLClass cls = getClass(cid, model);
-        if (cls == null) {
-            throw new UnknownIdentifierException("Could not find a class for id: " + cid);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            OWLClass cls = getClass(cid, model);
+            if (cls == null) {
+                throw new UnknownIdentifierException("Could not find a class for id: " + cid);
+            }
+            OWLNamedIndividual i = createIndividual(model, cls, annotations, metadata);
+            return i;
+        } finally {
+            unpinModel(modelId);
         }
-        OWLNamedIndividual i = createIndividual(model, cls, annotations, metadata);
-        return i;
     }
 
 
@@ -84,12 +88,16 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
      * @throws UnknownIdentifierException
      */
     public OWLNamedIndividual createIndividualNonReasoning(IRI modelId, String cid, Set<OWLAnnotation> annotations, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        OWLClass cls = getClass(cid, model);
-        if (cls == null) {
-            throw new UnknownIdentifierException("Could not find a class for id: " + cid);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            OWLClass cls = getClass(cid, model);
+            if (cls == null) {
+                throw new UnknownIdentifierException("Could not find a class for id: " + cid);
+            }
+            return createIndividualNonReasoning(modelId, cls, annotations, metadata);
+        } finally {
+            unpinModel(modelId);
         }
-        return createIndividualNonReasoning(modelId, cls, annotations, metadata);
     }
 
     /**
@@ -103,9 +111,13 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
      * @throws UnknownIdentifierException
      */
     public OWLNamedIndividual createIndividualNonReasoning(IRI modelId, OWLClassExpression ce, Set<OWLAnnotation> annotations, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        OWLNamedIndividual i = createIndividual(model, ce, annotations, metadata);
-        return i;
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            OWLNamedIndividual i = createIndividual(model, ce, annotations, metadata);
+            return i;
+        } finally {
+            unpinModel(modelId);
+        }
     }
 
     /**
@@ -154,12 +166,16 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
      * @throws UnknownIdentifierException
      */
     public DeleteInformation deleteIndividual(IRI modelId, String iid, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        OWLNamedIndividual i = getIndividual(iid, model);
-        if (i == null) {
-            throw new UnknownIdentifierException("Could not find a individual for id: " + iid);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            OWLNamedIndividual i = getIndividual(iid, model);
+            if (i == null) {
+                throw new UnknownIdentifierException("Could not find a individual for id: " + iid);
+            }
+            return deleteIndividual(model, i, metadata);
+        } finally {
+            unpinModel(modelId);
         }
-        return deleteIndividual(model, i, metadata);
     }
 
     /**
@@ -172,8 +188,12 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
      * @throws UnknownIdentifierException
      */
     public DeleteInformation deleteIndividual(IRI modelId, OWLNamedIndividual i, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        return deleteIndividual(model, i, metadata);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            return deleteIndividual(model, i, metadata);
+        } finally {
+            unpinModel(modelId);
+        }
     }
 
     /**
@@ -185,32 +205,44 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
      * @throws UnknownIdentifierException
      */
     public void deleteIndividualNonReasoning(IRI modelId, IRI iri, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        OWLNamedIndividual i = getIndividual(iri, model);
-        if (i == null) {
-            throw new UnknownIdentifierException("Could not find a individual for id: " + iri);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            OWLNamedIndividual i = getIndividual(iri, model);
+            if (i == null) {
+                throw new UnknownIdentifierException("Could not find a individual for id: " + iri);
+            }
+            deleteIndividual(model, i, metadata);
+        } finally {
+            unpinModel(modelId);
         }
-        deleteIndividual(model, i, metadata);
     }
 
     public OWLNamedIndividual addAnnotations(IRI modelId, String iid,
                                              Set<OWLAnnotation> annotations, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        OWLNamedIndividual i = getIndividual(iid, model);
-        if (i == null) {
-            throw new UnknownIdentifierException("Could not find a individual for id: " + iid);
-        }
-        if (annotations != null && !annotations.isEmpty()) {
-            addAnnotations(model, i.getIRI(), annotations, metadata);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            OWLNamedIndividual i = getIndividual(iid, model);
+            if (i == null) {
+                throw new UnknownIdentifierException("Could not find a individual for id: " + iid);
+            }
+            if (annotations != null && !annotations.isEmpty()) {
+                addAnnotations(model, i.getIRI(), annotations, metadata);
+            }
+            return i;
+        } finally {
+            unpinModel(modelId);
         }
-        return i;
     }
 
     public void addAnnotations(IRI modelId, IRI subject,
                                Set<OWLAnnotation> annotations, METADATA metadata) throws UnknownIdentifierException {
         if (annotations != null && !annotations.isEmpty()) {
-            ModelContainer model = checkModelId(modelId);
-            addAnnotations(model, subject, annotations, metadata);
+            ModelContainer model = checkPinnedModelId(modelId);
+            try {
+                addAnnotations(model, subject, annotations, metadata);
+            } finally {
+                unpinModel(modelId);
+            }
         }
     }
 
@@ -224,9 +256,13 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
 
     public void updateAnnotation(IRI modelId, IRI subject,
                                  OWLAnnotation annotation, METADATA metadata) throws UnknownIdentifierException {
-        ModelContainer model = checkModelId(modelId);
-        if (annotation != null) {
-            updateAnnotation(model, subject, annotation, metadata);
+        ModelContainer model = checkPinnedModelId(modelId);
+        try {
+            if (annotation != null) {
+                updateAnnotation(model, subject, annotation, metadata);
+            }
+        } finally {
+            unpinModel(modelId);
         }
     }
 
@@ -298,6 +334,22 @@ public class MolecularModelManager<METADATA> extends BlazegraphMolecularModelMan
         return model;
     }
 
+    /**
+     * Like {@link #checkModelId(IRI)}, but the model is pinned, see {@link #pinModel(IRI)}.
+     * The caller must call {@link #unpinModel(IRI)} afterwards.
+     *
+     * @param modelId
+     * @return model
+     * @throws UnknownIdentifierException
+     */
+    ModelContainer checkPinnedModelId(IRI modelId) throws UnknownIdentifierException {
+        ModelContainer model = pinModel(modelId);
+        if (model == null) {
+            throw new UnknownIdentifierException("Could not find a model for id: " + modelId);
+        }
+        return model;
+    }
+
     private OWLObjectPropertyExpression getObjectProperty(OBOUpperVocabulary vocabElement,
                                                           ModelContainer model) {
         return vocabElement.getObjectProperty(model.getAboxOntology());
@@ -0,0 +1,180 @@
+package org.geneontology.minerva;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.MapMaker;
+import org.apache.log4j.Logger;
+import org.obolibrary.obo2owl.Obo2OWLConstants.Obo2OWLVocabulary;
+import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Labels, synonyms, alternate ids and property short hands of the entities in one ontology,
+ * read in one pass over its annotation assertions. Used by {@link MinervaOWLGraphWrapper}
+ * instead of a scan of all annotation assertions per lookup.
+ * <p>
+ * The indexes are shared by all wrappers in the process, see {@link #get(OWLOntology)}.
+ * An index is built on first use and dropped, when its ontology is changed through its manager.
+ * The import closure is not part of the index of an ontology, each imported ontology has its own.
+ */
+class OntologyAnnotationIndex {
+
+    private static final Logger LOG = Logger.getLogger(OntologyAnnotationIndex.class);
+
+    private static final IRI ALT_ID = MinervaOWLGraphWrapper.trTagToIRI(OboFormatTag.TAG_ALT_ID.getTag());
+    private static final IRI OBO_ID = MinervaOWLGraphWrapper.trTagToIRI(OboFormatTag.TAG_ID.getTag());
+    private static final IRI SHORTHAND = Obo2OWLVocabulary.IRI_OIO_shorthand.getIRI();
+    private static final Set<IRI> SYNONYMS = new HashSet<IRI>(Arrays.asList(
+            Obo2OWLVocabulary.IRI_OIO_hasExactSynonym.getIRI(),
+            Obo2OWLVocabulary.IRI_OIO_hasNarrowSynonym.getIRI(),
+            Obo2OWLVocabulary.IRI_OIO_hasBroadSynonym.getIRI(),
+            Obo2OWLVocabulary.IRI_OIO_hasRelatedSynonym.getIRI()));
+
+    // weak keys compare the ontologies by identity and do not keep removed ontologies alive
+    private static final Cache<OWLOntology, OntologyAnnotationIndex> INDEXES = CacheBuilder.newBuilder().weakKeys().build();
+    private static final ConcurrentMap<OWLOntology, AtomicLong> VERSIONS = new MapMaker().weakKeys().makeMap();
+    private static final Set<OWLOntologyManager> OBSERVED = Collections.newSetFromMap(
+            new MapMaker().weakKeys().<OWLOntologyManager, Boolean>makeMap());
+    private static final OWLOntologyChangeListener INVALIDATE = new OWLOntologyChangeListener() {
+
+        @Override
+        public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+            Set<OWLOntology> changed = Collections.newSetFromMap(new IdentityHashMap<OWLOntology, Boolean>());
+            for (OWLOntologyChange change : changes) {
+                changed.add(change.getOntology());
+            }
+            for (OWLOntology ontology : changed) {
+                getVersion(ontology).incrementAndGet();
+                INDEXES.invalidate(ontology);
+            }
+        }
+    };
+
+    private final long version;
+    private final Map<String, Set<IRI>> labels = new HashMap<String, Set<IRI>>();
+    private final Map<String, Set<IRI>> synonyms = new HashMap<String, Set<IRI>>();
+    private final Map<String, IRI> altIds = new HashMap<String, IRI>();
+    private final Map<String, Set<IRI>> propertyIdentifiers = new HashMap<String, Set<IRI>>();
+
+    private OntologyAnnotationIndex(OWLOntology ontology, long version) {
+        this.version = version;
+        for (OWLAnnotationAssertionAxiom aa : ontology.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+            OWLAnnotationValue v = aa.getValue();
+            OWLAnnotationSubject subject = aa.getSubject();
+            if (!(v instanceof OWLLiteral) || !(subject instanceof IRI)) {
+                continue;
+            }
+            String literal = ((OWLLiteral) v).getLiteral();
+            IRI iri = (IRI) subject;
+            IRI property = aa.getProperty().getIRI();
+            if (aa.getProperty().isLabel()) {
+                add(labels, literal, iri);
+            } else if (SYNONYMS.contains(property)) {
+                add(synonyms, literal, iri);
+            } else if (ALT_ID.equals(property)) {
+                altIds.put(literal, iri);
+            } else if ((SHORTHAND.equals(property) || OBO_ID.equals(property))
+                    && ontology.containsObjectPropertyInSignature(iri, Imports.EXCLUDED)) {
+                add(propertyIdentifiers, literal, iri);
+            }
+        }
+    }
+
+    private static void add(Map<String, Set<IRI>> index, String key, IRI iri) {
+        Set<IRI> iris = index.get(key);
+        if (iris == null) {
+            iris = new LinkedHashSet<IRI>(2);
+            index.put(key, iris);
+        }
+        iris.add(iri);
+    }
+
+    private static AtomicLong getVersion(OWLOntology ontology) {
+        AtomicLong version = VERSIONS.get(ontology);
+        if (version == null) {
+            AtomicLong previous = VERSIONS.putIfAbsent(ontology, version = new AtomicLong());
+            if (previous != null) {
+                version = previous;
+            }
+        }
+        return version;
+    }
+
+    /**
+     * @param ontology
+     * @return index of the annotations in the ontology, without its imports
+     */
+    static OntologyAnnotationIndex get(final OWLOntology ontology) {
+        OWLOntologyManager manager = ontology.getOWLOntologyManager();
+        if (manager != null && OBSERVED.add(manager)) {
+            manager.addOntologyChangeListener(INVALIDATE);
+        }
+        while (true) {
+            // a change during the build makes the new index stale, build again in that case
+            final long version = getVersion(ontology).get();
+            OntologyAnnotationIndex index;
+            try {
+                index = INDEXES.get(ontology, () -> {
+                    long start = System.currentTimeMillis();
+                    OntologyAnnotationIndex built = new OntologyAnnotationIndex(ontology, version);
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Indexed annotations of " + ontology.getOntologyID() + " in "
+                                + (System.currentTimeMillis() - start) + " ms");
+                    }
+                    return built;
+                });
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not index the annotations of " + ontology.getOntologyID(), e.getCause());
+            }
+            if (index.version == getVersion(ontology).get()) {
+                return index;
+            }
+            INDEXES.asMap().remove(ontology, index);
+        }
+    }
+
+    /**
+     * @param label rdfs:label
+     * @return IRIs with the label, may be empty
+     */
+    Set<IRI> getIRIsByLabel(String label) {
+        return labels.getOrDefault(label, Collections.<IRI>emptySet());
+    }
+
+    /**
+     * @param synonym exact, narrow, broad or related synonym
+     * @return IRIs with the synonym, may be empty
+     */
+    Set<IRI> getIRIsBySynonym(String synonym) {
+        return synonyms.getOrDefault(synonym, Collections.<IRI>emptySet());
+    }
+
+    /**
+     * @param altId OBO-style alternate identifier
+     * @return IRI with the alternate identifier or null
+     */
+    IRI getIRIByAltId(String altId) {
+        return altIds.get(altId);
+    }
+
+    /**
+     * @return alternate identifier -> IRI
+     */
+    Map<String, IRI> getAltIds() {
+        return Collections.unmodifiableMap(altIds);
+    }
+
+    /**
+     * @param id short hand or OBO id in OWL, e.g. part_of
+     * @return IRIs of the object properties in the signature of the ontology with the id, may be empty
+     */
+    Set<IRI> getObjectPropertyIRIsByIdentifier(String id) {
+        return propertyIdentifiers.getOrDefault(id, Collections.<IRI>emptySet());
+    }
+}
@@ -0,0 +1,191 @@
+package org.geneontology.minerva;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache for the labels and the existence of ontology terms.
+ * Terms without a label and unknown terms are cached, too (negative caching).
+ * Lookups for many terms load all missing terms with one call of the loader.
+ * The cache does not notice changes of the journal, call {@link #invalidateAll()} after loading new content.
+ */
+public class OntologyTermCache {
+
+    /**
+     * Loads the values for the terms missing in the cache.
+     *
+     * @param <V>
+     */
+    public interface Loader<V> {
+
+        /**
+         * @param entities
+         * @return the found values, missing entities have no value
+         * @throws IOException
+         */
+        public Map<String, V> load(Set<String> entities) throws IOException;
+    }
+
+    private final int maximumSize;
+    private final Cache<String, Optional<String>> labels;
+    private final Cache<String, Boolean> existence;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong loads = new AtomicLong();
+
+    /**
+     * @param maximumSize maximum number of labels and of existence flags
+     */
+    public OntologyTermCache(int maximumSize) {
+        this.maximumSize = maximumSize;
+        this.labels = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+        this.existence = CacheBuilder.newBuilder().maximumSize(maximumSize).recordStats().build();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    /**
+     * @param entity
+     * @param loader
+     * @return label or null
+     * @throws IOException
+     */
+    public String getLabel(String entity, Loader<String> loader) throws IOException {
+        return getLabels(Collections.singleton(entity), loader).get(entity);
+    }
+
+    /**
+     * @param entities
+     * @param loader   called once with all entities missing in the cache
+     * @return the labels of the entities with a label
+     * @throws IOException
+     */
+    public Map<String, String> getLabels(Collection<String> entities, Loader<String> loader) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String entity : entities) {
+            Optional<String> label = labels.getIfPresent(entity);
+            if (label == null) {
+                missing.add(entity);
+            } else {
+                hits.incrementAndGet();
+                if (label.isPresent()) {
+                    result.put(entity, label.get());
+                } else {
+                    negativeHits.incrementAndGet();
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            misses.addAndGet(missing.size());
+            loads.incrementAndGet();
+            Map<String, String> loaded = loader.load(missing);
+            for (String entity : missing) {
+                String label = loaded.get(entity);
+                labels.put(entity, Optional.ofNullable(label));
+                if (label != null) {
+                    // a term with a label is used in the journal
+                    existence.put(entity, Boolean.TRUE);
+                    result.put(entity, label);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param entity
+     * @param loader
+     * @return true, if the entity is known
+     * @throws IOException
+     */
+    public boolean exists(String entity, Loader<Boolean> loader) throws IOException {
+        return getExisting(Collections.singleton(entity), loader).contains(entity);
+    }
+
+    /**
+     * @param entities
+     * @param loader   called once with all entities missing in the cache
+     * @return the known entities
+     * @throws IOException
+     */
+    public Set<String> getExisting(Collection<String> entities, Loader<Boolean> loader) throws IOException {
+        Set<String> result = new HashSet<>();
+        Set<String> missing = new HashSet<>();
+        for (String entity : entities) {
+            Boolean exists = existence.getIfPresent(entity);
+            if (exists == null) {
+                missing.add(entity);
+            } else {
+                hits.incrementAndGet();
+                if (exists) {
+                    result.add(entity);
+                } else {
+                    negativeHits.incrementAndGet();
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            misses.addAndGet(missing.size());
+            loads.incrementAndGet();
+            Map<String, Boolean> loaded = loader.load(missing);
+            for (String entity : missing) {
+                Boolean exists = loaded.get(entity);
+                existence.put(entity, exists != null && exists);
+                if (exists != null && exists) {
+                    result.add(entity);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add a known label, e.g. to warm the cache.
+     *
+     * @param entity
+     * @param label
+     */
+    public void putLabel(String entity, String label) {
+        labels.put(entity, Optional.of(label));
+        existence.put(entity, Boolean.TRUE);
+    }
+
+    public void invalidateAll() {
+        labels.invalidateAll();
+        existence.invalidateAll();
+    }
+
+    public Statistics getStatistics() {
+        return new Statistics(hits.get(), misses.get(), negativeHits.get(), loads.get(),
+                labels.stats().evictionCount() + existence.stats().evictionCount(), labels.size(), existence.size());
+    }
+
+    public static class Statistics {
+        public final long hits;
+        public final long misses;
+        public final long negativeHits;
+        public final long loads;
+        public final long evictions;
+        public final long labels;
+        public final long existence;
+
+        public Statistics(long hits, long misses, long negativeHits, long loads, long evictions, long labels, long existence) {
+            this.hits = hits;
+            this.misses = misses;
+            this.negativeHits = negativeHits;
+            this.loads = loads;
+            this.evictions = evictions;
+            this.labels = labels;
+            this.existence = existence;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package org.geneontology.minerva;
+
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.util.AnnotationShorthand;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Statement;
+import org.openrdf.model.URI;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.model.vocabulary.OWL;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.*;
+import org.openrdf.rio.helpers.RDFHandlerBase;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The statements of a GO-CAM model file, read with a single parse.
+ * Import statements are dropped, as GO-CAMs should not have any, and the
+ * ontology IRI and the modelstate of the model are recorded while parsing.
+ */
+class ParsedModelFile {
+
+    private static final Logger LOG = Logger.getLogger(ParsedModelFile.class);
+
+    private static final URI MODEL_STATE = new URIImpl(AnnotationShorthand.modelstate.getAnnotationProperty().toString());
+
+    private final File file;
+    private final List<Statement> statements = new ArrayList<>();
+    private String modelIri = null;
+    private boolean markedDelete = false;
+
+    private ParsedModelFile(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @param file Turtle file, or RDF/XML for any other file extension
+     * @return parsed file
+     * @throws RDFParseException
+     * @throws RDFHandlerException
+     * @throws IOException
+     */
+    static ParsedModelFile parse(File file) throws RDFParseException, RDFHandlerException, IOException {
+        final ParsedModelFile parsed = new ParsedModelFile(file);
+        //FIXME Turtle format is hard-coded here
+        RDFParser parser = Rio.createParser(RDFFormat.RDFXML);
+        if (file.getName().endsWith(".ttl")) {
+            parser = Rio.createParser(RDFFormat.TURTLE);
+        }
+        parser.setRDFHandler(new RDFHandlerBase() {
+            @Override
+            public void handleStatement(Statement statement) {
+                parsed.handleStatement(statement);
+            }
+        });
+        InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
+        try {
+            parser.parse(inputStream, "");
+        } finally {
+            inputStream.close();
+        }
+        return parsed;
+    }
+
+    private void handleStatement(Statement statement) {
+        if (OWL.IMPORTS.equals(statement.getPredicate())) {
+            return;
+        }
+        if (RDF.TYPE.equals(statement.getPredicate()) && OWL.ONTOLOGY.equals(statement.getObject())) {
+            if (statement.getSubject() instanceof BNode) {
+                LOG.warn("Blank node subject for ontology triple: " + statement);
+            } else if (modelIri == null) {
+                modelIri = statement.getSubject().stringValue();
+            }
+        }
+        if (MODEL_STATE.equals(statement.getPredicate()) && "delete".equals(statement.getObject().stringValue())) {
+            markedDelete = true;
+        }
+        statements.add(statement);
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the statements of the file, without owl:imports
+     */
+    List<Statement> getStatements() {
+        return statements;
+    }
+
+    /**
+     * @return the ontology IRI or null for an anonymous ontology
+     */
+    String getModelIri() {
+        return modelIri;
+    }
+
+    /**
+     * @return true, if the model has the modelstate 'delete'
+     */
+    boolean isMarkedDelete() {
+        return markedDelete;
+    }
+}
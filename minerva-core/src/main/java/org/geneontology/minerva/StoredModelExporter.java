@@ -0,0 +1,307 @@
+package org.geneontology.minerva;
+
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.util.DeterministicTurtleRenderer;
+import org.openrdf.model.Statement;
+import org.openrdf.model.impl.URIImpl;
+import org.openrdf.repository.RepositoryException;
+import org.openrdf.rio.RDFHandlerException;
+import org.openrdf.rio.helpers.StatementCollector;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Export of the stored models as Turtle files, with a fixed number of threads.
+ * Each file is written next to the target and renamed atomically, so readers never see a partial file.
+ * A model is only rendered again, if its statements changed since its last export into the same file,
+ * or if the file was changed by someone else, as seen by its size and modification time.
+ * Exports after a save are queued and run in the background, a model queued several times is exported once.
+ */
+class StoredModelExporter {
+
+    private static final Logger LOG = Logger.getLogger(StoredModelExporter.class);
+
+    private final BigdataSailRepository repo;
+    private final String modelIdPrefix;
+    private final ExecutorService executor;
+    // statements last exported into a file and the state of the file after the export
+    private final Map<File, ExportedFile> exportedFiles = new ConcurrentHashMap<>();
+    // target files with a queued export, which has not started yet
+    private final Map<File, CompletableFuture<Void>> queued = new ConcurrentHashMap<>();
+    // exports of the same file are serialized, so that the last export always reads the latest statements
+    private final Object[] fileLocks = new Object[64];
+
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong unchanged = new AtomicLong();
+
+    /**
+     * @param repo          repository with a graph per model
+     * @param modelIdPrefix removed from the model id for the file name
+     * @param threads       number of models exported at the same time
+     */
+    StoredModelExporter(BigdataSailRepository repo, String modelIdPrefix, int threads) {
+        this.repo = repo;
+        this.modelIdPrefix = modelIdPrefix;
+        AtomicInteger count = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread thread = new Thread(r, "minerva-model-export-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < fileLocks.length; i++) {
+            fileLocks[i] = new Object();
+        }
+    }
+
+    /**
+     * Export a model and wait for it.
+     *
+     * @param modelId
+     * @param folder
+     * @return true, if the file was written, false if it was unchanged
+     * @throws IOException
+     */
+    boolean export(IRI modelId, File folder) throws IOException {
+        File targetFile = getTargetFile(modelId, folder);
+        synchronized (fileLocks[Math.floorMod(targetFile.hashCode(), fileLocks.length)]) {
+            return exportLocked(modelId, targetFile);
+        }
+    }
+
+    /**
+     * Export the models in parallel and wait for all of them.
+     *
+     * @param modelIds
+     * @param folder
+     * @throws IOException for the first failed export, the others are suppressed
+     */
+    void exportAll(Collection<IRI> modelIds, File folder) throws IOException {
+        long start = System.currentTimeMillis();
+        long writtenBefore = written.get();
+        List<Future<Boolean>> futures = new ArrayList<>(modelIds.size());
+        for (IRI modelId : modelIds) {
+            futures.add(executor.submit(() -> export(modelId, folder)));
+        }
+        IOException failure = null;
+        for (Future<Boolean> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (ExecutionException e) {
+                IOException exception = e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+                if (failure == null) {
+                    failure = exception;
+                } else {
+                    failure.addSuppressed(exception);
+                }
+            }
+        }
+        LOG.info("Exported " + (written.get() - writtenBefore) + " changed of " + modelIds.size() + " models in "
+                + (System.currentTimeMillis() - start) + " ms");
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Queue the export of a model. If the model is already queued, the queued export is used,
+     * as it reads the statements when it starts.
+     *
+     * @param modelId
+     * @param folder
+     * @return future, completed after the export
+     */
+    CompletableFuture<Void> exportAsync(IRI modelId, File folder) {
+        final File targetFile;
+        try {
+            targetFile = getTargetFile(modelId, folder);
+        } catch (IOException e) {
+            LOG.error("Could not export model: " + modelId, e);
+            CompletableFuture<Void> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        CompletableFuture<Void> existing = queued.putIfAbsent(targetFile, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            executor.execute(() -> {
+                queued.remove(targetFile, future);
+                try {
+                    export(modelId, folder);
+                    future.complete(null);
+                } catch (Throwable e) {
+                    LOG.error("Could not export model: " + modelId, e);
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queued.remove(targetFile, future);
+            future.completeExceptionally(new IOException("Model export is shut down", e));
+        }
+        return future;
+    }
+
+    private File getTargetFile(IRI modelId, File folder) throws IOException {
+        // preliminary checks for the target file
+        String fileName = StringUtils.replaceOnce(modelId.toString(), modelIdPrefix, "") + ".ttl";
+        File targetFile = new File(folder, fileName).getAbsoluteFile();
+        if (targetFile.exists()) {
+            if (targetFile.isFile() == false) {
+                throw new IOException("For modelId: '" + modelId + "', the resulting path is not a file: " + targetFile.getAbsolutePath());
+            }
+            if (targetFile.canWrite() == false) {
+                throw new IOException("For modelId: '" + modelId + "', Cannot write to the file: " + targetFile.getAbsolutePath());
+            }
+        }
+        return targetFile;
+    }
+
+    private boolean exportLocked(IRI modelId, File targetFile) throws IOException {
+        Collection<Statement> statements;
+        try {
+            BigdataSailRepositoryConnection connection = repo.getReadOnlyConnection();
+            try {
+                StatementCollector collector = new StatementCollector();
+                connection.export(collector, new URIImpl(modelId.toString()));
+                statements = collector.getStatements();
+            } finally {
+                connection.close();
+            }
+        } catch (RepositoryException | RDFHandlerException e) {
+            throw new IOException(e);
+        }
+        String digest = digest(statements);
+        ExportedFile exported = exportedFiles.get(targetFile);
+        if (exported != null && exported.isUnchanged(digest, targetFile)) {
+            unchanged.incrementAndGet();
+            return false;
+        }
+        // Render the model deterministically so that the same RDF always
+        // produces byte-identical Turtle, with anonymous blank nodes and a
+        // consistent set of prefixes (see DeterministicTurtleRenderer).
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DeterministicTurtleRenderer.render(statements, modelId.toString(), out);
+        byte[] turtle = out.toByteArray();
+        // e.g. after a restart, the file may already have the same content
+        if (targetFile.exists() && targetFile.length() == turtle.length && Arrays.equals(Files.readAllBytes(targetFile.toPath()), turtle)) {
+            exportedFiles.put(targetFile, new ExportedFile(digest, targetFile));
+            unchanged.incrementAndGet();
+            return false;
+        }
+        File targetFolder = targetFile.getParentFile();
+        FileUtils.forceMkdir(targetFolder);
+        // in the target folder, so that it can be renamed atomically
+        File tempFile = File.createTempFile("." + targetFile.getName(), ".tmp", targetFolder);
+        try {
+            Files.write(tempFile.toPath(), turtle);
+            try {
+                Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+        exportedFiles.put(targetFile, new ExportedFile(digest, targetFile));
+        written.incrementAndGet();
+        return true;
+    }
+
+    private static class ExportedFile {
+
+        private final String digest;
+        private final long length;
+        private final long lastModified;
+
+        ExportedFile(String digest, File file) {
+            this.digest = digest;
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        /**
+         * @param digest of the current statements
+         * @param file
+         * @return true, if the statements are the exported ones and the file was not changed since
+         */
+        boolean isUnchanged(String digest, File file) {
+            return this.digest.equals(digest) && file.exists() && file.length() == length && file.lastModified() == lastModified;
+        }
+    }
+
+    /**
+     * The statements are exported in the order of the journal index, so equal graphs have equal digests.
+     * A different order only causes an unnecessary export.
+     */
+    private static String digest(Collection<Statement> statements) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Statement statement : statements) {
+            digest.update(statement.getSubject().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ' ');
+            digest.update(statement.getPredicate().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) ' ');
+            digest.update(statement.getObject().toString().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) '\n');
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return number of written files
+     */
+    long getWritten() {
+        return written.get();
+    }
+
+    /**
+     * @return number of exports skipped, because the model was unchanged
+     */
+    long getUnchanged() {
+        return unchanged.get();
+    }
+
+    /**
+     * Finish the queued exports.
+     */
+    void shutdown() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.error("Model export did not finish the queued exports");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
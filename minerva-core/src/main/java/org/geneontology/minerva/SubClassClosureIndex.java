@@ -0,0 +1,374 @@
+package org.geneontology.minerva;
+
+import com.bigdata.rdf.sail.BigdataSailRepository;
+import com.bigdata.rdf.sail.BigdataSailRepositoryConnection;
+import org.apache.log4j.Logger;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.URI;
+import org.openrdf.model.Value;
+import org.openrdf.query.*;
+import org.openrdf.repository.RepositoryException;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compact in-memory index over the rdfs:subClassOf graph of the go-lego journal.
+ * <p>
+ * Every node of the subClassOf graph gets a dense int id. Direct parents and
+ * children are stored in two compressed adjacency arrays, so a reflexive
+ * transitive closure (the equivalent of an rdfs:subClassOf* property path) is a
+ * breadth first walk over int arrays with a {@link BitSet} for the visited
+ * nodes, without a SPARQL round trip.
+ * <p>
+ * The index is immutable. Use {@link #build(BigdataSailRepository)} to create
+ * it from a journal and {@link #write(File)}/{@link #read(File)} to keep it in
+ * a sidecar file next to the journal. A sidecar file must be regenerated
+ * whenever the journal is replaced.
+ */
+public class SubClassClosureIndex {
+
+    private static final Logger LOG = Logger.getLogger(SubClassClosureIndex.class);
+
+    private static final int MAGIC = 0x4d435849; // MCXI
+    private static final int VERSION = 1;
+
+    private static final String XSD_STRING = "http://www.w3.org/2001/XMLSchema#string";
+    private static final Map<String, String> NAMESPACE_ROOTS;
+
+    static {
+        Map<String, String> roots = new HashMap<String, String>();
+        roots.put("biological_process", "http://purl.obolibrary.org/obo/GO_0008150");
+        roots.put("molecular_function", "http://purl.obolibrary.org/obo/GO_0003674");
+        roots.put("cellular_component", "http://purl.obolibrary.org/obo/GO_0005575");
+        NAMESPACE_ROOTS = Collections.unmodifiableMap(roots);
+    }
+
+    private final String[] nodes;
+    private final BitSet anonymous;
+    private final Map<String, Integer> ids;
+    private final int[] parentOffsets;
+    private final int[] parents;
+    private final int[] childOffsets;
+    private final int[] children;
+    private final Map<Integer, Set<String>> deprecatedRoots;
+
+    private SubClassClosureIndex(String[] nodes, BitSet anonymous, int[] edgeSources, int[] edgeTargets, int edgeCount,
+                                 Map<Integer, Set<String>> deprecatedRoots) {
+        this.nodes = nodes;
+        this.anonymous = anonymous;
+        this.ids = new HashMap<String, Integer>(nodes.length * 2);
+        for (int i = 0; i < nodes.length; i++) {
+            ids.put(nodes[i], i);
+        }
+        this.parentOffsets = new int[nodes.length + 1];
+        this.parents = new int[edgeCount];
+        fillAdjacency(edgeSources, edgeTargets, edgeCount, parentOffsets, parents);
+        this.childOffsets = new int[nodes.length + 1];
+        this.children = new int[edgeCount];
+        fillAdjacency(edgeTargets, edgeSources, edgeCount, childOffsets, children);
+        this.deprecatedRoots = deprecatedRoots;
+    }
+
+    private static void fillAdjacency(int[] from, int[] to, int edgeCount, int[] offsets, int[] targets) {
+        for (int e = 0; e < edgeCount; e++) {
+            offsets[from[e] + 1]++;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            offsets[i] += offsets[i - 1];
+        }
+        int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+        for (int e = 0; e < edgeCount; e++) {
+            targets[next[from[e]]++] = to[e];
+        }
+    }
+
+    /**
+     * Read all rdfs:subClassOf statements and the namespaces of deprecated
+     * classes from the given repository.
+     *
+     * @param repository
+     * @return index
+     * @throws IOException
+     */
+    public static SubClassClosureIndex build(BigdataSailRepository repository) throws IOException {
+        long start = System.currentTimeMillis();
+        Builder builder = new Builder();
+        try {
+            BigdataSailRepositoryConnection connection = repository.getReadOnlyConnection();
+            try {
+                String query = "PREFIX rdfs: <http://www.w3.org/2000/01/rdf-schema#> " +
+                        "SELECT ?sub ?super " +
+                        "WHERE { ?sub rdfs:subClassOf ?super . } ";
+                TupleQueryResult result = connection.prepareTupleQuery(QueryLanguage.SPARQL, query).evaluate();
+                try {
+                    while (result.hasNext()) {
+                        BindingSet binding = result.next();
+                        builder.addEdge(binding.getValue("sub"), binding.getValue("super"));
+                    }
+                } finally {
+                    result.close();
+                }
+                String deprecatedQuery = "PREFIX owl: <http://www.w3.org/2002/07/owl#> " +
+                        "PREFIX oboInOwl: <http://www.geneontology.org/formats/oboInOwl#> " +
+                        "SELECT ?sub ?namespace " +
+                        "WHERE { ?sub owl:deprecated true . ?sub oboInOwl:hasOBONamespace ?namespace . } ";
+                result = connection.prepareTupleQuery(QueryLanguage.SPARQL, deprecatedQuery).evaluate();
+                try {
+                    while (result.hasNext()) {
+                        BindingSet binding = result.next();
+                        builder.addDeprecated(binding.getValue("sub"), binding.getValue("namespace"));
+                    }
+                } finally {
+                    result.close();
+                }
+            } catch (MalformedQueryException e) {
+                throw new IOException(e);
+            } catch (QueryEvaluationException e) {
+                throw new IOException(e);
+            } finally {
+                connection.close();
+            }
+        } catch (RepositoryException e) {
+            throw new IOException(e);
+        }
+        SubClassClosureIndex index = builder.build();
+        LOG.info("Built subClassOf closure index with " + index.size() + " classes and " + index.parents.length +
+                " edges in " + (System.currentTimeMillis() - start) + " ms");
+        return index;
+    }
+
+    /**
+     * @return number of nodes in the subClassOf graph
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Equivalent of {@code <uri> rdfs:subClassOf* ?super}, ignoring anonymous classes.
+     *
+     * @param uri
+     * @return reflexive transitive super classes
+     */
+    public Set<String> getAllSuperClasses(String uri) {
+        return closure(uri, parentOffsets, parents);
+    }
+
+    /**
+     * Equivalent of {@code ?sub rdfs:subClassOf* <uri>}, ignoring anonymous classes.
+     *
+     * @param uri
+     * @return reflexive transitive sub classes
+     */
+    public Set<String> getAllSubClasses(String uri) {
+        return closure(uri, childOffsets, children);
+    }
+
+    /**
+     * @param uri
+     * @param candidates
+     * @return all candidates which are reflexive transitive super classes of uri
+     */
+    public Set<String> getSuperClassesIn(String uri, Set<String> candidates) {
+        Set<String> matches = new HashSet<String>();
+        for (String superClass : getAllSuperClasses(uri)) {
+            if (candidates.contains(superClass)) {
+                matches.add(superClass);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @param uri
+     * @return the GO root classes for a deprecated class, based on its OBO namespace, or an empty set
+     */
+    public Set<String> getDeprecatedRoots(String uri) {
+        Integer id = ids.get(uri);
+        if (id != null) {
+            Set<String> roots = deprecatedRoots.get(id);
+            if (roots != null) {
+                return roots;
+            }
+        }
+        return Collections.emptySet();
+    }
+
+    private Set<String> closure(String uri, int[] offsets, int[] targets) {
+        Set<String> result = new HashSet<String>();
+        result.add(uri);
+        Integer start = ids.get(uri);
+        if (start == null) {
+            return result;
+        }
+        BitSet visited = new BitSet(nodes.length);
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = start;
+        visited.set(start);
+        while (head < tail) {
+            int current = queue[head++];
+            for (int i = offsets[current]; i < offsets[current + 1]; i++) {
+                int next = targets[i];
+                if (!visited.get(next)) {
+                    visited.set(next);
+                    if (tail == queue.length) {
+                        queue = Arrays.copyOf(queue, queue.length * 2);
+                    }
+                    queue[tail++] = next;
+                    if (!anonymous.get(next)) {
+                        result.add(nodes[next]);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write the index into a gzipped sidecar file.
+     *
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(file))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(nodes.length);
+            for (int i = 0; i < nodes.length; i++) {
+                out.writeBoolean(anonymous.get(i));
+                out.writeUTF(nodes[i]);
+            }
+            out.writeInt(parents.length);
+            for (int node = 0; node < nodes.length; node++) {
+                for (int i = parentOffsets[node]; i < parentOffsets[node + 1]; i++) {
+                    out.writeInt(node);
+                    out.writeInt(parents[i]);
+                }
+            }
+            out.writeInt(deprecatedRoots.size());
+            for (Map.Entry<Integer, Set<String>> entry : deprecatedRoots.entrySet()) {
+                out.writeInt(entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String root : entry.getValue()) {
+                    out.writeUTF(root);
+                }
+            }
+        }
+    }
+
+    /**
+     * Read an index previously written with {@link #write(File)}.
+     *
+     * @param file
+     * @return index
+     * @throws IOException
+     */
+    public static SubClassClosureIndex read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a subClassOf closure index file: " + file);
+            }
+            int nodeCount = in.readInt();
+            String[] nodes = new String[nodeCount];
+            BitSet anonymous = new BitSet(nodeCount);
+            for (int i = 0; i < nodeCount; i++) {
+                anonymous.set(i, in.readBoolean());
+                nodes[i] = in.readUTF();
+            }
+            int edgeCount = in.readInt();
+            int[] sources = new int[edgeCount];
+            int[] targets = new int[edgeCount];
+            for (int e = 0; e < edgeCount; e++) {
+                sources[e] = in.readInt();
+                targets[e] = in.readInt();
+            }
+            int deprecatedCount = in.readInt();
+            Map<Integer, Set<String>> deprecatedRoots = new HashMap<Integer, Set<String>>();
+            for (int d = 0; d < deprecatedCount; d++) {
+                int id = in.readInt();
+                int rootCount = in.readInt();
+                Set<String> roots = new HashSet<String>();
+                for (int r = 0; r < rootCount; r++) {
+                    roots.add(in.readUTF());
+                }
+                deprecatedRoots.put(id, roots);
+            }
+            return new SubClassClosureIndex(nodes, anonymous, sources, targets, edgeCount, deprecatedRoots);
+        }
+    }
+
+    private static class Builder {
+        private final Map<String, Integer> ids = new HashMap<String, Integer>();
+        private final List<String> nodes = new ArrayList<String>();
+        private final BitSet anonymous = new BitSet();
+        private int[] sources = new int[1024];
+        private int[] targets = new int[1024];
+        private int edgeCount = 0;
+        private final Map<Integer, Set<String>> deprecatedRoots = new HashMap<Integer, Set<String>>();
+
+        private int id(Value value) {
+            String key;
+            if (value instanceof BNode) {
+                key = "_:" + value.stringValue();
+            } else {
+                key = value.stringValue();
+            }
+            Integer id = ids.get(key);
+            if (id == null) {
+                id = nodes.size();
+                ids.put(key, id);
+                nodes.add(key);
+                if (!(value instanceof URI)) {
+                    anonymous.set(id);
+                }
+            }
+            return id;
+        }
+
+        void addEdge(Value sub, Value sup) {
+            if (sub == null || sup == null || sub instanceof Literal || sup instanceof Literal) {
+                return;
+            }
+            if (edgeCount == sources.length) {
+                sources = Arrays.copyOf(sources, edgeCount * 2);
+                targets = Arrays.copyOf(targets, edgeCount * 2);
+            }
+            sources[edgeCount] = id(sub);
+            targets[edgeCount] = id(sup);
+            edgeCount++;
+        }
+
+        void addDeprecated(Value sub, Value namespace) {
+            if (!(sub instanceof URI) || !(namespace instanceof Literal)) {
+                return;
+            }
+            Literal literal = (Literal) namespace;
+            // only plain and xsd:string literals, same as the VALUES block of the SPARQL version
+            if (literal.getLanguage() != null ||
+                    (literal.getDatatype() != null && !XSD_STRING.equals(literal.getDatatype().stringValue()))) {
+                return;
+            }
+            String root = NAMESPACE_ROOTS.get(literal.getLabel());
+            if (root != null) {
+                int id = id(sub);
+                Set<String> roots = deprecatedRoots.get(id);
+                if (roots == null) {
+                    roots = new HashSet<String>();
+                    deprecatedRoots.put(id, roots);
+                }
+                roots.add(root);
+            }
+        }
+
+        SubClassClosureIndex build() {
+            return new SubClassClosureIndex(nodes.toArray(new String[nodes.size()]), anonymous, sources, targets, edgeCount, deprecatedRoots);
+        }
+    }
+}
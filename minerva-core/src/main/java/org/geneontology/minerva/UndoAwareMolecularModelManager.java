@@ -1,58 +1,93 @@
 package org.geneontology.minerva;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
 import org.geneontology.minerva.UndoAwareMolecularModelManager.UndoMetadata;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.util.ReverseChangeGenerator;
+import org.semanticweb.owlapi.change.OWLOntologyChangeData;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLOntology;
 import org.semanticweb.owlapi.model.OWLOntologyChange;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 
-import java.io.IOException;
+import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 /**
  * Provide undo and redo operations for the {@link MolecularModelManager}.
+ * The size of the undo history is limited by an {@link UndoHistoryPolicy}.
  */
 public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMetadata> {
 
+    private static final Logger LOG = Logger.getLogger(UndoAwareMolecularModelManager.class);
+
     private final Map<IRI, UndoRedo> allChanges = new HashMap<>();
 
+    private volatile UndoHistoryPolicy historyPolicy = UndoHistoryPolicy.UNBOUNDED;
+    // private to this instance, created for a policy with a spill directory
+    private volatile File spillDirectory = null;
+    // number of changes in the undo and redo buffers of all models
+    private final AtomicLong changesInMemory = new AtomicLong(0L);
+
     private static class UndoRedo {
         final Deque<ChangeEvent> undoBuffer = new LinkedList<>();
         final Deque<ChangeEvent> redoBuffer = new LinkedList<>();
+        // undo events older than the undo buffer, stored in the spill file, newest last
+        final Deque<SpilledEvent> spilled = new ArrayDeque<>();
+        private File spillFile = null;
         private UndoMetadata token = null;
+        // true, if the newest undo event is an edit, which may be coalesced with the next edit
+        private boolean coalescable = false;
+        // number of changes in the undo and redo buffer
+        long changes = 0;
 
-        void addUndo(List<OWLOntologyChange> changes, UndoMetadata metadata) {
-            addUndo(new ChangeEvent(metadata.userId, changes, System.currentTimeMillis()), metadata);
+        void addUndo(List<OWLOntologyChange> changes, UndoMetadata metadata, long coalesceMillis) {
+            addUndo(new ChangeEvent(metadata.userId, changes, System.currentTimeMillis()), metadata, coalesceMillis);
         }
 
         void addUndo(List<OWLOntologyChange> changes, String userId) {
             token = null;
-            undoBuffer.push(new ChangeEvent(userId, changes, System.currentTimeMillis()));
+            coalescable = false;
+            pushUndo(new ChangeEvent(userId, changes, System.currentTimeMillis()));
         }
 
-        void addUndo(ChangeEvent changes, UndoMetadata token) {
-            if (this.token == null || this.token.equals(token) == false) {
-                // new event or different event
-                undoBuffer.push(changes);
-                this.token = token;
+        void addUndo(ChangeEvent changes, UndoMetadata token, long coalesceMillis) {
+            ChangeEvent current = undoBuffer.peek();
+            if (current != null && (this.token != null && this.token.equals(token)
+                    || coalescable && redoBuffer.isEmpty() && coalesceMillis > 0
+                    && Objects.equals(current.userId, changes.userId)
+                    && changes.time - current.time <= coalesceMillis)) {
+                // append to last event, either the same request or a consecutive edit of the same user
+                current.getChanges().addAll(changes.getChanges());
+                this.changes += changes.getChanges().size();
             } else {
-                // append to last event
-                ChangeEvent current = undoBuffer.peek();
-                if (current != null) {
-                    current.getChanges().addAll(changes.getChanges());
-                } else {
-                    undoBuffer.push(changes);
-                }
+                // new event or different event
+                pushUndo(changes);
             }
+            this.token = token;
+            coalescable = true;
+        }
+
+        private void pushUndo(ChangeEvent event) {
+            undoBuffer.push(event);
+            changes += event.getChanges().size();
         }
 
-        ChangeEvent getUndo() {
+        ChangeEvent getUndo(OWLOntology abox) {
+            coalescable = false;
             if (undoBuffer.peek() != null) {
-                return undoBuffer.pop();
+                ChangeEvent event = undoBuffer.pop();
+                changes -= event.getChanges().size();
+                return event;
+            }
+            if (!spilled.isEmpty()) {
+                return readSpilled(abox);
             }
             return null;
         }
@@ -63,19 +98,182 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 
         void addRedo(ChangeEvent changes) {
             redoBuffer.push(changes);
+            this.changes += changes.getChanges().size();
             this.token = null;
         }
 
         ChangeEvent getRedo() {
             if (redoBuffer.peek() != null) {
-                return redoBuffer.pop();
+                ChangeEvent event = redoBuffer.pop();
+                changes -= event.getChanges().size();
+                return event;
             }
             return null;
         }
 
         void clearRedo() {
+            for (ChangeEvent event : redoBuffer) {
+                changes -= event.getChanges().size();
+            }
             redoBuffer.clear();
         }
+
+        void clearUndo() {
+            for (ChangeEvent event : undoBuffer) {
+                changes -= event.getChanges().size();
+            }
+            undoBuffer.clear();
+            clearSpilled();
+            token = null;
+            coalescable = false;
+        }
+
+        int depth() {
+            return undoBuffer.size() + spilled.size();
+        }
+
+        /**
+         * Drop the oldest undo events beyond the maximum depth.
+         */
+        void trimDepth(int maxDepth) {
+            while (maxDepth > 0 && depth() > maxDepth) {
+                if (!spilled.isEmpty()) {
+                    spilled.removeFirst();
+                    if (spilled.isEmpty()) {
+                        clearSpilled();
+                    }
+                } else {
+                    ChangeEvent event = undoBuffer.removeLast();
+                    changes -= event.getChanges().size();
+                }
+            }
+        }
+
+        /**
+         * Spill or drop the oldest undo events, until at most the given number of changes are in memory.
+         * The newest undo event always stays in memory.
+         */
+        void trimChanges(long maxChanges, File spillDirectory) {
+            while (changes > maxChanges && undoBuffer.size() > 1) {
+                ChangeEvent event = undoBuffer.removeLast();
+                changes -= event.getChanges().size();
+                if (spillDirectory != null) {
+                    spill(event, spillDirectory);
+                } else {
+                    // without spill directory, the older events can never be undone
+                    clearSpilled();
+                }
+            }
+        }
+
+        private void spill(ChangeEvent event, File spillDirectory) {
+            try {
+                if (spillFile == null) {
+                    spillFile = File.createTempFile("undo-", ".bin", spillDirectory);
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(new DeflaterOutputStream(bytes))) {
+                    ArrayList<OWLOntologyChangeData> data = new ArrayList<>(event.getChanges().size());
+                    for (OWLOntologyChange change : event.getChanges()) {
+                        data.add(change.getChangeData());
+                    }
+                    out.writeObject(data);
+                }
+                try (RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+                    long offset = file.length();
+                    file.seek(offset);
+                    file.write(bytes.toByteArray());
+                    // the spilled events are older than the ones in memory
+                    spilled.addLast(new SpilledEvent(event.userId, event.time, offset, bytes.size()));
+                }
+                compactSpillFile();
+            } catch (IOException e) {
+                // the older events can't be undone anymore
+                LOG.error("Could not spill undo history to: " + spillDirectory, e);
+                clearSpilled();
+            }
+        }
+
+        private ChangeEvent readSpilled(OWLOntology abox) {
+            SpilledEvent event = spilled.removeLast();
+            try {
+                byte[] bytes = new byte[event.length];
+                try (RandomAccessFile file = new RandomAccessFile(spillFile, "rw")) {
+                    file.seek(event.offset);
+                    file.readFully(bytes);
+                    file.setLength(event.offset);
+                }
+                List<OWLOntologyChange> changes = new ArrayList<>();
+                try (ObjectInputStream in = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(bytes)))) {
+                    @SuppressWarnings("unchecked")
+                    List<OWLOntologyChangeData> data = (List<OWLOntologyChangeData>) in.readObject();
+                    for (OWLOntologyChangeData change : data) {
+                        changes.add(change.createOntologyChange(abox));
+                    }
+                }
+                if (spilled.isEmpty()) {
+                    clearSpilled();
+                }
+                return new ChangeEvent(event.userId, changes, event.time);
+            } catch (IOException | ClassNotFoundException e) {
+                LOG.error("Could not read spilled undo history from: " + spillFile, e);
+                clearSpilled();
+                return null;
+            }
+        }
+
+        /**
+         * Remove the dropped events from the start of the spill file, once they use more space than the remaining ones.
+         */
+        private void compactSpillFile() throws IOException {
+            long start = spilled.peekFirst().offset;
+            SpilledEvent last = spilled.peekLast();
+            long end = last.offset + last.length;
+            if (start <= end - start) {
+                return;
+            }
+            File compacted = File.createTempFile("undo-", ".bin", spillFile.getParentFile());
+            try (RandomAccessFile in = new RandomAccessFile(spillFile, "r");
+                 RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+                byte[] bytes = new byte[(int) (end - start)];
+                in.seek(start);
+                in.readFully(bytes);
+                out.write(bytes);
+            }
+            FileUtils.deleteQuietly(spillFile);
+            spillFile = compacted;
+            List<SpilledEvent> moved = new ArrayList<>(spilled.size());
+            for (SpilledEvent event : spilled) {
+                moved.add(new SpilledEvent(event.userId, event.time, event.offset - start, event.length));
+            }
+            spilled.clear();
+            spilled.addAll(moved);
+        }
+
+        void clearSpilled() {
+            spilled.clear();
+            if (spillFile != null) {
+                FileUtils.deleteQuietly(spillFile);
+                spillFile = null;
+            }
+        }
+    }
+
+    /**
+     * Location of an undo event in the spill file of a model.
+     */
+    private static class SpilledEvent {
+        final String userId;
+        final long time;
+        final long offset;
+        final int length;
+
+        SpilledEvent(String userId, long time, long offset, int length) {
+            this.userId = userId;
+            this.time = time;
+            this.offset = offset;
+            this.length = length;
+        }
     }
 
     public static class UndoMetadata {
@@ -166,12 +364,52 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
         super(tbox, curieHandler, modelIdLongFormPrefix, pathToJournal, pathToExportFolder, pathToOntologyJournal, downloadOntologyJournal);
     }
 
+    /**
+     * Set the limits for the undo history. The limits are applied to the existing history with the next change.
+     *
+     * @param policy
+     * @throws IOException if the spill directory can't be created
+     */
+    public void setUndoHistoryPolicy(UndoHistoryPolicy policy) throws IOException {
+        File previous = spillDirectory;
+        if (policy.getSpillDirectory() != null) {
+            FileUtils.forceMkdir(policy.getSpillDirectory());
+            spillDirectory = Files.createTempDirectory(policy.getSpillDirectory().toPath(), "undo-history").toFile();
+        } else {
+            spillDirectory = null;
+        }
+        historyPolicy = policy;
+        if (previous != null) {
+            // the history spilled there can't be undone anymore
+            synchronized (allChanges) {
+                for (UndoRedo undoRedo : allChanges.values()) {
+                    synchronized (undoRedo) {
+                        undoRedo.clearSpilled();
+                    }
+                }
+            }
+            FileUtils.deleteQuietly(previous);
+        }
+    }
+
+    public UndoHistoryPolicy getUndoHistoryPolicy() {
+        return historyPolicy;
+    }
+
+    /**
+     * @return estimated number of bytes used by the undo history of all models in memory
+     */
+    public long getEstimatedUndoHistoryBytes() {
+        return UndoHistoryPolicy.estimateBytes(changesInMemory.get());
+    }
+
     @Override
     protected void addToHistory(ModelContainer model, List<OWLOntologyChange> appliedChanges, UndoMetadata metadata) {
         if (appliedChanges == null || appliedChanges.isEmpty()) {
             // do nothing
             return;
         }
+        final UndoHistoryPolicy policy = historyPolicy;
         UndoRedo undoRedo;
         synchronized (allChanges) {
             IRI modelId = model.getModelId();
@@ -182,10 +420,75 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
             }
         }
         synchronized (undoRedo) {
+            long before = undoRedo.changes;
             // append to undo
-            undoRedo.addUndo(appliedChanges, metadata);
+            undoRedo.addUndo(appliedChanges, metadata, policy.getCoalesceMillis());
             // clear redo
             undoRedo.clearRedo();
+            undoRedo.trimDepth(policy.getMaxDepth());
+            if (policy.getMaxBytesPerModel() > 0) {
+                undoRedo.trimChanges(policy.getMaxBytesPerModel() / UndoHistoryPolicy.ESTIMATED_BYTES_PER_CHANGE, spillDirectory);
+            }
+            changesInMemory.addAndGet(undoRedo.changes - before);
+        }
+        if (policy.getMaxTotalBytes() > 0) {
+            trimAllHistories(policy.getMaxTotalBytes() / UndoHistoryPolicy.ESTIMATED_BYTES_PER_CHANGE);
+        }
+    }
+
+    /**
+     * Spill or drop the oldest history of the models with the largest history in memory,
+     * until the history of all models fits into the given number of changes.
+     * Only one history is locked at a time, as the locks of the models are not ordered.
+     */
+    private void trimAllHistories(long maxChanges) {
+        if (changesInMemory.get() <= maxChanges) {
+            return;
+        }
+        List<UndoRedo> histories;
+        synchronized (allChanges) {
+            histories = new ArrayList<>(allChanges.values());
+        }
+        // the sizes may change while sorting, use a snapshot
+        Map<UndoRedo, Long> sizes = new IdentityHashMap<>();
+        for (UndoRedo undoRedo : histories) {
+            sizes.put(undoRedo, undoRedo.changes);
+        }
+        histories.sort((h1, h2) -> Long.compare(sizes.get(h2), sizes.get(h1)));
+        for (UndoRedo undoRedo : histories) {
+            long excess = changesInMemory.get() - maxChanges;
+            if (excess <= 0) {
+                break;
+            }
+            synchronized (undoRedo) {
+                long before = undoRedo.changes;
+                undoRedo.trimChanges(Math.max(0, before - excess), spillDirectory);
+                changesInMemory.addAndGet(undoRedo.changes - before);
+            }
+        }
+    }
+
+    @Override
+    protected void removeHistory(IRI modelId) {
+        UndoRedo undoRedo;
+        synchronized (allChanges) {
+            undoRedo = allChanges.remove(modelId);
+        }
+        if (undoRedo != null) {
+            synchronized (undoRedo) {
+                long before = undoRedo.changes;
+                undoRedo.clearRedo();
+                undoRedo.clearUndo();
+                changesInMemory.addAndGet(undoRedo.changes - before);
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        super.dispose();
+        if (spillDirectory != null) {
+            FileUtils.deleteQuietly(spillDirectory);
         }
     }
 
@@ -209,19 +512,24 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
                  * to avoid deadlocks!
                  */
                 synchronized (undoRedo) {
-                    // pop from undo
-                    ChangeEvent event = undoRedo.getUndo();
-                    if (event == null) {
-                        return false;
+                    long before = undoRedo.changes;
+                    try {
+                        // pop from undo, the spilled events are read back into memory
+                        ChangeEvent event = undoRedo.getUndo(abox);
+                        if (event == null) {
+                            return false;
+                        }
+
+                        // invert and apply changes
+                        List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator.invertChanges(event.getChanges());
+                        applyChanges(model, invertedChanges);
+
+                        // push to redo
+                        undoRedo.addRedo(event.changes, userId);
+                        return true;
+                    } finally {
+                        changesInMemory.addAndGet(undoRedo.changes - before);
                     }
-
-                    // invert and apply changes
-                    List<OWLOntologyChange> invertedChanges = ReverseChangeGenerator.invertChanges(event.getChanges());
-                    applyChanges(model, invertedChanges);
-
-                    // push to redo
-                    undoRedo.addRedo(event.changes, userId);
-                    return true;
                 }
             }
         }
@@ -248,18 +556,23 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
                  * to avoid deadlocks!
                  */
                 synchronized (undoRedo) {
-                    // pop() from redo
-                    ChangeEvent event = undoRedo.getRedo();
-                    if (event == null) {
-                        return false;
+                    long before = undoRedo.changes;
+                    try {
+                        // pop() from redo
+                        ChangeEvent event = undoRedo.getRedo();
+                        if (event == null) {
+                            return false;
+                        }
+
+                        // apply changes
+                        applyChanges(model, event.getChanges());
+
+                        // push() to undo
+                        undoRedo.addUndo(event.getChanges(), userId);
+                        return true;
+                    } finally {
+                        changesInMemory.addAndGet(undoRedo.changes - before);
                     }
-
-                    // apply changes
-                    applyChanges(model, event.getChanges());
-
-                    // push() to undo
-                    undoRedo.addUndo(event.getChanges(), userId);
-                    return true;
                 }
             }
         }
@@ -268,6 +581,7 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
 
     /**
      * Retrieve the current available undo and redo events.
+     * The changes of undo events, which were moved to the spill directory, are not read back, their list of changes is empty.
      *
      * @param modelId
      * @return pair of undo (left) and redo (right) events
@@ -284,6 +598,11 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
         synchronized (undoRedo) {
             // copy the current lists
             List<ChangeEvent> undoList = new ArrayList<ChangeEvent>(undoRedo.undoBuffer);
+            Iterator<SpilledEvent> spilled = undoRedo.spilled.descendingIterator();
+            while (spilled.hasNext()) {
+                SpilledEvent event = spilled.next();
+                undoList.add(new ChangeEvent(event.userId, Collections.<OWLOntologyChange>emptyList(), event.time));
+            }
             List<ChangeEvent> redoList = new ArrayList<ChangeEvent>(undoRedo.redoBuffer);
             return Pair.of(undoList, redoList);
         }
@@ -296,7 +615,9 @@ public class UndoAwareMolecularModelManager extends MolecularModelManager<UndoMe
         }
         if (undoRedo != null) {
             synchronized (undoRedo) {
-                undoRedo.undoBuffer.clear();
+                long before = undoRedo.changes;
+                undoRedo.clearUndo();
+                changesInMemory.addAndGet(undoRedo.changes - before);
             }
         }
     }
@@ -0,0 +1,72 @@
+package org.geneontology.minerva;
+
+import java.io.File;
+
+/**
+ * Limits for the undo history kept by an {@link UndoAwareMolecularModelManager}.
+ * When the history of a model exceeds the maximum depth, the oldest undo events are dropped.
+ * When the history in memory exceeds the byte budget of a model or of all models, the oldest
+ * undo events are moved to a spill directory, from where they are read back for undo,
+ * or dropped if there is no spill directory.
+ */
+public class UndoHistoryPolicy {
+
+    /**
+     * Rough estimate for the heap used by one change in the undo history, mostly the changed axiom and its annotations.
+     */
+    public static final long ESTIMATED_BYTES_PER_CHANGE = 512;
+
+    /**
+     * Keep the complete history of all models in memory.
+     */
+    public static final UndoHistoryPolicy UNBOUNDED = new UndoHistoryPolicy(0, 0, 0, 0, null);
+
+    private final int maxDepth;
+    private final long maxBytesPerModel;
+    private final long maxTotalBytes;
+    private final long coalesceMillis;
+    private final File spillDirectory;
+
+    /**
+     * @param maxDepth         maximum number of undo events per model, unbounded if zero or less
+     * @param maxBytesPerModel maximum estimated size of the history of one model in memory, unbounded if zero or less
+     * @param maxTotalBytes    maximum estimated size of the history of all models in memory, unbounded if zero or less
+     * @param coalesceMillis   consecutive edits of the same user within this time become one undo event, off if zero or less
+     * @param spillDirectory   directory for the history which exceeds the byte budgets, dropped if null
+     */
+    public UndoHistoryPolicy(int maxDepth, long maxBytesPerModel, long maxTotalBytes, long coalesceMillis, File spillDirectory) {
+        this.maxDepth = maxDepth;
+        this.maxBytesPerModel = maxBytesPerModel;
+        this.maxTotalBytes = maxTotalBytes;
+        this.coalesceMillis = coalesceMillis;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxBytesPerModel() {
+        return maxBytesPerModel;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public long getCoalesceMillis() {
+        return coalesceMillis;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param changes
+     * @return estimated number of bytes used by the given number of changes
+     */
+    public static long estimateBytes(long changes) {
+        return changes * ESTIMATED_BYTES_PER_CHANGE;
+    }
+}
@@ -1,5 +1,7 @@
 package org.geneontology.minerva.curie;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableBiMap;
 import org.apache.commons.lang3.StringUtils;
 import org.geneontology.minerva.MolecularModelManager.UnknownIdentifierException;
@@ -8,11 +10,19 @@ import org.semanticweb.owlapi.model.*;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 public class MappedCurieHandler implements CurieHandler {
 
+    /**
+     * Number of IRIs, whose curie is kept after the lookup.
+     */
+    public static final int DEFAULT_MEMO_SIZE = 10000;
+
     private final ImmutableBiMap<String, String> curieMap;
+    // namespaces of the inverted map, for the longest prefix match
+    private final PrefixTrie namespaces;
+    // curies of recently converted IRIs, null if disabled
+    private final Cache<IRI, String> memo;
 
     public MappedCurieHandler(CurieMappings... mappings) {
         this(merge(mappings));
@@ -33,8 +43,18 @@ public class MappedCurieHandler implements CurieHandler {
     }
 
     public MappedCurieHandler(Map<String, String> curieMap) {
+        this(curieMap, DEFAULT_MEMO_SIZE);
+    }
+
+    /**
+     * @param curieMap short prefix -> namespace
+     * @param memoSize number of IRIs, whose curie is kept, zero disables the memo
+     */
+    public MappedCurieHandler(Map<String, String> curieMap, int memoSize) {
         super();
         this.curieMap = ImmutableBiMap.copyOf(curieMap);
+        this.namespaces = new PrefixTrie(this.curieMap.inverse());
+        this.memo = memoSize > 0 ? CacheBuilder.newBuilder().maximumSize(memoSize).<IRI, String>build() : null;
     }
 
     @Override
@@ -64,27 +84,25 @@ public class MappedCurieHandler implements CurieHandler {
 
     @Override
     public String getCuri(IRI iri) {
-        String iriString = iri.toString();
-        String curi = iriString;
-
-        String longPrefix = null;
-        String shortPrefix = null;
-        // iterate over inverted map, find longest prefix match
-        for (Entry<String, String> e : curieMap.inverse().entrySet()) {
-            String currentLongPrefix = e.getKey();
-            int currentLongprefixLength = currentLongPrefix.length();
-            if (iriString.startsWith(currentLongPrefix) &&
-                    iriString.length() > currentLongprefixLength) {
-                if (longPrefix == null || currentLongprefixLength > longPrefix.length()) {
-                    longPrefix = currentLongPrefix;
-                    shortPrefix = e.getValue();
-                }
+        if (memo != null) {
+            String curi = memo.getIfPresent(iri);
+            if (curi == null) {
+                curi = lookupCuri(iri);
+                memo.put(iri, curi);
             }
+            return curi;
         }
-        if (longPrefix != null) {
-            return shortPrefix + ":" + iriString.substring(longPrefix.length());
+        return lookupCuri(iri);
+    }
+
+    private String lookupCuri(IRI iri) {
+        String iriString = iri.toString();
+        // find longest prefix match of the inverted map
+        String curi = namespaces.getCuri(iriString);
+        if (curi != null) {
+            return curi;
         }
-        return curi;
+        return iriString;
     }
 
     @Override
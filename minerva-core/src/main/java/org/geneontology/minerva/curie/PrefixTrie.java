@@ -0,0 +1,85 @@
+package org.geneontology.minerva.curie;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Longest prefix match of IRIs against the namespaces of the curie mappings.
+ * A lookup walks the characters of the IRI once, independent of the number of namespaces.
+ * Immutable after construction.
+ */
+class PrefixTrie {
+
+    private static final class Node {
+        char[] keys = new char[0];
+        Node[] children = new Node[0];
+        // short prefix, if a namespace ends at this node
+        String prefix = null;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node addChild(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) {
+                return children[i];
+            }
+            int insert = -(i + 1);
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, insert);
+            System.arraycopy(children, 0, newChildren, 0, insert);
+            newKeys[insert] = c;
+            newChildren[insert] = new Node();
+            System.arraycopy(keys, insert, newKeys, insert + 1, keys.length - insert);
+            System.arraycopy(children, insert, newChildren, insert + 1, children.length - insert);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[insert];
+        }
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * @param namespaces namespace -> short prefix
+     */
+    PrefixTrie(Map<String, String> namespaces) {
+        for (Entry<String, String> e : namespaces.entrySet()) {
+            Node node = root;
+            String namespace = e.getKey();
+            for (int i = 0; i < namespace.length(); i++) {
+                node = node.addChild(namespace.charAt(i));
+            }
+            node.prefix = e.getValue();
+        }
+    }
+
+    /**
+     * @param iri
+     * @return curie for the longest namespace, which is a proper prefix of the IRI, or null
+     */
+    String getCuri(String iri) {
+        Node node = root;
+        String prefix = null;
+        int length = 0;
+        // the local part must not be empty, so the last character is never part of the namespace
+        for (int i = 0; i < iri.length() - 1; i++) {
+            node = node.child(iri.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.prefix != null) {
+                prefix = node.prefix;
+                length = i + 1;
+            }
+        }
+        if (prefix == null) {
+            return null;
+        }
+        return prefix + ":" + iri.substring(length);
+    }
+}
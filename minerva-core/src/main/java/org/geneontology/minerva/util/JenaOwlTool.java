@@ -3,15 +3,25 @@
  */
 package org.geneontology.minerva.util;
 
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Graph;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
-import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.apache.jena.sparql.graph.GraphFactory;
+import org.openrdf.model.BNode;
+import org.openrdf.model.Literal;
+import org.openrdf.model.Statement;
+import org.openrdf.model.Value;
+import org.openrdf.model.vocabulary.RDF;
+import org.openrdf.rio.helpers.RDFHandlerBase;
 import org.semanticweb.owlapi.model.OWLOntology;
-import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+import org.semanticweb.owlapi.rio.RioRenderer;
 
-import java.io.IOException;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author bgood
@@ -26,26 +36,50 @@ public class JenaOwlTool {
         // TODO Auto-generated constructor stub
     }
 
+    /**
+     * Convert the ontology to a Jena model. The statements of the OWL API RDF renderer
+     * are added to the graph as they are rendered, without writing and parsing Turtle.
+     *
+     * @param ontology
+     * @return model
+     */
     public static Model getJenaModel(OWLOntology ontology) {
-        Model model = ModelFactory.createDefaultModel();
-
-        try (PipedInputStream is = new PipedInputStream(); PipedOutputStream os = new PipedOutputStream(is)) {
-            new Thread(new Runnable() {
+        final Graph graph = GraphFactory.createDefaultGraph();
+        final Map<String, Node> blankNodes = new HashMap<>();
+        try {
+            RioRenderer renderer = new RioRenderer(ontology, new RDFHandlerBase() {
                 @Override
-                public void run() {
-                    try {
-                        ontology.getOWLOntologyManager().saveOntology(ontology, new TurtleDocumentFormat(), os);
-                        os.close();
-                    } catch (OWLOntologyStorageException | IOException e) {
-                        e.printStackTrace();
+                public void handleStatement(Statement st) {
+                    // the Turtle collection syntax has no rdf:List types, keep the same graph
+                    if (st.getSubject() instanceof BNode && RDF.TYPE.equals(st.getPredicate()) && RDF.LIST.equals(st.getObject())) {
+                        return;
                     }
+                    graph.add(Triple.create(asNode(st.getSubject(), blankNodes),
+                            asNode(st.getPredicate(), blankNodes), asNode(st.getObject(), blankNodes)));
                 }
-            }).start();
-            model.read(is, null, "TURTLE");
-            return model;
+            }, null);
+            renderer.render();
+            return ModelFactory.createModelForGraph(graph);
         } catch (Exception e) {
             throw new RuntimeException("Could not convert OWL API ontology to JENA API model.", e);
         }
     }
 
+    private static Node asNode(Value value, Map<String, Node> blankNodes) {
+        if (value instanceof BNode) {
+            return blankNodes.computeIfAbsent(((BNode) value).getID(), id -> NodeFactory.createBlankNode());
+        } else if (value instanceof Literal) {
+            Literal literal = (Literal) value;
+            if (literal.getLanguage() != null) {
+                return NodeFactory.createLiteral(literal.getLabel(), literal.getLanguage());
+            } else if (literal.getDatatype() != null) {
+                return NodeFactory.createLiteral(literal.getLabel(), TypeMapper.getInstance().getSafeTypeByName(literal.getDatatype().stringValue()));
+            } else {
+                return NodeFactory.createLiteral(literal.getLabel());
+            }
+        } else {
+            return NodeFactory.createURI(value.stringValue());
+        }
+    }
+
 }
@@ -0,0 +1,95 @@
+package org.geneontology.minerva.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations with buckets doubling in size, from 1 ms up to about 65 seconds.
+ * Percentiles are reported as the upper bound of the bucket containing them.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 18;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalNanos = new AtomicLong();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        counts.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(nanos)));
+        totalNanos.addAndGet(nanos);
+        maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    private static int bucket(long millis) {
+        if (millis <= 1) {
+            return 0;
+        }
+        // bucket i holds durations up to 2^i ms
+        int bucket = 64 - Long.numberOfLeadingZeros(millis - 1);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static long upperBoundMillis(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : 1L << bucket;
+    }
+
+    public Snapshot getSnapshot() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            count += snapshot[i];
+        }
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS; i++) {
+            if (snapshot[i] > 0) {
+                buckets.put(i == BUCKETS - 1 ? "> " + upperBoundMillis(i - 1) + " ms" : "<= " + upperBoundMillis(i) + " ms", snapshot[i]);
+            }
+        }
+        long meanMillis = count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / count) : 0;
+        return new Snapshot(count, meanMillis, TimeUnit.NANOSECONDS.toMillis(maxNanos.get()),
+                percentile(snapshot, count, 0.5), percentile(snapshot, count, 0.9), percentile(snapshot, count, 0.99), buckets);
+    }
+
+    private static long percentile(long[] snapshot, long count, double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * count);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundMillis(i == BUCKETS - 1 ? i - 1 : i);
+            }
+        }
+        return upperBoundMillis(BUCKETS - 2);
+    }
+
+    public static class Snapshot {
+        public final long count;
+        public final long meanMillis;
+        public final long maxMillis;
+        public final long p50Millis;
+        public final long p90Millis;
+        public final long p99Millis;
+        public final Map<String, Long> buckets;
+
+        public Snapshot(long count, long meanMillis, long maxMillis, long p50Millis, long p90Millis, long p99Millis, Map<String, Long> buckets) {
+            this.count = count;
+            this.meanMillis = meanMillis;
+            this.maxMillis = maxMillis;
+            this.p50Millis = p50Millis;
+            this.p90Millis = p90Millis;
+            this.p99Millis = p99Millis;
+            this.buckets = buckets;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.geneontology.minerva.util;
+
+import org.apache.log4j.Logger;
+import org.geneontology.rules.engine.RuleEngine;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import scala.collection.JavaConverters;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Addition of triples to an existing Arachne working memory.
+ * <p>
+ * The public API of Arachne (1.2) only creates a new working memory with
+ * {@link RuleEngine#processTriples(scala.collection.Iterable)}. Running the rules for added triples
+ * needs its private RuleEngine.injectTriple, the same step processTriples uses for each triple on the agenda.
+ * It is looked up once and called as is, the propagation through the rete network is not re-implemented here.
+ * The method is only used with the Arachne version it was checked against, {@value #VERIFIED_ARACHNE_VERSION}.
+ * The version is read from the manifest of the Arachne jar, if it is not known (e.g. in a shaded jar), the method
+ * is used if it is there. Otherwise the update falls back to a new working memory for all asserted triples.
+ * WorkingMemoryUpdateTest checks both ways against processTriples, it has to pass before the Arachne version
+ * is changed here and in the pom.
+ */
+public class WorkingMemoryUpdate {
+
+    private static final Logger LOG = Logger.getLogger(WorkingMemoryUpdate.class);
+
+    static final String VERIFIED_ARACHNE_VERSION = "1.2";
+
+    private static final MethodHandle INJECT_TRIPLE = findInjectTriple();
+    private static final String UNSUPPORTED_REASON = getUnsupportedReason(RuleEngine.class.getPackage().getImplementationVersion());
+    private static final AtomicBoolean FALLBACK_LOGGED = new AtomicBoolean(false);
+
+    /**
+     * Working memory with the added triples, either the updated one or a new one.
+     */
+    public final WorkingMemory memory;
+    /**
+     * Asserted and inferred facts, which were not in the previous working memory.
+     */
+    public final Set<Triple> newFacts;
+
+    private WorkingMemoryUpdate(WorkingMemory memory, Set<Triple> newFacts) {
+        this.memory = memory;
+        this.newFacts = newFacts;
+    }
+
+    private static MethodHandle findInjectTriple() {
+        try {
+            Method method = RuleEngine.class.getDeclaredMethod("injectTriple", Triple.class, WorkingMemory.class);
+            method.setAccessible(true);
+            return MethodHandles.lookup().unreflect(method);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Arachne RuleEngine.injectTriple is not available", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param arachneVersion version of the Arachne jar, null if not known
+     * @return why the working memory can not be updated, null if it can
+     */
+    static String getUnsupportedReason(String arachneVersion) {
+        if (INJECT_TRIPLE == null) {
+            return "Arachne " + (arachneVersion != null ? arachneVersion + " " : "") + "has no RuleEngine.injectTriple";
+        }
+        if (arachneVersion != null && !VERIFIED_ARACHNE_VERSION.equals(arachneVersion)) {
+            return "Arachne " + arachneVersion + " is not verified, only " + VERIFIED_ARACHNE_VERSION;
+        }
+        return null;
+    }
+
+    /**
+     * @return true, if triples are added to the existing working memory
+     */
+    public static boolean isIncremental() {
+        return UNSUPPORTED_REASON == null;
+    }
+
+    /**
+     * Run the rules for the added triples. Arachne has no retraction, so this can only be used for additions.
+     *
+     * @param engine  the rule engine, which created the working memory
+     * @param memory  working memory, is changed if {@link #isIncremental()}
+     * @param triples added triples
+     * @return update
+     */
+    public static WorkingMemoryUpdate add(RuleEngine engine, WorkingMemory memory, Collection<Triple> triples) {
+        return add(engine, memory, triples, isIncremental());
+    }
+
+    static WorkingMemoryUpdate add(RuleEngine engine, WorkingMemory memory, Collection<Triple> triples, boolean incremental) {
+        if (!incremental) {
+            if (UNSUPPORTED_REASON != null && FALLBACK_LOGGED.compareAndSet(false, true)) {
+                LOG.warn(UNSUPPORTED_REASON + ", models are reasoned over completely after each change");
+            }
+            Set<Triple> asserted = new HashSet<>(JavaConverters.setAsJavaSetConverter(memory.asserted()).asJava());
+            asserted.addAll(triples);
+            WorkingMemory rebuilt = engine.processTriples(JavaConverters.asScalaSetConverter(asserted).asScala());
+            Set<Triple> newFacts = new HashSet<>(JavaConverters.asJavaCollectionConverter(rebuilt.facts()).asJavaCollection());
+            newFacts.removeAll(JavaConverters.asJavaCollectionConverter(memory.facts()).asJavaCollection());
+            return new WorkingMemoryUpdate(rebuilt, newFacts);
+        }
+        for (Triple triple : triples) {
+            // adds the triple to the facts and the agenda, if it is new
+            engine.processTriple(triple, memory);
+        }
+        Set<Triple> newFacts = new HashSet<>();
+        // the agenda loop of RuleEngine.processTriples, for an existing working memory
+        while (memory.agenda().nonEmpty()) {
+            scala.Tuple2<Triple, scala.collection.immutable.Queue<Triple>> next = memory.agenda().dequeue();
+            memory.agenda_$eq(next._2());
+            newFacts.add(next._1());
+            try {
+                INJECT_TRIPLE.invoke(engine, next._1(), memory);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        return new WorkingMemoryUpdate(memory, newFacts);
+    }
+}
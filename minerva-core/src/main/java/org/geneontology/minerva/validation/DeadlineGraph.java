@@ -0,0 +1,118 @@
+package org.geneontology.minerva.validation;
+
+import org.apache.commons.rdf.api.*;
+
+import java.util.stream.Stream;
+
+/**
+ * Graph view for a validation with a deadline. The shexjava validations do not check for interrupts,
+ * but they look up the neighbourhood of each node in the graph. Each lookup fails after the deadline
+ * or an interrupt, which stops the validation.
+ */
+class DeadlineGraph implements Graph {
+
+    static class DeadlineExceededException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        DeadlineExceededException(String message) {
+            super(message);
+        }
+    }
+
+    private final Graph graph;
+    private volatile long deadlineNanos;
+
+    /**
+     * @param graph
+     * @param deadlineNanos see {@link ShexValidationScheduler#deadline(long)}
+     */
+    DeadlineGraph(Graph graph, long deadlineNanos) {
+        this.graph = graph;
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Move the deadline, e.g. to give each node of a recursive validation its own time.
+     *
+     * @param deadlineNanos see {@link ShexValidationScheduler#deadline(long)}
+     */
+    void setDeadline(long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    private void check() {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new DeadlineExceededException("validation was cancelled");
+        }
+        if (System.nanoTime() - deadlineNanos > 0) {
+            throw new DeadlineExceededException("validation passed its deadline");
+        }
+    }
+
+    @Override
+    public void add(Triple triple) {
+        graph.add(triple);
+    }
+
+    @Override
+    public void add(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        graph.add(subject, predicate, object);
+    }
+
+    @Override
+    public boolean contains(Triple triple) {
+        check();
+        return graph.contains(triple);
+    }
+
+    @Override
+    public boolean contains(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        check();
+        return graph.contains(subject, predicate, object);
+    }
+
+    @Override
+    public void remove(Triple triple) {
+        graph.remove(triple);
+    }
+
+    @Override
+    public void remove(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        graph.remove(subject, predicate, object);
+    }
+
+    @Override
+    public void clear() {
+        graph.clear();
+    }
+
+    @Override
+    public long size() {
+        return graph.size();
+    }
+
+    @Override
+    public Stream<? extends Triple> stream() {
+        check();
+        return graph.stream();
+    }
+
+    @Override
+    public Stream<? extends Triple> stream(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        check();
+        return graph.stream(subject, predicate, object);
+    }
+
+    @Override
+    public Iterable<Triple> iterate() {
+        check();
+        return graph.iterate();
+    }
+
+    @Override
+    public Iterable<Triple> iterate(BlankNodeOrIRI subject, IRI predicate, RDFTerm object) {
+        check();
+        return graph.iterate(subject, predicate, object);
+    }
+}
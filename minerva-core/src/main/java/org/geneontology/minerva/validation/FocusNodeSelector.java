@@ -0,0 +1,139 @@
+package org.geneontology.minerva.validation;
+
+import org.apache.jena.query.*;
+import org.apache.jena.rdf.model.*;
+import org.apache.jena.vocabulary.RDF;
+import org.apache.jena.vocabulary.RDFS;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Selects the focus nodes of a model for the shapes of a shape map, compiled once per schema.
+ * <br>
+ * Most shape map queries select the individuals with a type, which is a subclass of a root class.
+ * These are answered together, in one pass over the rdf:type statements of the model.
+ * All other queries are parsed once and evaluated once per model.
+ * <br>
+ * A node is only tested against its most specific shapes: a shape is dropped for a node,
+ * if its focus nodes in the model contain all focus nodes of another shape of the node.
+ */
+class FocusNodeSelector {
+
+    private static final Pattern ROOT_CLASS_QUERY = Pattern.compile("\\s*SELECT\\s+\\?x\\s+WHERE\\s*\\{\\s*\\?x\\s+<"
+            + Pattern.quote(RDF.type.getURI()) + ">\\s+\\?c\\s*\\.\\s*\\?c\\s+<" + Pattern.quote(RDFS.subClassOf.getURI())
+            + ">\\s+<([^>]+)>\\s*\\.?\\s*\\}\\s*", Pattern.CASE_INSENSITIVE);
+
+    // root class -> shapes selecting the individuals of its subclasses
+    private final Map<String, Set<String>> rootClassShapes = new HashMap<>();
+    // shape -> parsed query, for all other shapes
+    private final Map<String, Query> shapeQueries = new HashMap<>();
+
+    /**
+     * @param shapeQueries shape label -> SPARQL query selecting the focus nodes as ?x
+     */
+    FocusNodeSelector(Map<String, String> shapeQueries) {
+        for (Map.Entry<String, String> entry : shapeQueries.entrySet()) {
+            Matcher matcher = ROOT_CLASS_QUERY.matcher(entry.getValue());
+            if (matcher.matches()) {
+                rootClassShapes.computeIfAbsent(matcher.group(1), root -> new HashSet<>()).add(entry.getKey());
+            } else {
+                this.shapeQueries.put(entry.getKey(), QueryFactory.create(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * @param model
+     * @return shape label -> focus nodes in the model, only shapes with at least one focus node
+     */
+    Map<String, Set<Resource>> getFocusNodes(Model model) {
+        Map<String, Set<Resource>> shapeNodes = new HashMap<>();
+        if (!rootClassShapes.isEmpty()) {
+            // class -> shapes of its root classes
+            Map<Resource, Set<String>> classShapes = new HashMap<>();
+            StmtIterator types = model.listStatements(null, RDF.type, (RDFNode) null);
+            try {
+                while (types.hasNext()) {
+                    Statement type = types.next();
+                    if (!type.getObject().isResource()) {
+                        continue;
+                    }
+                    Set<String> shapes = classShapes.computeIfAbsent(type.getObject().asResource(), c -> getShapesOfClass(model, c));
+                    for (String shape : shapes) {
+                        shapeNodes.computeIfAbsent(shape, s -> new HashSet<>()).add(type.getSubject());
+                    }
+                }
+            } finally {
+                types.close();
+            }
+        }
+        for (Map.Entry<String, Query> entry : shapeQueries.entrySet()) {
+            try (QueryExecution qe = QueryExecutionFactory.create(entry.getValue(), model)) {
+                ResultSet results = qe.execSelect();
+                while (results.hasNext()) {
+                    Resource node = results.next().getResource("x");
+                    shapeNodes.computeIfAbsent(entry.getKey(), s -> new HashSet<>()).add(node);
+                }
+            }
+        }
+        return shapeNodes;
+    }
+
+    private Set<String> getShapesOfClass(Model model, Resource c) {
+        Set<String> shapes = new HashSet<>();
+        StmtIterator superClasses = model.listStatements(c, RDFS.subClassOf, (RDFNode) null);
+        try {
+            while (superClasses.hasNext()) {
+                RDFNode superClass = superClasses.next().getObject();
+                if (superClass.isURIResource()) {
+                    Set<String> rootShapes = rootClassShapes.get(superClass.asResource().getURI());
+                    if (rootShapes != null) {
+                        shapes.addAll(rootShapes);
+                    }
+                }
+            }
+        } finally {
+            superClasses.close();
+        }
+        return shapes;
+    }
+
+    /**
+     * @param model
+     * @return focus node -> most specific shapes to test
+     */
+    Map<Resource, Set<String>> getShapesToTest(Model model) {
+        Map<String, Set<Resource>> shapeNodes = getFocusNodes(model);
+        Map<Resource, Set<String>> nodeShapes = new HashMap<>();
+        for (Map.Entry<String, Set<Resource>> entry : shapeNodes.entrySet()) {
+            for (Resource node : entry.getValue()) {
+                nodeShapes.computeIfAbsent(node, n -> new HashSet<>()).add(entry.getKey());
+            }
+        }
+        // shape1 -> shape2 -> focus nodes of shape1 contain those of shape2, computed once per pair
+        Map<String, Map<String, Boolean>> contains = new HashMap<>();
+        for (Set<String> shapes : nodeShapes.values()) {
+            if (shapes.size() < 2) {
+                continue;
+            }
+            Set<String> toRemove = new HashSet<>();
+            for (String shape1 : shapes) {
+                Map<String, Boolean> shape1Contains = contains.computeIfAbsent(shape1, s -> new HashMap<>());
+                for (String shape2 : shapes) {
+                    if (shape1.equals(shape2)) {
+                        continue;
+                    }
+                    // then remove shape1 from this node, as shape2 is more specific
+                    if (shape1Contains.computeIfAbsent(shape2, s -> shapeNodes.get(shape1).containsAll(shapeNodes.get(shape2)))) {
+                        toRemove.add(shape1);
+                        break;
+                    }
+                }
+            }
+            shapes.removeAll(toRemove);
+        }
+        return nodeShapes;
+    }
+}
@@ -0,0 +1,121 @@
+package org.geneontology.minerva.validation;
+
+import org.apache.jena.rdf.model.*;
+import org.apache.jena.vocabulary.OWL;
+import org.apache.jena.vocabulary.OWL2;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.*;
+
+/**
+ * Properties and types of the nodes of a model, read in one pass over its statements.
+ * Used for the CLOSED checks and the explanations of violations, instead of a query per node.
+ * The index is not updated, if the model changes. It can be read concurrently once built.
+ */
+class ModelAdjacencyIndex {
+
+    // subject -> predicate -> objects, in the order of the model
+    private final Map<Resource, Map<String, List<RDFNode>>> properties = new HashMap<>();
+    // node IRI -> asserted named types, without owl:NamedIndividual
+    private final Map<String, Set<String>> types = new HashMap<>();
+    // node IRI -> named complements of its anonymous types, without owl:NamedIndividual
+    private final Map<String, Set<String>> negatedTypes = new HashMap<>();
+
+    ModelAdjacencyIndex(Model model) {
+        addStatements(model.listStatements());
+        indexTypes();
+    }
+
+    /**
+     * Read only the statements of the given subjects and of their anonymous types, e.g. for a single node.
+     *
+     * @param model
+     * @param subjects
+     */
+    ModelAdjacencyIndex(Model model, Collection<? extends Resource> subjects) {
+        for (Resource subject : subjects) {
+            if (properties.containsKey(subject)) {
+                continue;
+            }
+            addStatements(model.listStatements(subject, null, (RDFNode) null));
+            for (RDFNode type : getObjects(subject, RDF.type.getURI())) {
+                if (type.isAnon() && !properties.containsKey(type.asResource())) {
+                    addStatements(model.listStatements(type.asResource(), null, (RDFNode) null));
+                }
+            }
+        }
+        indexTypes();
+    }
+
+    private void addStatements(StmtIterator statements) {
+        try {
+            while (statements.hasNext()) {
+                Statement statement = statements.next();
+                properties.computeIfAbsent(statement.getSubject(), s -> new LinkedHashMap<>())
+                        .computeIfAbsent(statement.getPredicate().getURI(), p -> new ArrayList<>())
+                        .add(statement.getObject());
+            }
+        } finally {
+            statements.close();
+        }
+    }
+
+    private void indexTypes() {
+        for (Map.Entry<Resource, Map<String, List<RDFNode>>> entry : properties.entrySet()) {
+            if (!entry.getKey().isURIResource()) {
+                continue;
+            }
+            String node = entry.getKey().getURI();
+            for (RDFNode type : entry.getValue().getOrDefault(RDF.type.getURI(), Collections.emptyList())) {
+                if (type.isURIResource()) {
+                    addType(types, node, type.asResource().getURI());
+                } else if (type.isAnon()) {
+                    for (RDFNode complement : getObjects(type.asResource(), OWL.complementOf.getURI())) {
+                        if (complement.isURIResource()) {
+                            addType(negatedTypes, node, complement.asResource().getURI());
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static void addType(Map<String, Set<String>> nodeTypes, String node, String type) {
+        if (!OWL2.NamedIndividual.getURI().equals(type)) {
+            nodeTypes.computeIfAbsent(node, n -> new HashSet<>()).add(type);
+        }
+    }
+
+    /**
+     * @param subject
+     * @return predicate IRI -> objects of the subject, in the order of the model
+     */
+    Map<String, List<RDFNode>> getProperties(Resource subject) {
+        return properties.getOrDefault(subject, Collections.emptyMap());
+    }
+
+    /**
+     * @param subject
+     * @param predicate
+     * @return objects, in the order of the model
+     */
+    List<RDFNode> getObjects(Resource subject, String predicate) {
+        return getProperties(subject).getOrDefault(predicate, Collections.emptyList());
+    }
+
+    /**
+     * @param node IRI, may be null
+     * @return named types of the node
+     */
+    Set<String> getTypes(String node) {
+        return node != null ? types.getOrDefault(node, Collections.emptySet()) : Collections.emptySet();
+    }
+
+    /**
+     * @param node IRI, may be null
+     * @return classes, whose complement is a type of the node
+     */
+    Set<String> getNegatedTypes(String node) {
+        return node != null ? negatedTypes.getOrDefault(node, Collections.emptySet()) : Collections.emptySet();
+    }
+}
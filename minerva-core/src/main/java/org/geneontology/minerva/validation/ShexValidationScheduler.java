@@ -0,0 +1,165 @@
+package org.geneontology.minerva.validation;
+
+import org.geneontology.minerva.util.LatencyHistogram;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared, fixed size thread pool for the ShEx validations, with deadlines instead of a thread per validation.
+ * The queue is bounded, if it is full the submitting thread runs the task itself.
+ * A task, which misses its deadline, is cancelled by interrupt. The validations stop at their next
+ * access to the graph, see {@link DeadlineGraph}.
+ */
+public class ShexValidationScheduler {
+
+    public static final int DEFAULT_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+    public static final int DEFAULT_MAX_QUEUED = 10000;
+
+    private static volatile ShexValidationScheduler shared = null;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final LatencyHistogram modelLatency = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> shapeLatencies = new ConcurrentHashMap<>();
+
+    /**
+     * @param threads   number of validations running at the same time
+     * @param maxQueued maximum number of waiting validations
+     */
+    public ShexValidationScheduler(int threads, int maxQueued) {
+        AtomicInteger count = new AtomicInteger();
+        int poolSize = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, maxQueued)), r -> {
+            Thread thread = new Thread(r, "minerva-shex-validation-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, (r, pool) -> {
+            if (!pool.isShutdown()) {
+                callerRuns.incrementAndGet();
+                r.run();
+            } else {
+                throw new RejectedExecutionException("ShEx validation is shut down");
+            }
+        });
+    }
+
+    /**
+     * @return scheduler shared by all validators, which have none set explicitly
+     */
+    public static ShexValidationScheduler getShared() {
+        ShexValidationScheduler scheduler = shared;
+        if (scheduler == null) {
+            synchronized (ShexValidationScheduler.class) {
+                scheduler = shared;
+                if (scheduler == null) {
+                    scheduler = new ShexValidationScheduler(DEFAULT_THREADS, DEFAULT_MAX_QUEUED);
+                    shared = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * @param deadlineMillis duration from now
+     * @return deadline for {@link #await(Future, long)}
+     */
+    public static long deadline(long deadlineMillis) {
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadlineMillis);
+    }
+
+    <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(task);
+    }
+
+    /**
+     * Wait for the result of a task until the deadline. A task, which misses the deadline, is cancelled.
+     *
+     * @param future
+     * @param deadlineNanos see {@link #deadline(long)}
+     * @return result of the task
+     * @throws TimeoutException     if the deadline passed or the task stopped at its deadline
+     * @throws ExecutionException   if the task failed
+     * @throws InterruptedException
+     */
+    <T> T await(Future<T> future, long deadlineNanos) throws TimeoutException, ExecutionException, InterruptedException {
+        try {
+            return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException | CancellationException e) {
+            future.cancel(true);
+            timeouts.incrementAndGet();
+            throw e instanceof TimeoutException ? (TimeoutException) e : new TimeoutException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof DeadlineGraph.DeadlineExceededException) {
+                timeouts.incrementAndGet();
+                throw new TimeoutException(e.getCause().getMessage());
+            }
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Count a validation, which was not started, because its deadline had passed.
+     */
+    void recordTimeout() {
+        timeouts.incrementAndGet();
+    }
+
+    void recordModelLatency(long nanos) {
+        modelLatency.record(nanos);
+    }
+
+    void recordShapeLatency(String shape, long nanos) {
+        shapeLatencies.computeIfAbsent(shape, s -> new LatencyHistogram()).record(nanos);
+    }
+
+    public Statistics getStatistics() {
+        Map<String, LatencyHistogram.Snapshot> shapes = new TreeMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : shapeLatencies.entrySet()) {
+            shapes.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        return new Statistics(executor.getMaximumPoolSize(), executor.getActiveCount(), executor.getQueue().size(),
+                executor.getCompletedTaskCount(), timeouts.get(), callerRuns.get(), modelLatency.getSnapshot(), shapes);
+    }
+
+    /**
+     * Stop accepting validations and cancel the running ones.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public static class Statistics {
+        public final int threads;
+        public final int active;
+        public final int queued;
+        public final long completed;
+        public final long timeouts;
+        public final long callerRuns;
+        // time for the validation of all focus nodes of a model
+        public final LatencyHistogram.Snapshot modelLatency;
+        // time to check and explain a focus node against a shape
+        public final Map<String, LatencyHistogram.Snapshot> shapeLatencies;
+
+        public Statistics(int threads, int active, int queued, long completed, long timeouts, long callerRuns,
+                          LatencyHistogram.Snapshot modelLatency, Map<String, LatencyHistogram.Snapshot> shapeLatencies) {
+            this.threads = threads;
+            this.active = active;
+            this.queued = queued;
+            this.completed = completed;
+            this.timeouts = timeouts;
+            this.callerRuns = callerRuns;
+            this.modelLatency = modelLatency;
+            this.shapeLatencies = shapeLatencies;
+        }
+    }
+}
@@ -14,6 +14,7 @@ import fr.inria.lille.shexjava.validation.RefineValidation;
 import fr.inria.lille.shexjava.validation.Status;
 import fr.inria.lille.shexjava.validation.Typing;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.rdf.api.Graph;
 import org.apache.commons.rdf.api.RDF;
 import org.apache.commons.rdf.api.RDFTerm;
 import org.apache.commons.rdf.jena.JenaGraph;
@@ -30,11 +31,10 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.*;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author bgood
@@ -53,6 +53,10 @@ public class ShexValidator {
     public CurieHandler curieHandler;
     public RDF rdfFactory;
     public final int timeout_mill = 30000;
+    // compiled from the shape map at init
+    private FocusNodeSelector focusNodeSelector;
+    private boolean sparqlFocusNodeSelection = false;
+    private volatile ShexValidationScheduler scheduler = null;
 
     /**
      * @throws Exception
@@ -76,6 +80,10 @@ public class ShexValidator {
         tripexprlabel_cardinality = new HashMap<Label, Interval>();
         curieHandler = curieHandler_;
         rdfFactory = new SimpleRDF();
+        Map<String, String> focusNodeQueries = new HashMap<String, String>(GoQueryMap);
+        //not quite the same pattern as the other shapes
+        focusNodeQueries.remove("http://purl.obolibrary.org/obo/go/shapes/AnnotatedEdge");
+        focusNodeSelector = new FocusNodeSelector(focusNodeQueries);
         for (String shapelabel : GoQueryMap.keySet()) {
             if (shapelabel.equals("http://purl.obolibrary.org/obo/go/shapes/AnnotatedEdge")) {
                 continue;
@@ -119,51 +127,25 @@ public class ShexValidator {
         //this shex implementation likes to use the commons JenaRDF interface, nothing exciting here
         JenaGraph shexy_graph = jr.asGraph(test_model);
         boolean all_good = true;
+        ShexValidationScheduler scheduler = getScheduler();
+        //the deadline is only for the refine, the explanations read the finished typing
+        long deadline = ShexValidationScheduler.deadline(timeout_mill);
+        long start = System.nanoTime();
         try {
-            Typing all_typed = runRefineWithTimeout(shexy_graph);
+            Typing all_typed = runRefineWithTimeout(shexy_graph, deadline);
             if (all_typed != null) {
                 //filter to most specific tests
                 Map<Resource, Set<String>> node_s_shapes = getShapesToTestForEachResource(test_model);
-                for (Resource node : node_s_shapes.keySet()) {
-                    Set<String> shapes = node_s_shapes.get(node);
-                    for (String shapelabel : shapes) {
-                        Label shape_label = new Label(rdfFactory.createIRI(shapelabel));
-                        RDFTerm focus_node = null;
-                        if (node.isURIResource()) {
-                            focus_node = rdfFactory.createIRI(node.getURI());
-                        } else {
-                            focus_node = rdfFactory.createBlankNode(node.getId().getLabelString());
-                        }
-                        if (!all_typed.isConformant(focus_node, shape_label)) {
-                            //something didn't match expectations
-                            all_good = false;
-                            //try to explain the mismatch
-                            if (explain) {
-                                Violation violation;
-                                try {
-                                    violation = getViolationForMismatch(shape_label, node, all_typed, test_model);
-                                    r.addViolation(violation);
-                                } catch (IOException e) {
-                                    // TODO Auto-generated catch block
-                                    e.printStackTrace();
-                                }
-                            }
-                        }
-                        //run our local CLOSE check
-                        //TODO remove if we implement closed directly
-                        if (explain) {
-                            Set<ShexViolation> extra_violations;
-                            try {
-                                extra_violations = checkForExtraProperties(node, test_model, shape_label, all_typed);
-                                if (extra_violations != null && !extra_violations.isEmpty()) {
-                                    r.addViolations(extra_violations);
-                                    all_good = false;
-                                }
-                            } catch (IOException e) {
-                                // TODO Auto-generated catch block
-                                e.printStackTrace();
-                            }
-                        }
+                //properties and types of all nodes for the explanations, read once
+                ModelAdjacencyIndex index = new ModelAdjacencyIndex(test_model);
+                //checked on this thread, the pool threads are left to the refine of other models
+                for (Map.Entry<Resource, Set<String>> entry : node_s_shapes.entrySet()) {
+                    NodeResult result = checkNode(entry.getKey(), entry.getValue(), all_typed, index, explain);
+                    for (Violation violation : result.violations) {
+                        r.addViolation(violation);
+                    }
+                    if (!result.conformant) {
+                        all_good = false;
                     }
                 }
             } else {
@@ -176,15 +158,69 @@ public class ShexValidator {
                 //make sure to free up resources here.
                 shexy_graph.close();
             } catch (Exception e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
+                LOGGER.error("Could not close the graph of the validated model", e);
             }
+            scheduler.recordModelLatency(System.nanoTime() - start);
         }
         r.conformant = all_good;
         return r;
     }
 
-    private Violation getViolationForMismatch(Label shape_label, Resource focus_node, Typing typing, Model test_model) throws IOException {
+    private static class NodeResult {
+        boolean conformant = true;
+        // may contain null, for mismatches which could not be explained
+        final List<Violation> violations = new ArrayList<Violation>();
+    }
+
+    /**
+     * Check a focus node against its shapes in a typing of the whole model, and explain the mismatches.
+     */
+    private NodeResult checkNode(Resource node, Set<String> shapes, Typing all_typed, ModelAdjacencyIndex index, boolean explain) {
+        NodeResult result = new NodeResult();
+        ShexValidationScheduler scheduler = getScheduler();
+        for (String shapelabel : shapes) {
+            long start = System.nanoTime();
+            Label shape_label = new Label(rdfFactory.createIRI(shapelabel));
+            RDFTerm focus_node = null;
+            if (node.isURIResource()) {
+                focus_node = rdfFactory.createIRI(node.getURI());
+            } else {
+                focus_node = rdfFactory.createBlankNode(node.getId().getLabelString());
+            }
+            if (!all_typed.isConformant(focus_node, shape_label)) {
+                //something didn't match expectations
+                result.conformant = false;
+                //try to explain the mismatch
+                if (explain) {
+                    Violation violation;
+                    try {
+                        violation = getViolationForMismatch(shape_label, node, all_typed, index);
+                        result.violations.add(violation);
+                    } catch (IOException e) {
+                        LOGGER.error("Could not explain the mismatch of " + node + " with " + shapelabel, e);
+                    }
+                }
+            }
+            //run our local CLOSE check
+            //TODO remove if we implement closed directly
+            if (explain) {
+                Set<ShexViolation> extra_violations;
+                try {
+                    extra_violations = checkForExtraProperties(node, index, shape_label, all_typed);
+                    if (extra_violations != null && !extra_violations.isEmpty()) {
+                        result.violations.addAll(extra_violations);
+                        result.conformant = false;
+                    }
+                } catch (IOException e) {
+                    LOGGER.error("Could not check the extra properties of " + node + " for " + shapelabel, e);
+                }
+            }
+            scheduler.recordShapeLatency(shapelabel, System.nanoTime() - start);
+        }
+        return result;
+    }
+
+    private Violation getViolationForMismatch(Label shape_label, Resource focus_node, Typing typing, ModelAdjacencyIndex index) throws IOException {
 
         RDFTerm rdfterm = null;
         if (focus_node.isURIResource()) {
@@ -199,7 +235,7 @@ public class ShexValidator {
             ShexExplanation explanation = new ShexExplanation();
             String shape_curie = getCurie(shape_label.stringValue());
             explanation.setShape(shape_curie);
-            Set<ShexConstraint> unmet_constraints = getUnmetConstraints(focus_node, shape_label, test_model, typing);
+            Set<ShexConstraint> unmet_constraints = getUnmetConstraints(focus_node, shape_label, index, typing);
             if (unmet_constraints != null) {
                 for (ShexConstraint constraint : unmet_constraints) {
                     explanation.addConstraint(constraint);
@@ -220,18 +256,6 @@ public class ShexValidator {
 
         //	else {
         LOGGER.error("tried to explain shape violation on anonymous node: " + shape_label + " " + focus_node);
-        StmtIterator node_statements = test_model.listStatements(focus_node.asResource(), null, (RDFNode) null);
-        if (node_statements.hasNext()) {
-            while (node_statements.hasNext()) {
-                Statement s = node_statements.next();
-            }
-        }
-        StmtIterator literal_statements = test_model.listStatements(focus_node.asResource(), null, (Literal) null);
-        if (literal_statements.hasNext()) {
-            while (literal_statements.hasNext()) {
-                Statement s = literal_statements.next();
-            }
-        }
         //		}
         return null;
     }
@@ -253,11 +277,15 @@ public class ShexValidator {
         //this shex implementation likes to use the commons JenaRDF interface, nothing exciting here
         JenaGraph shexy_graph = jr.asGraph(test_model);
         //recursive only checks the focus node against the chosen shape.
-        RecursiveValidationWithMemorization shex_model_validator = new RecursiveValidationWithMemorization(schema, shexy_graph);
+        //each node gets its own deadline, the graph view stops a validation at the deadline
+        DeadlineGraph deadline_graph = new DeadlineGraph(shexy_graph, ShexValidationScheduler.deadline(timeout_mill));
+        RecursiveValidationWithMemorization shex_model_validator = new RecursiveValidationWithMemorization(schema, deadline_graph);
         //for each shape in the query map (e.g. MF, BP, CC, etc.)
 
         boolean all_good = true;
         Map<Resource, Set<String>> node_s_shapes = getShapesToTestForEachResource(test_model);
+        //properties and types of all nodes for the explanations, read once
+        ModelAdjacencyIndex index = new ModelAdjacencyIndex(test_model);
 
         for (Resource focus_node_resource : node_s_shapes.keySet()) {
             Set<String> shape_nodes = node_s_shapes.get(focus_node_resource);
@@ -269,10 +297,12 @@ public class ShexValidator {
                     continue;
                 }
                 //check for use of properties not defined for this shape (okay if OPEN, not if CLOSED)
-                Typing typing = validateNodeWithTimeout(shex_model_validator, focus_node_resource, shape_label);
+                long deadline = ShexValidationScheduler.deadline(timeout_mill);
+                deadline_graph.setDeadline(deadline);
+                Typing typing = validateNodeWithTimeout(shex_model_validator, focus_node_resource, shape_label, deadline);
 
                 if (typing != null) {
-                    Set<ShexViolation> extra_prop_violations = checkForExtraProperties(focus_node_resource, test_model, shape_label, typing);
+                    Set<ShexViolation> extra_prop_violations = checkForExtraProperties(focus_node_resource, index, shape_label, typing);
                     if (extra_prop_violations != null && !extra_prop_violations.isEmpty()) {
                         for (Violation v : extra_prop_violations) {
                             r.addViolation(v);
@@ -307,7 +337,7 @@ public class ShexValidator {
                         ShexExplanation explanation = new ShexExplanation();
                         String shape_curie = getCurie(shapelabel);
                         explanation.setShape(shape_curie);
-                        Set<ShexConstraint> unmet_constraints = getUnmetConstraints(focus_node_resource, shape_label, test_model, typing);
+                        Set<ShexConstraint> unmet_constraints = getUnmetConstraints(focus_node_resource, shape_label, index, typing);
                         if (unmet_constraints != null) {
                             for (ShexConstraint constraint : unmet_constraints) {
                                 explanation.addConstraint(constraint);
@@ -344,7 +374,30 @@ public class ShexValidator {
         return r;
     }
 
-    private Map<Resource, Set<String>> getShapesToTestForEachResource(Model test_model) {
+    /**
+     * Select the focus nodes of the model and the most specific shapes to test them against.
+     *
+     * @param test_model
+     * @return focus node -> shape labels
+     */
+    public Map<Resource, Set<String>> getShapesToTestForEachResource(Model test_model) {
+        if (sparqlFocusNodeSelection) {
+            return getShapesToTestForEachResourceBySparql(test_model);
+        }
+        return focusNodeSelector.getShapesToTest(test_model);
+    }
+
+    /**
+     * Use the shape map queries for each node and pair of shapes, instead of the focus node selection compiled at init.
+     * Only for comparison.
+     *
+     * @param sparqlFocusNodeSelection
+     */
+    public void setSPARQLFocusNodeSelection(boolean sparqlFocusNodeSelection) {
+        this.sparqlFocusNodeSelection = sparqlFocusNodeSelection;
+    }
+
+    Map<Resource, Set<String>> getShapesToTestForEachResourceBySparql(Model test_model) {
         Map<Resource, Set<String>> node_shapes = new HashMap<Resource, Set<String>>();
         for (String shapelabel : GoQueryMap.keySet()) {
             //not quite the same pattern as the other shapes
@@ -391,86 +444,103 @@ public class ShexValidator {
         return node_s_shapes;
     }
 
-    private Typing runRefineWithTimeout(JenaGraph shexy_graph) {
-        final ExecutorService service = Executors.newSingleThreadExecutor();
+    private Typing runRefineWithTimeout(JenaGraph shexy_graph, long deadline) {
+        ShexValidationScheduler scheduler = getScheduler();
+        //the refine algorithm does not check for interrupts, the graph view stops it at the deadline
+        final Graph graph = new DeadlineGraph(shexy_graph, deadline);
+        final Future<Typing> f = scheduler.submit(() -> {
+            RefineValidation refine = new RefineValidation(schema, graph);
+            refine.validate();
+            Typing all = refine.getTyping();
+            return all;
+        });
         try {
-            final Future<Typing> f = service.submit(() -> {
-                RefineValidation refine = new RefineValidation(schema, shexy_graph);
-                refine.validate();
-                Typing all = refine.getTyping();
-                return all;
-            });
-            Typing typing = f.get(timeout_mill, TimeUnit.MILLISECONDS);
+            Typing typing = scheduler.await(f, deadline);
             return typing;
-
         } catch (final TimeoutException e) {
             LOGGER.error("shex refine all validation took to long  ");
-            service.shutdownNow();
             return null;
         } catch (InterruptedException e) {
             LOGGER.error("And we have Refine an interrupted exception: ");
-            e.printStackTrace();
-            service.shutdownNow();
+            Thread.currentThread().interrupt();
             return null;
         } catch (ExecutionException e) {
-            LOGGER.error("And we have a Refine execution exception: ");
-            e.printStackTrace();
-            service.shutdownNow();
+            LOGGER.error("And we have a Refine execution exception: ", e.getCause());
             return null;
-        } finally {
-            service.shutdown();
         }
     }
 
     public Typing validateNodeWithTimeout(RecursiveValidationWithMemorization shex_model_validator, Resource focus_node_resource, Label shape_label) {
+        return validateNodeWithTimeout(shex_model_validator, focus_node_resource, shape_label, ShexValidationScheduler.deadline(timeout_mill));
+    }
+
+    /**
+     * Validate a node on the shared scheduler. The validator is not thread safe, so the nodes of a model are validated one after the other.
+     *
+     * @param shex_model_validator
+     * @param focus_node_resource
+     * @param shape_label
+     * @param deadline             see {@link ShexValidationScheduler#deadline(long)}
+     * @return typing or null, if the node is not valid or the deadline passed
+     */
+    public Typing validateNodeWithTimeout(RecursiveValidationWithMemorization shex_model_validator, Resource focus_node_resource, Label shape_label, long deadline) {
         RDFTerm focus_node = null;
-        String focus_node_id = "";
         if (focus_node_resource.isURIResource()) {
             focus_node = rdfFactory.createIRI(focus_node_resource.getURI());
-            focus_node_id = focus_node_resource.getURI();
         } else {
             focus_node = rdfFactory.createBlankNode(focus_node_resource.getId().getLabelString());
-            focus_node_id = focus_node_resource.getId().getLabelString();
         }
-        //deal with curies for output
-        String node = focus_node_id;
-        node = getCurie(focus_node_id);
+        ShexValidationScheduler scheduler = getScheduler();
+        if (System.nanoTime() - deadline > 0) {
+            scheduler.recordTimeout();
+            LOGGER.error("shex validation took to long for " + focus_node_resource);
+            return null;
+        }
         //this can take a while - give up if it gets stuck
         //limit total time to avoid service death on some weird edge case
-        final ExecutorService service = Executors.newSingleThreadExecutor();
         final RDFTerm test_node = focus_node;
+        long start = System.nanoTime();
+        final Future<Typing> f = scheduler.submit(() -> {
+            boolean is_valid = shex_model_validator.validate(test_node, shape_label);
+            if (is_valid) {
+                return shex_model_validator.getTyping();
+            } else {
+                return null;
+            }
+        });
         try {
-            final Future<Typing> f = service.submit(() -> {
-                boolean is_valid = shex_model_validator.validate(test_node, shape_label);
-                if (is_valid) {
-                    return shex_model_validator.getTyping();
-                } else {
-                    return null;
-                }
-
-            });
-            Typing typing = f.get(timeout_mill, TimeUnit.MILLISECONDS);
+            Typing typing = scheduler.await(f, deadline);
             return typing;
-
         } catch (final TimeoutException e) {
             LOGGER.error("shex validation took to long for " + focus_node_resource);
-            service.shutdownNow();
             return null;
         } catch (InterruptedException e) {
             LOGGER.error("And we have an interrupted exception: " + test_node + " " + shape_label);
-            e.printStackTrace();
-            service.shutdownNow();
+            Thread.currentThread().interrupt();
             return null;
         } catch (ExecutionException e) {
-            LOGGER.error("And we have an execution exception: " + test_node + " " + shape_label);
-            e.printStackTrace();
-            service.shutdownNow();
+            LOGGER.error("And we have an execution exception: " + test_node + " " + shape_label, e.getCause());
             return null;
         } finally {
-            service.shutdown();
+            scheduler.recordShapeLatency(shape_label.stringValue(), System.nanoTime() - start);
         }
     }
 
+    /**
+     * @return scheduler for the validations, the shared one if none was set
+     */
+    public ShexValidationScheduler getScheduler() {
+        ShexValidationScheduler s = scheduler;
+        return s != null ? s : ShexValidationScheduler.getShared();
+    }
+
+    /**
+     * @param scheduler for the validations, null for the shared one
+     */
+    public void setScheduler(ShexValidationScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
     public static Set<Resource> getFocusNodesBySparql(Model model, String sparql) {
         Set<Resource> nodes = new HashSet<Resource>();
         QueryExecution qe = QueryExecutionFactory.create(sparql, model);
@@ -493,21 +563,30 @@ public class ShexValidator {
      * @throws IOException
      */
     public Set<ShexViolation> checkForExtraProperties(Resource node_r, Model model, Label shape_label, Typing typing) throws IOException {
+        //only the node and the objects of its properties are read
+        Set<Resource> nodes = new LinkedHashSet<Resource>();
+        nodes.add(node_r);
+        for (RDFNode object : model.listObjectsOfProperty(node_r, null).toList()) {
+            if (object.isURIResource()) {
+                nodes.add(object.asResource());
+            }
+        }
+        return checkForExtraProperties(node_r, new ModelAdjacencyIndex(model, nodes), shape_label, typing);
+    }
+
+    Set<ShexViolation> checkForExtraProperties(Resource node_r, ModelAdjacencyIndex index, Label shape_label, Typing typing) throws IOException {
         Set<ShexViolation> violations = new HashSet<ShexViolation>();
         Set<String> allowed_properties = this.shape_expected_property_ranges.get(shape_label).keySet();
         Set<String> actual_properties = new HashSet<String>();
         Map<String, RDFNode> prop_value = new HashMap<String, RDFNode>(); //don't really care if there are multiple values, one will do.
-        String sparql = "select distinct ?prop ?value where{ <" + node_r.getURI() + "> ?prop ?value }";
-        QueryExecution qe = QueryExecutionFactory.create(sparql, model);
-        ResultSet results = qe.execSelect();
-        while (results.hasNext()) {
-            QuerySolution qs = results.next();
-            Resource prop = qs.getResource("prop");
-            RDFNode value = qs.get("value");
-            actual_properties.add(prop.getURI());
-            prop_value.put(prop.getURI(), value);
+        //only named nodes, as before with the query for the node IRI
+        if (node_r.isURIResource()) {
+            for (Map.Entry<String, List<RDFNode>> entry : index.getProperties(node_r).entrySet()) {
+                actual_properties.add(entry.getKey());
+                //the last value, as the query did
+                prop_value.put(entry.getKey(), entry.getValue().get(entry.getValue().size() - 1));
+            }
         }
-        qe.close();
         actual_properties.removeAll(allowed_properties);
         if (!actual_properties.isEmpty()) {
             ShexViolation extra = new ShexViolation(getCurie(node_r.getURI()));
@@ -526,12 +605,12 @@ public class ShexValidator {
                 Set<String> intended_range_shapes = new HashSet<String>();
                 //For this CLOSED test, no shape fits in intended.  Any use of the property here would be incorrect.
                 intended_range_shapes.add("owl:Nothing");
-                Set<String> node_types = getNodeTypes(model, node_r.getURI());
+                Set<String> node_types = getNodeTypes(index, node_r.getURI());
                 Set<String> object_types = null;
                 //TODO consider here.  extra info but not really meaningful - anything in the range would be wrong.
                 Set<String> matched_range_shapes = null;
                 if (value_is_uri) {
-                    object_types = getNodeTypes(model, value);
+                    object_types = getNodeTypes(index, value);
                     RDFTerm node = rdfFactory.createIRI(value);
                     matched_range_shapes = getAllMatchedShapes(node, typing);
                 }
@@ -639,50 +718,31 @@ public class ShexValidator {
         return model;
     }
 
+    /**
+     * Reads only the statements of the node, the validation uses one index per model for all nodes instead.
+     *
+     * @param model
+     * @param node_uri
+     * @return curies of the named types of the node, and NOT(curie) for the complements of its anonymous types
+     * @throws IOException
+     */
     public Set<String> getNodeTypes(Model model, String node_uri) throws IOException {
+        return getNodeTypes(new ModelAdjacencyIndex(model, Collections.singleton(model.createResource(node_uri))), node_uri);
+    }
 
-        String getOntTerms =
-                "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> "
-                        + "PREFIX owl: <http://www.w3.org/2002/07/owl#> "
-                        + "SELECT DISTINCT ?type ?is_negated " +
-                        "        WHERE { " +
-                        "{ <" + node_uri + "> rdf:type ?type . FILTER(isIRI(?type)) VALUES ?is_negated { false } }" +
-                        "UNION" +
-                        "{ <" + node_uri + "> rdf:type ?blank . ?blank owl:complementOf ?type . FILTER(isBlank(?blank) && isIRI(?type)) VALUES ?is_negated { true } }" +
-                        "FILTER(?type != owl:NamedIndividual)" +
-                        "        }";
+    /**
+     * @param index
+     * @param node_uri
+     * @return curies of the named types of the node, and NOT(curie) for the complements of its anonymous types
+     */
+    Set<String> getNodeTypes(ModelAdjacencyIndex index, String node_uri) {
         Set<String> types = new HashSet<String>();
-        try {
-            QueryExecution qe = QueryExecutionFactory.create(getOntTerms, model);
-            ResultSet results = qe.execSelect();
-            while (results.hasNext()) {
-                QuerySolution qs = results.next();
-                Resource type = qs.getResource("type");
-                boolean isNegated = qs.getLiteral("is_negated").getBoolean();
-                String typeCurie = getCurie(type.getURI());
-                if (isNegated) {
-                    types.add("NOT(" + typeCurie + ")");
-                } else types.add(typeCurie);
-                //				OWLClass t = tbox_reasoner.getRootOntology().getOWLOntologyManager().getOWLDataFactory().getOWLClass(IRI.create(type.getURI()));
-                //				for(OWLClass p : tbox_reasoner.getSuperClasses(t, false).getFlattened()) {
-                //					String type_curie = getCurie(p.getIRI().toString());
-                //					types.add(type_curie);
-                //				}
-                //this slows it down a lot...
-                //should not be needed
-                //Set<String> supers = getGo_lego_repo().getSuperClasses(type.getURI());
-                //for(String s : supers) {
-                //	String type_curie = getCurie(s);
-                //	types.add(type_curie);
-                //}
-
-            }
-            qe.close();
-        } catch (QueryParseException e) {
-            LOGGER.error(getOntTerms);
-            e.printStackTrace();
+        for (String type : index.getTypes(node_uri)) {
+            types.add(getCurie(type));
+        }
+        for (String type : index.getNegatedTypes(node_uri)) {
+            types.add("NOT(" + getCurie(type) + ")");
         }
-
         return types;
     }
 
@@ -690,14 +750,14 @@ public class ShexValidator {
      * We no there is a problem with the focus node and the shape here.  This tries to figure out the constraints that caused the problem and provide some explanation.
      * @param focus_node
      * @param shape_label
-     * @param model
+     * @param index
      * @param typing
      * @return
      * @throws IOException
      */
-    private Set<ShexConstraint> getUnmetConstraints(Resource focus_node, Label shape_label, Model model, Typing typing) throws IOException {
+    private Set<ShexConstraint> getUnmetConstraints(Resource focus_node, Label shape_label, ModelAdjacencyIndex index, Typing typing) throws IOException {
         Set<ShexConstraint> unmet_constraints = new HashSet<ShexConstraint>();
-        Set<String> node_types = getNodeTypes(model, focus_node.getURI());
+        Set<String> node_types = getNodeTypes(index, focus_node.getURI());
         Map<String, Set<String>> expected_property_ranges = shape_expected_property_ranges.get(shape_label);
         //get a map from properties to actual shapes of the asserted objects
         //		JenaRDF jr = new JenaRDF();
@@ -707,14 +767,14 @@ public class ShexValidator {
         //get the focus node in the rdf model
         //check for assertions with properties in the target shape
         for (String prop_uri : expected_property_ranges.keySet()) {
-            Property prop = model.getProperty(prop_uri);
+            Property prop = ResourceFactory.createProperty(prop_uri);
             Interval cardinality = shape_expected_property_cardinality.get(shape_label).get(prop_uri);
             //checking on objects of this property for the problem node.
             int n_objects = 0;
-            for (StmtIterator i = focus_node.listProperties(prop); i.hasNext(); ) {
+            for (Iterator<RDFNode> i = index.getObjects(focus_node, prop_uri).iterator(); i.hasNext(); ) {
                 while (i.hasNext()) {
                     n_objects++;
-                    RDFNode obj = i.nextStatement().getObject();
+                    RDFNode obj = i.next();
                     //check the computed shapes for this individual
                     if (!obj.isResource()) {
                         continue;
@@ -757,7 +817,7 @@ public class ShexValidator {
                     if (!good) { //add violated range constraint to explanation
                         if (obj.isURIResource()) {
                             String object = obj.toString();
-                            Set<String> object_types = getNodeTypes(model, obj.toString());
+                            Set<String> object_types = getNodeTypes(index, obj.toString());
 
                             String property = prop.toString();
                             object = getCurie(object);
@@ -2,6 +2,7 @@ package org.geneontology.minerva;
 
 import com.google.gson.JsonObject;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
@@ -24,6 +25,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.Assert.*;
 
@@ -138,6 +142,287 @@ public class BlazegraphMolecularModelManagerTest {
         }
     }
 
+    @Test
+    public void testBulkImport() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        File dir = folder.newFolder();
+        Set<IRI> expected = new HashSet<>();
+        try {
+            final OWLDataFactory df = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+            final OWLAnnotationProperty modelState = df.getOWLAnnotationProperty(AnnotationShorthand.modelstate.getAnnotationProperty());
+            for (int i = 0; i < 4; i++) {
+                ModelContainer model = m3.generateBlankModel(null);
+                m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+                if (i == 0) {
+                    m3.addModelAnnotations(model, Collections.singleton(df.getOWLAnnotation(modelState, df.getOWLLiteral("delete"))), null);
+                } else {
+                    expected.add(model.getModelId());
+                }
+                m3.saveModel(model);
+                m3.dumpStoredModel(model.getModelId(), dir);
+            }
+        } finally {
+            m3.dispose();
+        }
+        FileUtils.copyFile(new File("src/test/resources/dummy-noctua-modelwith-import.ttl"), new File(dir, "with-import.ttl"));
+        expected.add(IRI.create("http://model.geneontology.org/0000000300000001"));
+        FileUtils.write(new File(dir, "broken.ttl"), "this is not turtle", "UTF-8");
+
+        File checkpoint = new File(folder.getRoot(), "import.log");
+        BlazegraphMolecularModelManager<Void> m3b = createBlazegraphMolecularModelManager();
+        try {
+            BulkModelImporter importer = new BulkModelImporter(m3b);
+            importer.setThreads(2);
+            importer.setBatchSize(2);
+            importer.setCheckpointFile(checkpoint);
+            List<File> files = new ArrayList<>(FileUtils.listFiles(dir, null, false));
+            BulkModelImporter.Progress progress = importer.importModels(files);
+            assertEquals(4, progress.getImported());
+            assertEquals(1, progress.getSkipped());
+            assertEquals(1, progress.getFailed());
+            assertEquals(expected, m3b.getStoredModelIds());
+            // imports are removed
+            assertTrue(m3b.loadModelABox(IRI.create("http://model.geneontology.org/0000000300000001")).getImportsDeclarations().isEmpty());
+
+            // the checkpoint skips the imported files, the broken file is tried again
+            progress = importer.importModels(files);
+            assertEquals(5, progress.getResumed());
+            assertEquals(0, progress.getImported());
+            assertEquals(1, progress.getFailed());
+            assertEquals(expected, m3b.getStoredModelIds());
+        } finally {
+            m3b.dispose();
+        }
+    }
+
+    @Test
+    public void testSaveWritesDifference() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        try {
+            final OWLDataFactory df = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+            final OWLObjectProperty partOf = df.getOWLObjectProperty(curieHandler.getIRI("BFO:0000050"));
+            final OWLAnnotation comment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("test"));
+            GroupCommitModelWriter writer = m3.getModelWriter();
+
+            ModelContainer model = m3.generateBlankModel(null);
+            OWLNamedIndividual i1 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+            OWLNamedIndividual i2 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000002"), null, null);
+            m3.addFact(model, partOf, i1, i2, Collections.singleton(comment), null);
+            m3.saveModel(model);
+            assertFalse(model.isModified());
+            long added = writer.getAddedStatementCount();
+            assertTrue(added > 0);
+            assertEquals(0, writer.getRemovedStatementCount());
+
+            // saving again does not change the graph, including the annotated axiom with blank nodes
+            m3.saveModel(model);
+            assertEquals(added, writer.getAddedStatementCount());
+            assertEquals(0, writer.getRemovedStatementCount());
+
+            // only the new individual is written
+            OWLNamedIndividual i3 = m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000003"), null, null);
+            m3.saveModel(model);
+            long addedForIndividual = writer.getAddedStatementCount() - added;
+            assertTrue(addedForIndividual > 0 && addedForIndividual < added);
+            assertEquals(0, writer.getRemovedStatementCount());
+
+            m3.deleteIndividual(model, i3, null);
+            m3.saveModel(model);
+            assertEquals(addedForIndividual, writer.getRemovedStatementCount());
+            assertEquals(model.getAboxOntology().getLogicalAxioms(), m3.loadModelABox(model.getModelId()).getLogicalAxioms());
+
+            // an annotation of one edge only rewrites the reified axiom of this edge
+            List<OWLNamedIndividual> chain = new ArrayList<>();
+            for (int i = 10; i < 30; i++) {
+                chain.add(m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:00000" + i), null, null));
+            }
+            for (int i = 1; i < chain.size(); i++) {
+                m3.addFact(model, partOf, chain.get(i - 1), chain.get(i), Collections.singleton(comment), null);
+            }
+            m3.saveModel(model);
+            long addedForChain = writer.getAddedStatementCount() - added - addedForIndividual;
+            long removedBefore = writer.getRemovedStatementCount();
+            final OWLAnnotation otherComment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("other"));
+            m3.addAnnotations(model, partOf, chain.get(0), chain.get(1), Collections.singleton(otherComment), null);
+            m3.saveModel(model);
+            long addedForAnnotation = writer.getAddedStatementCount() - added - addedForIndividual - addedForChain;
+            long removedForAnnotation = writer.getRemovedStatementCount() - removedBefore;
+            assertTrue(addedForAnnotation > 0 && addedForAnnotation < addedForChain / 10);
+            assertTrue(removedForAnnotation > 0 && removedForAnnotation < addedForAnnotation);
+            assertEquals(model.getAboxOntology().getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION), m3.loadModelABox(model.getModelId()).getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION));
+
+            // queued saves of many models
+            List<ModelContainer> models = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                ModelContainer other = m3.generateBlankModel(null);
+                m3.createIndividualWithIRI(other, curieHandler.getIRI("GO:0000001"), null, null);
+                models.add(other);
+            }
+            long commits = writer.getCommitCount();
+            m3.saveAllModels();
+            assertTrue(writer.getCommitCount() - commits <= 6);
+            for (ModelContainer other : models) {
+                assertFalse(other.isModified());
+                assertEquals(other.getAboxOntology().getIndividualsInSignature(), m3.loadModelABox(other.getModelId()).getIndividualsInSignature());
+            }
+        } finally {
+            m3.dispose();
+        }
+    }
+
+    @Test
+    public void testStoredModelIds() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        File dir = folder.newFolder();
+        IRI modelId;
+        try {
+            ModelContainer model = m3.generateBlankModel(null);
+            modelId = model.getModelId();
+            assertFalse(m3.isStoredModel(modelId));
+            assertTrue(m3.getAvailableModelIds().contains(modelId));
+            try {
+                m3.loadModelABox(modelId);
+                fail("Model is not stored yet");
+            } catch (OWLOntologyCreationException e) {
+                // expected
+            }
+            m3.saveModel(model);
+            assertTrue(m3.isStoredModel(modelId));
+            assertEquals(Collections.singleton(modelId), m3.getStoredModelIds());
+            m3.dumpStoredModel(modelId, dir);
+        } finally {
+            m3.dispose();
+        }
+
+        // seeded from the journal and updated by imports
+        BlazegraphMolecularModelManager<Void> m3b = createBlazegraphMolecularModelManager();
+        try {
+            assertTrue(m3b.getStoredModelIds().isEmpty());
+            m3b.importModelToDatabase(dir.listFiles()[0], false);
+            assertTrue(m3b.isStoredModel(modelId));
+            m3b.loadModel(modelId, false);
+            assertNotNull(m3b.getModel(modelId));
+        } finally {
+            m3b.dispose();
+        }
+    }
+
+    @Test
+    public void testIncrementalDump() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        File dir = folder.newFolder();
+        try {
+            StoredModelExporter exporter = m3.getModelExporter();
+            ModelContainer model = m3.generateBlankModel(null);
+            m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000001"), null, null);
+            m3.saveModel(model);
+            assertTrue(exporter.export(model.getModelId(), dir));
+            // unchanged
+            assertFalse(exporter.export(model.getModelId(), dir));
+            m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000002"), null, null);
+            m3.saveModel(model);
+            assertTrue(exporter.export(model.getModelId(), dir));
+            // no temp files are left in the folder
+            assertEquals(1, dir.list().length);
+            // changed by someone else, the model is exported again
+            File file = dir.listFiles()[0];
+            FileUtils.writeStringToFile(file, "changed", "UTF-8");
+            assertTrue(exporter.export(model.getModelId(), dir));
+            assertTrue(FileUtils.readFileToString(file, "UTF-8").contains("GO_0000002"));
+
+            // all models, in parallel
+            for (int i = 0; i < 5; i++) {
+                ModelContainer other = m3.generateBlankModel(null);
+                m3.createIndividualWithIRI(other, curieHandler.getIRI("GO:0000001"), null, null);
+                m3.saveModel(other);
+            }
+            File exportFolder = folder.getRoot();
+            m3.dumpAllStoredModels();
+            File exported = new File(exportFolder, StringUtils.replaceOnce(model.getModelId().toString(), "http://model.geneontology.org/", "") + ".ttl");
+            assertTrue(exported.isFile());
+            assertTrue(exported.setLastModified(0));
+            m3.dumpAllStoredModels();
+            assertEquals(0, exported.lastModified());
+
+            // the export after a save is queued
+            m3.createIndividualWithIRI(model, curieHandler.getIRI("GO:0000003"), null, null);
+            m3.saveModel(model);
+            exporter.exportAsync(model.getModelId(), exportFolder).get();
+            assertNotEquals(0, exported.lastModified());
+            assertTrue(FileUtils.readFileToString(exported, "UTF-8").contains("GO_0000003"));
+        } finally {
+            m3.dispose();
+        }
+    }
+
+    @Test
+    public void testConcurrentGetModel() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            ModelContainer model = m3.generateBlankModel(null);
+            IRI modelId = model.getModelId();
+            m3.saveModel(model);
+            m3.unlinkModel(modelId);
+
+            // concurrent requests for the same model share a single load
+            List<Future<ModelContainer>> requests = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                requests.add(executor.submit(() -> m3.getModel(modelId)));
+            }
+            Set<ModelContainer> loaded = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Future<ModelContainer> request : requests) {
+                loaded.add(request.get());
+            }
+            assertEquals(1, loaded.size());
+            assertNotNull(loaded.iterator().next());
+            assertEquals(1, m3.getModelLoadLatency().count);
+        } finally {
+            executor.shutdown();
+            m3.dispose();
+        }
+    }
+
+    @Test
+    public void testModelIndex() throws Exception {
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        try {
+            final OWLDataFactory df = m3.getOntology().getOWLOntologyManager().getOWLDataFactory();
+            final OWLAnnotationProperty contributor = df.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor"));
+            final String go1 = curieHandler.getIRI("GO:0000001").toString();
+            final String go2 = curieHandler.getIRI("GO:0000002").toString();
+            ModelIndex index = m3.getModelIndex();
+
+            ModelContainer first = m3.generateBlankModel(null);
+            m3.createIndividual(first, df.getOWLClass(IRI.create(go1)), null);
+            m3.addModelAnnotations(first, Collections.singleton(df.getOWLAnnotation(contributor, df.getOWLLiteral("alice"))), null);
+            m3.saveModel(first);
+            assertEquals(Collections.singleton(first.getModelId()), index.getModels(new ModelIndex.Query().allOf(ModelIndex.Field.TYPE, Collections.singleton(go1))));
+
+            // the built index is updated with the next save
+            ModelContainer second = m3.generateBlankModel(null);
+            m3.createIndividual(second, df.getOWLClass(IRI.create(go1)), null);
+            OWLNamedIndividual i2 = m3.createIndividual(second, df.getOWLClass(IRI.create(go2)), null);
+            m3.createIndividual(second, df.getOWLClass(IRI.create("http://identifiers.org/uniprot/P00001")), null);
+            m3.addModelAnnotations(second, Collections.singleton(df.getOWLAnnotation(contributor, df.getOWLLiteral("bob"))), null);
+            m3.saveModel(second);
+            Set<IRI> both = new HashSet<>(Arrays.asList(first.getModelId(), second.getModelId()));
+            assertEquals(both, index.getModels(new ModelIndex.Query().allOf(ModelIndex.Field.TYPE, Collections.singleton(go1))));
+            assertEquals(Collections.singleton(second.getModelId()), index.getModels(new ModelIndex.Query().allOf(ModelIndex.Field.TYPE, Arrays.asList(go1, go2))));
+            assertEquals(Collections.singleton(first.getModelId()), index.getModels(new ModelIndex.Query()
+                    .anyOf(ModelIndex.Field.TYPE, Arrays.asList(go1, go2))
+                    .anyOf(ModelIndex.Field.CONTRIBUTOR, Arrays.asList("alice", "carol"))));
+
+            m3.deleteIndividual(second, i2, null);
+            m3.saveModel(second);
+            assertTrue(index.getModels(new ModelIndex.Query().allOf(ModelIndex.Field.TYPE, Collections.singleton(go2))).isEmpty());
+            assertEquals(Collections.singleton(go1), index.getUsedValues(ModelIndex.Field.TYPE, Arrays.asList(go1, go2)));
+            assertEquals(Collections.singleton("http://identifiers.org/uniprot/P00001"), m3.buildModelGeneMap().get(second.getModelId().toString()));
+        } finally {
+            m3.dispose();
+        }
+    }
+
     @Test
     public void testSPARQLQuery() throws Exception {
         String sourceModelPath = "src/test/resources/dummy-noctua-model.ttl";
@@ -165,6 +450,62 @@ public class BlazegraphMolecularModelManagerTest {
         }
     }
 
+    @Test
+    public void testOpenSPARQLQuery() throws Exception {
+        String sourceModelPath = "src/test/resources/dummy-noctua-model.ttl";
+        BlazegraphMolecularModelManager<Void> m3 = createBlazegraphMolecularModelManager();
+        try {
+            m3.importModelToDatabase(new File(sourceModelPath), false);
+            String select = "SELECT ?s ?p ?o WHERE { GRAPH ?g { ?s ?p ?o } }";
+            int all = 0;
+            TupleQueryResult selectResult = (TupleQueryResult) m3.openSPARQLQuery(select, 10, 0);
+            try {
+                assertEquals(Arrays.asList("s", "p", "o"), selectResult.getBindingNames());
+                while (selectResult.hasNext()) {
+                    selectResult.next();
+                    all += 1;
+                }
+            } finally {
+                selectResult.close();
+            }
+            assertTrue(all > 3);
+            assertFalse(((BlazegraphMolecularModelManager.CappedQueryResult) selectResult).isTruncated());
+            // row cap
+            int capped = 0;
+            TupleQueryResult cappedResult = (TupleQueryResult) m3.openSPARQLQuery(select, 10, 3);
+            try {
+                while (cappedResult.hasNext()) {
+                    cappedResult.next();
+                    capped += 1;
+                }
+            } finally {
+                cappedResult.close();
+            }
+            assertEquals(3, capped);
+            assertTrue(((BlazegraphMolecularModelManager.CappedQueryResult) cappedResult).isTruncated());
+            // exactly as many rows as the cap
+            TupleQueryResult fullResult = (TupleQueryResult) m3.openSPARQLQuery(select, 10, all);
+            try {
+                while (fullResult.hasNext()) {
+                    fullResult.next();
+                }
+            } finally {
+                fullResult.close();
+            }
+            assertFalse(((BlazegraphMolecularModelManager.CappedQueryResult) fullResult).isTruncated());
+            // graph result, closed before it is consumed
+            GraphQueryResult constructResult = (GraphQueryResult) m3.openSPARQLQuery("CONSTRUCT { ?s <http://example.org/subject_in> ?g } WHERE { GRAPH ?g { ?s ?p ?o } }", 10, 0);
+            try {
+                assertEquals("http://model.geneontology.org/0000000300000001", constructResult.next().getObject().stringValue());
+            } finally {
+                constructResult.close();
+            }
+            assertFalse(constructResult.hasNext());
+        } finally {
+            m3.dispose();
+        }
+    }
+
     /**
      * Test the process that adds some individuals, saves them and then loads them back into the model.
      *
@@ -0,0 +1,85 @@
+package org.geneontology.minerva;
+
+import org.geneontology.minerva.test.TestOntology;
+import org.junit.Test;
+import org.obolibrary.obo2owl.Obo2OWLConstants.Obo2OWLVocabulary;
+import org.obolibrary.oboformat.parser.OBOFormatConstants.OboFormatTag;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check the label, synonym, alt-id and identifier lookups of the wrapper, which use the shared
+ * {@link OntologyAnnotationIndex}, against the annotation assertions of the ontologies.
+ */
+public class MinervaOWLGraphWrapperTest {
+
+    private static final IRI PART_OF = IRI.create("http://purl.obolibrary.org/obo/BFO_0000050");
+    private static final IRI CLASS = IRI.create("http://purl.obolibrary.org/obo/GO_9999991");
+    private static final IRI OTHER_CLASS = IRI.create("http://purl.obolibrary.org/obo/GO_9999992");
+
+    @Test
+    public void testLabelsMatchScan() throws Exception {
+        OWLOntology tbox = TestOntology.load();
+        MinervaOWLGraphWrapper wrapper = new MinervaOWLGraphWrapper(tbox);
+        Map<String, Set<IRI>> scanned = new HashMap<>();
+        for (OWLAnnotationAssertionAxiom aa : tbox.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+            if (aa.getProperty().isLabel() && aa.getValue() instanceof OWLLiteral && aa.getSubject() instanceof IRI) {
+                scanned.computeIfAbsent(((OWLLiteral) aa.getValue()).getLiteral(), l -> new HashSet<>()).add((IRI) aa.getSubject());
+            }
+        }
+        assertFalse(scanned.isEmpty());
+        for (Map.Entry<String, Set<IRI>> e : scanned.entrySet()) {
+            assertTrue(e.getKey(), e.getValue().contains(wrapper.getIRIByLabel(e.getKey())));
+            if (e.getValue().size() == 1) {
+                assertEquals(e.getKey(), e.getValue().iterator().next(), wrapper.getIRIByLabel(e.getKey(), true));
+            }
+        }
+        assertNull(wrapper.getIRIByLabel("no such label"));
+        assertEquals(PART_OF, ((OWLNamedObject) wrapper.getOWLObjectByLabel("part of")).getIRI());
+        assertEquals(PART_OF, wrapper.getIRIByIdentifier("part_of"));
+    }
+
+    @Test
+    public void testIndexFollowsChanges() throws Exception {
+        OWLOntology tbox = TestOntology.load();
+        OWLOntologyManager manager = tbox.getOWLOntologyManager();
+        OWLDataFactory df = manager.getOWLDataFactory();
+        OWLOntology abox = manager.createOntology(IRI.create("http://example.org/abox"));
+        manager.applyChange(new AddImport(abox, df.getOWLImportsDeclaration(tbox.getOntologyID().getOntologyIRI().get())));
+        MinervaOWLGraphWrapper wrapper = new MinervaOWLGraphWrapper(abox);
+        assertEquals(PART_OF, wrapper.getIRIByLabel("part of"));
+        OntologyAnnotationIndex tboxIndex = OntologyAnnotationIndex.get(tbox);
+
+        manager.addAxiom(abox, df.getOWLDeclarationAxiom(df.getOWLClass(CLASS)));
+        manager.addAxiom(abox, df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), CLASS, df.getOWLLiteral("test class")));
+        manager.addAxiom(abox, df.getOWLAnnotationAssertionAxiom(
+                df.getOWLAnnotationProperty(Obo2OWLVocabulary.IRI_OIO_hasExactSynonym.getIRI()), CLASS, df.getOWLLiteral("test synonym")));
+        manager.addAxiom(abox, df.getOWLAnnotationAssertionAxiom(
+                wrapper.getAnnotationProperty(OboFormatTag.TAG_ALT_ID.getTag()), CLASS, df.getOWLLiteral("GO:9999990")));
+        assertEquals(CLASS, wrapper.getIRIByLabel("test class"));
+        assertEquals(Collections.singleton(CLASS), wrapper.getIRIsBySynonym("test synonym"));
+        assertEquals(df.getOWLClass(CLASS), wrapper.getObjectByAltId("GO:9999990"));
+        assertEquals(df.getOWLClass(CLASS), wrapper.getAllOWLObjectsByAltId().get("GO:9999990"));
+        assertEquals(CLASS, wrapper.getIRIByIdentifier("GO:9999990", true));
+
+        // a second wrapper shares the indexes, a change of the abox does not rebuild the one of the tbox
+        assertSame(tboxIndex, OntologyAnnotationIndex.get(tbox));
+        assertSame(OntologyAnnotationIndex.get(abox), OntologyAnnotationIndex.get(abox));
+        assertEquals(CLASS, new MinervaOWLGraphWrapper(abox).getIRIByLabel("test class"));
+
+        manager.addAxiom(abox, df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), OTHER_CLASS, df.getOWLLiteral("test class")));
+        assertNotNull(wrapper.getIRIByLabel("test class"));
+        try {
+            wrapper.getIRIByLabel("test class", true);
+            fail("label is shared by two classes");
+        } catch (Exception e) {
+            // expected
+        }
+        manager.removeAxiom(abox, df.getOWLAnnotationAssertionAxiom(df.getRDFSLabel(), CLASS, df.getOWLLiteral("test class")));
+        assertEquals(OTHER_CLASS, wrapper.getIRIByLabel("test class", true));
+        assertSame(tboxIndex, OntologyAnnotationIndex.get(tbox));
+    }
+}
@@ -0,0 +1,150 @@
+package org.geneontology.minerva;
+
+import org.geneontology.minerva.UndoAwareMolecularModelManager.UndoMetadata;
+import org.geneontology.minerva.curie.CurieHandler;
+import org.geneontology.minerva.curie.DefaultCurieHandler;
+import org.geneontology.minerva.test.TestOntology;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLClassExpression;
+import org.semanticweb.owlapi.model.OWLNamedIndividual;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class ModelResidencyPolicyTest {
+
+    private final CurieHandler curieHandler = DefaultCurieHandler.getDefaultHandler();
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEviction() throws Exception {
+        UndoAwareMolecularModelManager m3 = new UndoAwareMolecularModelManager(TestOntology.load(), curieHandler,
+                "http://testmodel.geneontology.org/", folder.newFile().getAbsolutePath(), null,
+                TestOntology.newJournalPath(folder.getRoot()), false);
+        try {
+            UndoMetadata metadata = new UndoMetadata("test-user-id");
+            IRI[] ids = new IRI[3];
+            for (int i = 0; i < ids.length; i++) {
+                ModelContainer model = m3.generateBlankModel(null);
+                m3.createIndividualNonReasoning(model, null, metadata);
+                m3.saveModel(model);
+                ids[i] = model.getModelId();
+            }
+            for (IRI id : ids) {
+                m3.unlinkModel(id);
+            }
+            IRI a = ids[0], b = ids[1], c = ids[2];
+
+            m3.setResidencyPolicy(new ModelResidencyPolicy(2, 0, ModelResidencyPolicy.Order.LRU, false));
+            m3.getModel(a);
+            m3.getModel(b);
+            m3.getModel(c);
+            assertEquals(new HashSet<>(Arrays.asList(b, c)), m3.getCurrentModelIds());
+            m3.getModel(b);
+            ModelResidencyPolicy.Statistics statistics = m3.getModelMapStatistics();
+            assertEquals(1, statistics.hits);
+            assertEquals(3, statistics.misses);
+            assertEquals(1, statistics.evictions);
+
+            // modified models are pinned
+            OWLNamedIndividual added = m3.createIndividualNonReasoning(m3.getModel(c), null, metadata);
+            assertTrue(m3.isModelModified(c));
+            m3.getModel(b);
+            m3.getModel(a);
+            assertEquals(new HashSet<>(Arrays.asList(a, c)), m3.getCurrentModelIds());
+            statistics = m3.getModelMapStatistics();
+            assertEquals(2, statistics.evictions);
+            assertEquals(1, statistics.pinned);
+
+            // or saved before they are unloaded
+            m3.setResidencyPolicy(new ModelResidencyPolicy(2, 0, ModelResidencyPolicy.Order.LRU, true));
+            m3.getModel(a);
+            m3.getModel(b);
+            assertEquals(new HashSet<>(Arrays.asList(a, b)), m3.getCurrentModelIds());
+            statistics = m3.getModelMapStatistics();
+            assertEquals(3, statistics.evictions);
+            assertEquals(1, statistics.saves);
+            assertTrue(m3.getModel(c).getAboxOntology().containsIndividualInSignature(added.getIRI()));
+
+            // pinned models are kept until they are released
+            ModelContainer pinned = m3.pinModel(a);
+            m3.getModel(b);
+            m3.getModel(c);
+            assertEquals(new HashSet<>(Arrays.asList(a, c)), m3.getCurrentModelIds());
+            assertSame(pinned, m3.getModel(a));
+            m3.unpinModel(a);
+            m3.getModel(c);
+            m3.getModel(b);
+            assertEquals(new HashSet<>(Arrays.asList(b, c)), m3.getCurrentModelIds());
+        } finally {
+            m3.dispose();
+        }
+    }
+
+    @Test
+    public void testEditDuringEviction() throws Exception {
+        UndoAwareMolecularModelManager m3 = new UndoAwareMolecularModelManager(TestOntology.load(), curieHandler,
+                "http://testmodel.geneontology.org/", folder.newFile().getAbsolutePath(), null,
+                TestOntology.newJournalPath(folder.getRoot()), false);
+        try {
+            UndoMetadata metadata = new UndoMetadata("test-user-id");
+            IRI[] ids = new IRI[3];
+            for (int i = 0; i < ids.length; i++) {
+                ModelContainer model = m3.generateBlankModel(null);
+                m3.saveModel(model);
+                ids[i] = model.getModelId();
+                m3.unlinkModel(ids[i]);
+            }
+            final IRI edited = ids[0];
+            // only one model fits, every lookup of another model tries to unload the edited one
+            m3.setResidencyPolicy(new ModelResidencyPolicy(1, 0, ModelResidencyPolicy.Order.LRU, true));
+            final AtomicBoolean done = new AtomicBoolean(false);
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            try {
+                Future<?> loads = executor.submit(() -> {
+                    while (!done.get()) {
+                        m3.getModel(ids[1]);
+                        m3.getModel(ids[2]);
+                    }
+                });
+                Future<List<IRI>> edits = executor.submit(() -> {
+                    List<IRI> added = new ArrayList<>();
+                    try {
+                        for (int i = 0; i < 200; i++) {
+                            added.add(m3.createIndividualNonReasoning(edited, (OWLClassExpression) null, null, metadata).getIRI());
+                        }
+                    } finally {
+                        done.set(true);
+                    }
+                    return added;
+                });
+                List<IRI> added = edits.get(2, TimeUnit.MINUTES);
+                loads.get(2, TimeUnit.MINUTES);
+                assertTrue(m3.getModelMapStatistics().evictions > 0);
+                // no edit was applied to an unloaded copy of the model
+                OWLOntology abox = m3.getModel(edited).getAboxOntology();
+                for (IRI individual : added) {
+                    assertTrue(individual.toString(), abox.containsIndividualInSignature(individual));
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            m3.dispose();
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package org.geneontology.minerva;
+
+import org.geneontology.minerva.test.TestOntology;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that the cached labels and existence flags give the same answers as the journal.
+ */
+public class OntologyTermCacheTest {
+
+    static BlazegraphOntologyManager onto_repo;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String PART_OF = "http://purl.obolibrary.org/obo/BFO_0000050";
+    private static final String HAS_PART = "http://purl.obolibrary.org/obo/BFO_0000051";
+    private static final String UNKNOWN = "http://purl.obolibrary.org/obo/GO_9999999";
+    private static final String UNKNOWN_2 = "http://purl.obolibrary.org/obo/GO_9999998";
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        onto_repo = new BlazegraphOntologyManager(TestOntology.newJournalPath(folder.getRoot()), false, TestOntology.load());
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        onto_repo.dispose();
+    }
+
+    @Test
+    public void testLabelsAndExistence() throws Exception {
+        onto_repo.setTermCacheSize(1000);
+        Set<String> entities = new HashSet<>(Arrays.asList(PART_OF, HAS_PART, UNKNOWN));
+        Map<String, String> labels = onto_repo.getLabels(entities);
+        assertEquals(2, labels.size());
+        assertEquals("part of", labels.get(PART_OF));
+        OntologyTermCache.Statistics stats = onto_repo.getTermCacheStatistics();
+        assertEquals(3, stats.misses);
+        assertEquals(1, stats.loads);
+
+        // answered from the cache, including the term without a label
+        assertEquals("has part", onto_repo.getLabel(HAS_PART));
+        assertNull(onto_repo.getLabel(UNKNOWN));
+        assertTrue(onto_repo.exists(PART_OF));
+        assertFalse(onto_repo.exists(UNKNOWN));
+        assertFalse(onto_repo.exists(UNKNOWN));
+        stats = onto_repo.getTermCacheStatistics();
+        assertEquals(2, stats.loads);
+        assertEquals(4, stats.hits);
+        assertEquals(2, stats.negativeHits);
+        // existence of several terms, only the unknown ones are loaded
+        assertEquals(new HashSet<>(Arrays.asList(PART_OF, HAS_PART)), onto_repo.getExisting(new HashSet<>(Arrays.asList(PART_OF, HAS_PART, UNKNOWN, UNKNOWN_2))));
+        assertEquals(3, onto_repo.getTermCacheStatistics().loads);
+
+        // the same answers without the cache
+        onto_repo.setTermCacheSize(0);
+        assertNull(onto_repo.getTermCacheStatistics());
+        assertEquals(labels, onto_repo.getLabels(entities));
+        assertTrue(onto_repo.exists(PART_OF));
+        assertFalse(onto_repo.exists(UNKNOWN));
+        assertEquals(new HashSet<>(Arrays.asList(PART_OF, HAS_PART)), onto_repo.getExisting(entities));
+    }
+
+    @Test
+    public void testWarm() throws Exception {
+        onto_repo.setTermCacheSize(1000);
+        assertTrue(onto_repo.warmTermCache() > 0);
+        assertEquals("part of", onto_repo.getLabel(PART_OF));
+        assertEquals(0, onto_repo.getTermCacheStatistics().misses);
+    }
+}
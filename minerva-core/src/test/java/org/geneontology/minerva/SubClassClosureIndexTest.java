@@ -0,0 +1,101 @@
+package org.geneontology.minerva;
+
+import org.geneontology.minerva.test.TestOntology;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the in-memory closure index gives the same answers as the SPARQL queries.
+ */
+public class SubClassClosureIndexTest {
+
+    static BlazegraphOntologyManager onto_repo;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static final Set<String> URIS = new HashSet<>(Arrays.asList(
+            "http://purl.obolibrary.org/obo/ECO_0000314",
+            "http://purl.obolibrary.org/obo/WBbt_0005753",
+            "http://purl.obolibrary.org/obo/GO_0000776",
+            "http://purl.obolibrary.org/obo/GO_0022607",
+            "http://purl.obolibrary.org/obo/GO_0060090",
+            "http://purl.obolibrary.org/obo/GO_0005810",
+            "http://purl.obolibrary.org/obo/GO_2000803",
+            "http://purl.obolibrary.org/obo/GO_0008529",
+            "http://identifiers.org/uniprot/Q13253",
+            "http://identifiers.org/zfin/ZDB-GENE-010410-3",
+            "http://identifiers.org/wormbase/WBGene00000275",
+            "https://www.ebi.ac.uk/complexportal/complex/CPX-9",
+            "http://purl.obolibrary.org/obo/NCBITaxon_575614"));
+
+    private static final Set<String> ROOTS = new HashSet<>(Arrays.asList(
+            "http://purl.obolibrary.org/obo/ECO_0000000",
+            "http://purl.obolibrary.org/obo/CL_0000000",
+            "http://purl.obolibrary.org/obo/GO_0110165",
+            "http://purl.obolibrary.org/obo/GO_0008150",
+            "http://purl.obolibrary.org/obo/GO_0003674"));
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        OWLOntology ontology = TestOntology.load();
+        onto_repo = new BlazegraphOntologyManager(TestOntology.newJournalPath(folder.getRoot()), false, ontology);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        onto_repo.dispose();
+    }
+
+    @Test
+    public void testIndexMatchesSparql() throws Exception {
+        Map<String, Set<String>> superClassMap = onto_repo.getSuperClassMap(URIS);
+        Map<String, Set<String>> superCategoryMap = onto_repo.getSuperCategoryMap(URIS);
+        Map<String, Set<String>> neoRoots = onto_repo.getNeoRoots(URIS);
+
+        SubClassClosureIndex index = SubClassClosureIndex.build(onto_repo.getGo_lego_repo());
+        File sidecar = new File(folder.getRoot(), "closure.idx.gz");
+        index.write(sidecar);
+        SubClassClosureIndex reread = SubClassClosureIndex.read(sidecar);
+        assertEquals(index.size(), reread.size());
+
+        Map<String, Set<String>> expectedSupers = new HashMap<>();
+        for (String uri : URIS) {
+            expectedSupers.put(uri, onto_repo.getAllSuperClasses(uri));
+        }
+        Map<String, Set<String>> expectedSubs = new HashMap<>();
+        for (String root : ROOTS) {
+            expectedSubs.put(root, onto_repo.getAllSubClasses(root));
+        }
+
+        onto_repo.enableClosureIndex(sidecar);
+        try {
+            assertTrue(onto_repo.getClosureIndex() != null);
+            for (String uri : URIS) {
+                assertEquals("super classes of " + uri, expectedSupers.get(uri), onto_repo.getAllSuperClasses(uri));
+            }
+            for (String root : ROOTS) {
+                assertEquals("sub classes of " + root, expectedSubs.get(root), onto_repo.getAllSubClasses(root));
+            }
+            assertEquals(superClassMap, onto_repo.getSuperClassMap(URIS));
+            assertEquals(superCategoryMap, onto_repo.getSuperCategoryMap(URIS));
+            assertEquals(neoRoots, onto_repo.getNeoRoots(URIS));
+        } finally {
+            onto_repo.disableClosureIndex();
+        }
+    }
+}
@@ -80,6 +80,67 @@ public class UndoAwareMolecularModelManagerTest {
         }
     }
 
+    @Test
+    public void testBoundedUndoHistory() throws Exception {
+        OWLOntology tbox = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(this.getClass().getResourceAsStream("/go-mgi-signaling-test.obo"));
+        m3 = new UndoAwareMolecularModelManager(tbox, curieHandler, "http://testmodel.geneontology.org/",
+                folder.newFile().getAbsolutePath(), null, TestOntology.newJournalPath(folder.getRoot()), false);
+        try {
+            // at most three undo steps, only the newest one in memory
+            m3.setUndoHistoryPolicy(new UndoHistoryPolicy(3, UndoHistoryPolicy.ESTIMATED_BYTES_PER_CHANGE, 0, 0, folder.newFolder()));
+            String userId = "test-user-id";
+            ModelContainer model = m3.generateBlankModel(null);
+            OWLNamedIndividual individual = m3.createIndividual(model.getModelId(), "GO:0001158", null, new UndoMetadata(userId));
+            String individualId = individual.getIRI().toString();
+            for (String type : new String[]{"GO:0001664", "GO:0005654", "GO:0004872", "GO:0005515"}) {
+                m3.addType(model.getModelId(), individualId, type, new UndoMetadata(userId));
+            }
+            MolecularModelJsonRenderer renderer = new MolecularModelJsonRenderer(model, null, curieHandler);
+            assertEquals(5, renderer.renderObject(individual).type.length);
+            List<ChangeEvent> undoEvents = m3.getUndoRedoEvents(model.getModelId()).getLeft();
+            assertEquals(3, undoEvents.size());
+            assertEquals(userId, undoEvents.get(2).getUserId());
+            assertEquals(UndoHistoryPolicy.estimateBytes(1), m3.getEstimatedUndoHistoryBytes());
+
+            // the spilled steps are read back
+            for (int i = 0; i < 3; i++) {
+                assertTrue(m3.undo(model, userId));
+            }
+            assertEquals(2, renderer.renderObject(individual).type.length);
+            assertFalse(m3.undo(model, userId));
+            assertEquals(3, m3.getUndoRedoEvents(model.getModelId()).getRight().size());
+
+            assertTrue(m3.redo(model, userId));
+            assertEquals(3, renderer.renderObject(individual).type.length);
+        } finally {
+            m3.dispose();
+        }
+    }
+
+    @Test
+    public void testCoalesceUndoHistory() throws Exception {
+        OWLOntology tbox = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(this.getClass().getResourceAsStream("/go-mgi-signaling-test.obo"));
+        m3 = new UndoAwareMolecularModelManager(tbox, curieHandler, "http://testmodel.geneontology.org/",
+                folder.newFile().getAbsolutePath(), null, TestOntology.newJournalPath(folder.getRoot()), false);
+        try {
+            m3.setUndoHistoryPolicy(new UndoHistoryPolicy(0, 0, 0, 60000, null));
+            ModelContainer model = m3.generateBlankModel(null);
+            OWLNamedIndividual individual = m3.createIndividual(model.getModelId(), "GO:0001158", null, new UndoMetadata("user-1"));
+            String individualId = individual.getIRI().toString();
+            m3.addType(model.getModelId(), individualId, "GO:0001664", new UndoMetadata("user-1"));
+            // different user
+            m3.addType(model.getModelId(), individualId, "GO:0005654", new UndoMetadata("user-2"));
+            assertEquals(2, m3.getUndoRedoEvents(model.getModelId()).getLeft().size());
+
+            assertTrue(m3.undo(model, "user-2"));
+            assertTrue(m3.undo(model, "user-1"));
+            // both edits of user-1 were undone together
+            assertFalse(model.getAboxOntology().containsEntityInSignature(individual));
+        } finally {
+            m3.dispose();
+        }
+    }
+
     static void printToJson(Object obj) {
         String json = MolecularModelJsonRenderer.renderToJson(obj, true);
         System.out.println("---------");
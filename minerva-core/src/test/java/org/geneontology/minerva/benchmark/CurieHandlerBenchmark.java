@@ -0,0 +1,109 @@
+package org.geneontology.minerva.benchmark;
+
+import org.apache.jena.rdf.model.*;
+import org.geneontology.minerva.curie.CurieHandler;
+import org.geneontology.minerva.curie.DefaultCurieHandler;
+import org.geneontology.minerva.curie.MappedCurieHandler;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.semanticweb.owlapi.model.IRI;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the curie lookup with the prefix trie, with and without the memo, to the previous
+ * scan over all namespaces. The IRIs are those of the statements in a directory of GO-CAMs,
+ * converted in the order of the statements as the renderer does.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -pl minerva-core -am -Pbenchmark clean test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test
+ * cd minerva-core
+ * java -cp target/test-classes:target/classes:../minerva-json/target/classes:../minerva-test/target/classes:$(cat cp.txt) \
+ *   org.openjdk.jmh.Main CurieHandlerBenchmark -p modelDirectory=path/to/go-cams
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CurieHandlerBenchmark {
+
+    @Param({"src/test/resources/validation/model_test"})
+    public String modelDirectory;
+
+    private Map<String, String> mappings;
+    private CurieHandler trie;
+    private CurieHandler trieWithMemo;
+    private final List<IRI> iris = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        mappings = DefaultCurieHandler.loadDefaultMappings().getMappings();
+        trie = new MappedCurieHandler(mappings, 0);
+        trieWithMemo = new MappedCurieHandler(mappings);
+        for (File file : new File(modelDirectory).listFiles()) {
+            if (file.getName().endsWith(".ttl")) {
+                Model model = ModelFactory.createDefaultModel();
+                model.read(file.getAbsolutePath());
+                StmtIterator statements = model.listStatements();
+                while (statements.hasNext()) {
+                    Statement statement = statements.next();
+                    addIRI(statement.getSubject());
+                    addIRI(statement.getPredicate());
+                    addIRI(statement.getObject());
+                }
+            }
+        }
+    }
+
+    private void addIRI(RDFNode node) {
+        if (node.isURIResource()) {
+            iris.add(IRI.create(node.asResource().getURI()));
+        }
+    }
+
+    @Benchmark
+    public void scan(Blackhole blackhole) {
+        for (IRI iri : iris) {
+            blackhole.consume(getCuriByScan(iri));
+        }
+    }
+
+    @Benchmark
+    public void trie(Blackhole blackhole) {
+        for (IRI iri : iris) {
+            blackhole.consume(trie.getCuri(iri));
+        }
+    }
+
+    @Benchmark
+    public void trieWithMemo(Blackhole blackhole) {
+        for (IRI iri : iris) {
+            blackhole.consume(trieWithMemo.getCuri(iri));
+        }
+    }
+
+    /**
+     * The previous lookup in MappedCurieHandler.
+     */
+    private String getCuriByScan(IRI iri) {
+        String iriString = iri.toString();
+        String longPrefix = null;
+        String shortPrefix = null;
+        for (Map.Entry<String, String> e : mappings.entrySet()) {
+            String namespace = e.getValue();
+            if (iriString.startsWith(namespace) && iriString.length() > namespace.length()) {
+                if (longPrefix == null || namespace.length() > longPrefix.length()) {
+                    longPrefix = namespace;
+                    shortPrefix = e.getKey();
+                }
+            }
+        }
+        return longPrefix != null ? shortPrefix + ":" + iriString.substring(longPrefix.length()) : iriString;
+    }
+}
@@ -0,0 +1,68 @@
+package org.geneontology.minerva.benchmark;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.geneontology.minerva.util.JenaOwlTool;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.io.File;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the direct OWL API to Jena conversion with the previous piped Turtle serialization.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -pl minerva-core -am -Pbenchmark clean test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test
+ * cd minerva-core
+ * java -cp target/test-classes:target/classes:../minerva-json/target/classes:../minerva-test/target/classes:$(cat cp.txt) \
+ *   org.openjdk.jmh.Main JenaOwlToolBenchmark -p modelFile=path/to/model.ttl
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JenaOwlToolBenchmark {
+
+    @Param({"src/test/resources/dummy-noctua-model.ttl"})
+    public String modelFile;
+
+    private OWLOntology ontology;
+
+    @Setup
+    public void setUp() throws Exception {
+        ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File(modelFile));
+    }
+
+    @Benchmark
+    public Model direct() {
+        return JenaOwlTool.getJenaModel(ontology);
+    }
+
+    @Benchmark
+    public Model pipedTurtle() throws Exception {
+        Model model = ModelFactory.createDefaultModel();
+        try (PipedInputStream is = new PipedInputStream(); PipedOutputStream os = new PipedOutputStream(is)) {
+            Thread writer = new Thread(() -> {
+                try {
+                    ontology.getOWLOntologyManager().saveOntology(ontology, new TurtleDocumentFormat(), os);
+                    os.close();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                }
+            });
+            writer.start();
+            model.read(is, null, "TURTLE");
+            writer.join();
+        }
+        return model;
+    }
+}
@@ -0,0 +1,93 @@
+package org.geneontology.minerva.benchmark;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
+import org.geneontology.minerva.BlazegraphOntologyManager;
+import org.geneontology.minerva.curie.DefaultCurieHandler;
+import org.geneontology.minerva.test.TestOntology;
+import org.geneontology.minerva.validation.ShexValidator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the focus node selection compiled from the shape map with the previous
+ * SPARQL queries per node and pair of shapes, over a directory of GO-CAMs.
+ * The models are enriched with their superclasses once, as in the validation.
+ * <p>
+ * Run with:
+ * <pre>
+ * mvn -pl minerva-core -am -Pbenchmark clean test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt -Dmdep.includeScope=test
+ * cd minerva-core
+ * java -cp target/test-classes:target/classes:../minerva-json/target/classes:../minerva-test/target/classes:$(cat cp.txt) \
+ *   org.openjdk.jmh.Main ShexFocusNodeSelectionBenchmark -p modelDirectory=path/to/go-cams
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ShexFocusNodeSelectionBenchmark {
+
+    @Param({"src/test/resources/validation/model_test"})
+    public String modelDirectory;
+
+    private File tempDirectory;
+    private BlazegraphOntologyManager goLego;
+    private ShexValidator compiled;
+    private ShexValidator sparql;
+    private final List<Model> models = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws Exception {
+        tempDirectory = Files.createTempDirectory("shex-benchmark").toFile();
+        goLego = new BlazegraphOntologyManager(TestOntology.newJournalPath(tempDirectory), false, TestOntology.load());
+        String schema = "src/test/resources/validation/go-cam-shapes.shex";
+        String shapemap = "src/test/resources/validation/go-cam-shapes.shapeMap";
+        compiled = new ShexValidator(schema, shapemap, goLego, DefaultCurieHandler.getDefaultHandler());
+        sparql = new ShexValidator(schema, shapemap, goLego, DefaultCurieHandler.getDefaultHandler());
+        sparql.setSPARQLFocusNodeSelection(true);
+        for (File file : new File(modelDirectory).listFiles()) {
+            if (file.getName().endsWith(".ttl")) {
+                Model model = ModelFactory.createDefaultModel();
+                model.read(file.getAbsolutePath());
+                models.add(compiled.enrichSuperClasses(model));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        goLego.dispose();
+        FileUtils.deleteQuietly(tempDirectory);
+    }
+
+    @Benchmark
+    public int compiledSelection() {
+        return select(compiled);
+    }
+
+    @Benchmark
+    public int sparqlSelection() {
+        return select(sparql);
+    }
+
+    private int select(ShexValidator validator) {
+        int nodes = 0;
+        for (Model model : models) {
+            Map<Resource, Set<String>> selected = validator.getShapesToTestForEachResource(model);
+            nodes += selected.size();
+        }
+        return nodes;
+    }
+}
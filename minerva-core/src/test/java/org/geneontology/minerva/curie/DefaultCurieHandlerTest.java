@@ -7,6 +7,10 @@ import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLDataFactory;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -76,4 +80,51 @@ public class DefaultCurieHandlerTest {
         } catch (UnknownIdentifierException e) {
         }
     }
+
+    @Test
+    public void testLongestPrefixMatch() {
+        Map<String, String> mappings = new HashMap<String, String>(DefaultCurieHandler.loadDefaultMappings().getMappings());
+        // nested namespaces
+        if (!mappings.containsValue("http://purl.obolibrary.org/obo/")) {
+            mappings.put("OBO", "http://purl.obolibrary.org/obo/");
+        }
+        assertTrue(mappings.containsValue("http://purl.obolibrary.org/obo/GO_"));
+        CurieHandler handler = new MappedCurieHandler(mappings);
+        CurieHandler noMemo = new MappedCurieHandler(mappings, 0);
+        List<String> iris = new ArrayList<String>();
+        for (String namespace : mappings.values()) {
+            iris.add(namespace);
+            iris.add(namespace + "0000050");
+            iris.add(namespace.substring(0, namespace.length() - 1));
+        }
+        iris.add("http://purl.obolibrary.org/obo/UNKNOWN_1");
+        iris.add("http://example.org/unknown");
+        iris.add("x");
+        for (String iri : iris) {
+            String expected = getCuriByScan(mappings, iri);
+            assertEquals(iri, expected, handler.getCuri(IRI.create(iri)));
+            // again from the memo
+            assertEquals(iri, expected, handler.getCuri(IRI.create(iri)));
+            assertEquals(iri, expected, noMemo.getCuri(IRI.create(iri)));
+        }
+        assertEquals("GO:0008150", handler.getCuri(IRI.create("http://purl.obolibrary.org/obo/GO_0008150")));
+    }
+
+    /**
+     * Longest prefix match over all namespaces, as before the prefix trie.
+     */
+    private static String getCuriByScan(Map<String, String> mappings, String iri) {
+        String longPrefix = null;
+        String shortPrefix = null;
+        for (Map.Entry<String, String> e : mappings.entrySet()) {
+            String namespace = e.getValue();
+            if (iri.startsWith(namespace) && iri.length() > namespace.length()) {
+                if (longPrefix == null || namespace.length() > longPrefix.length()) {
+                    longPrefix = namespace;
+                    shortPrefix = e.getKey();
+                }
+            }
+        }
+        return longPrefix != null ? shortPrefix + ":" + iri.substring(longPrefix.length()) : iri;
+    }
 }
@@ -0,0 +1,33 @@
+package org.geneontology.minerva.util;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.junit.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.TurtleDocumentFormat;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import static org.junit.Assert.assertTrue;
+
+public class JenaOwlToolTest {
+
+    /**
+     * The direct conversion has to give the same graph as writing and reading Turtle.
+     */
+    @Test
+    public void testSameAsTurtle() throws Exception {
+        OWLOntology ontology = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(new File("src/test/resources/dummy-noctua-model.ttl"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ontology.getOWLOntologyManager().saveOntology(ontology, new TurtleDocumentFormat(), out);
+        Model expected = ModelFactory.createDefaultModel();
+        expected.read(new ByteArrayInputStream(out.toByteArray()), null, "TURTLE");
+
+        Model actual = JenaOwlTool.getJenaModel(ontology);
+        assertTrue(expected.size() > 0);
+        assertTrue(actual.isIsomorphicWith(expected));
+    }
+}
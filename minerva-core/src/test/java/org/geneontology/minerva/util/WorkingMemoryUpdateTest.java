@@ -0,0 +1,101 @@
+package org.geneontology.minerva.util;
+
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.reasoner.rulesys.Rule;
+import org.geneontology.jena.OWLtoRules;
+import org.geneontology.minerva.test.TestOntology;
+import org.geneontology.rules.engine.RuleEngine;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.geneontology.rules.util.Bridge;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import scala.collection.JavaConverters;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Check that adding triples to a working memory gives the same facts as processing all triples at once.
+ * Guards the use of the private injectTriple of Arachne, see {@link WorkingMemoryUpdate}.
+ */
+public class WorkingMemoryUpdateTest {
+
+    private static RuleEngine engine;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        OWLOntology tbox = TestOntology.load();
+        Set<Rule> rules = new HashSet<>();
+        rules.addAll(JavaConverters.setAsJavaSetConverter(OWLtoRules.translate(tbox, Imports.INCLUDED, true, true, true, true)).asJava());
+        rules.addAll(JavaConverters.setAsJavaSetConverter(OWLtoRules.indirectRules(tbox)).asJava());
+        engine = new RuleEngine(Bridge.rulesFromJena(JavaConverters.asScalaSetConverter(rules).asScala()), true);
+    }
+
+    @Test
+    public void testInjectTripleAvailable() {
+        // fails after an update of Arachne without injectTriple, the fallback is much slower for large models
+        assertTrue(WorkingMemoryUpdate.isIncremental());
+    }
+
+    @Test
+    public void testArachneVersion() {
+        assertNull(WorkingMemoryUpdate.getUnsupportedReason(WorkingMemoryUpdate.VERIFIED_ARACHNE_VERSION));
+        // e.g. in a shaded jar
+        assertNull(WorkingMemoryUpdate.getUnsupportedReason(null));
+        assertNotNull(WorkingMemoryUpdate.getUnsupportedReason("1.3"));
+    }
+
+    @Test
+    public void testIncrementalMatchesProcessTriples() throws Exception {
+        assertSameFacts(true);
+    }
+
+    @Test
+    public void testFallbackMatchesProcessTriples() throws Exception {
+        assertSameFacts(false);
+    }
+
+    private static void assertSameFacts(boolean incremental) {
+        for (String name : new String[]{"should_pass/test1.ttl", "should_pass/test-negation1.ttl", "model_test/ZFIN_ZDB-GENE-030131-514.ttl"}) {
+            List<Triple> triples = readTriples(new File("src/test/resources/validation/" + name));
+            Set<Triple> expected = facts(engine.processTriples(JavaConverters.asScalaBufferConverter(triples).asScala()));
+
+            // the first half at once, then the rest in two steps
+            int half = triples.size() / 2;
+            int threeQuarters = half + (triples.size() - half) / 2;
+            WorkingMemory memory = engine.processTriples(JavaConverters.asScalaBufferConverter(triples.subList(0, half)).asScala());
+            Set<Triple> facts = facts(memory);
+            for (List<Triple> added : Arrays.asList(triples.subList(half, threeQuarters), triples.subList(threeQuarters, triples.size()))) {
+                WorkingMemoryUpdate update = WorkingMemoryUpdate.add(engine, memory, added, incremental);
+                memory = update.memory;
+                Set<Triple> updated = facts(memory);
+                Set<Triple> newFacts = new HashSet<>(updated);
+                newFacts.removeAll(facts);
+                assertEquals(name, newFacts, update.newFacts);
+                facts = updated;
+            }
+            assertEquals(name, expected, facts);
+        }
+    }
+
+    private static List<Triple> readTriples(File file) {
+        Model model = ModelFactory.createDefaultModel();
+        model.read(file.getAbsolutePath());
+        List<Triple> triples = new ArrayList<>();
+        for (Statement statement : model.listStatements().toList()) {
+            triples.add(Bridge.tripleFromJena(statement.asTriple()));
+        }
+        return triples;
+    }
+
+    private static Set<Triple> facts(WorkingMemory memory) {
+        return new HashSet<>(JavaConverters.asJavaCollectionConverter(memory.facts()).asJavaCollection());
+    }
+}
@@ -1,9 +1,17 @@
 package org.geneontology.minerva.validation;
 
+import fr.inria.lille.shexjava.schema.Label;
 import fr.inria.lille.shexjava.schema.ShexSchema;
 import fr.inria.lille.shexjava.schema.parsing.GenParser;
+import fr.inria.lille.shexjava.validation.RefineValidation;
+import fr.inria.lille.shexjava.validation.Typing;
+import org.apache.commons.rdf.jena.JenaGraph;
+import org.apache.commons.rdf.jena.JenaRDF;
+import org.apache.commons.rdf.simple.SimpleRDF;
+import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Resource;
 import org.geneontology.minerva.BlazegraphOntologyManager;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.curie.DefaultCurieHandler;
@@ -17,10 +25,16 @@ import org.semanticweb.owlapi.model.OWLOntology;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ShexValidatorTest {
 
@@ -88,6 +102,188 @@ public class ShexValidatorTest {
         validate(new File("src/test/resources/validation/model_test/ZFIN_ZDB-GENE-030131-514.ttl"), shex, true);
     }
 
+    @Test
+    public void testFocusNodeSelectionMatchesSparql() throws Exception {
+        for (String dir : new String[]{"src/test/resources/validation/should_pass/", "src/test/resources/validation/should_fail/", "src/test/resources/validation/model_test/"}) {
+            for (File file : new File(dir).listFiles()) {
+                if (file.getName().endsWith("ttl")) {
+                    Model test_model = ModelFactory.createDefaultModel();
+                    test_model.read(file.getAbsolutePath());
+                    test_model = shex.enrichSuperClasses(test_model);
+                    Map<Resource, Set<String>> selected = shex.getShapesToTestForEachResource(test_model);
+                    assertFalse(file.getName(), selected.isEmpty());
+                    assertEquals(file.getName(), shex.getShapesToTestForEachResourceBySparql(test_model), selected);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testNodeTypesFromIndex() throws Exception {
+        for (String dir : new String[]{"src/test/resources/validation/should_pass/", "src/test/resources/validation/model_test/"}) {
+            for (File file : new File(dir).listFiles()) {
+                if (file.getName().endsWith("ttl")) {
+                    Model test_model = ModelFactory.createDefaultModel();
+                    test_model.read(file.getAbsolutePath());
+                    ModelAdjacencyIndex index = new ModelAdjacencyIndex(test_model);
+                    for (Resource node : test_model.listSubjects().toList()) {
+                        if (node.isURIResource()) {
+                            Set<String> expected = getNodeTypesBySparql(test_model, node.getURI());
+                            assertEquals(node.getURI(), expected, shex.getNodeTypes(index, node.getURI()));
+                            // a single node, without the index of the whole model
+                            assertEquals(node.getURI(), expected, shex.getNodeTypes(test_model, node.getURI()));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testExtraPropertiesOfSingleNode() throws Exception {
+        for (String dir : new String[]{"src/test/resources/validation/should_fail/", "src/test/resources/validation/model_test/"}) {
+            for (File file : new File(dir).listFiles()) {
+                if (file.getName().endsWith("ttl")) {
+                    Model test_model = readEnriched(file);
+                    RefineValidation refine = new RefineValidation(shex.schema, new JenaRDF().asGraph(test_model));
+                    refine.validate();
+                    Typing typing = refine.getTyping();
+                    ModelAdjacencyIndex index = new ModelAdjacencyIndex(test_model);
+                    ShexValidationReport expected = new ShexValidationReport();
+                    ShexValidationReport single = new ShexValidationReport();
+                    for (Map.Entry<Resource, Set<String>> entry : shex.getShapesToTestForEachResource(test_model).entrySet()) {
+                        for (String shape : entry.getValue()) {
+                            Label shape_label = new Label(new SimpleRDF().createIRI(shape));
+                            expected.addViolations(shex.checkForExtraProperties(entry.getKey(), index, shape_label, typing));
+                            // only the node and its objects are read from the model
+                            single.addViolations(shex.checkForExtraProperties(entry.getKey(), test_model, shape_label, typing));
+                        }
+                    }
+                    assertEquals(file.getName(), sortedLines(expected.getAsTab("")), sortedLines(single.getAsTab("")));
+                }
+            }
+        }
+    }
+
+    /**
+     * The query used for the explanations before the model index.
+     */
+    private static Set<String> getNodeTypesBySparql(Model model, String node_uri) {
+        String query = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#> "
+                + "PREFIX owl: <http://www.w3.org/2002/07/owl#> "
+                + "SELECT DISTINCT ?type ?is_negated WHERE { "
+                + "{ <" + node_uri + "> rdf:type ?type . FILTER(isIRI(?type)) VALUES ?is_negated { false } }"
+                + "UNION"
+                + "{ <" + node_uri + "> rdf:type ?blank . ?blank owl:complementOf ?type . FILTER(isBlank(?blank) && isIRI(?type)) VALUES ?is_negated { true } }"
+                + "FILTER(?type != owl:NamedIndividual) }";
+        Set<String> types = new HashSet<>();
+        try (QueryExecution qe = QueryExecutionFactory.create(query, model)) {
+            ResultSet results = qe.execSelect();
+            while (results.hasNext()) {
+                QuerySolution qs = results.next();
+                String type = shex.getCurie(qs.getResource("type").getURI());
+                types.add(qs.getLiteral("is_negated").getBoolean() ? "NOT(" + type + ")" : type);
+            }
+        }
+        return types;
+    }
+
+    @Test
+    public void testValidationOnBoundedScheduler() throws Exception {
+        // one thread and one queued validation, the focus nodes are checked by the calling thread
+        ShexValidationScheduler scheduler = new ShexValidationScheduler(1, 1);
+        try {
+            for (String name : new String[]{"should_fail/fail_causal_inconsistent_5.ttl", "should_fail/fail_enabled_by_3.ttl",
+                    "should_fail/fail_part_of_1.ttl", "model_test/ZFIN_ZDB-GENE-030131-514.ttl"}) {
+                File file = new File("src/test/resources/validation/" + name);
+                ShexValidationReport shared = shex.runShapeMapValidation(readEnriched(file));
+                shex.setScheduler(scheduler);
+                ShexValidationReport bounded;
+                try {
+                    // the validation closes the graph of the model, so it is read again
+                    bounded = shex.runShapeMapValidation(readEnriched(file));
+                } finally {
+                    shex.setScheduler(null);
+                }
+                assertEquals(file.getName(), shared.isConformant(), bounded.isConformant());
+                assertEquals(file.getName(), sortedLines(shared.getAsTab("")), sortedLines(bounded.getAsTab("")));
+            }
+            ShexValidationScheduler.Statistics statistics = scheduler.getStatistics();
+            assertEquals(0, statistics.timeouts);
+            assertTrue(statistics.modelLatency.count > 0);
+            assertFalse(statistics.shapeLatencies.isEmpty());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentValidations() throws Exception {
+        // as with several reasoner pool permits: one validator, many models validated at the same time
+        List<File> files = new ArrayList<>();
+        for (String name : new String[]{"should_pass/test-negation1.ttl", "should_pass/test1.ttl",
+                "should_pass/Test038-cellular_component_assembly_results_in_assembly_of_kinetochore.ttl",
+                "should_fail/fail_causal_inconsistent_5.ttl", "should_fail/fail_enabled_by_3.ttl", "should_fail/fail_part_of_1.ttl"}) {
+            files.add(new File("src/test/resources/validation/" + name));
+        }
+        Map<File, List<String>> expected = new HashMap<>();
+        for (File file : files) {
+            expected.put(file, sortedLines(shex.runShapeMapValidation(readEnriched(file)).getAsTab("")));
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 2; round++) {
+                Map<File, Future<ShexValidationReport>> reports = new HashMap<>();
+                for (File file : files) {
+                    reports.put(file, executor.submit(() -> shex.runShapeMapValidation(readEnriched(file))));
+                }
+                for (File file : files) {
+                    assertEquals(file.getName(), expected.get(file), sortedLines(reports.get(file).get().getAsTab("")));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Model readEnriched(File file) throws IOException {
+        Model test_model = ModelFactory.createDefaultModel();
+        test_model.read(file.getAbsolutePath());
+        return shex.enrichSuperClasses(test_model);
+    }
+
+    private static List<String> sortedLines(String text) {
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\n")));
+        Collections.sort(lines);
+        return lines;
+    }
+
+    @Test
+    public void testValidationStopsAtDeadline() throws Exception {
+        ShexValidationScheduler scheduler = new ShexValidationScheduler(1, 1);
+        try {
+            Model test_model = ModelFactory.createDefaultModel();
+            test_model.read(new File("src/test/resources/validation/model_test/ZFIN_ZDB-GENE-030131-514.ttl").getAbsolutePath());
+            JenaGraph graph = new JenaRDF().asGraph(test_model);
+            // the deadline has already passed, so the first lookup in the graph stops the validation
+            long deadline = ShexValidationScheduler.deadline(-1);
+            Future<Typing> future = scheduler.submit(() -> {
+                RefineValidation refine = new RefineValidation(shex.schema, new DeadlineGraph(graph, deadline));
+                refine.validate();
+                return refine.getTyping();
+            });
+            try {
+                scheduler.await(future, ShexValidationScheduler.deadline(60000));
+                fail("validation should stop at its deadline");
+            } catch (TimeoutException e) {
+                // expected
+            }
+            assertEquals(1, scheduler.getStatistics().timeouts);
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
     public void validate(String dir, ShexValidator shex, boolean shouldBeValid) throws IOException {
         File directory = new File(dir);
         if (directory.isDirectory()) {
@@ -0,0 +1,59 @@
+package org.geneontology.minerva.server;
+
+import org.geneontology.minerva.server.handler.M3BatchHandler.M3BatchResponse;
+
+import javax.ws.rs.HttpMethod;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+
+/**
+ * Add an ETag header to the responses of meta get requests.<br>
+ * <br>
+ * A GET request with a matching 'If-None-Match' header gets an empty
+ * response with status 304 (not modified) instead of the meta data.
+ */
+public class MetaETagFilter implements ContainerResponseFilter {
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) throws IOException {
+        Object entity = responseContext.getEntity();
+        if (!(entity instanceof M3BatchResponse)) {
+            return;
+        }
+        String metaETag = ((M3BatchResponse) entity).getMetaETag();
+        if (metaETag == null) {
+            return;
+        }
+        EntityTag tag = new EntityTag(metaETag);
+        responseContext.getHeaders().putSingle(HttpHeaders.ETAG, tag);
+        if (HttpMethod.GET.equals(requestContext.getMethod()) && matches(requestContext.getHeaderString(HttpHeaders.IF_NONE_MATCH), tag)) {
+            responseContext.setStatus(Response.Status.NOT_MODIFIED.getStatusCode());
+            responseContext.setEntity(null);
+        }
+    }
+
+    static boolean matches(String ifNoneMatch, EntityTag tag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            if (candidate.equals("*")) {
+                return true;
+            }
+            // weak comparison, as required for If-None-Match
+            if (candidate.startsWith("W/")) {
+                candidate = candidate.substring(2);
+            }
+            if (candidate.equals("\"" + tag.getValue() + "\"")) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
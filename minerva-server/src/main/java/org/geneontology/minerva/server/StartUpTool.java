@@ -7,9 +7,12 @@ import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
+import org.geneontology.minerva.BlazegraphOntologyManager;
 import org.geneontology.minerva.MinervaOWLGraphWrapper;
 import org.geneontology.minerva.ModelReaderHelper;
+import org.geneontology.minerva.ModelResidencyPolicy;
 import org.geneontology.minerva.UndoAwareMolecularModelManager;
+import org.geneontology.minerva.UndoHistoryPolicy;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.curie.CurieMappings;
 import org.geneontology.minerva.curie.DefaultCurieHandler;
@@ -17,8 +20,10 @@ import org.geneontology.minerva.curie.MappedCurieHandler;
 import org.geneontology.minerva.lookup.ExternalLookupService;
 import org.geneontology.minerva.server.handler.*;
 import org.geneontology.minerva.server.inferences.CachingInferenceProviderCreatorImpl;
+import org.geneontology.minerva.server.inferences.IncrementalArachneInferenceProviderCreatorImpl;
 import org.geneontology.minerva.server.inferences.InferenceProviderCreator;
 import org.geneontology.minerva.server.validation.MinervaShexValidator;
+import org.geneontology.minerva.validation.ShexValidationScheduler;
 import org.glassfish.jersey.server.ResourceConfig;
 import org.glassfish.jersey.servlet.ServletContainer;
 import org.semanticweb.owlapi.apibinding.OWLManager;
@@ -63,6 +68,8 @@ public class StartUpTool {
         public boolean checkLiteralIds = true;
 
         public String reasonerOpt = null;
+        // number of models which can be reasoned over at the same time
+        public int reasonerPoolSize = 1;
 
         public CurieHandler curieHandler;
 
@@ -86,13 +93,42 @@ public class StartUpTool {
 
         public String prefixesFile = null;
 
+        // the /sparql endpoint is unauthenticated and queries the whole journal, it is only registered on request
+        public boolean enableSparqlEndpoint = false;
+
         public int sparqlEndpointTimeout = 100;
 
+        // maximum number of bindings or statements in a SPARQL result, unlimited if <= 0
+        public long sparqlEndpointMaxRows = 100000;
+
         public String shexFileUrl = "https://raw.githubusercontent.com/geneontology/go-shapes/master/shapes/go-cam-shapes.shex";
         public String goshapemapFileUrl = "https://raw.githubusercontent.com/geneontology/go-shapes/master/shapes/go-cam-shapes.shapeMap";
         public MinervaShexValidator shex;
+        // threads for the ShEx validations, zero uses one per processor
+        public int shexValidationThreads = 0;
         public String pathToOntologyJournal;
 
+        // answer go-lego subClassOf closure lookups from memory instead of SPARQL
+        public boolean useClosureIndex = false;
+        public String closureIndexFile = null;
+
+        // cached labels and existence flags of go-lego terms, zero disables the cache
+        public int termCacheSize = BlazegraphOntologyManager.DEFAULT_TERM_CACHE_SIZE;
+        public boolean warmTermCache = false;
+
+        // limits for the models kept in memory, zero is unbounded
+        public int maxLoadedModels = 0;
+        public long maxLoadedModelsMb = 0;
+        public String modelEvictionOrder = "lru";
+        public boolean saveEvictedModels = false;
+
+        // limits for the undo history, zero is unbounded
+        public int undoMaxDepth = 0;
+        public long undoMaxMbPerModel = 0;
+        public long undoMaxMb = 0;
+        public long undoCoalesceMs = 0;
+        public String undoSpillDir = null;
+
     }
 
     public static void main(String[] args) throws Exception {
@@ -160,18 +196,55 @@ public class StartUpTool {
                 conf.reasonerOpt = "slme-elk";
             } else if (opts.nextEq("--elk")) {
                 conf.reasonerOpt = "elk";
+            } else if (opts.nextEq("--arachne-incremental")) {
+                conf.reasonerOpt = "arachne-incremental";
             } else if (opts.nextEq("--arachne")) {
                 conf.reasonerOpt = "arachne";
+            } else if (opts.nextEq("--reasoner-pool-size")) {
+                conf.reasonerPoolSize = Integer.parseInt(opts.nextOpt());
             } else if (opts.nextEq("--use-request-logging|--request-logging")) {
                 conf.useRequestLogging = true;
             } else if (opts.nextEq("--use-golr-url-logging|--golr-url-logging")) {
                 conf.useGolrUrlLogging = true;
             } else if (opts.nextEq("--prefix-mappings")) {
                 conf.prefixesFile = opts.nextOpt();
+            } else if (opts.nextEq("--enable-sparql-endpoint")) {
+                conf.enableSparqlEndpoint = true;
             } else if (opts.nextEq("--sparql-endpoint-timeout")) {
                 conf.sparqlEndpointTimeout = Integer.parseInt(opts.nextOpt());
+            } else if (opts.nextEq("--sparql-endpoint-max-rows")) {
+                conf.sparqlEndpointMaxRows = Long.parseLong(opts.nextOpt());
+            } else if (opts.nextEq("--shex-validation-threads")) {
+                conf.shexValidationThreads = Integer.parseInt(opts.nextOpt());
             } else if (opts.nextEq("--ontojournal")) {
                 conf.pathToOntologyJournal = opts.nextOpt();
+            } else if (opts.nextEq("--closure-index")) {
+                conf.useClosureIndex = true;
+            } else if (opts.nextEq("--closure-index-file")) {
+                conf.useClosureIndex = true;
+                conf.closureIndexFile = opts.nextOpt();
+            } else if (opts.nextEq("--term-cache-size")) {
+                conf.termCacheSize = Integer.parseInt(opts.nextOpt());
+            } else if (opts.nextEq("--warm-term-cache")) {
+                conf.warmTermCache = true;
+            } else if (opts.nextEq("--max-loaded-models")) {
+                conf.maxLoadedModels = Integer.parseInt(opts.nextOpt());
+            } else if (opts.nextEq("--max-loaded-models-mb")) {
+                conf.maxLoadedModelsMb = Long.parseLong(opts.nextOpt());
+            } else if (opts.nextEq("--model-eviction")) {
+                conf.modelEvictionOrder = opts.nextOpt();
+            } else if (opts.nextEq("--save-evicted-models")) {
+                conf.saveEvictedModels = true;
+            } else if (opts.nextEq("--undo-max-depth")) {
+                conf.undoMaxDepth = Integer.parseInt(opts.nextOpt());
+            } else if (opts.nextEq("--undo-max-mb-per-model")) {
+                conf.undoMaxMbPerModel = Long.parseLong(opts.nextOpt());
+            } else if (opts.nextEq("--undo-max-mb")) {
+                conf.undoMaxMb = Long.parseLong(opts.nextOpt());
+            } else if (opts.nextEq("--undo-coalesce-ms")) {
+                conf.undoCoalesceMs = Long.parseLong(opts.nextOpt());
+            } else if (opts.nextEq("--undo-spill-dir")) {
+                conf.undoSpillDir = opts.nextOpt();
             } else {
                 break;
             }
@@ -233,6 +306,9 @@ public class StartUpTool {
         org.apache.commons.io.FileUtils.copyURLToFile(shex_map_url, shex_map_file);
         //reasoner set in next phase after ontologies loaded
         conf.shex = new MinervaShexValidator(shex_schema_file, shex_map_file, conf.curieHandler, null);
+        if (conf.shexValidationThreads > 0) {
+            conf.shex.setScheduler(new ShexValidationScheduler(conf.shexValidationThreads, ShexValidationScheduler.DEFAULT_MAX_QUEUED));
+        }
 
         Server server = startUp(conf);
         try {
@@ -340,6 +416,25 @@ public class StartUpTool {
                 conf.curieHandler, conf.modelIdPrefix, conf.journalFile, conf.exportFolder, conf.pathToOntologyJournal, true);
         // set pre and post file handlers
         models.addPostLoadOntologyFilter(ModelReaderHelper.INSTANCE);
+        if (conf.useClosureIndex) {
+            File closureIndexFile = conf.closureIndexFile != null ? new File(conf.closureIndexFile) : null;
+            models.getGolego_repo().enableClosureIndex(closureIndexFile);
+        }
+        if (conf.termCacheSize != BlazegraphOntologyManager.DEFAULT_TERM_CACHE_SIZE) {
+            models.getGolego_repo().setTermCacheSize(conf.termCacheSize);
+        }
+        if (conf.warmTermCache) {
+            models.getGolego_repo().warmTermCache();
+        }
+        if (conf.maxLoadedModels > 0 || conf.maxLoadedModelsMb > 0) {
+            ModelResidencyPolicy.Order order = ModelResidencyPolicy.Order.valueOf(conf.modelEvictionOrder.toUpperCase());
+            models.setResidencyPolicy(new ModelResidencyPolicy(conf.maxLoadedModels, conf.maxLoadedModelsMb * 1024 * 1024,
+                    order, conf.saveEvictedModels));
+        }
+        if (conf.undoMaxDepth > 0 || conf.undoMaxMbPerModel > 0 || conf.undoMaxMb > 0 || conf.undoCoalesceMs > 0) {
+            models.setUndoHistoryPolicy(new UndoHistoryPolicy(conf.undoMaxDepth, conf.undoMaxMbPerModel * 1024 * 1024,
+                    conf.undoMaxMb * 1024 * 1024, conf.undoCoalesceMs, conf.undoSpillDir != null ? new File(conf.undoSpillDir) : null));
+        }
         //	conf.shex.tbox_reasoner = models.getTbox_reasoner();
         conf.shex.setGo_lego_repo(models.getGolego_repo());
         conf.shex.curieHandler = conf.curieHandler;
@@ -369,14 +464,20 @@ public class StartUpTool {
     }
 
     public static InferenceProviderCreator createInferenceProviderCreator(String reasonerOpt, UndoAwareMolecularModelManager models, MinervaShexValidator shex) {
+        return createInferenceProviderCreator(reasonerOpt, 1, models, shex);
+    }
+
+    public static InferenceProviderCreator createInferenceProviderCreator(String reasonerOpt, int poolSize, UndoAwareMolecularModelManager models, MinervaShexValidator shex) {
         switch (reasonerOpt) {
             //	case ("slme-hermit"): return CachingInferenceProviderCreatorImpl.createHermiT(shex);
             case ("slme-elk"):
-                return CachingInferenceProviderCreatorImpl.createElk(true, shex);
+                return CachingInferenceProviderCreatorImpl.createElk(true, poolSize, shex);
             case ("elk"):
-                return CachingInferenceProviderCreatorImpl.createElk(false, shex);
+                return CachingInferenceProviderCreatorImpl.createElk(false, poolSize, shex);
             case ("arachne"):
-                return CachingInferenceProviderCreatorImpl.createArachne(models.getRuleEngine(), shex);
+                return CachingInferenceProviderCreatorImpl.createArachne(models.getRuleEngine(), poolSize, shex);
+            case ("arachne-incremental"):
+                return IncrementalArachneInferenceProviderCreatorImpl.createArachne(models, poolSize, shex);
             default:
                 return null;
         }
@@ -391,6 +492,7 @@ public class StartUpTool {
         ResourceConfig resourceConfig = new ResourceConfig();
         resourceConfig.register(GsonMessageBodyHandler.class);
         resourceConfig.register(RequireJsonpFilter.class);
+        resourceConfig.register(MetaETagFilter.class);
         resourceConfig.register(SPARQLResultsMessageBodyWriter.class);
         resourceConfig.register(SPARQLGraphMessageBodyWriter.class);
         if (conf.useRequestLogging) {
@@ -399,6 +501,7 @@ public class StartUpTool {
         //resourceConfig.register(AuthorizationRequestFilter.class);
 
         LOGGER.info("BatchHandler config inference provider: " + conf.reasonerOpt);
+        LOGGER.info("BatchHandler config reasoner pool size: " + conf.reasonerPoolSize);
         LOGGER.info("BatchHandler config importantRelations: " + conf.importantRelations);
         LOGGER.info("BatchHandler config lookupService: " + conf.lookupService);
         LOGGER.info("BatchHandler config checkLiteralIds: " + conf.checkLiteralIds);
@@ -409,23 +512,28 @@ public class StartUpTool {
         }
         LOGGER.info("SeedHandler config golrUrl: " + conf.golrSeedUrl);
 
-        InferenceProviderCreator ipc = createInferenceProviderCreator(conf.reasonerOpt, models, conf.shex);
+        InferenceProviderCreator ipc = createInferenceProviderCreator(conf.reasonerOpt, conf.reasonerPoolSize, models, conf.shex);
         JsonOrJsonpBatchHandler batchHandler = new JsonOrJsonpBatchHandler(models, conf.defaultModelState,
                 ipc, conf.importantRelations, conf.lookupService);
         batchHandler.CHECK_LITERAL_IDENTIFIERS = false; //conf.checkLiteralIds;
+        JsonOrJsonpBatchHandler.SPARQL_MAX_ROWS = conf.sparqlEndpointMaxRows;
 
         SimpleEcoMapper ecoMapper = EcoMapperFactory.createSimple();
         //		JsonOrJsonpSeedHandler seedHandler = new JsonOrJsonpSeedHandler(models, conf.defaultModelState, conf.golrSeedUrl, ecoMapper );
-        //	SPARQLHandler sparqlHandler = new SPARQLHandler(models, conf.sparqlEndpointTimeout);
         ModelSearchHandler searchHandler = new ModelSearchHandler(models);
         ModelARTHandler artHandler = new ModelARTHandler(models, ipc);
 
         LocalDate d = LocalDate.now();
         LocalTime t = LocalTime.now();
         String startup = d.toString() + " " + t.toString();
-        StatusHandler statusHandler = new StatusHandler(conf, ont_annos, startup);
+        StatusHandler statusHandler = new StatusHandler(conf, ont_annos, startup, models);
         TaxonHandler taxonHandler = new TaxonHandler(models);
         resourceConfig = resourceConfig.registerInstances(batchHandler, searchHandler, artHandler, statusHandler, taxonHandler);
+        if (conf.enableSparqlEndpoint) {
+            SPARQLHandler sparqlHandler = new SPARQLHandler(models, conf.sparqlEndpointTimeout, conf.sparqlEndpointMaxRows);
+            resourceConfig = resourceConfig.registerInstances(sparqlHandler);
+            LOGGER.info("SPARQL endpoint enabled, timeout: " + conf.sparqlEndpointTimeout + " s, max rows: " + conf.sparqlEndpointMaxRows);
+        }
 
         // setup jetty server port, buffers and context path
         Server server = new Server();
@@ -29,6 +29,10 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
 
     public static boolean VALIDATE_BEFORE_SAVE = true;
     public static boolean CHECK_LITERAL_IDENTIFIERS = false;//TODO turning this off because it depends on external lookup service - need to rewire to get rid of external lookup service entirely.
+    /**
+     * maximum number of bindings or statements in the result of a sparql operation, unlimited if &lt;= 0
+     */
+    public static long SPARQL_MAX_ROWS = 0;
 
     private static final Logger logger = Logger.getLogger(JsonOrJsonpBatchHandler.class);
 
@@ -60,6 +64,11 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
         return VALIDATE_BEFORE_SAVE;
     }
 
+    @Override
+    long sparqlMaxRows() {
+        return SPARQL_MAX_ROWS;
+    }
+
     @Override
     @JSONP(callback = JSONP_DEFAULT_CALLBACK, queryParam = JSONP_DEFAULT_OVERWRITE)
     public M3BatchResponse m3BatchGet(String intention, String packetId, String requestString, String useReasoner) {
@@ -136,6 +145,14 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
         UndoMetadata token = new UndoMetadata(userId);
 
         final BatchHandlerValues values = new BatchHandlerValues();
+        try {
+            return m3Batch(response, requests, userId, providerGroups, useReasoner, isPrivileged, token, values);
+        } finally {
+            unpinModels(values);
+        }
+    }
+
+    private M3BatchResponse m3Batch(M3BatchResponse response, M3Request[] requests, String userId, Set<String> providerGroups, boolean useReasoner, boolean isPrivileged, UndoMetadata token, BatchHandlerValues values) throws InsufficientPermissionsException, Exception {
         for (M3Request request : requests) {
             requireNotNull(request, "request");
             requireNotNull(request.entity, "entity");
@@ -173,6 +190,10 @@ public class JsonOrJsonpBatchHandler extends OperationsImpl implements M3BatchHa
                         return error(response, "Get meta entity can only be combined with other meta operations.", null);
                     }
                     getMeta(response, userId, providerGroups);
+                    if (requests.length > 1) {
+                        // the ETag only identifies the meta data, not the results of other requests
+                        response.metaETag = null;
+                    }
                 } else if (Operation.exportAll == operation) {
                     exportAllModels();
                     response.messageType = "success";
@@ -138,6 +138,10 @@ public interface M3BatchHandler {
             @SerializedName("sparql-result")
             public JsonObject sparqlResult;
 
+            // set, if the sparql result was cut off at the maximum number of rows
+            @SerializedName("sparql-result-truncated-p")
+            public Boolean sparqlResultTruncatedFlag;
+
             @SerializedName("validation-results")
             public ValidationResultSet validation_results;
 
@@ -158,6 +162,12 @@ public interface M3BatchHandler {
             public Map<String, Map<String, Object>> modelsReadOnly;
         }
 
+        /**
+         * Version of the meta data in this response, not serialized.
+         * Only set for a response to a single meta get request.
+         */
+        transient String metaETag;
+
         /**
          * @param uid
          * @param intention
@@ -167,6 +177,13 @@ public interface M3BatchHandler {
             super(uid, providerGroups, intention, packetId);
         }
 
+        /**
+         * @return the ETag of the meta data or null
+         */
+        public String getMetaETag() {
+            return metaETag;
+        }
+
     }
 
 
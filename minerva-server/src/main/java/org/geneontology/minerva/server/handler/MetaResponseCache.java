@@ -0,0 +1,186 @@
+package org.geneontology.minerva.server.handler;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.UndoAwareMolecularModelManager;
+import org.geneontology.minerva.curie.CurieHandler;
+import org.geneontology.minerva.json.*;
+import org.geneontology.minerva.server.handler.M3BatchHandler.M3BatchResponse.MetaResponse;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Cache for the meta response of the batch handler.<br>
+ * The relations, data properties and evidence only depend on the tbox and are rendered once.
+ * The annotations of a model are only rendered again, if they changed since the last request.
+ * Each meta response with different content gets a new version, which is used as ETag.
+ */
+class MetaResponseCache {
+
+    private static final Logger LOG = Logger.getLogger(MetaResponseCache.class);
+
+    private final UndoAwareMolecularModelManager m3;
+    private final Set<OWLObjectProperty> importantRelations;
+    private final CurieHandler curieHandler;
+    private final OWLAnnotationProperty contributor = OWLManager.getOWLDataFactory().getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor"));
+    /**
+     * distinguishes the versions of this server instance from those before a restart
+     */
+    private final String instance = Long.toString(System.currentTimeMillis(), 36);
+
+    private volatile TboxMeta tboxMeta = null;
+
+    // guarded by this
+    private Map<IRI, RenderedAnnotations> renderedAnnotations = new HashMap<>();
+    private Map<String, List<JsonAnnotation>> modelsMeta = null;
+    private Map<String, Map<String, Object>> modelsReadOnly = null;
+    private long version = 0;
+
+    MetaResponseCache(UndoAwareMolecularModelManager m3, Set<OWLObjectProperty> importantRelations, CurieHandler curieHandler) {
+        this.m3 = m3;
+        this.importantRelations = importantRelations;
+        this.curieHandler = curieHandler;
+    }
+
+    private static class TboxMeta {
+        final JsonRelationInfo[] relations;
+        final JsonRelationInfo[] dataProperties;
+        final JsonEvidenceInfo[] evidence;
+
+        TboxMeta(JsonRelationInfo[] relations, JsonRelationInfo[] dataProperties, JsonEvidenceInfo[] evidence) {
+            this.relations = relations;
+            this.dataProperties = dataProperties;
+            this.evidence = evidence;
+        }
+    }
+
+    private static class RenderedAnnotations {
+        final Set<OWLAnnotation> annotations;
+        final List<JsonAnnotation> json;
+
+        RenderedAnnotations(Set<OWLAnnotation> annotations, List<JsonAnnotation> json) {
+            this.annotations = annotations;
+            this.json = json;
+        }
+    }
+
+    /**
+     * Fill the meta response. The returned arrays and maps are shared between responses and must not be modified.
+     *
+     * @param meta
+     * @return ETag of the meta response
+     * @throws IOException
+     * @throws OWLException
+     */
+    String fill(MetaResponse meta) throws IOException, OWLException {
+        TboxMeta tbox = getTboxMeta();
+        meta.relations = tbox.relations;
+        meta.dataProperties = tbox.dataProperties;
+        meta.evidence = tbox.evidence;
+        return fillModelsMeta(meta);
+    }
+
+    /**
+     * Fill only the model ids and model annotations of the meta response.
+     *
+     * @param meta
+     * @return ETag of the meta response
+     * @throws IOException
+     */
+    String fillModelsMeta(MetaResponse meta) throws IOException {
+        // model ids
+        // and model annotations
+        final Set<IRI> allModelIds = m3.getAvailableModelIds();
+        final Map<IRI, Set<OWLAnnotation>> annotationsForAllModels = m3.getAllModelAnnotations();
+        synchronized (this) {
+            final Map<IRI, RenderedAnnotations> rendered = new HashMap<>();
+            final Map<String, List<JsonAnnotation>> allModelAnnotations = new HashMap<>();
+            final Map<String, Map<String, Object>> allModelAnnotationsReadOnly = new HashMap<>();
+            for (IRI modelId : allModelIds) {
+                String curie = curieHandler.getCuri(modelId);
+                Set<OWLAnnotation> annotations = annotationsForAllModels.get(modelId);
+                if (annotations != null) {
+                    RenderedAnnotations previous = renderedAnnotations.get(modelId);
+                    if (previous == null || !previous.annotations.equals(annotations)) {
+                        previous = new RenderedAnnotations(annotations, renderAnnotations(annotations));
+                    }
+                    rendered.put(modelId, previous);
+                    allModelAnnotations.put(curie, previous.json);
+                } else {
+                    LOG.error("No annotations found for model: " + modelId);
+                    allModelAnnotations.put(curie, Collections.emptyList());
+                }
+                // handle read-only information, currently only the modification flag
+                // check modification status
+                boolean modified = m3.isModelModified(modelId);
+                Map<String, Object> readOnly = Collections.<String, Object>singletonMap("modified-p", Boolean.valueOf(modified));
+                allModelAnnotationsReadOnly.put(curie, readOnly);
+            }
+            renderedAnnotations = rendered;
+            if (!allModelAnnotations.equals(modelsMeta) || !allModelAnnotationsReadOnly.equals(modelsReadOnly)) {
+                modelsMeta = Collections.unmodifiableMap(allModelAnnotations);
+                modelsReadOnly = Collections.unmodifiableMap(allModelAnnotationsReadOnly);
+                version += 1;
+            }
+            meta.modelsMeta = modelsMeta;
+            meta.modelsReadOnly = modelsReadOnly;
+            return instance + "-" + version;
+        }
+    }
+
+    private TboxMeta getTboxMeta() throws IOException, OWLException {
+        TboxMeta tbox = tboxMeta;
+        if (tbox == null) {
+            synchronized (this) {
+                tbox = tboxMeta;
+                if (tbox == null) {
+                    // relations
+                    Pair<List<JsonRelationInfo>, List<JsonRelationInfo>> propPair = MolecularModelJsonRenderer.renderProperties(m3, importantRelations, curieHandler);
+                    final List<JsonRelationInfo> relList = propPair.getLeft();
+                    // data properties
+                    final List<JsonRelationInfo> propList = propPair.getRight();
+                    // evidence
+                    final List<JsonEvidenceInfo> evidencesList = MolecularModelJsonRenderer.renderEvidences(m3, curieHandler);
+                    tbox = new TboxMeta(
+                            relList != null ? relList.toArray(new JsonRelationInfo[relList.size()]) : null,
+                            propList != null ? propList.toArray(new JsonRelationInfo[propList.size()]) : null,
+                            evidencesList != null ? evidencesList.toArray(new JsonEvidenceInfo[evidencesList.size()]) : null);
+                    tboxMeta = tbox;
+                }
+            }
+        }
+        return tbox;
+    }
+
+    private List<JsonAnnotation> renderAnnotations(Set<OWLAnnotation> annotations) {
+        List<JsonAnnotation> modelAnnotations = new ArrayList<>();
+        for (OWLAnnotation an : annotations) {
+            final String label;
+            if (an.getProperty().equals(contributor)) {
+                final IRI iri;
+                if (an.getValue() instanceof IRI) {
+                    iri = an.getValue().asIRI().get();
+                } else if (an.getValue() instanceof OWLLiteral) {
+                    iri = IRI.create(an.getValue().asLiteral().get().getLiteral());
+                } else {
+                    iri = null;
+                }
+                if (iri != null) {
+                    label = m3.getTboxLabelIndex().getOrDefault(iri, null);
+                } else {
+                    label = null;
+                }
+            } else {
+                label = null;
+            }
+            JsonAnnotation json = JsonTools.create(an.getProperty(), an.getValue(), label, curieHandler);
+            if (json != null) {
+                modelAnnotations.add(json);
+            }
+        }
+        return Collections.unmodifiableList(modelAnnotations);
+    }
+}
@@ -72,11 +72,24 @@ abstract class ModelCreator {
     }
 
     ModelContainer copyModel(IRI sourceModelId, String userId, Set<String> providerGroups, UndoMetadata token, Set<OWLAnnotation> modelAnnotations, boolean preserveEvidence) throws UnknownIdentifierException, OWLOntologyCreationException, RepositoryException, IOException, OWLOntologyStorageException {
+        // keep the source in memory while it is copied
+        ModelContainer sourceModel = m3.pinModel(sourceModelId);
+        if (sourceModel == null) {
+            throw new UnknownIdentifierException("Could not find a model for id: " + sourceModelId);
+        }
+        try {
+            return copyModel(sourceModel, userId, providerGroups, token, modelAnnotations, preserveEvidence);
+        } finally {
+            m3.unpinModel(sourceModelId);
+        }
+    }
+
+    private ModelContainer copyModel(ModelContainer sourceModel, String userId, Set<String> providerGroups, UndoMetadata token, Set<OWLAnnotation> modelAnnotations, boolean preserveEvidence) throws UnknownIdentifierException, OWLOntologyCreationException, RepositoryException, IOException, OWLOntologyStorageException {
+        final IRI sourceModelId = sourceModel.getModelId();
         OWLDataFactory df = OWLManager.getOWLDataFactory();
         Set<OWLAnnotationProperty> evidenceProperties = new HashSet<>();
         evidenceProperties.add(df.getOWLAnnotationProperty(AnnotationShorthand.with.getAnnotationProperty()));
         evidenceProperties.add(df.getOWLAnnotationProperty(AnnotationShorthand.source.getAnnotationProperty()));
-        ModelContainer sourceModel = m3.getModel(sourceModelId);
         boolean titleIsProvided = modelAnnotations.stream()
                 .anyMatch(ann -> ann.getProperty().getIRI().equals(AnnotationShorthand.title.getAnnotationProperty()));
         Optional<OWLAnnotation> maybeNewTitle;
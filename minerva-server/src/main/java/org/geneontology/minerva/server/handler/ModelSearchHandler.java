@@ -1,9 +1,10 @@
 package org.geneontology.minerva.server.handler;
 
 import com.google.gson.annotations.SerializedName;
-import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
 import org.geneontology.minerva.BlazegraphMolecularModelManager;
 import org.geneontology.minerva.BlazegraphOntologyManager;
+import org.geneontology.minerva.ModelIndex;
 import org.geneontology.minerva.MolecularModelManager.UnknownIdentifierException;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.openrdf.query.*;
@@ -13,8 +14,8 @@ import org.semanticweb.owlapi.model.IRI;
 import javax.ws.rs.*;
 import javax.ws.rs.core.MediaType;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Respond to queries for models in the running blazegraph instance backing minerva
@@ -23,8 +24,39 @@ import java.util.*;
 @Path("/search/models")
 public class ModelSearchHandler {
 
+    private static final Logger LOG = Logger.getLogger(ModelSearchHandler.class);
+
+    private static final int QUERY_TIMEOUT = 1000;
+    private static final int MAX_CACHED_SEARCHES = 1000;
+    /**
+     * Maximum number of candidate models from the model index passed to the query as VALUES
+     */
+    private static final int MAX_CANDIDATE_MODELS = 10000;
+
+    private static final ModelSearchQueryTemplate TEMPLATE;
+
+    static {
+        try {
+            TEMPLATE = ModelSearchQueryTemplate.load("/ModelSearchQueryTemplate.rq");
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not load the model search query template", e);
+        }
+    }
+
     private final BlazegraphMolecularModelManager<?> m3;
     private final BlazegraphOntologyManager go_lego;
+    private final ModelIndex modelIndex;
+
+    /**
+     * Results of searches by their normalized parameters, cleared with every commit of models
+     */
+    private final Map<String, CachedSearch> cache = new LinkedHashMap<String, CachedSearch>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedSearch> eldest) {
+            return size() > MAX_CACHED_SEARCHES;
+        }
+    };
+    private final AtomicLong commits = new AtomicLong();
 
     /**
      *
@@ -32,6 +64,30 @@ public class ModelSearchHandler {
     public ModelSearchHandler(BlazegraphMolecularModelManager<?> m3) {
         this.m3 = m3;
         this.go_lego = m3.getGolego_repo();
+        this.modelIndex = m3.getModelIndex();
+        m3.addModelCommitListener(modelIds -> {
+            commits.incrementAndGet();
+            synchronized (cache) {
+                cache.clear();
+            }
+        });
+    }
+
+    /**
+     * Search result without the modified flags, which are taken from the loaded models for every response.
+     */
+    private static class CachedSearch {
+        private final Integer n;
+        private final List<ModelMeta> models;
+        private final List<IRI> modelIds;
+        private final String sparql;
+
+        private CachedSearch(Integer n, List<ModelMeta> models, List<IRI> modelIds, String sparql) {
+            this.n = n;
+            this.models = models;
+            this.modelIds = modelIds;
+            this.sparql = sparql;
+        }
     }
 
     public class ModelSearchResult {
@@ -268,17 +324,24 @@ public class ModelSearchHandler {
             }
         }
         Map<String, ModelMeta> id_model = new LinkedHashMap<String, ModelMeta>();
-        String sparql = "";
-        try {
-            sparql = IOUtils.toString(ModelSearchHandler.class.getResourceAsStream("/ModelSearchQueryTemplate.rq"), StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+        Map<String, IRI> id_model_iri = new HashMap<String, IRI>();
+        String cacheKey = cacheKey(taxa, gene_type_uris, go_type_uris, expand, pmids, title_search, state_search,
+                contributor_search, group_search, exactdate, date_search, datend, offset, limit, count, id);
+        CachedSearch cached;
+        synchronized (cache) {
+            cached = cache.get(cacheKey);
+        }
+        if (cached != null) {
+            return fromCache(cached, debug);
+        }
+        final long commitsBeforeSearch = commits.get();
+        // the index finds the candidate models, the query only checks those
+        ModelIndex.Query candidateQuery = new ModelIndex.Query();
         Map<String, String> ind_return = new HashMap<String, String>();
         String ind_return_list = ""; //<ind_return_list>
         String types = ""; //<types>
         int n = 0;
+        candidateQuery.allOf(ModelIndex.Field.TYPE, gene_type_uris);
         for (String type_uri : gene_type_uris) {
             n++;
             ind_return.put("?ind" + n, type_uri);
@@ -290,13 +353,15 @@ public class ModelSearchHandler {
                 n++;
                 ind_return.put("?ind" + n, go_type_uri);
                 ind_return_list = ind_return_list + " (GROUP_CONCAT(?ind" + n + " ; separator=\" \") AS ?inds" + n + ")";
-                String expansion = "VALUES ?term" + n + " { ";
+                StringBuilder expansion = new StringBuilder("VALUES ?term" + n + " { ");
                 try {
-                    Set<String> subclasses = go_lego.getAllSubClasses(go_type_uri);
+                    // only the subclasses used in a model are needed in the query
+                    Set<String> subclasses = modelIndex.getUsedValues(ModelIndex.Field.TYPE, go_lego.getAllSubClasses(go_type_uri));
+                    candidateQuery.anyOf(ModelIndex.Field.TYPE, subclasses);
                     for (String sub : subclasses) {
-                        expansion += "<" + sub + "> \n";
+                        expansion.append("<").append(sub).append("> \n");
                     }
-                    expansion += "} . \n";
+                    expansion.append("} . \n");
                     types = types + " " + expansion + " ?ind" + n + " rdf:type ?term" + n + " . \n";
                 } catch (IOException e) {
                     // TODO Auto-generated catch block
@@ -304,6 +369,7 @@ public class ModelSearchHandler {
                 }
             }
         } else {
+            candidateQuery.allOf(ModelIndex.Field.TYPE, go_type_uris);
             for (String go_type_uri : go_type_uris) {
                 n++;
                 ind_return.put("?ind" + n, go_type_uri);
@@ -311,9 +377,9 @@ public class ModelSearchHandler {
                 types = types + "?ind" + n + " rdf:type <" + go_type_uri + "> . \n";
             }
         }
-        String id_constraint = "";
+        Set<String> id_iris = null;
         if (id != null && id.size() > 0) {
-            String id_list = "";
+            id_iris = new HashSet<String>();
             for (String mid : id) {
                 if (!mid.contains("http")) {
                     String[] curie = mid.split(":");
@@ -329,12 +395,12 @@ public class ModelSearchHandler {
                     //					e.printStackTrace();
                     //				}
                 }
-                id_list += "<" + mid + "> ";
+                id_iris.add(mid);
             }
-            id_constraint = " values ?id { " + id_list + " } ";
         }
         String pmid_constraints = ""; //<pmid_constraints>
         if (pmids != null) {
+            candidateQuery.allOf(ModelIndex.Field.PMID, pmids);
             for (String pmid : pmids) {
                 n++;
                 ind_return.put("?ind" + n, pmid);
@@ -351,6 +417,7 @@ public class ModelSearchHandler {
                 } else if (!taxon.startsWith("http://purl.obolibrary.org/obo/NCBITaxon_")) {
                     taxon = "http://purl.obolibrary.org/obo/NCBITaxon_" + taxon;
                 }
+                candidateQuery.allOf(ModelIndex.Field.TAXON, Collections.singleton(taxon));
                 taxa_constraint += "?id <" + BlazegraphOntologyManager.in_taxon_uri + "> <" + taxon + "> . \n";
             }
         }
@@ -399,6 +466,7 @@ public class ModelSearchHandler {
             }
             // FILTER (?state IN ("production", , "development", "review", "closed", "delete" ))
             state_search_constraint = "FILTER (?state IN (" + allowed_states + ")) . \n";
+            candidateQuery.anyOf(ModelIndex.Field.STATE, state_search);
         }
         String contributor_search_constraint = "";
         if (contributor_search != null && contributor_search.size() > 0) {
@@ -414,6 +482,7 @@ public class ModelSearchHandler {
             contributor_search_constraint =
                     " ?id <http://purl.org/dc/elements/1.1/contributor> ?test_contributor . \n"
                             + " FILTER (?test_contributor IN (" + allowed_contributors + ")) . \n";
+            candidateQuery.anyOf(ModelIndex.Field.CONTRIBUTOR, contributor_search);
         }
         String group_search_constraint = "";
         if (group_search != null && group_search.size() > 0) {
@@ -428,6 +497,7 @@ public class ModelSearchHandler {
             }
             group_search_constraint = " ?id <http://purl.org/pav/providedBy> ?test_group . \n"
                     + "FILTER (?test_group IN (" + allowed_group + ")) . \n";
+            candidateQuery.anyOf(ModelIndex.Field.GROUP, group_search);
         }
         String date_constraint = "";
         if (exactdate != null && exactdate.length() == 10) {
@@ -454,35 +524,56 @@ public class ModelSearchHandler {
         String group_by_constraint = "GROUP BY ?id";
         //default return block
         //TODO investigate need to add DISTINCT to GROUP_CONCAT here
-        String return_block = "?id (MIN(?date) AS ?mindate) (MIN(?title) AS ?mintitle) (MIN(?state) AS ?minstate) <ind_return_list> (GROUP_CONCAT(DISTINCT ?contributor;separator=\";\") AS ?contributors) (GROUP_CONCAT(DISTINCT ?group;separator=\";\") AS ?groups)";
+        String return_block = "?id (MIN(?date) AS ?mindate) (MIN(?title) AS ?mintitle) (MIN(?state) AS ?minstate) " + ind_return_list + " (GROUP_CONCAT(DISTINCT ?contributor;separator=\";\") AS ?contributors) (GROUP_CONCAT(DISTINCT ?group;separator=\";\") AS ?groups)";
         if (count != null) {
             return_block = "(count(distinct ?id) as ?count)";
             limit_constraint = "";
             offset_constraint = "";
             group_by_constraint = "";
         }
-        sparql = sparql.replaceAll("<return_block>", return_block);
-        sparql = sparql.replaceAll("<id_constraint>", id_constraint);
-        sparql = sparql.replaceAll("<group_by_constraint>", group_by_constraint);
-        sparql = sparql.replaceAll("<ind_return_list>", ind_return_list);
-        sparql = sparql.replaceAll("<types>", types);
-        sparql = sparql.replaceAll("<pmid_constraints>", pmid_constraints);
-        sparql = sparql.replaceAll("<title_constraint>", title_search_constraint);
-        sparql = sparql.replaceAll("<state_constraint>", state_search_constraint);
-        sparql = sparql.replaceAll("<contributor_constraint>", contributor_search_constraint);
-        sparql = sparql.replaceAll("<group_constraint>", group_search_constraint);
-        sparql = sparql.replaceAll("<date_constraint>", date_constraint);
-        sparql = sparql.replaceAll("<limit_constraint>", limit_constraint);
-        sparql = sparql.replaceAll("<offset_constraint>", offset_constraint);
-        sparql = sparql.replaceAll("<taxa_constraint>", taxa_constraint);
+        Set<String> candidates = findCandidates(candidateQuery, id_iris);
+        // a search without any candidate model can't match
+        boolean noMatch = candidates != null && candidates.isEmpty();
+        String id_constraint = "";
+        // requested ids are always passed, too many other candidates are left to the query
+        if (candidates != null && (id_iris != null || candidates.size() <= MAX_CANDIDATE_MODELS)) {
+            StringBuilder id_list = new StringBuilder();
+            for (String mid : candidates) {
+                id_list.append("<").append(mid).append("> ");
+            }
+            id_constraint = " values ?id { " + id_list + " } ";
+        }
+        Map<String, String> values = new HashMap<String, String>();
+        values.put("return_block", return_block);
+        values.put("id_constraint", id_constraint);
+        values.put("group_by_constraint", group_by_constraint);
+        values.put("types", types);
+        values.put("pmid_constraints", pmid_constraints);
+        values.put("title_constraint", title_search_constraint);
+        values.put("state_constraint", state_search_constraint);
+        values.put("contributor_constraint", contributor_search_constraint);
+        values.put("group_constraint", group_search_constraint);
+        values.put("date_constraint", date_constraint);
+        values.put("limit_constraint", limit_constraint);
+        values.put("offset_constraint", offset_constraint);
+        values.put("taxa_constraint", taxa_constraint);
+        String sparql = TEMPLATE.render(values);
         if (debug != null) {
             r.sparql = sparql;
         } else {
             r.sparql = "add 'debug' parameter to see sparql request";
         }
+        if (noMatch) {
+            r.n = 0;
+            if (count == null) {
+                r.models = new LinkedHashSet<ModelMeta>();
+            }
+            putCache(cacheKey, commitsBeforeSearch, r, Collections.emptyList(), sparql);
+            return r;
+        }
         TupleQueryResult result;
         try {
-            result = (TupleQueryResult) m3.executeSPARQLQuery(sparql, 1000);
+            result = (TupleQueryResult) m3.executeSPARQLQuery(sparql, QUERY_TIMEOUT);
         } catch (MalformedQueryException | QueryEvaluationException | RepositoryException e) {
             if (e instanceof MalformedQueryException) {
                 r.message = "Malformed Query";
@@ -540,6 +631,7 @@ public class ModelSearchHandler {
                         //look up model in in-memory cache to check edit state
                         boolean is_modified = m3.isModelModified(model_iri);
                         mm = new ModelMeta(model_curie, date, title, state, contributors, groups, is_modified);
+                        id_model_iri.put(model_curie, model_iri);
                     }
                     //matching
                     for (String ind : ind_return.keySet()) {
@@ -577,12 +669,84 @@ public class ModelSearchHandler {
             e.printStackTrace();
             return r;
         }
+        List<IRI> model_iris = new ArrayList<IRI>();
+        for (String model_curie : id_model.keySet()) {
+            model_iris.add(id_model_iri.get(model_curie));
+        }
+        putCache(cacheKey, commitsBeforeSearch, r, model_iris, sparql);
         //test
         //http://127.0.0.1:6800/modelsearch/?query=bla
         return r;
     }
 
 
+    /**
+     * @param query  clauses for the model index
+     * @param id_iris requested models or null
+     * @return the candidate model IRIs sorted, or null if the search is not restricted
+     */
+    private Set<String> findCandidates(ModelIndex.Query query, Set<String> id_iris) {
+        if (query.isEmpty()) {
+            return id_iris == null ? null : new TreeSet<String>(id_iris);
+        }
+        try {
+            Set<String> candidates = new TreeSet<String>();
+            for (IRI model : modelIndex.getModels(query)) {
+                if (id_iris == null || id_iris.contains(model.toString())) {
+                    candidates.add(model.toString());
+                }
+            }
+            return candidates;
+        } catch (IOException e) {
+            LOG.error("Could not look up candidate models in the model index", e);
+            return id_iris == null ? null : new TreeSet<String>(id_iris);
+        }
+    }
+
+    private static String cacheKey(Object... parameters) {
+        StringBuilder key = new StringBuilder();
+        for (Object parameter : parameters) {
+            if (parameter instanceof Collection) {
+                // sets with the same values give the same key
+                parameter = new TreeSet<Object>((Collection<?>) parameter);
+            }
+            key.append(parameter).append('\u0000');
+        }
+        return key.toString();
+    }
+
+    private void putCache(String key, long commitsBeforeSearch, ModelSearchResult r, List<IRI> modelIds, String sparql) {
+        List<ModelMeta> models = r.models != null ? new ArrayList<ModelMeta>(r.models) : null;
+        synchronized (cache) {
+            // skip results, which may be outdated by a commit during the search
+            if (commits.get() == commitsBeforeSearch) {
+                cache.put(key, new CachedSearch(r.n, models, modelIds, sparql));
+            }
+        }
+    }
+
+    private ModelSearchResult fromCache(CachedSearch cached, String debug) {
+        ModelSearchResult r = new ModelSearchResult();
+        r.n = cached.n;
+        if (cached.models != null) {
+            r.models = new LinkedHashSet<ModelMeta>();
+            for (int i = 0; i < cached.models.size(); i++) {
+                ModelMeta mm = cached.models.get(i);
+                // the modified flag of the loaded model may have changed since the search
+                ModelMeta copy = new ModelMeta(mm.id, mm.date, mm.title, mm.state, mm.contributors, mm.groups,
+                        m3.isModelModified(cached.modelIds.get(i)));
+                copy.query_match = mm.query_match;
+                r.models.add(copy);
+            }
+        }
+        if (debug != null) {
+            r.sparql = cached.sparql;
+        } else {
+            r.sparql = "add 'debug' parameter to see sparql request";
+        }
+        return r;
+    }
+
     @POST
     @Produces(MediaType.APPLICATION_JSON)
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
@@ -0,0 +1,78 @@
+package org.geneontology.minerva.server.handler;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SPARQL query template with placeholders like {@code <types>}, split into its
+ * fixed parts once, so that a query is rendered by appending the parts and the values.
+ * The values are inserted as they are, they are not interpreted as regex replacements.
+ */
+class ModelSearchQueryTemplate {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("<([a-z_]+)>");
+
+    private final List<String> parts;
+    private final List<String> placeholders;
+
+    private ModelSearchQueryTemplate(List<String> parts, List<String> placeholders) {
+        this.parts = parts;
+        this.placeholders = placeholders;
+    }
+
+    static ModelSearchQueryTemplate load(String resource) throws IOException {
+        InputStream stream = ModelSearchQueryTemplate.class.getResourceAsStream(resource);
+        if (stream == null) {
+            throw new IOException("Could not find query template: " + resource);
+        }
+        try {
+            return parse(IOUtils.toString(stream, StandardCharsets.UTF_8));
+        } finally {
+            stream.close();
+        }
+    }
+
+    static ModelSearchQueryTemplate parse(String template) {
+        List<String> parts = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        int start = 0;
+        while (matcher.find()) {
+            parts.add(template.substring(start, matcher.start()));
+            placeholders.add(matcher.group(1));
+            start = matcher.end();
+        }
+        parts.add(template.substring(start));
+        return new ModelSearchQueryTemplate(parts, placeholders);
+    }
+
+    List<String> getPlaceholders() {
+        return Collections.unmodifiableList(placeholders);
+    }
+
+    /**
+     * @param values values for the placeholders, missing placeholders are left empty
+     * @return query
+     */
+    String render(Map<String, String> values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < placeholders.size(); i++) {
+            sb.append(parts.get(i));
+            String value = values.get(placeholders.get(i));
+            if (value != null) {
+                sb.append(value);
+            }
+        }
+        sb.append(parts.get(parts.size() - 1));
+        return sb.toString();
+    }
+}
@@ -5,6 +5,7 @@ import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.log4j.Logger;
+import org.geneontology.minerva.BlazegraphMolecularModelManager.CappedQueryResult;
 import org.geneontology.minerva.CoreMolecularModelManager.DeleteInformation;
 import org.geneontology.minerva.ModelContainer;
 import org.geneontology.minerva.MolecularModelManager;
@@ -29,7 +30,6 @@ import org.openrdf.query.*;
 import org.openrdf.repository.RepositoryException;
 import org.openrdf.rio.RDFHandlerException;
 import org.openrdf.rio.RDFWriter;
-import org.openrdf.rio.Rio;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.OntologyCopy;
@@ -53,7 +53,7 @@ abstract class OperationsImpl extends ModelCreator {
 
     final Set<OWLObjectProperty> importantRelations;
     final BeforeSaveModelValidator beforeSaveValidator;
-    private final OWLAnnotationProperty contributor = OWLManager.getOWLDataFactory().getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor"));
+    private final MetaResponseCache metaResponseCache;
 
     private static final Logger LOG = Logger.getLogger(OperationsImpl.class);
     public static final int SPARQL_QUERY_TIMEOUT = 20;
@@ -64,18 +64,23 @@ abstract class OperationsImpl extends ModelCreator {
         super(models, defaultModelState);
         this.importantRelations = importantRelations;
         this.beforeSaveValidator = new BeforeSaveModelValidator();
+        this.metaResponseCache = new MetaResponseCache(models, importantRelations, curieHandler);
     }
 
     abstract boolean checkLiteralIdentifiers();
 
     abstract boolean validateBeforeSave();
 
+    abstract long sparqlMaxRows();
+
     static class BatchHandlerValues implements VariableResolver {
 
         final Set<OWLNamedIndividual> relevantIndividuals = new HashSet<>();
         boolean renderBulk = false;
         boolean nonMeta = false;
         ModelContainer model = null;
+        // models pinned by checkModelId, released at the end of the batch
+        final List<IRI> pinnedModelIds = new ArrayList<>();
         Map<String, OWLNamedIndividual> individualVariable = new HashMap<>();
         String diffResult = null;
 
@@ -130,7 +135,7 @@ abstract class OperationsImpl extends ModelCreator {
     String handleRequestForIndividual(M3Request request, Operation operation, String userId, Set<String> providerGroups, UndoMetadata token, BatchHandlerValues values) throws Exception {
         values.nonMeta = true;
         requireNotNull(request.arguments, "request.arguments");
-        values.model = checkModelId(values.model, request);
+        values.model = checkModelId(values, request);
 
         // get info, no modification
         if (Operation.get == operation) {
@@ -322,7 +327,7 @@ abstract class OperationsImpl extends ModelCreator {
     String handleRequestForEdge(M3Request request, Operation operation, String userId, Set<String> providerGroups, UndoMetadata token, BatchHandlerValues values) throws Exception {
         values.nonMeta = true;
         requireNotNull(request.arguments, "request.arguments");
-        values.model = checkModelId(values.model, request);
+        values.model = checkModelId(values, request);
         // required: subject, predicate, object
         requireNotNull(request.arguments.subject, "request.arguments.subject");
         requireNotNull(request.arguments.predicate, "request.arguments.predicate");
@@ -404,12 +409,12 @@ abstract class OperationsImpl extends ModelCreator {
         if (Operation.get == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             values.renderBulk = true;
         } else if (Operation.copy == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             boolean preserveEvidence = false;
             if (request.arguments.preserveEvidence != null) preserveEvidence = request.arguments.preserveEvidence;
             Set<OWLAnnotation> modelAnnotations = extract(request.arguments.values, userId, providerGroups, values, values.model);
@@ -418,7 +423,7 @@ abstract class OperationsImpl extends ModelCreator {
         } else if (Operation.updateImports == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             values.renderBulk = true;
         }
         // add an empty model
@@ -435,7 +440,7 @@ abstract class OperationsImpl extends ModelCreator {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
             requireNotNull(request.arguments.values, "request.arguments.values");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             Set<OWLAnnotation> annotations = extract(request.arguments.values, userId, providerGroups, values, values.model);
             if (annotations != null) {
                 m3.addModelAnnotations(values.model, annotations, token);
@@ -445,7 +450,7 @@ abstract class OperationsImpl extends ModelCreator {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
             requireNotNull(request.arguments.values, "request.arguments.values");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             Set<OWLAnnotation> annotations = extract(request.arguments.values, null, Collections.emptySet(), values, values.model);
             if (annotations != null) {
                 m3.removeAnnotations(values.model, annotations, token);
@@ -458,7 +463,7 @@ abstract class OperationsImpl extends ModelCreator {
                 return "Export model can only be combined with other meta operations.";
             }
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             export(response, values.model, userId, providerGroups);
         } else if (Operation.exportModelLegacy == operation) {
             if (values.nonMeta) {
@@ -466,7 +471,7 @@ abstract class OperationsImpl extends ModelCreator {
                 return "Export legacy model can only be combined with other meta operations.";
             }
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             exportLegacy(response, values.model, request.arguments.format, userId);
         } else if (Operation.importModel == operation) {
             values.nonMeta = true;
@@ -484,7 +489,7 @@ abstract class OperationsImpl extends ModelCreator {
         } else if (Operation.storeModel == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             Set<OWLAnnotation> annotations = extract(request.arguments.values, userId, providerGroups, values, values.model);
             if (validateBeforeSave()) {
                 List<String> issues = beforeSaveValidator.validateBeforeSave(values.model);
@@ -506,7 +511,7 @@ abstract class OperationsImpl extends ModelCreator {
         } else if (Operation.resetModel == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             //drop in memory model and reload
             IRI model_iri = values.model.getModelId();
             boolean drop_cached = true;
@@ -515,19 +520,20 @@ abstract class OperationsImpl extends ModelCreator {
             //ensure the change queue is gone to avoid downstream confusion.
             m3.clearUndoHistory(model_iri);
             //reset model values
-            values.model = checkModelId(null, request);
+            values.model = null;
+            values.model = checkModelId(values, request);
             values.renderBulk = true;
         } else if (Operation.diffModel == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
             //this won't change
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             IRI model_iri = values.model.getModelId();
             //run diff
             OWLOntologyManager man1 = OWLManager.createOWLOntologyManager();
             //do we have an ontology in the datastore with that id?
             OWLOntology stored_ontology = null;
-            if (m3.getStoredModelIds().contains(model_iri)) {
+            if (m3.isStoredModel(model_iri)) {
                 stored_ontology = m3.loadModelABox(model_iri);
             } else {
                 //could error out here, but maybe this is more useful
@@ -548,13 +554,13 @@ abstract class OperationsImpl extends ModelCreator {
         } else if (Operation.undo == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             m3.undo(values.model, userId);
             values.renderBulk = true;
         } else if (Operation.redo == operation) {
             values.nonMeta = true;
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             m3.redo(values.model, userId);
             values.renderBulk = true;
         } else if (Operation.getUndoRedo == operation) {
@@ -563,7 +569,7 @@ abstract class OperationsImpl extends ModelCreator {
                 return operation + " cannot be combined with other operations.";
             }
             requireNotNull(request.arguments, "request.arguments");
-            values.model = checkModelId(values.model, request);
+            values.model = checkModelId(values, request);
             getCurrentUndoRedoForModel(response, values.model.getModelId(), userId);
         } else {
             return "Unknown operation: " + operation;
@@ -574,27 +580,36 @@ abstract class OperationsImpl extends ModelCreator {
     void handleSPARQLRequest(M3Request request, M3BatchResponse response) throws IOException, OWLException, QueryEvaluationException, RDFHandlerException, TupleQueryResultHandlerException, RepositoryException, MalformedQueryException {
         String query = request.arguments.query;
         if (query != null) {
-            QueryResult result = m3.executeSPARQLQuery(query, SPARQL_QUERY_TIMEOUT);
-
+            // the result is consumed here, so the connection is released before the response is rendered
+            QueryResult<?> result = m3.openSPARQLQuery(query, SPARQL_QUERY_TIMEOUT, sparqlMaxRows());
             final JsonObject jsonObject;
-            if (result instanceof GraphQueryResult) {
-                //RDFWriter writer = new RDFJSONWriterFactory().getWriter(stream);
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
-                RDFWriter writer = new SesameJSONLDWriterFactory().getWriter(stream);
-                writer.handleNamespace("gomodel", "http://model.geneontology.org/");
-                Rio.write(QueryResults.asModel((GraphQueryResult) result), writer);
-                String json = stream.toString("UTF-8");
-                stream.close();
-                jsonObject = new Gson().fromJson(json, JsonObject.class);
-                //QueryResultIO.write((GraphQueryResult) result, RDFFormat.RDFJSON, stream);
-            } else if (result instanceof TupleQueryResult) {
-                jsonObject = new SPARQLResultJSONRenderer(curieHandler).renderResults((TupleQueryResult) result);
-                //QueryResultIO.write((TupleQueryResult) result, TupleQueryResultFormat.JSON, stream);
-            } else {
-                throw new UnsupportedOperationException("Query type not supported.");
+            final boolean truncated;
+            try {
+                if (result instanceof GraphQueryResult) {
+                    //RDFWriter writer = new RDFJSONWriterFactory().getWriter(stream);
+                    ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                    RDFWriter writer = new SesameJSONLDWriterFactory().getWriter(stream);
+                    writer.handleNamespace("gomodel", "http://model.geneontology.org/");
+                    QueryResults.report((GraphQueryResult) result, writer);
+                    String json = stream.toString("UTF-8");
+                    stream.close();
+                    jsonObject = new Gson().fromJson(json, JsonObject.class);
+                    //QueryResultIO.write((GraphQueryResult) result, RDFFormat.RDFJSON, stream);
+                } else if (result instanceof TupleQueryResult) {
+                    jsonObject = new SPARQLResultJSONRenderer(curieHandler).renderResults((TupleQueryResult) result);
+                    //QueryResultIO.write((TupleQueryResult) result, TupleQueryResultFormat.JSON, stream);
+                } else {
+                    throw new UnsupportedOperationException("Query type not supported.");
+                }
+                truncated = ((CappedQueryResult) result).isTruncated();
+            } finally {
+                result.close();
             }
             initMetaResponse(response);
             response.data.sparqlResult = jsonObject;
+            if (truncated) {
+                response.data.sparqlResultTruncatedFlag = Boolean.TRUE;
+            }
         }
     }
 
@@ -633,6 +648,7 @@ abstract class OperationsImpl extends ModelCreator {
 
     /**
      * Handle the request for the meta properties.
+     * The meta data is cached, see {@link MetaResponseCache}.
      *
      * @param response
      * @param userId
@@ -646,73 +662,8 @@ abstract class OperationsImpl extends ModelCreator {
             response.data.meta = new MetaResponse();
         }
 
-        // relations
-        Pair<List<JsonRelationInfo>, List<JsonRelationInfo>> propPair = MolecularModelJsonRenderer.renderProperties(m3, importantRelations, curieHandler);
-        final List<JsonRelationInfo> relList = propPair.getLeft();
-        if (relList != null) {
-            response.data.meta.relations = relList.toArray(new JsonRelationInfo[relList.size()]);
-        }
-
-        // data properties
-        final List<JsonRelationInfo> propList = propPair.getRight();
-        if (propList != null) {
-            response.data.meta.dataProperties = propList.toArray(new JsonRelationInfo[propList.size()]);
-        }
-
-        // evidence
-        final List<JsonEvidenceInfo> evidencesList = MolecularModelJsonRenderer.renderEvidences(m3, curieHandler);
-        if (evidencesList != null) {
-            response.data.meta.evidence = evidencesList.toArray(new JsonEvidenceInfo[evidencesList.size()]);
-        }
-
-        // model ids
-        // and model annotations
-        final Set<IRI> allModelIds = m3.getAvailableModelIds();
-        final Map<String, List<JsonAnnotation>> allModelAnnotations = new HashMap<>();
-        final Map<String, Map<String, Object>> allModelAnnotationsReadOnly = new HashMap<>();
-        final Map<IRI, Set<OWLAnnotation>> annotationsForAllModels = m3.getAllModelAnnotations();
-        for (IRI modelId : allModelIds) {
-            String curie = curieHandler.getCuri(modelId);
-            List<JsonAnnotation> modelAnnotations = new ArrayList<>();
-            allModelAnnotations.put(curie, modelAnnotations);
-            // Iterate through the model's a.
-            Set<OWLAnnotation> annotations = annotationsForAllModels.get(modelId);
-            if (annotations != null) {
-                for (OWLAnnotation an : annotations) {
-                    final String label;
-                    if (an.getProperty().equals(contributor)) {
-                        final IRI iri;
-                        if (an.getValue() instanceof IRI) {
-                            iri = an.getValue().asIRI().get();
-                        } else if (an.getValue() instanceof OWLLiteral) {
-                            iri = IRI.create(an.getValue().asLiteral().get().getLiteral());
-                        } else {
-                            iri = null;
-                        }
-                        if (iri != null) {
-                            label = m3.getTboxLabelIndex().getOrDefault(iri, null);
-                        } else {
-                            label = null;
-                        }
-                    } else {
-                        label = null;
-                    }
-                    JsonAnnotation json = JsonTools.create(an.getProperty(), an.getValue(), label, curieHandler);
-                    if (json != null) {
-                        modelAnnotations.add(json);
-                    }
-                }
-            } else {
-                LOG.error("No annotations found for model: " + modelId);
-            }
-            // handle read-only information, currently only the modification flag
-            // check modification status
-            boolean modified = m3.isModelModified(modelId);
-            Map<String, Object> readOnly = Collections.<String, Object>singletonMap("modified-p", Boolean.valueOf(modified));
-            allModelAnnotationsReadOnly.put(curie, readOnly);
-        }
-        response.data.meta.modelsMeta = allModelAnnotations;
-        response.data.meta.modelsReadOnly = allModelAnnotationsReadOnly;
+        // relations, data properties, evidence, model ids and model annotations
+        response.metaETag = metaResponseCache.fill(response.data.meta);
     }
 
     void exportAllModels() throws OWLOntologyStorageException, OWLOntologyCreationException, IOException {
@@ -758,20 +709,29 @@ abstract class OperationsImpl extends ModelCreator {
 
 
     /**
-     * @param model
+     * Fetch the model of the request, if the batch has none yet. The model is pinned in memory
+     * until {@link #unpinModels(BatchHandlerValues)} is called for the batch.
+     *
+     * @param values
      * @param request
      * @return modelId
      * @throws MissingParameterException
      * @throws MultipleModelIdsParameterException
      * @throws UnknownIdentifierException
      */
-    public ModelContainer checkModelId(ModelContainer model, M3Request request)
+    public ModelContainer checkModelId(BatchHandlerValues values, M3Request request)
             throws MissingParameterException, MultipleModelIdsParameterException, UnknownIdentifierException {
 
+        ModelContainer model = values.model;
         if (model == null) {
             final String currentModelId = request.arguments.modelId;
             requireNotNull(currentModelId, "request.arguments.modelId");
-            model = m3.checkModelId(curieHandler.getIRI(currentModelId));
+            IRI modelId = curieHandler.getIRI(currentModelId);
+            model = m3.pinModel(modelId);
+            if (model == null) {
+                throw new UnknownIdentifierException("Could not find a model for id: " + modelId);
+            }
+            values.pinnedModelIds.add(modelId);
         } else {
             final String currentModelId = request.arguments.modelId;
             if (currentModelId != null) {
@@ -784,6 +744,18 @@ abstract class OperationsImpl extends ModelCreator {
         return model;
     }
 
+    /**
+     * Release the models pinned by {@link #checkModelId(BatchHandlerValues, M3Request)}.
+     *
+     * @param values
+     */
+    void unpinModels(BatchHandlerValues values) {
+        for (IRI modelId : values.pinnedModelIds) {
+            m3.unpinModel(modelId);
+        }
+        values.pinnedModelIds.clear();
+    }
+
     private void updateAnnotationsForDelete(DeleteInformation info, ModelContainer model, String userId, Set<String> providerGroups, UndoMetadata token, UndoAwareMolecularModelManager m3) throws UnknownIdentifierException {
         final OWLDataFactory f = model.getOWLDataFactory();
         final OWLAnnotation annotation = createDateAnnotation(f);
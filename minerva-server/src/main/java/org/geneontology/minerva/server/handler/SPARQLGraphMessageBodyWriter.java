@@ -1,5 +1,6 @@
 package org.geneontology.minerva.server.handler;
 
+import org.apache.log4j.Logger;
 import org.openrdf.query.GraphQueryResult;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.resultio.QueryResultIO;
@@ -34,6 +35,8 @@ import java.lang.reflect.Type;
 })
 public class SPARQLGraphMessageBodyWriter implements MessageBodyWriter<GraphQueryResult> {
 
+    private static final Logger LOG = Logger.getLogger(SPARQLGraphMessageBodyWriter.class);
+
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return true;
@@ -50,10 +53,15 @@ public class SPARQLGraphMessageBodyWriter implements MessageBodyWriter<GraphQuer
         try {
             QueryResultIO.write(result, format, entityStream);
             entityStream.flush();
-            result.close();
         } catch (RDFHandlerException | QueryEvaluationException e) {
             throw new WebApplicationException(e);
+        } finally {
+            // also after a failed write, e.g. a disconnected client, which cancels the running query
+            try {
+                result.close();
+            } catch (QueryEvaluationException e) {
+                LOG.warn("Could not close SPARQL result", e);
+            }
         }
-
     }
 }
@@ -1,45 +1,88 @@
 package org.geneontology.minerva.server.handler;
 
+import org.apache.log4j.Logger;
 import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.glassfish.jersey.server.CloseableService;
 import org.openrdf.query.MalformedQueryException;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.QueryResult;
 import org.openrdf.repository.RepositoryException;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
 
 /**
  * SPARQL query endpoint
  * SPARQL query result will be serialized by either
  * SPARQLResultsMessageBodyWriter or SPARQLGraphMessageBodyWriter
+ * <br>
+ * The result is streamed: the bindings or statements are written while the query
+ * is evaluated and the read-only connection stays open until the response is done.
+ * As the headers are sent before the result is complete, a capped response announces
+ * its maximum number of rows in the {@value #MAX_ROWS_HEADER} header. A result with
+ * that many rows may have been cut off.
  */
 @Path("/sparql")
 public class SPARQLHandler {
 
+    private static final Logger LOG = Logger.getLogger(SPARQLHandler.class);
+
+    public static final String MAX_ROWS_HEADER = "X-SPARQL-Max-Rows";
+
     private final BlazegraphMolecularModelManager m3;
     private final int timeout;
+    private final long maxRows;
 
     public SPARQLHandler(BlazegraphMolecularModelManager m3, int timeout) {
+        this(m3, timeout, 0);
+    }
+
+    /**
+     * @param m3
+     * @param timeout in seconds
+     * @param maxRows maximum number of bindings or statements in a response, unlimited if &lt;= 0
+     */
+    public SPARQLHandler(BlazegraphMolecularModelManager m3, int timeout, long maxRows) {
         this.m3 = m3;
         this.timeout = timeout;
+        this.maxRows = maxRows;
     }
 
     @GET
-    public QueryResult sparqlQueryGet(@QueryParam("query") String queryText) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
-        return m3.executeSPARQLQuery(queryText, timeout);
+    public Response sparqlQueryGet(@QueryParam("query") String queryText, @Context CloseableService closeables) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        return open(queryText, closeables);
     }
 
     @POST
     @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
-    public QueryResult sparqlQueryPostForm(@FormParam("query") String queryText) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
-        return m3.executeSPARQLQuery(queryText, timeout);
+    public Response sparqlQueryPostForm(@FormParam("query") String queryText, @Context CloseableService closeables) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        return open(queryText, closeables);
     }
 
     @POST
     @Consumes("application/sparql-query")
-    public QueryResult sparqlQueryPostQuery(String query) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
-        return m3.executeSPARQLQuery(query, timeout);
+    public Response sparqlQueryPostQuery(String query, @Context CloseableService closeables) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        return open(query, closeables);
+    }
+
+    private Response open(String queryText, CloseableService closeables) throws QueryEvaluationException, MalformedQueryException, RepositoryException {
+        final QueryResult<?> result = m3.openSPARQLQuery(queryText, timeout, maxRows);
+        // the message body writers close the result, this also releases the
+        // connection if the response is never written, e.g. no acceptable media type
+        closeables.add(() -> {
+            try {
+                result.close();
+            } catch (QueryEvaluationException e) {
+                LOG.warn("Could not close SPARQL result", e);
+            }
+        });
+        Response.ResponseBuilder response = Response.ok(result);
+        if (maxRows > 0) {
+            response.header(MAX_ROWS_HEADER, maxRows);
+        }
+        return response.build();
     }
 
 }
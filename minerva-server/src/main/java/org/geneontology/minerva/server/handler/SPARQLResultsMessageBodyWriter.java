@@ -1,5 +1,6 @@
 package org.geneontology.minerva.server.handler;
 
+import org.apache.log4j.Logger;
 import org.openrdf.query.QueryEvaluationException;
 import org.openrdf.query.TupleQueryResult;
 import org.openrdf.query.TupleQueryResultHandlerException;
@@ -30,6 +31,8 @@ import java.lang.reflect.Type;
 })
 public class SPARQLResultsMessageBodyWriter implements MessageBodyWriter<TupleQueryResult> {
 
+    private static final Logger LOG = Logger.getLogger(SPARQLResultsMessageBodyWriter.class);
+
     @Override
     public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
         return true;
@@ -46,9 +49,15 @@ public class SPARQLResultsMessageBodyWriter implements MessageBodyWriter<TupleQu
         try {
             QueryResultIO.write(result, format, entityStream);
             entityStream.flush();
-            result.close();
         } catch (TupleQueryResultHandlerException | QueryEvaluationException e) {
             throw new WebApplicationException(e);
+        } finally {
+            // also after a failed write, e.g. a disconnected client, which cancels the running query
+            try {
+                result.close();
+            } catch (QueryEvaluationException e) {
+                LOG.warn("Could not close SPARQL result", e);
+            }
         }
     }
 
@@ -1,7 +1,12 @@
 package org.geneontology.minerva.server.handler;
 
 
+import org.geneontology.minerva.CoreMolecularModelManager;
+import org.geneontology.minerva.ModelResidencyPolicy;
+import org.geneontology.minerva.OntologyTermCache;
 import org.geneontology.minerva.server.StartUpTool.MinervaStartUpConfig;
+import org.geneontology.minerva.util.LatencyHistogram;
+import org.geneontology.minerva.validation.ShexValidationScheduler;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLAnnotation;
 import org.semanticweb.owlapi.model.OWLObjectProperty;
@@ -22,6 +27,7 @@ public class StatusHandler {
     private final MinervaStartUpConfig conf;
     private final Map<IRI, Set<OWLAnnotation>> ont_annosa;
     private final String started_at;
+    private final CoreMolecularModelManager<?> models;
 
     public class Status {
         public String startup_date = started_at;
@@ -53,6 +59,16 @@ public class StatusHandler {
         public int sparqlEndpointTimeout;
         public String shexFileUrl;
         public String goshapemapFileUrl;
+        public ShexValidationScheduler.Statistics shexValidationStatistics;
+        // loaded models
+        public int maxLoadedModels;
+        public long maxLoadedModelsMb;
+        public String modelEvictionOrder;
+        public ModelResidencyPolicy.Statistics modelMapStatistics;
+        public LatencyHistogram.Snapshot modelLoadLatency;
+        // ontology term labels
+        public int termCacheSize;
+        public OntologyTermCache.Statistics termCacheStatistics;
         public Map<IRI, Set<OWLAnnotation>> ont_annos = ont_annosa;
 
         public Status(MinervaStartUpConfig conf) {
@@ -82,6 +98,20 @@ public class StatusHandler {
             this.sparqlEndpointTimeout = conf.sparqlEndpointTimeout;
             this.shexFileUrl = conf.shexFileUrl;
             this.goshapemapFileUrl = conf.goshapemapFileUrl;
+            if (conf.shex != null) {
+                this.shexValidationStatistics = conf.shex.getScheduler().getStatistics();
+            }
+            this.maxLoadedModels = conf.maxLoadedModels;
+            this.maxLoadedModelsMb = conf.maxLoadedModelsMb;
+            this.modelEvictionOrder = conf.modelEvictionOrder;
+            this.termCacheSize = conf.termCacheSize;
+            if (models != null) {
+                this.modelMapStatistics = models.getModelMapStatistics();
+                this.modelLoadLatency = models.getModelLoadLatency();
+                if (models.getGolego_repo() != null) {
+                    this.termCacheStatistics = models.getGolego_repo().getTermCacheStatistics();
+                }
+            }
             this.gitRevision = getManifestVersionEntry("git-revision-sha1").orElse("UNKNOWN");
         }
     }
@@ -96,9 +126,20 @@ public class StatusHandler {
      * @param started_at
      */
     public StatusHandler(MinervaStartUpConfig conf, Map<IRI, Set<OWLAnnotation>> ont_annos, String started_at) {
+        this(conf, ont_annos, started_at, null);
+    }
+
+    /**
+     * @param conf
+     * @param ont_annos
+     * @param started_at
+     * @param models     for reporting the model map counters, may be null
+     */
+    public StatusHandler(MinervaStartUpConfig conf, Map<IRI, Set<OWLAnnotation>> ont_annos, String started_at, CoreMolecularModelManager<?> models) {
         this.ont_annosa = ont_annos;
         this.conf = conf;
         this.started_at = started_at;
+        this.models = models;
     }
 
     @GET
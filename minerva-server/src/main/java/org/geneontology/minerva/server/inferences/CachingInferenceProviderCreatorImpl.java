@@ -25,13 +25,17 @@ public class CachingInferenceProviderCreatorImpl extends InferenceProviderCreato
     }
 
     public static InferenceProviderCreator createElk(boolean useSLME, MinervaShexValidator shex) {
+        return createElk(useSLME, 1, shex);
+    }
+
+    public static InferenceProviderCreator createElk(boolean useSLME, int maxConcurrent, MinervaShexValidator shex) {
         String name;
         if (useSLME) {
             name = "Caching ELK-SLME";
         } else {
             name = "Caching ELK";
         }
-        return new CachingInferenceProviderCreatorImpl(new ElkReasonerFactory(), 1, useSLME, name, shex);
+        return new CachingInferenceProviderCreatorImpl(new ElkReasonerFactory(), maxConcurrent, useSLME, name, shex);
     }
 
 //TODO current Hermit doesn't provide a reasonerfactory ?  
@@ -47,7 +51,19 @@ public class CachingInferenceProviderCreatorImpl extends InferenceProviderCreato
 //	}
 
     public static InferenceProviderCreator createArachne(RuleEngine arachne, MinervaShexValidator shex) {
-        return new CachingInferenceProviderCreatorImpl(new ArachneOWLReasonerFactory(arachne), 1, false, "Caching Arachne", shex);
+        return createArachne(arachne, 1, shex);
+    }
+
+    /**
+     * The {@link RuleEngine} is shared read-only, each reasoner gets its own working memory.
+     *
+     * @param arachne
+     * @param maxConcurrent maximum number of models reasoned over at the same time
+     * @param shex
+     * @return creator
+     */
+    public static InferenceProviderCreator createArachne(RuleEngine arachne, int maxConcurrent, MinervaShexValidator shex) {
+        return new CachingInferenceProviderCreatorImpl(new ArachneOWLReasonerFactory(arachne), maxConcurrent, false, "Caching Arachne", shex);
     }
 
     @Override
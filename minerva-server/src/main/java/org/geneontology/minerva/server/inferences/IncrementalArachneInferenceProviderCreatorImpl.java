@@ -0,0 +1,270 @@
+package org.geneontology.minerva.server.inferences;
+
+import org.apache.log4j.Logger;
+import org.geneontology.minerva.CoreMolecularModelManager;
+import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.ModelContainer.ModelChangeListener;
+import org.geneontology.minerva.json.InferenceProvider;
+import org.geneontology.minerva.server.validation.MinervaShexValidator;
+import org.geneontology.minerva.util.WorkingMemoryUpdate;
+import org.geneontology.rules.engine.Triple;
+import org.geneontology.rules.engine.URI;
+import org.geneontology.rules.engine.WorkingMemory;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import scala.collection.JavaConverters;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Arachne based {@link InferenceProviderCreator}, which keeps the working memory of each model
+ * and only runs the rules for the triples added by an edit, instead of reasoning over the whole model again.
+ * <p>
+ * Arachne has no retraction, so any removal of a logical axiom drops the working memory and the
+ * next request reasons over the complete model. Removals of annotations are only applied to the
+ * copy used for the validation, as they do not change the inferred types.
+ */
+public class IncrementalArachneInferenceProviderCreatorImpl implements InferenceProviderCreator {
+
+    private final static Logger LOG = Logger.getLogger(IncrementalArachneInferenceProviderCreatorImpl.class);
+
+    private static final String INDIRECT_TYPE = "http://arachne.geneontology.org/indirect_type";
+    private static final String RDF_TYPE = OWLRDFVocabulary.RDF_TYPE.getIRI().toString();
+    private static final String OWL_NOTHING = OWLRDFVocabulary.OWL_NOTHING.getIRI().toString();
+
+    private final CoreMolecularModelManager models;
+    private final MinervaShexValidator shex;
+    private final Semaphore concurrentLock;
+    private final Map<ModelContainer, IncrementalState> states = new ConcurrentHashMap<>();
+
+    IncrementalArachneInferenceProviderCreatorImpl(CoreMolecularModelManager models, int maxConcurrent, MinervaShexValidator shex) {
+        this.models = models;
+        this.shex = shex;
+        this.concurrentLock = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * The rule engine of the model manager is shared read-only, each model keeps its own working memory.
+     *
+     * @param models
+     * @param maxConcurrent maximum number of models reasoned over at the same time
+     * @param shex
+     * @return creator
+     */
+    public static InferenceProviderCreator createArachne(CoreMolecularModelManager models, int maxConcurrent, MinervaShexValidator shex) {
+        return new IncrementalArachneInferenceProviderCreatorImpl(models, maxConcurrent, shex);
+    }
+
+    @Override
+    public InferenceProvider create(ModelContainer model) throws OWLOntologyCreationException, InterruptedException, IOException {
+        synchronized (model.getAboxOntology()) {
+            IncrementalState state = states.get(model);
+            if (state != null && state.requiresRebuild) {
+                dispose(state);
+                state = null;
+            }
+            if (state == null) {
+                state = new IncrementalState(model);
+                concurrentLock.acquire();
+                try {
+                    state.build();
+                } finally {
+                    concurrentLock.release();
+                }
+                model.registerListener(state);
+                states.put(model, state);
+            } else if (!state.pending.isEmpty()) {
+                concurrentLock.acquire();
+                try {
+                    state.update();
+                } finally {
+                    concurrentLock.release();
+                }
+            }
+            return state.provider;
+        }
+    }
+
+    private void dispose(IncrementalState state) {
+        states.remove(state.model);
+        state.model.unRegisterListener(state);
+        if (state.temp_ont != null) {
+            state.temp_ont.getOWLOntologyManager().removeOntology(state.temp_ont);
+        }
+    }
+
+    /**
+     * Is the removal irrelevant for the inferred types, i.e. an annotation or an axiom
+     * whose logical part is still asserted.
+     *
+     * @param change
+     * @param ont
+     * @return true, if the working memory does not need to be rebuilt
+     */
+    private static boolean isIgnorableRemoval(OWLOntologyChange change, OWLOntology ont) {
+        if (change instanceof RemoveOntologyAnnotation) {
+            return true;
+        }
+        if (change.isAxiomChange()) {
+            OWLAxiom axiom = change.getAxiom();
+            if (axiom instanceof OWLAnnotationAssertionAxiom) {
+                return true;
+            }
+            return axiom.isLogicalAxiom() && ont.containsAxiomIgnoreAnnotations(axiom);
+        }
+        return false;
+    }
+
+    private final class IncrementalState implements ModelChangeListener {
+        private final ModelContainer model;
+        private final List<OWLOntologyChange> pending = new ArrayList<>();
+        private boolean requiresRebuild = false;
+
+        private OWLOntology temp_ont;
+        private WorkingMemory memory;
+        private boolean isConsistent;
+        private final Map<String, Set<String>> allTypes = new HashMap<>();
+        private final Map<String, Set<String>> indirectTypes = new HashMap<>();
+        private InferenceProvider provider;
+
+        private IncrementalState(ModelContainer model) {
+            this.model = model;
+        }
+
+        private void build() throws OWLOntologyCreationException, IOException {
+            temp_ont = InferenceProviderCreatorImpl.copyWithOntologyAnnotations(model.getAboxOntology());
+            InferenceProviderCreatorImpl.addAllInferredTypesLocalOntoBlazegraph(temp_ont, models.getGolego_repo());
+            memory = models.createInferredModel(temp_ont, model.getModelId());
+            isConsistent = true;
+            addFacts(JavaConverters.asJavaCollectionConverter(memory.facts()).asJavaCollection());
+            provider = createProvider();
+        }
+
+        private void update() throws OWLOntologyCreationException, IOException {
+            OWLOntologyManager ontman = temp_ont.getOWLOntologyManager();
+            OWLDataFactory df = ontman.getOWLDataFactory();
+            IRI ontIRI = temp_ont.getOntologyID().getOntologyIRI().get();
+            Set<OWLAxiom> added = new HashSet<>();
+            Set<OWLAxiom> addedTypes = new HashSet<>();
+            for (OWLOntologyChange change : pending) {
+                if (change instanceof AddOntologyAnnotation) {
+                    OWLAxiom axiom = df.getOWLAnnotationAssertionAxiom(ontIRI, ((AddOntologyAnnotation) change).getAnnotation());
+                    ontman.addAxiom(temp_ont, axiom);
+                    added.add(axiom);
+                } else if (change instanceof RemoveOntologyAnnotation) {
+                    ontman.removeAxiom(temp_ont, df.getOWLAnnotationAssertionAxiom(ontIRI, ((RemoveOntologyAnnotation) change).getAnnotation()));
+                } else if (change.isAddAxiom()) {
+                    OWLAxiom axiom = change.getAxiom();
+                    ontman.addAxiom(temp_ont, axiom);
+                    added.add(axiom);
+                    if (axiom instanceof OWLClassAssertionAxiom) {
+                        addedTypes.add(axiom);
+                    }
+                } else if (change.isRemoveAxiom()) {
+                    ontman.removeAxiom(temp_ont, change.getAxiom());
+                }
+            }
+            pending.clear();
+            if (!addedTypes.isEmpty()) {
+                // root types for the new gene product, chemical and complex types
+                OWLOntology delta = OWLManager.createOWLOntologyManager().createOntology(addedTypes);
+                Set<OWLAxiom> rootTypes = InferenceProviderCreatorImpl.addAllInferredTypesLocalOntoBlazegraph(delta, models.getGolego_repo());
+                ontman.addAxioms(temp_ont, rootTypes);
+                added.addAll(rootTypes);
+            }
+            if (!added.isEmpty()) {
+                WorkingMemoryUpdate update = models.addToInferredModel(memory, added, model.getModelId());
+                memory = update.memory;
+                addFacts(update.newFacts);
+            }
+            provider = createProvider();
+        }
+
+        private void addFacts(Collection<Triple> facts) {
+            for (Triple triple : facts) {
+                if (!(triple.p() instanceof URI) || !(triple.o() instanceof URI)) {
+                    continue;
+                }
+                String p = ((URI) triple.p()).uri();
+                String o = ((URI) triple.o()).uri();
+                if (RDF_TYPE.equals(p) && OWL_NOTHING.equals(o)) {
+                    isConsistent = false;
+                }
+                if (!(triple.s() instanceof URI)) {
+                    continue;
+                }
+                String s = ((URI) triple.s()).uri();
+                if (RDF_TYPE.equals(p)) {
+                    allTypes.computeIfAbsent(s, k -> new HashSet<>()).add(o);
+                } else if (INDIRECT_TYPE.equals(p)) {
+                    indirectTypes.computeIfAbsent(s, k -> new HashSet<>()).add(o);
+                }
+            }
+        }
+
+        private InferenceProvider createProvider() throws IOException {
+            Map<OWLNamedIndividual, Set<OWLClass>> inferredTypes = new HashMap<>();
+            Map<OWLNamedIndividual, Set<OWLClass>> inferredTypesWithIndirects = new HashMap<>();
+            if (isConsistent) {
+                OWLDataFactory df = temp_ont.getOWLOntologyManager().getOWLDataFactory();
+                // not using the signature of the ontology, which may be outdated after incremental changes to the copy
+                Set<OWLNamedIndividual> individuals = new HashSet<>();
+                for (OWLAxiom axiom : temp_ont.getAxioms()) {
+                    individuals.addAll(axiom.getIndividualsInSignature());
+                }
+                for (OWLNamedIndividual individual : individuals) {
+                    String iri = individual.getIRI().toString();
+                    Set<String> types = allTypes.getOrDefault(iri, Collections.emptySet());
+                    Set<String> indirects = indirectTypes.getOrDefault(iri, Collections.emptySet());
+                    Set<OWLClass> inferred = new HashSet<>();
+                    Set<OWLClass> all_inferred = new HashSet<>();
+                    for (String type : types) {
+                        OWLClass cls = df.getOWLClass(IRI.create(type));
+                        if (cls.isBuiltIn() || OWLRDFVocabulary.OWL_NAMED_INDIVIDUAL.getIRI().equals(cls.getIRI())) {
+                            continue;
+                        }
+                        all_inferred.add(cls);
+                        if (!indirects.contains(type)) {
+                            inferred.add(cls);
+                        }
+                    }
+                    inferredTypes.put(individual, inferred);
+                    inferredTypesWithIndirects.put(individual, all_inferred);
+                }
+            }
+            return MapInferenceProvider.create(isConsistent, inferredTypes, inferredTypesWithIndirects, temp_ont, shex);
+        }
+
+        @Override
+        public void handleChange(List<OWLOntologyChange> changes) {
+            synchronized (model.getAboxOntology()) {
+                for (OWLOntologyChange change : changes) {
+                    if (change.isAddAxiom() || change instanceof AddOntologyAnnotation) {
+                        pending.add(change);
+                    } else if (isIgnorableRemoval(change, model.getAboxOntology())) {
+                        pending.add(change);
+                    } else {
+                        LOG.debug("Removal requires rebuilding the working memory for model: " + model.getModelId());
+                        requiresRebuild = true;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void dispose() {
+            synchronized (model.getAboxOntology()) {
+                IncrementalArachneInferenceProviderCreatorImpl.this.dispose(this);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "InferenceProviderCreator: Incremental Arachne";
+    }
+}
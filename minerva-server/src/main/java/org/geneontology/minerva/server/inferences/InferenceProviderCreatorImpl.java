@@ -1,6 +1,7 @@
 package org.geneontology.minerva.server.inferences;
 
 import org.apache.log4j.Logger;
+import org.geneontology.minerva.BlazegraphOntologyManager;
 import org.geneontology.minerva.ModelContainer;
 import org.geneontology.minerva.json.InferenceProvider;
 import org.geneontology.minerva.lookup.ExternalLookupService;
@@ -41,13 +42,23 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
     }
 
     public static InferenceProviderCreator createElk(boolean useSLME, MinervaShexValidator shex) {
+        return createElk(useSLME, 1, shex);
+    }
+
+    /**
+     * @param useSLME
+     * @param maxConcurrent maximum number of models reasoned over at the same time
+     * @param shex
+     * @return creator
+     */
+    public static InferenceProviderCreator createElk(boolean useSLME, int maxConcurrent, MinervaShexValidator shex) {
         String name;
         if (useSLME) {
             name = "ELK-SLME";
         } else {
             name = "ELK";
         }
-        return new InferenceProviderCreatorImpl(new ElkReasonerFactory(), 1, useSLME, name, shex);
+        return new InferenceProviderCreatorImpl(new ElkReasonerFactory(), maxConcurrent, useSLME, name, shex);
     }
 
     //	public static InferenceProviderCreator createHermiT(MinervaShexValidator shex) {
@@ -67,31 +78,34 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
         OWLReasoner reasoner = null;
         OWLOntology temp_ont = null;
         try {
-            InferenceProvider provider;
+            // only the snapshot of the model needs to be protected from concurrent edits,
+            // everything after this works on a private copy with its own reasoner
             synchronized (ont) {
-                concurrentLock.acquire();
-                try {
-                    if (useSLME) {
-                        LOG.info("Creating for module: " + model.getModelId());
-                        ModuleType mtype = ModuleType.BOT;
-                        SyntacticLocalityModuleExtractor sme = new SyntacticLocalityModuleExtractor(m, ont, mtype);
-                        Set<OWLEntity> seeds = new HashSet<OWLEntity>(ont.getIndividualsInSignature());
-                        module = ont = sme.extractAsOntology(seeds, IRI.generateDocumentIRI());
-                        LOG.info("Done creating module: " + model.getModelId());
-                    }
-                    //add root types for gene products.
-                    //TODO investigate performance impact
-                    //tradefoff these queries versus loading all possible genes into tbox
-                    //temp_ont = addRootTypesToCopy(ont, shex.externalLookupService);
-                    temp_ont = addAllInferredTypesToCopyLocalOntoBlazegraph(ont);
-                    //do reasoning and validation on the enhanced model
-                    reasoner = rf.createReasoner(temp_ont);
-                    provider = MapInferenceProvider.create(reasoner, temp_ont, shex);
-                } finally {
-                    concurrentLock.release();
+                if (useSLME) {
+                    LOG.info("Creating for module: " + model.getModelId());
+                    ModuleType mtype = ModuleType.BOT;
+                    SyntacticLocalityModuleExtractor sme = new SyntacticLocalityModuleExtractor(m, ont, mtype);
+                    Set<OWLEntity> seeds = new HashSet<OWLEntity>(ont.getIndividualsInSignature());
+                    module = ont = sme.extractAsOntology(seeds, IRI.generateDocumentIRI());
+                    LOG.info("Done creating module: " + model.getModelId());
                 }
+                temp_ont = copyWithOntologyAnnotations(ont);
+            }
+            //add root types for gene products.
+            //TODO investigate performance impact
+            //tradefoff these queries versus loading all possible genes into tbox
+            //temp_ont = addRootTypesToCopy(ont, shex.externalLookupService);
+            addAllInferredTypesLocalOntoBlazegraph(temp_ont);
+            //do reasoning and validation on the enhanced model
+            //the shex validator is shared by all permits: its schema and shape maps are only read after init,
+            //each validation has its own graph, typing and index, see ShexValidatorTest#testConcurrentValidations
+            concurrentLock.acquire();
+            try {
+                reasoner = rf.createReasoner(temp_ont);
+                return MapInferenceProvider.create(reasoner, temp_ont, shex);
+            } finally {
+                concurrentLock.release();
             }
-            return provider;
         } finally {
             if (reasoner != null) {
                 reasoner.dispose();
@@ -108,6 +122,19 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
 
 
     public OWLOntology addAllInferredTypesToCopyLocalOntoBlazegraph(OWLOntology asserted_ont) throws OWLOntologyCreationException, IOException {
+        OWLOntology temp_ont = copyWithOntologyAnnotations(asserted_ont);
+        addAllInferredTypesLocalOntoBlazegraph(temp_ont);
+        return temp_ont;
+    }
+
+    /**
+     * Shallow copy of the given ontology into a new manager, keeping the ontology annotations as annotation assertions.
+     *
+     * @param asserted_ont
+     * @return copy
+     * @throws OWLOntologyCreationException
+     */
+    static OWLOntology copyWithOntologyAnnotations(OWLOntology asserted_ont) throws OWLOntologyCreationException {
         OWLOntologyManager ontman = OWLManager.createOWLOntologyManager();
         OWLDataFactory df = ontman.getOWLDataFactory();
         OWLOntology temp_ont = ontman.copyOntology(asserted_ont, OntologyCopy.SHALLOW);
@@ -115,12 +142,35 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
             OWLAxiom annoaxiom = df.getOWLAnnotationAssertionAxiom(temp_ont.getOntologyID().getOntologyIRI().get(), a);
             ontman.addAxiom(temp_ont, annoaxiom);
         }
+        return temp_ont;
+    }
+
+    /**
+     * Add the go-lego root types of the asserted gene product, chemical and complex types to the individuals of the given (private) ontology.
+     *
+     * @param temp_ont
+     * @throws IOException
+     */
+    private void addAllInferredTypesLocalOntoBlazegraph(OWLOntology temp_ont) throws IOException {
+        addAllInferredTypesLocalOntoBlazegraph(temp_ont, shex.getGo_lego_repo());
+    }
+
+    /**
+     * @param temp_ont
+     * @param go_lego
+     * @return the added root type assertions
+     * @throws IOException
+     * @see #addAllInferredTypesLocalOntoBlazegraph(OWLOntology)
+     */
+    static Set<OWLAxiom> addAllInferredTypesLocalOntoBlazegraph(OWLOntology temp_ont, BlazegraphOntologyManager go_lego) throws IOException {
+        OWLOntologyManager ontman = temp_ont.getOWLOntologyManager();
+        OWLDataFactory df = ontman.getOWLDataFactory();
         Set<OWLNamedIndividual> individuals = temp_ont.getIndividualsInSignature();
         Map<String, Set<String>> sub_supers = new HashMap<String, Set<String>>();
         Set<String> uris = new HashSet<String>();
         Map<OWLNamedIndividual, Collection<OWLClassExpression>> individual_asserted_types = new HashMap<OWLNamedIndividual, Collection<OWLClassExpression>>();
         for (OWLNamedIndividual individual : individuals) {
-            Collection<OWLClassExpression> asserted_types = EntitySearcher.getTypes(individual, asserted_ont);
+            Collection<OWLClassExpression> asserted_types = EntitySearcher.getTypes(individual, temp_ont);
             for (OWLClassExpression cls : asserted_types) {
                 if (cls.isAnonymous()) {
                     continue;
@@ -133,7 +183,7 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
             }
             individual_asserted_types.put(individual, asserted_types);
         }
-        sub_supers = shex.getGo_lego_repo().getNeoRoots(uris);
+        sub_supers = go_lego.getNeoRoots(uris);
         Set<OWLAxiom> new_parent_types = new HashSet<OWLAxiom>();
         //for all individuals
         for (OWLNamedIndividual i : individual_asserted_types.keySet()) {
@@ -165,8 +215,7 @@ public class InferenceProviderCreatorImpl implements InferenceProviderCreator {
         if (!new_parent_types.isEmpty()) {
             ontman.addAxioms(temp_ont, new_parent_types);
         }
-
-        return temp_ont;
+        return new_parent_types;
     }
 
 
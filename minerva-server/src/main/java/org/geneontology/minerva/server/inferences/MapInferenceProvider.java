@@ -61,6 +61,21 @@ public class MapInferenceProvider implements InferenceProvider {
                 inferredTypesWithIndirects.put(individual, all_inferred);
             }
         }
+        return create(isConsistent, inferredTypes, inferredTypesWithIndirects, ont, shex);
+    }
+
+    /**
+     * Create the provider for already computed types, running the validations on the given ontology.
+     *
+     * @param isConsistent
+     * @param inferredTypes
+     * @param inferredTypesWithIndirects
+     * @param ont
+     * @param shex
+     * @return provider
+     * @throws IOException
+     */
+    static InferenceProvider create(boolean isConsistent, Map<OWLNamedIndividual, Set<OWLClass>> inferredTypes, Map<OWLNamedIndividual, Set<OWLClass>> inferredTypesWithIndirects, OWLOntology ont, MinervaShexValidator shex) throws IOException {
         //reasoner
         OWLValidationReport reasoner_validation = new OWLValidationReport();
         reasoner_validation.setConformant(isConsistent);
@@ -70,7 +85,7 @@ public class MapInferenceProvider implements InferenceProvider {
         }
         //shex
         ShexValidationReport shex_validation = new ShexValidationReport();
-        if (shex.isActive()) {
+        if (shex != null && shex.isActive()) {
             //generate an RDF model
             Model model = JenaOwlTool.getJenaModel(ont);
             //add superclasses to types used in model - needed for shex to find everything
@@ -70,7 +70,6 @@ public class ARTHandlerTest {
     static final String modelIdcurie = "http://model.geneontology.org/";
     static final String modelIdPrefix = "gomodel";
     static final String valid_model_folder = "src/test/resources/models/art-simple/";
-    static final String model_save = "src/test/resources/models/tmp/";
 
     static OWLOntology tbox_ontology;
     static String ontologyJournal;
@@ -98,6 +97,7 @@ public class ARTHandlerTest {
         tbox_ontology = TestOntology.load();
         ontologyJournal = TestOntology.newJournalPath(tmp.getRoot());
         String inputDB = makeBlazegraphJournal(valid_model_folder);
+        String model_save = tmp.newFolder().getAbsolutePath();
         models = new UndoAwareMolecularModelManager(tbox_ontology, curieHandler, modelIdPrefix, inputDB, model_save, ontologyJournal, false);
         models.addTaxonMetadata();
 
@@ -1474,6 +1474,62 @@ public class BatchModelHandlerTest {
 
     }
 
+    @Test
+    public void testMetaResponseCache() throws Exception {
+        final MetaResponseCache cache = new MetaResponseCache(models, importantRelations, curieHandler);
+        final String modelId = generateBlankModel();
+
+        M3BatchResponse.MetaResponse meta1 = new M3BatchResponse.MetaResponse();
+        final String tag1 = cache.fillModelsMeta(meta1);
+        assertTrue(meta1.modelsMeta.containsKey(modelId));
+
+        // nothing changed, same version and content
+        M3BatchResponse.MetaResponse meta2 = new M3BatchResponse.MetaResponse();
+        assertEquals(tag1, cache.fillModelsMeta(meta2));
+        assertSame(meta1.modelsMeta, meta2.modelsMeta);
+
+        // change the model annotations in memory
+        final M3Request r1 = new M3Request();
+        r1.entity = Entity.model;
+        r1.operation = Operation.addAnnotation;
+        r1.arguments = new M3Argument();
+        r1.arguments.modelId = modelId;
+        r1.arguments.values = BatchTestTools.singleAnnotation(AnnotationShorthand.title, "meta-cache-title");
+        execute(r1, false);
+
+        M3BatchResponse.MetaResponse meta3 = new M3BatchResponse.MetaResponse();
+        final String tag3 = cache.fillModelsMeta(meta3);
+        assertNotEquals(tag1, tag3);
+        assertTrue(hasTitle(meta3.modelsMeta.get(modelId), "meta-cache-title"));
+        assertEquals(Boolean.TRUE, meta3.modelsReadOnly.get(modelId).get("modified-p"));
+
+        // store the model, the annotations are now read from the journal
+        final List<M3Request> batch = new ArrayList<M3Request>();
+        batch.add(BatchTestTools.addIndividual(modelId, "GO:0008150")); // biological process
+        final M3Request r2 = new M3Request();
+        r2.entity = Entity.model;
+        r2.operation = Operation.storeModel;
+        r2.arguments = new M3Argument();
+        r2.arguments.modelId = modelId;
+        batch.add(r2);
+        executeBatch(batch, false);
+
+        M3BatchResponse.MetaResponse meta4 = new M3BatchResponse.MetaResponse();
+        final String tag4 = cache.fillModelsMeta(meta4);
+        assertNotEquals(tag3, tag4);
+        assertTrue(hasTitle(meta4.modelsMeta.get(modelId), "meta-cache-title"));
+        assertEquals(Boolean.FALSE, meta4.modelsReadOnly.get(modelId).get("modified-p"));
+    }
+
+    private static boolean hasTitle(List<JsonAnnotation> annotations, String title) {
+        for (JsonAnnotation annotation : annotations) {
+            if (AnnotationShorthand.title.name().equals(annotation.key) && title.equals(annotation.value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     //FIXME @Test
     public void testAutoAnnotationsForAddType() throws Exception {
         /*
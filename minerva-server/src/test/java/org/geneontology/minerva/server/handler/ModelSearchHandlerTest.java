@@ -22,8 +22,10 @@ import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.servlet.ServletContextHandler;
 import org.eclipse.jetty.servlet.ServletHolder;
 import org.geneontology.minerva.BlazegraphMolecularModelManager;
+import org.geneontology.minerva.ModelContainer;
 import org.geneontology.minerva.MolecularModelManager.UnknownIdentifierException;
 import org.geneontology.minerva.UndoAwareMolecularModelManager;
+import org.geneontology.minerva.UndoAwareMolecularModelManager.UndoMetadata;
 import org.geneontology.minerva.curie.CurieHandler;
 import org.geneontology.minerva.curie.CurieMappings;
 import org.geneontology.minerva.curie.DefaultCurieHandler;
@@ -52,8 +54,11 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -87,7 +92,7 @@ public class ModelSearchHandlerTest {
         final CurieMappings localMappings = new CurieMappings.SimpleCurieMappings(Collections.singletonMap(modelIdcurie, modelIdPrefix));
         curieHandler = new MappedCurieHandler(DefaultCurieHandler.loadDefaultMappings(), localMappings);
         String valid_model_folder = "src/test/resources/models/should_pass/";
-        String model_save = "src/test/resources/models/tmp/";
+        String model_save = tmp.newFolder().getAbsolutePath();
         tbox_ontology = TestOntology.load();
         ontologyJournal = TestOntology.newJournalPath(tmp.getRoot());
         String inputDB = makeBlazegraphJournal(valid_model_folder);
@@ -334,6 +339,46 @@ public class ModelSearchHandlerTest {
         assertTrue(result.getN() + " without expand on, should find now models for GO_0140110", result.getN() == 0);
     }
 
+    @Test
+    public final void testSearchCacheAndModelIndex() throws Exception {
+        ModelSearchHandler searchHandler = new ModelSearchHandler(models);
+        Set<String> term = Collections.singleton("http://purl.obolibrary.org/obo/GO_0140110");
+        ModelSearchResult result = searchHandler.search(null, null, term, "", null, null, null, null, null, null, null, null, 0, 0, null, null, null);
+        int n = result.getN();
+        assertTrue(n > 0);
+        ModelSearchResult cached = searchHandler.search(null, null, term, "", null, null, null, null, null, null, null, null, 0, 0, null, null, null);
+        assertEquals(n, cached.getN().intValue());
+        assertEquals(result.getModels().size(), cached.getModels().size());
+
+        // a new model with the expanded term is found after it is saved
+        ModelContainer model = models.generateBlankModel(null);
+        OWLDataFactory df = model.getOWLDataFactory();
+        List<OWLAnnotation> annotations = new ArrayList<>();
+        annotations.add(df.getOWLAnnotation(df.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/title")), df.getOWLLiteral("type index test")));
+        annotations.add(df.getOWLAnnotation(df.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/date")), df.getOWLLiteral("2000-01-01")));
+        annotations.add(df.getOWLAnnotation(df.getOWLAnnotationProperty(IRI.create("http://purl.org/dc/elements/1.1/contributor")), df.getOWLLiteral("test")));
+        UndoMetadata metadata = new UndoMetadata("test-user");
+        models.addModelAnnotations(model, annotations, metadata);
+        // a subclass, the term itself is not used in any model
+        Set<String> subclasses = new HashSet<>(models.getGolego_repo().getAllSubClasses(term.iterator().next()));
+        subclasses.removeAll(term);
+        models.createIndividual(model, df.getOWLClass(IRI.create(subclasses.iterator().next())), metadata);
+        models.saveModel(model);
+        result = searchHandler.search(null, null, term, "", null, null, null, null, null, null, null, null, 0, 0, null, null, null);
+        assertEquals(n + 1, result.getN().intValue());
+
+        // only the candidate models from the index are passed to the query
+        result = searchHandler.search(null, null, term, "", null, null, null, Collections.singleton("test"), null, null, null, null, 0, 0, null, "debug", null);
+        assertEquals(1, result.getN().intValue());
+        assertTrue(result.getSparql().contains("values ?id { <" + model.getModelId() + "> "));
+
+        // a type without a model is answered from the index
+        result = searchHandler.search(null, null, Collections.singleton("http://purl.obolibrary.org/obo/GO_9999999"), null, null, null, null, null, null, null, null, null, 0, 0, null, "debug", null);
+        assertEquals(0, result.getN().intValue());
+        assertTrue(result.getModels().isEmpty());
+        assertTrue(result.getSparql().contains("GO_9999999"));
+    }
+
     @Test
     public final void testSearchGetByGOGiantclosure() throws URISyntaxException, IOException {
         //make the request
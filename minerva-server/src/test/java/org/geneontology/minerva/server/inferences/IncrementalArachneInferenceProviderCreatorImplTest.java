@@ -0,0 +1,125 @@
+package org.geneontology.minerva.server.inferences;
+
+import org.geneontology.minerva.ModelContainer;
+import org.geneontology.minerva.UndoAwareMolecularModelManager;
+import org.geneontology.minerva.curie.CurieHandler;
+import org.geneontology.minerva.curie.CurieMappings;
+import org.geneontology.minerva.curie.DefaultCurieHandler;
+import org.geneontology.minerva.curie.MappedCurieHandler;
+import org.geneontology.minerva.json.InferenceProvider;
+import org.geneontology.minerva.server.validation.MinervaShexValidator;
+import org.geneontology.minerva.test.TestOntology;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that applying edits to the kept working memory gives the same inferences as reasoning over the whole model.
+ */
+public class IncrementalArachneInferenceProviderCreatorImplTest {
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static UndoAwareMolecularModelManager models = null;
+    private static MinervaShexValidator rootTypes = null;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        final OWLOntology tbox = TestOntology.load();
+        final String modelIdcurie = "gomodel";
+        final String modelIdPrefix = "http://model.geneontology.org/";
+        final CurieMappings localMappings = new CurieMappings.SimpleCurieMappings(Collections.singletonMap(modelIdcurie, modelIdPrefix));
+        CurieHandler curieHandler = new MappedCurieHandler(DefaultCurieHandler.loadDefaultMappings(), localMappings);
+        models = new UndoAwareMolecularModelManager(tbox, curieHandler, modelIdPrefix,
+                folder.newFile().getAbsolutePath(), null, TestOntology.newJournalPath(folder.getRoot()), false);
+        // only for the go-lego root types of the full reasoning, not validating
+        rootTypes = new MinervaShexValidator("src/test/resources/validate.shex", "src/test/resources/validate.shapemap", curieHandler, models.getGolego_repo());
+        rootTypes.setActive(false);
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        if (models != null) {
+            models.dispose();
+        }
+    }
+
+    @Test
+    public void testIncrementalMatchesFullReasoning() throws Exception {
+        ModelContainer model = models.generateBlankModel(null);
+        InferenceProviderCreator incremental = IncrementalArachneInferenceProviderCreatorImpl.createArachne(models, 1, null);
+        OWLDataFactory df = model.getOWLDataFactory();
+        String prefix = model.getModelId().toString() + "/";
+        OWLNamedIndividual mf = df.getOWLNamedIndividual(IRI.create(prefix + "mf"));
+        OWLNamedIndividual bp = df.getOWLNamedIndividual(IRI.create(prefix + "bp"));
+        OWLNamedIndividual gp = df.getOWLNamedIndividual(IRI.create(prefix + "gp"));
+        OWLClass ligaseActivity = df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/GO_0016874"));
+        OWLClass protein = df.getOWLClass(IRI.create("http://identifiers.org/uniprot/Q13253"));
+        OWLClass assembly = df.getOWLClass(IRI.create("http://purl.obolibrary.org/obo/GO_0022607"));
+        OWLObjectProperty partOf = df.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/BFO_0000050"));
+        OWLObjectProperty enabledBy = df.getOWLObjectProperty(IRI.create("http://purl.obolibrary.org/obo/RO_0002333"));
+        OWLAnnotation comment = df.getOWLAnnotation(df.getRDFSComment(), df.getOWLLiteral("test"));
+
+        assertSameInferences(model, incremental.create(model));
+
+        // additions are applied to the working memory
+        apply(model, new AddAxiom(model.getAboxOntology(), df.getOWLDeclarationAxiom(mf)),
+                new AddAxiom(model.getAboxOntology(), df.getOWLClassAssertionAxiom(ligaseActivity, mf)),
+                new AddAxiom(model.getAboxOntology(), df.getOWLDeclarationAxiom(bp)),
+                new AddAxiom(model.getAboxOntology(), df.getOWLClassAssertionAxiom(assembly, bp)));
+        assertSameInferences(model, incremental.create(model));
+
+        // new gene product types get their go-lego root types
+        apply(model, new AddAxiom(model.getAboxOntology(), df.getOWLDeclarationAxiom(gp)),
+                new AddAxiom(model.getAboxOntology(), df.getOWLClassAssertionAxiom(protein, gp)),
+                new AddAxiom(model.getAboxOntology(), df.getOWLObjectPropertyAssertionAxiom(enabledBy, mf, gp)));
+        InferenceProvider provider = incremental.create(model);
+        assertSameInferences(model, provider);
+        assertTrue(provider.getAllTypes(gp).size() > 1);
+
+        apply(model, new AddAxiom(model.getAboxOntology(), df.getOWLObjectPropertyAssertionAxiom(partOf, mf, bp)),
+                new AddOntologyAnnotation(model.getAboxOntology(), comment));
+        assertSameInferences(model, incremental.create(model));
+
+        // removing an annotated copy of an asserted axiom does not change the inferences
+        OWLAxiom annotated = df.getOWLClassAssertionAxiom(assembly, bp, Collections.singleton(comment));
+        apply(model, new AddAxiom(model.getAboxOntology(), annotated));
+        apply(model, new RemoveAxiom(model.getAboxOntology(), annotated),
+                new RemoveOntologyAnnotation(model.getAboxOntology(), comment));
+        assertSameInferences(model, incremental.create(model));
+
+        // removing a type requires a new working memory
+        apply(model, new RemoveAxiom(model.getAboxOntology(), df.getOWLClassAssertionAxiom(ligaseActivity, mf)));
+        provider = incremental.create(model);
+        assertSameInferences(model, provider);
+        assertTrue(provider.getAllTypes(mf).isEmpty());
+        assertTrue(provider.getAllTypes(gp).size() > 1);
+    }
+
+    private static void apply(ModelContainer model, OWLOntologyChange... changes) {
+        model.applyChanges(Arrays.asList(changes));
+    }
+
+    private static void assertSameInferences(ModelContainer model, InferenceProvider actual) throws Exception {
+        // the existing Arachne reasoner over a copy of the complete model
+        InferenceProvider expected = CachingInferenceProviderCreatorImpl.createArachne(models.getRuleEngine(), 1, rootTypes).create(model);
+        assertEquals(expected.isConsistent(), actual.isConsistent());
+        List<OWLNamedIndividual> individuals = new ArrayList<>(model.getAboxOntology().getIndividualsInSignature());
+        for (OWLNamedIndividual individual : individuals) {
+            assertEquals(individual.toString(), expected.getTypes(individual), actual.getTypes(individual));
+            assertEquals(individual.toString(), expected.getAllTypes(individual), actual.getAllTypes(individual));
+        }
+    }
+}